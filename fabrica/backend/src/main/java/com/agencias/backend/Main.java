@@ -3,6 +3,13 @@ package com.agencias.backend;
 import com.agencias.backend.config.ConfigLoader;
 import com.agencias.backend.config.DatabaseConfig;
 import com.agencias.backend.config.JerseyConfig;
+import com.agencias.backend.repository.OrderRepository;
+import com.agencias.backend.service.LowStockAlertAggregator;
+import com.agencias.backend.service.MailQueue;
+import com.agencias.backend.service.OrderIntakeService;
+import com.agencias.backend.service.OrderNumberGenerator;
+import com.agencias.backend.service.OutboxDispatcher;
+import com.agencias.backend.service.PartService;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -37,7 +44,43 @@ public class Main {
             // Inicializar EntityManagerFactory
             DatabaseConfig.getEntityManagerFactory();
             System.out.println("EntityManagerFactory inicializado correctamente");
+
+            // Id de nodo de los números de pedido (configurado o tomado en SCHEDULER_LEASE); sin él no se arranca
+            OrderNumberGenerator.start(DatabaseConfig.getEntityManagerFactory());
+
+            // Cargar índice de búsqueda del catálogo (si falla, se carga en la primera búsqueda)
+            try {
+                new PartService(DatabaseConfig.getEntityManagerFactory()).rebuildSearchIndex();
+                System.out.println("Índice de búsqueda del catálogo cargado");
+            } catch (Exception e) {
+                System.err.println("No se pudo cargar el índice de búsqueda: " + e.getMessage());
+            }
+
+            // Completar CURRENT_STATUS de pedidos anteriores a la columna (no hace nada si ya están al día)
+            try {
+                int filled = new OrderRepository(DatabaseConfig.getEntityManagerFactory()).backfillCurrentStatus(500);
+                if (filled > 0) {
+                    System.out.println("Estado actual completado en " + filled + " pedidos");
+                }
+            } catch (Exception e) {
+                System.err.println("No se pudo completar el estado actual de los pedidos: " + e.getMessage());
+            }
             
+            // Solicitudes de pedido asíncronas: retoma las pendientes y barre periódicamente
+            OrderIntakeService intakes = OrderIntakeService.shared(DatabaseConfig.getEntityManagerFactory());
+            intakes.start(ConfigLoader.getLongSetting("ORDERS_INTAKE_SWEEP_SECONDS", "orders.intake.sweep.seconds", 5)
+                * 1000L);
+
+            // Avisos encolados en OUTBOX_EVENT (correos, webhooks, alertas de stock)
+            OutboxDispatcher outbox = OutboxDispatcher.shared(DatabaseConfig.getEntityManagerFactory());
+            outbox.start(ConfigLoader.getLongSetting("OUTBOX_POLL_MILLIS", "outbox.poll.millis", 1000));
+
+            // Resumen de stock bajo: un solo nodo lo arma y encola a la vez (lease en SCHEDULER_LEASE)
+            LowStockAlertAggregator lowStockAlerts =
+                LowStockAlertAggregator.shared(DatabaseConfig.getEntityManagerFactory());
+            lowStockAlerts.start(ConfigLoader.getLongSetting("STOCK_ALERT_DIGEST_MINUTES",
+                "stock.alert.digest.minutes", 15) * 60_000L);
+
             // Configurar Jersey
             JerseyConfig jerseyConfig = new JerseyConfig();
             
@@ -55,6 +98,11 @@ public class Main {
             // Agregar shutdown hook para cerrar EntityManagerFactory
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
+                    intakes.stop();
+                    outbox.stop();
+                    lowStockAlerts.stop();
+                    MailQueue.stopShared();
+                    OrderNumberGenerator.stopShared();
                     DatabaseConfig.close();
                 } catch (Exception ignored) { }
             }));
@@ -16,4 +16,29 @@ public class ConfigLoader {
         }
         return props;
     }
+
+    /**
+     * Valor de configuración: la variable de entorno tiene prioridad sobre application.properties.
+     * @return valor recortado o null si no está definido / está vacío
+     */
+    public static String getSetting(String envName, String propertyKey) {
+        String v = envName != null ? System.getenv(envName) : null;
+        if (v == null || v.isBlank()) {
+            v = loadProperties().getProperty(propertyKey);
+        }
+        return v != null && !v.isBlank() ? v.trim() : null;
+    }
+
+    /** Igual que {@link #getSetting} pero numérico; si falta o no es válido devuelve {@code defaultValue}. */
+    public static long getLongSetting(String envName, String propertyKey, long defaultValue) {
+        String v = getSetting(envName, propertyKey);
+        if (v == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 }
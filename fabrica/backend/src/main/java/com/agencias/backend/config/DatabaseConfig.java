@@ -44,6 +44,10 @@ public class DatabaseConfig {
             properties.put("hibernate.hbm2ddl.auto", props.getProperty("hibernate.hbm2ddl.auto", "update"));
             properties.put("hibernate.show_sql", props.getProperty("hibernate.show_sql", "true"));
             properties.put("hibernate.format_sql", props.getProperty("hibernate.format_sql", "true"));
+            // Lotes JDBC: agrupa INSERT/UPDATE de la misma tabla en una sola ida al servidor
+            properties.put("hibernate.jdbc.batch_size", props.getProperty("hibernate.jdbc.batch_size", "50"));
+            properties.put("hibernate.order_inserts", "true");
+            properties.put("hibernate.order_updates", "true");
             // Deshabilitar escaneo automático para evitar problemas con Jandex en JAR shaded
             // Ya tenemos las clases especificadas explícitamente en persistence.xml
             properties.put("jakarta.persistence.scan.discovery", "false");
@@ -9,7 +9,8 @@ import org.glassfish.jersey.media.multipart.MultiPartFeature;
 /**
  * Aplicación JAX-RS raíz ({@code /api}). Descubre recursos en
  * {@code com.agencias.backend.controller}, registra JSON (Jackson), carga de archivos
- * ({@link org.glassfish.jersey.media.multipart.MultiPartFeature}), CORS y
+ * ({@link org.glassfish.jersey.media.multipart.MultiPartFeature}, con el tope de
+ * {@link com.agencias.backend.config.MultipartSizeLimitFilter}), CORS y
  * {@link com.agencias.backend.config.DistributorApiKeyFilter} para llamadas del distribuidor.
  */
 @ApplicationPath("/api")
@@ -20,6 +21,7 @@ public class JerseyConfig extends ResourceConfig {
         register(MultiPartFeature.class);
         register(CorsFilter.class);
         register(DistributorApiKeyFilter.class);
+        register(MultipartSizeLimitFilter.class);
         property(ServerProperties.WADL_FEATURE_DISABLE, true);
     }
 }
@@ -0,0 +1,86 @@
+package com.agencias.backend.config;
+
+import com.agencias.backend.controller.ErrorResponse;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Tope del cuerpo completo de las peticiones {@code multipart/form-data} ({@code uploads.multipart.max.mb}).
+ * Jersey lee todo el formulario antes de llamar al recurso, así que el límite se aplica aquí, mientras llega:
+ * con {@code Content-Length} mayor se responde 413 sin leer nada y, si no lo trae (chunked), la lectura se
+ * corta con 413 en cuanto se pasa del tope.
+ */
+public class MultipartSizeLimitFilter implements ContainerRequestFilter {
+
+    private final long maxBytes;
+
+    public MultipartSizeLimitFilter() {
+        this(ConfigLoader.getLongSetting("UPLOADS_MULTIPART_MAX_MB", "uploads.multipart.max.mb", 26) * 1024 * 1024);
+    }
+
+    MultipartSizeLimitFilter(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext ctx) throws IOException {
+        MediaType type = ctx.getMediaType();
+        if (type == null || !"multipart".equalsIgnoreCase(type.getType())) {
+            return;
+        }
+        if (ctx.getLength() > maxBytes) {
+            ctx.abortWith(tooLarge());
+            return;
+        }
+        ctx.setEntityStream(new BoundedInputStream(ctx.getEntityStream(), maxBytes));
+    }
+
+    private Response tooLarge() {
+        return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+            .entity(new ErrorResponse(413, "La petición excede el tamaño máximo de " + maxBytes / (1024 * 1024) + "MB"))
+            .type(MediaType.APPLICATION_JSON)
+            .build();
+    }
+
+    /** Stream que corta con 413 al leer el byte {@code max}+1. */
+    final class BoundedInputStream extends FilterInputStream {
+        private final long max;
+        private long total;
+
+        BoundedInputStream(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, (int) Math.min(len, max + 1 - total));
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) {
+            total += n;
+            if (total > max) {
+                throw new WebApplicationException(tooLarge());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.agencias.backend.controller;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * ETags por contenido y su comparación con {@code If-None-Match}, para las respuestas que se pueden revalidar con
+ * 304 (imágenes, recibos PDF). Los ETags se guardan y se comparan con comillas ({@code "..."}); {@link #unquote}
+ * los deja como los espera {@link jakarta.ws.rs.core.EntityTag}, que las vuelve a poner al escribir la cabecera.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    /** ETag fuerte: primeros 128 bits del SHA-256 del contenido. */
+    public static String forContent(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * true si la cabecera {@code If-None-Match} incluye {@code etag} (o es {@code *}).
+     * Acepta listas separadas por comas y validadores débiles ({@code W/"..."}).
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) {
+                c = c.substring(2);
+            }
+            if (c.equals("*") || c.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@code "abc"} → {@code abc}; sin comillas lo devuelve igual. */
+    public static String unquote(String etag) {
+        return etag.length() >= 2 && etag.startsWith("\"") ? etag.substring(1, etag.length() - 1) : etag;
+    }
+}
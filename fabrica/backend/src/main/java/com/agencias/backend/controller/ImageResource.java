@@ -1,17 +1,17 @@
 package com.agencias.backend.controller;
 
 import com.agencias.backend.config.DatabaseConfig;
-import com.agencias.backend.model.PartImage;
+import com.agencias.backend.service.ImageCache;
+import com.agencias.backend.service.ImageService;
+import com.agencias.backend.service.ImageVariantService;
 import jakarta.inject.Singleton;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityManagerFactory;
-import jakarta.persistence.TypedQuery;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 import java.util.Base64;
-import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,11 +21,12 @@ import java.util.Map;
 @Path("/images")
 @Singleton
 public class ImageResource {
-    private final EntityManagerFactory emf;
+    private final ImageService imageService;
     private static final long MAX_FILE_SIZE = 5 * 1024 * 1024; // 5MB
+    private static final String CACHE_CONTROL = "max-age=86400"; // Cache por 1 día
 
     public ImageResource() {
-        this.emf = DatabaseConfig.getEntityManagerFactory();
+        this.imageService = new ImageService(DatabaseConfig.getEntityManagerFactory());
     }
 
     /**
@@ -34,119 +35,80 @@ public class ImageResource {
      */
     @GET
     @Path("/part/{partId}/gallery/{sortOrder}")
-    public Response getPartGalleryImage(@PathParam("partId") Long partId, @PathParam("sortOrder") int sortOrder) {
+    public Response getPartGalleryImage(@PathParam("partId") Long partId, @PathParam("sortOrder") int sortOrder,
+                                        @QueryParam("w") Integer w, @QueryParam("size") String size,
+                                        @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         if (sortOrder < 1 || sortOrder > 4) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(new ErrorResponse(400, "sortOrder debe estar entre 1 y 4"))
                     .build();
         }
-        EntityManager em = emf.createEntityManager();
-        try {
-            TypedQuery<PartImage> q = em.createQuery(
-                    "SELECT pi FROM PartImage pi WHERE pi.partId = :pid AND pi.sortOrder = :so", PartImage.class);
-            q.setParameter("pid", partId);
-            q.setParameter("so", sortOrder);
-            List<PartImage> rows = q.getResultList();
-            if (rows.isEmpty()) {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse(404, "Imagen de galería no encontrada"))
-                        .build();
-            }
-            PartImage row = rows.get(0);
-            byte[] imageData = row.getImageData();
-            if (imageData == null || imageData.length == 0) {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse(404, "Imagen de galería no encontrada"))
-                        .build();
-            }
-            String contentType = row.getImageType() != null ? row.getImageType() : "image/jpeg";
-            return Response.ok(imageData)
-                    .type(contentType)
-                    .header("Cache-Control", "max-age=86400")
-                    .build();
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse(500, "Error al obtener la imagen: " + e.getMessage()))
-                    .build();
-        } finally {
-            em.close();
-        }
+        return serve("part", partId, sortOrder, w, size, ifNoneMatch);
     }
 
     /**
      * Endpoint para servir imágenes desde la base de datos
      * GET /api/images/{entityType}/{id}
      * entityType: part, category, brand, vehicle
+     * Responde con ETag (hash del contenido); con {@code If-None-Match} coincidente responde 304.
+     * {@code ?w=} (px, se redondea al siguiente ancho generado) o {@code ?size=thumb|small|medium|large}
+     * devuelven una versión reducida.
      */
     @GET
     @Path("/{entityType}/{id}")
-    public Response getImage(@PathParam("entityType") String entityType, @PathParam("id") Long id) {
-        EntityManager em = emf.createEntityManager();
+    public Response getImage(@PathParam("entityType") String entityType, @PathParam("id") Long id,
+                             @QueryParam("w") Integer w, @QueryParam("size") String size,
+                             @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        String type;
         try {
-            Object entity = null;
-            byte[] imageData = null;
-            String imageType = null;
-
-            switch (entityType.toLowerCase()) {
-                case "part":
-                    entity = em.find(com.agencias.backend.model.Part.class, id);
-                    if (entity != null) {
-                        imageData = ((com.agencias.backend.model.Part) entity).getImageData();
-                        imageType = ((com.agencias.backend.model.Part) entity).getImageType();
-                    }
-                    break;
-                case "category":
-                    entity = em.find(com.agencias.backend.model.Category.class, id);
-                    if (entity != null) {
-                        imageData = ((com.agencias.backend.model.Category) entity).getImageData();
-                        imageType = ((com.agencias.backend.model.Category) entity).getImageType();
-                    }
-                    break;
-                case "brand":
-                    entity = em.find(com.agencias.backend.model.Brand.class, id);
-                    if (entity != null) {
-                        imageData = ((com.agencias.backend.model.Brand) entity).getImageData();
-                        imageType = ((com.agencias.backend.model.Brand) entity).getImageType();
-                    }
-                    break;
-                case "vehicle":
-                    entity = em.find(com.agencias.backend.model.Vehicle.class, id);
-                    if (entity != null) {
-                        imageData = ((com.agencias.backend.model.Vehicle) entity).getImageData();
-                        imageType = ((com.agencias.backend.model.Vehicle) entity).getImageType();
-                    }
-                    break;
-                default:
-                    return Response.status(Response.Status.BAD_REQUEST)
-                            .entity(new ErrorResponse(400, "Tipo de entidad no válido")).build();
-            }
+            type = ImageService.entityType(entityType);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(400, e.getMessage())).build();
+        }
+        return serve(type, id, 0, w, size, ifNoneMatch);
+    }
 
-            if (entity == null) {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse(404, "Entidad no encontrada")).build();
+    private Response serve(String entityType, Long id, int sortOrder, Integer w, String size, String ifNoneMatch) {
+        int width;
+        try {
+            width = ImageVariantService.resolveWidth(w, size);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(400, e.getMessage())).build();
+        }
+        try {
+            if (ifNoneMatch != null) {
+                String known = imageService.knownEtag(entityType, id, sortOrder, width);
+                if (ETags.matches(ifNoneMatch, known)) {
+                    return notModified(known);
+                }
             }
-
-            if (imageData == null || imageData.length == 0) {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse(404, "Imagen no encontrada")).build();
+            ImageCache.Entry image = imageService.get(entityType, id, sortOrder, width);
+            if (ETags.matches(ifNoneMatch, image.getEtag())) {
+                return notModified(image.getEtag());
             }
-
-            // Determinar Content-Type
-            String contentType = imageType != null ? imageType : "image/jpeg";
-
-            return Response.ok(imageData)
-                    .type(contentType)
-                    .header("Cache-Control", "max-age=86400") // Cache por 1 día
+            return Response.ok(image.getData())
+                    .type(image.getContentType())
+                    .tag(new EntityTag(ETags.unquote(image.getEtag())))
+                    .header("Cache-Control", CACHE_CONTROL)
                     .build();
-
+        } catch (ImageService.ImageNotFoundException e) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(new ErrorResponse(404, e.getMessage())).build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity(new ErrorResponse(500, "Error al obtener la imagen: " + e.getMessage())).build();
-        } finally {
-            em.close();
         }
     }
 
+    private static Response notModified(String etag) {
+        ImageCache.shared().recordNotModified();
+        return Response.notModified(new EntityTag(ETags.unquote(etag)))
+                .header("Cache-Control", CACHE_CONTROL)
+                .build();
+    }
+
     /**
      * Endpoint para validar imagen en base64
      * POST /api/images/validate
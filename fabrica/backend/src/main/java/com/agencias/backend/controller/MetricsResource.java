@@ -0,0 +1,46 @@
+package com.agencias.backend.controller;
+
+import com.agencias.backend.config.DatabaseConfig;
+import com.agencias.backend.service.CatalogCache;
+import com.agencias.backend.service.IdempotencyService;
+import com.agencias.backend.service.ImageCache;
+import com.agencias.backend.service.LowStockAlertAggregator;
+import com.agencias.backend.service.MailQueue;
+import com.agencias.backend.service.OptimisticRetry;
+import com.agencias.backend.service.OrderIntakeService;
+import com.agencias.backend.service.OutboxDispatcher;
+import com.agencias.backend.service.WebhookDeliveryEngine;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Contadores internos del backend para dimensionar cachés y colas ({@code GET /api/metricas}). */
+@Path("/metricas")
+@jakarta.inject.Singleton
+public class MetricsResource {
+
+    /**
+     * @return 200 JSON con una sección por componente (p. ej. {@code catalogCache})
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response metrics() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("catalogCache", CatalogCache.shared().stats());
+        body.put("imageCache", ImageCache.shared().stats());
+        body.put("optimisticRetry", OptimisticRetry.shared().stats());
+        body.put("idempotency", IdempotencyService.shared(DatabaseConfig.getEntityManagerFactory()).stats());
+        body.put("orderIntake", OrderIntakeService.shared(DatabaseConfig.getEntityManagerFactory()).stats());
+        body.put("lowStockAlerts",
+            LowStockAlertAggregator.shared(DatabaseConfig.getEntityManagerFactory()).stats());
+        body.put("outbox", OutboxDispatcher.shared(DatabaseConfig.getEntityManagerFactory()).stats());
+        body.put("webhooks", WebhookDeliveryEngine.shared().stats());
+        body.put("mail", MailQueue.sharedStats());
+        return Response.ok(body).build();
+    }
+}
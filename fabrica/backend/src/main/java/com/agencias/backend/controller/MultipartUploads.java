@@ -0,0 +1,144 @@
+package com.agencias.backend.controller;
+
+import jakarta.ws.rs.core.MediaType;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataMultiPart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lectura de formularios {@code multipart/form-data} con imágenes, sin pasar por base64 ni por el texto JSON.
+ * Jersey ya recibió el formulario completo antes de llegar aquí (las partes grandes en archivos temporales, no en
+ * memoria); el tope de la petición entera lo aplica {@link com.agencias.backend.config.MultipartSizeLimitFilter}
+ * mientras llega, y aquí se comprueba el límite de 5MB de cada archivo al leerlo.
+ */
+final class MultipartUploads {
+
+    static final long MAX_IMAGE_BYTES = 5 * 1024 * 1024; // 5MB, igual que ImageResource
+    private static final int READ_BUFFER = 64 * 1024;
+    private static final Set<String> IMAGE_TYPES = Set.of(
+        "image/jpeg", "image/jpg", "image/png", "image/gif", "image/webp");
+
+    /** Imágenes leídas, en el orden del formulario. */
+    static final class Images {
+        final List<byte[]> data = new ArrayList<>();
+        final List<String> types = new ArrayList<>();
+
+        boolean isEmpty() {
+            return data.isEmpty();
+        }
+    }
+
+    private MultipartUploads() {
+    }
+
+    /** Campo con la lista (separada por comas) de campos a borrar, p. ej. {@code clear=partYear,compatibilityTags}. */
+    static final String CLEAR_FIELD = "clear";
+
+    /**
+     * Campos de texto del formulario como el {@code Map} del cuerpo JSON: los de {@code numericFields} se
+     * convierten a número. Un campo vacío cuenta como no enviado (un formulario HTML manda también los inputs que
+     * el usuario dejó en blanco, y eso no debe borrar nada); para borrar un campo, como {@code null} en JSON, se
+     * nombra en {@value #CLEAR_FIELD}.
+     * @throws IllegalArgumentException si un campo numérico no lo es
+     */
+    static Map<String, Object> textFields(FormDataMultiPart form, Set<String> numericFields) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        List<String> cleared = new ArrayList<>();
+        for (Map.Entry<String, List<FormDataBodyPart>> e : form.getFields().entrySet()) {
+            FormDataBodyPart part = e.getValue().get(0);
+            if (!part.isSimple()) {
+                continue;
+            }
+            String value = part.getValue() != null ? part.getValue().trim() : "";
+            if (e.getKey().equals(CLEAR_FIELD)) {
+                for (String name : value.split(",")) {
+                    if (!name.isBlank()) {
+                        cleared.add(name.trim());
+                    }
+                }
+            } else if (value.isEmpty()) {
+                // en blanco: como si no se hubiera enviado
+            } else if (numericFields.contains(e.getKey())) {
+                try {
+                    body.put(e.getKey(), new BigDecimal(value));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException(e.getKey() + " debe ser numérico");
+                }
+            } else {
+                body.put(e.getKey(), value);
+            }
+        }
+        for (String name : cleared) {
+            body.putIfAbsent(name, null); // si además vino con valor, gana el valor
+        }
+        return body;
+    }
+
+    /**
+     * Archivos del campo {@code name}; el tipo sale de la cabecera Content-Type de cada parte.
+     * @throws IllegalArgumentException si una imagen excede el límite o no es de un tipo admitido
+     */
+    static Images images(FormDataMultiPart form, String name) throws IOException {
+        Images images = new Images();
+        List<FormDataBodyPart> parts = form.getFields(name);
+        if (parts == null) {
+            return images;
+        }
+        for (FormDataBodyPart part : parts) {
+            if (part.isSimple()) {
+                continue;
+            }
+            String type = imageType(part.getMediaType());
+            try (InputStream in = part.getEntityAs(InputStream.class)) {
+                byte[] data = readBounded(in, MAX_IMAGE_BYTES);
+                if (data.length == 0) {
+                    throw new IllegalArgumentException("Cada imagen requiere contenido");
+                }
+                images.data.add(data);
+                images.types.add(type);
+            }
+        }
+        return images;
+    }
+
+    private static String imageType(MediaType mediaType) {
+        if (mediaType == null || MediaType.APPLICATION_OCTET_STREAM_TYPE.isCompatible(mediaType)) {
+            return "image/jpeg";
+        }
+        String type = (mediaType.getType() + "/" + mediaType.getSubtype()).toLowerCase(Locale.ROOT);
+        if (!IMAGE_TYPES.contains(type)) {
+            throw new IllegalArgumentException(
+                "Formato de imagen no válido. Use: image/jpeg, image/png, image/gif, image/webp");
+        }
+        return type;
+    }
+
+    /**
+     * Lee el stream completo sin superar {@code max} bytes: en cuanto llega uno de más, corta con error
+     * (no se termina de leer un archivo enorme para rechazarlo después).
+     */
+    static byte[] readBounded(InputStream in, long max) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER);
+        byte[] buffer = new byte[READ_BUFFER];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer, 0, (int) Math.min(buffer.length, max + 1 - total))) > 0) {
+            total += n;
+            if (total > max) {
+                throw new IllegalArgumentException("La imagen excede el tamaño máximo de " + max / (1024 * 1024) + "MB");
+            }
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
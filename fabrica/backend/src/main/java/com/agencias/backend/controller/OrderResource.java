@@ -1,15 +1,24 @@
 package com.agencias.backend.controller;
 
 import com.agencias.backend.config.DatabaseConfig;
+import com.agencias.backend.controller.dto.PedidoLoteResultadoDto;
 import com.agencias.backend.model.OrderHeader;
+import com.agencias.backend.model.OrderIntake;
 import com.agencias.backend.model.OrderItem;
 import com.agencias.backend.model.OrderStatusHistory;
+import com.agencias.backend.repository.KeysetPage;
+import com.agencias.backend.service.EnterpriseProfileService;
+import com.agencias.backend.service.IdempotencyService;
+import com.agencias.backend.service.OrderIntakeService;
 import com.agencias.backend.service.OrderService;
 import com.agencias.backend.service.ReciboPdfService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.inject.Singleton;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
@@ -18,8 +27,10 @@ import java.time.YearMonth;
 import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 /**
@@ -29,13 +40,29 @@ import java.util.regex.Pattern;
 @Path("/pedidos")
 @Singleton
 public class OrderResource {
+    /** Cabecera con la que el cliente marca reintentos de la misma petición. */
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    /** Clave de la distribuidora (ver {@link com.agencias.backend.config.DistributorApiKeyFilter}). */
+    private static final String DISTRIBUTOR_API_KEY = "X-Distributor-Api-Key";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /** Tamaño de página cuando se pagina con {@code after} sin indicar {@code limit}. */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    /** El recibo es del cliente (no se comparte en cachés intermedias) y no cambia una vez generado. */
+    private static final String RECIBO_CACHE_CONTROL = "private, max-age=86400";
+
     private final OrderService service;
     private final ReciboPdfService reciboPdfService;
+    private final IdempotencyService idempotency;
+    private final OrderIntakeService intakes;
+    private final EnterpriseProfileService enterpriseProfiles;
 
     public OrderResource() {
         EntityManagerFactory emf = DatabaseConfig.getEntityManagerFactory();
         this.service = new OrderService(emf);
         this.reciboPdfService = new ReciboPdfService(emf);
+        this.idempotency = IdempotencyService.shared(emf);
+        this.intakes = OrderIntakeService.shared(emf);
+        this.enterpriseProfiles = new EnterpriseProfileService(emf);
     }
 
     private static final Pattern ONLY_DIGITS = Pattern.compile("\\d+");
@@ -44,11 +71,175 @@ public class OrderResource {
      * Crear un nuevo pedido. Opcionalmente incluye datos de pago (simulación) para validar tarjeta y enviar correo.
      * POST /api/pedidos
      * Body: { userId, items, payment?: { cardNumber, expiryMonth, expiryYear } }
+     * Con cabecera {@code Idempotency-Key}, un reintento con la misma clave y el mismo cuerpo recibe la respuesta
+     * original (cabecera {@code Idempotent-Replayed: true}) sin crear otro pedido; con otro cuerpo, 422.
+     * Con {@code ?async=true} solo valida y encola la solicitud: responde 202 con {@code ticket} y {@code statusUrl}
+     * ({@code GET /api/pedidos/solicitudes/{ticket}}) y el pedido se crea en segundo plano.
      */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response createOrder(Map<String, Object> body, @Context HttpHeaders headers) {
+    public Response createOrder(Map<String, Object> body, @Context HttpHeaders headers,
+                                @QueryParam("async") boolean async) {
+        if (async) {
+            return withIdempotency("pedidos-async", body, headers, () -> doSubmitOrder(body, headers));
+        }
+        return withIdempotency("pedidos", body, headers, () -> doCreateOrder(body, headers));
+    }
+
+    /**
+     * Estado de una solicitud asíncrona: {@code PENDING}/{@code PROCESSING}, {@code COMPLETED} con
+     * {@code orderId}, o {@code REJECTED}/{@code FAILED} con {@code error}.
+     * GET /api/pedidos/solicitudes/{ticket}
+     */
+    @GET
+    @Path("/solicitudes/{ticket}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getIntake(@PathParam("ticket") String ticket) {
+        try {
+            OrderIntake intake = intakes.find(ticket).orElse(null);
+            if (intake == null) {
+                return Response.status(404).entity(new ErrorResponse(404, "Solicitud no encontrada")).build();
+            }
+            return Response.ok(intake).build();
+        } catch (Exception e) {
+            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+        }
+    }
+
+    /**
+     * Crear varios pedidos en una llamada (reposición consolidada de una distribuidora).
+     * POST /api/pedidos/lote
+     * Body: { orders: [ { userId, items, reference? }, ... ] }
+     * Responde 200 con un resultado por pedido ({@code CREATED} con el pedido o {@code REJECTED} con el motivo):
+     * un pedido rechazado no impide crear los demás. Admite {@code Idempotency-Key} igual que la creación simple.
+     */
+    @POST
+    @Path("/lote")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createOrderBatch(Map<String, Object> body, @Context HttpHeaders headers) {
+        return withIdempotency("pedidos-lote", body, headers, () -> doCreateOrderBatch(body, headers));
+    }
+
+    /**
+     * Sin cabecera {@code Idempotency-Key} ejecuta {@code action} directamente; con ella, un reintento con la misma
+     * clave y el mismo cuerpo recibe la respuesta original (cabecera {@code Idempotent-Replayed: true}).
+     * Las claves son por llamante: cada distribuidora ({@code X-Distributor-Api-Key}) tiene su propio espacio de
+     * claves, así dos distribuidoras que usen la misma clave (p. ej. su número de pedido) no se cruzan.
+     */
+    private Response withIdempotency(String scope, Map<String, Object> body, HttpHeaders headers,
+                                     Supplier<Response> action) {
+        String key = headers.getHeaderString(IDEMPOTENCY_KEY);
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        key = key.trim();
+        if (key.length() > IdempotencyService.MAX_KEY_LENGTH) {
+            return Response.status(400).entity(new ErrorResponse(400,
+                IDEMPOTENCY_KEY + " admite hasta " + IdempotencyService.MAX_KEY_LENGTH + " caracteres")).build();
+        }
+        try {
+            Long enterpriseId = sourceEnterprise(headers);
+            String callerScope = enterpriseId != null ? scope + ":e" + enterpriseId : scope;
+            String hash = IdempotencyService.hashOf(body, headers.getHeaderString("X-Order-Origin"),
+                enterpriseId != null ? enterpriseId.toString() : null);
+            IdempotencyService.StoredResponse stored = idempotency.execute(callerScope, key, hash,
+                () -> toStored(action.get()));
+            Response.ResponseBuilder rb = Response.status(stored.getStatus())
+                .entity(stored.getBody())
+                .type(MediaType.APPLICATION_JSON);
+            if (stored.isReplayed()) {
+                rb.header("Idempotent-Replayed", "true");
+            }
+            return rb.build();
+        } catch (IdempotencyService.KeyReusedException e) {
+            return Response.status(422).entity(new ErrorResponse(422, e.getMessage())).build();
+        } catch (IdempotencyService.InProgressException e) {
+            return Response.status(409).entity(new ErrorResponse(409, e.getMessage())).build();
+        } catch (Exception e) {
+            System.err.println(scope + " (Idempotency-Key " + key + "): " + e.getMessage());
+            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+        }
+    }
+
+    private Response doSubmitOrder(Map<String, Object> body, HttpHeaders headers) {
+        try {
+            Long userId = body.get("userId") instanceof Number n ? n.longValue() : null;
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payment = (Map<String, Object>) body.get("payment");
+            if (payment != null) {
+                String cardError = validateCard(payment);
+                if (cardError != null) {
+                    return Response.status(400).entity(new ErrorResponse(400, cardError)).build();
+                }
+            }
+            OrderIntake intake = intakes.submit(userId, body.get("items"), headers.getHeaderString("X-Order-Origin"),
+                payment != null, sourceEnterprise(headers));
+            String statusUrl = "/api/pedidos/solicitudes/" + intake.getTicket();
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("ticket", intake.getTicket());
+            response.put("status", intake.getStatus());
+            response.put("orderNumber", intake.getOrderNumber());
+            response.put("statusUrl", statusUrl);
+            return Response.status(Response.Status.ACCEPTED).entity(response)
+                .header("Location", statusUrl).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
+        } catch (Exception e) {
+            System.err.println("submitOrder: " + e.getClass().getName() + ": " + e.getMessage());
+            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+        }
+    }
+
+    private Response doCreateOrderBatch(Map<String, Object> body, HttpHeaders headers) {
+        try {
+            Object orders = body != null ? body.get("orders") : null;
+            if (!(orders instanceof List<?> list)) {
+                return Response.status(400).entity(new ErrorResponse(400, "orders es obligatorio")).build();
+            }
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> data = (List<Map<String, Object>>) list;
+            for (Object o : data) {
+                if (o != null && !(o instanceof Map)) {
+                    return Response.status(400).entity(new ErrorResponse(400, "Cada pedido debe ser un objeto")).build();
+                }
+            }
+            List<PedidoLoteResultadoDto> results = service.createOrders(data, headers.getHeaderString("X-Order-Origin"),
+                sourceEnterprise(headers));
+            long created = results.stream().filter(r -> PedidoLoteResultadoDto.CREATED.equals(r.getStatus())).count();
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("created", created);
+            response.put("rejected", results.size() - created);
+            response.put("results", results);
+            return Response.ok(response).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
+        } catch (Exception e) {
+            System.err.println("createOrderBatch: " + e.getClass().getName() + ": " + e.getMessage());
+            e.printStackTrace();
+            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+        }
+    }
+
+    /** Distribuidora dueña de la {@code X-Distributor-Api-Key} (null si no la envía o no es de ningún perfil). */
+    private Long sourceEnterprise(HttpHeaders headers) {
+        return enterpriseProfiles.enterpriseIdForApiKey(headers.getHeaderString(DISTRIBUTOR_API_KEY));
+    }
+
+    /** Respuesta ya serializada para guardarla y repetirla tal cual. */
+    private static IdempotencyService.StoredResponse toStored(Response response) {
+        try {
+            Object entity = response.getEntity();
+            String json = entity == null ? null
+                : entity instanceof String str ? str : MAPPER.writeValueAsString(entity);
+            return new IdempotencyService.StoredResponse(response.getStatus(), json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta", e);
+        }
+    }
+
+    private Response doCreateOrder(Map<String, Object> body, HttpHeaders headers) {
         try {
             Long userId = body.get("userId") != null ? ((Number) body.get("userId")).longValue() : null;
             @SuppressWarnings("unchecked")
@@ -69,17 +260,9 @@ public class OrderResource {
             }
 
             String originHdr = headers.getHeaderString("X-Order-Origin");
-            OrderHeader order = service.createOrder(userId, items, originHdr);
-
-            // Enviar correo de confirmación si se enviaron datos de pago
-            if (payment != null) {
-                try {
-                    service.sendOrderConfirmationEmail(order.getOrderId());
-                } catch (Exception e) {
-                    System.err.println("Error enviando correo de confirmación: " + e.getMessage());
-                    // No fallar el pedido si el correo falla
-                }
-            }
+            // Con datos de pago, el correo de confirmación queda encolado en la transacción del pedido
+            OrderHeader order = service.createOrder(userId, items, originHdr, null, payment != null,
+                sourceEnterprise(headers));
 
             return Response.status(Response.Status.CREATED).entity(order).build();
         } catch (IllegalArgumentException e) {
@@ -134,16 +317,27 @@ public class OrderResource {
     }
 
     /**
-     * Obtener pedidos de un usuario
-     * GET /api/pedidos/usuario/{userId}
+     * Obtener pedidos de un usuario.
+     * Sin {@code limit} ni {@code after} responde el arreglo completo (compatibilidad); con ellos responde una
+     * página {@code {items, nextCursor, hasMore}} ordenada por {@code sort} ({@code newest}, {@code oldest} o
+     * {@code total}) y, con {@code count=true}, {@code total}.
+     * GET /api/pedidos/usuario/{userId}?limit=&after=&sort=&count=
      */
     @GET
     @Path("/usuario/{userId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUserOrders(@PathParam("userId") Long userId) {
+    public Response getUserOrders(@PathParam("userId") Long userId,
+                                  @QueryParam("limit") Integer limit, @QueryParam("after") String after,
+                                  @QueryParam("sort") String sort, @QueryParam("count") boolean count) {
         try {
+            if (limit != null || (after != null && !after.isBlank())) {
+                return Response.ok(service.getUserOrdersPage(userId, sort, after,
+                    limit != null ? limit : DEFAULT_PAGE_SIZE, count)).build();
+            }
             List<OrderHeader> orders = service.getUserOrders(userId);
             return Response.ok(orders).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
             return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
         }
@@ -188,20 +382,30 @@ public class OrderResource {
     }
 
     /**
-     * Descargar recibo del pedido en PDF.
+     * Descargar recibo del pedido en PDF (generado una sola vez, con ETag: responde 304 si el cliente ya lo tiene).
      * GET /api/pedidos/{orderId}/recibo
      */
     @GET
     @Path("/{orderId}/recibo")
     @Produces("application/pdf")
-    public Response getReciboPdf(@PathParam("orderId") Long orderId) {
-        byte[] pdf = reciboPdfService.generarReciboPdf(orderId);
-        if (pdf == null) {
+    public Response getReciboPdf(@PathParam("orderId") Long orderId,
+                                 @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String known = reciboPdfService.knownEtag(orderId);
+            if (ETags.matches(ifNoneMatch, known)) {
+                return Response.notModified(new EntityTag(ETags.unquote(known)))
+                        .header("Cache-Control", RECIBO_CACHE_CONTROL)
+                        .build();
+            }
+        }
+        ReciboPdfService.Recibo recibo = reciboPdfService.obtenerRecibo(orderId);
+        if (recibo == null) {
             return Response.status(404).entity(new ErrorResponse(404, "Pedido no encontrado")).build();
         }
-        OrderHeader order = service.getOrderById(orderId);
-        String filename = "recibo-" + (order != null ? order.getOrderNumber() : orderId) + ".pdf";
-        return Response.ok(pdf)
+        String filename = "recibo-" + (recibo.getOrderNumber() != null ? recibo.getOrderNumber() : orderId) + ".pdf";
+        return Response.ok(recibo.getPdf())
+                .tag(new EntityTag(ETags.unquote(recibo.getEtag())))
+                .header("Cache-Control", RECIBO_CACHE_CONTROL)
                 .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
                 .build();
     }
@@ -260,7 +464,9 @@ public class OrderResource {
 
     /**
      * Listar todos los pedidos (admin/empleados) con filtros opcionales.
-     * {@code GET /api/pedidos?status=CONFIRMED&userId=1&from=2025-01-01&to=2025-12-31}
+     * Con {@code limit} o {@code after} responde una página {@code {items, nextCursor, hasMore}} (y {@code total}
+     * con {@code count=true}) en lugar del arreglo completo; cada elemento es {@code {order, latestStatus}}.
+     * {@code GET /api/pedidos?status=CONFIRMED&userId=1&from=2025-01-01&to=2025-12-31&limit=50&sort=newest}
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -269,29 +475,48 @@ public class OrderResource {
             @QueryParam("userId") Long userId,
             @QueryParam("from") String fromDate,
             @QueryParam("to") String toDate,
-            @QueryParam("orderOrigin") String orderOrigin) {
+            @QueryParam("orderOrigin") String orderOrigin,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after,
+            @QueryParam("sort") String sort,
+            @QueryParam("count") boolean count) {
         try {
             Date from = parseDate(fromDate, false);
             Date to = parseDate(toDate, true);
+            if (limit != null || (after != null && !after.isBlank())) {
+                KeysetPage<OrderHeader> page = service.getOrdersPage(status, userId, from, to, orderOrigin, sort,
+                    after, limit != null ? limit : DEFAULT_PAGE_SIZE, count);
+                KeysetPage<Map<String, Object>> result = new KeysetPage<>(
+                    withLatestStatus(page.getItems()), page.getNextCursor(), page.isHasMore());
+                result.setTotal(page.getTotal());
+                return Response.ok(result).build();
+            }
             List<OrderHeader> orders = (status != null || userId != null || from != null || to != null
                 || (orderOrigin != null && !orderOrigin.isBlank()))
                 ? service.getAllOrdersFiltered(status, userId, from, to, orderOrigin)
                 : service.getAllOrders();
-            // Enriquecer con último estado para gestión admin
-            List<Map<String, Object>> result = new java.util.ArrayList<>();
-            for (OrderHeader o : orders) {
-                Map<String, Object> row = new HashMap<>();
-                row.put("order", o);
-                OrderStatusHistory latest = service.getLatestStatus(o.getOrderId());
-                row.put("latestStatus", latest);
-                result.add(row);
-            }
-            return Response.ok(result).build();
+            return Response.ok(withLatestStatus(orders)).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
             return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
         }
     }
 
+    /** Enriquece cada pedido con su último estado para gestión admin. */
+    private List<Map<String, Object>> withLatestStatus(List<OrderHeader> orders) {
+        Map<Long, OrderStatusHistory> latestByOrder = service.getLatestStatuses(
+            orders.stream().map(OrderHeader::getOrderId).toList());
+        List<Map<String, Object>> result = new java.util.ArrayList<>();
+        for (OrderHeader o : orders) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("order", o);
+            row.put("latestStatus", latestByOrder.get(o.getOrderId()));
+            result.add(row);
+        }
+        return result;
+    }
+
     private static Date parseDate(String value, boolean endOfDay) {
         if (value == null || value.isBlank()) return null;
         try {
@@ -2,17 +2,21 @@ package com.agencias.backend.controller;
 
 import com.agencias.backend.config.DatabaseConfig;
 import com.agencias.backend.model.Part;
+import com.agencias.backend.service.CatalogExportWriter;
 import com.agencias.backend.service.MailService;
 import com.agencias.backend.service.PartService;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Collections;
 
 /**
@@ -23,6 +27,13 @@ import java.util.Collections;
 @Path("/repuestos")
 @jakarta.inject.Singleton
 public class PartResource {
+    /** Campos numéricos del alta/modificación (en multipart llegan como texto). */
+    private static final Set<String> NUMERIC_FIELDS = Set.of(
+            "categoryId", "brandId", "weightLb", "price", "stockQuantity", "lowStockThreshold", "active", "partYear");
+
+    /** Tamaño de página cuando se pagina con {@code after} sin indicar {@code limit}. */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
     private final PartService service;
 
     public PartResource() {
@@ -35,18 +46,6 @@ public class PartResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response create(Map<String, Object> body) {
         try {
-            Long categoryId = body.get("categoryId") != null ? ((Number) body.get("categoryId")).longValue() : null;
-            Long brandId = body.get("brandId") != null ? ((Number) body.get("brandId")).longValue() : null;
-            String partNumber = (String) body.get("partNumber");
-            String title = (String) body.get("title");
-            String description = (String) body.get("description");
-            String compatibilityTags = parseCompatibilityTags(body.get("compatibilityTags"));
-            BigDecimal weightLb = body.get("weightLb") != null ? new BigDecimal(body.get("weightLb").toString()) : null;
-            BigDecimal price = body.get("price") != null ? new BigDecimal(body.get("price").toString()) : null;
-            Integer stockQuantity = body.get("stockQuantity") != null ? ((Number) body.get("stockQuantity")).intValue() : 0;
-            Integer lowStockThreshold = body.get("lowStockThreshold") != null ? ((Number) body.get("lowStockThreshold")).intValue() : 5;
-            Integer partYear = body.get("partYear") != null ? ((Number) body.get("partYear")).intValue() : null;
-
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> images = (List<Map<String, Object>>) body.get("images");
             if (images == null || images.size() < 2 || images.size() > 5) {
@@ -70,12 +69,31 @@ public class PartResource {
                 imageBytes.add(Base64.getDecoder().decode(base64Data));
                 imageTypes.add(imageType);
             }
+            return createPart(body, imageBytes, imageTypes);
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
+        } catch (Exception e) {
+            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+        }
+    }
 
-            Part p = service.create(categoryId, brandId, partNumber, title, description, compatibilityTags, weightLb, price, stockQuantity, lowStockThreshold, partYear);
-            p = service.replacePartGallery(p.getPartId(), imageBytes, imageTypes);
-            fillImageGalleryCount(p);
-
-            return Response.status(Response.Status.CREATED).entity(p).build();
+    /**
+     * Alta con {@code multipart/form-data}: los mismos campos que el JSON como campos de texto y 2 a 5 archivos
+     * en el campo {@code images} (el primero es la imagen principal), sin base64. Máximo 5MB por archivo y
+     * {@code uploads.multipart.max.mb} la petición entera (413, ver {@code MultipartSizeLimitFilter}).
+     */
+    @POST
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createMultipart(FormDataMultiPart form) {
+        try {
+            MultipartUploads.Images images = MultipartUploads.images(form, "images");
+            if (images.data.size() < 2 || images.data.size() > 5) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse(400, "Debe enviar entre 2 y 5 imágenes en el campo images"))
+                        .build();
+            }
+            return createPart(MultipartUploads.textFields(form, NUMERIC_FIELDS), images.data, images.types);
         } catch (IllegalArgumentException e) {
             return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
@@ -83,10 +101,72 @@ public class PartResource {
         }
     }
 
+    /** Entero exacto del campo (JSON o formulario): "1.5" o un valor fuera de rango es un error 400, no se trunca. */
+    private static Long longField(Map<String, Object> body, String name) {
+        Object v = body.get(name);
+        if (v == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(v.toString()).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException(name + " debe ser un número entero");
+        }
+    }
+
+    private static Integer intField(Map<String, Object> body, String name) {
+        Long v = longField(body, name);
+        if (v == null) {
+            return null;
+        }
+        try {
+            return Math.toIntExact(v);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(name + " está fuera de rango");
+        }
+    }
+
+    private static Integer intField(Map<String, Object> body, String name, int defaultValue) {
+        Integer v = intField(body, name);
+        return v != null ? v : defaultValue;
+    }
+
+    private Response createPart(Map<String, Object> body, List<byte[]> imageBytes, List<String> imageTypes) {
+        Long categoryId = longField(body, "categoryId");
+        Long brandId = longField(body, "brandId");
+        String partNumber = (String) body.get("partNumber");
+        String title = (String) body.get("title");
+        String description = (String) body.get("description");
+        String compatibilityTags = parseCompatibilityTags(body.get("compatibilityTags"));
+        BigDecimal weightLb = body.get("weightLb") != null ? new BigDecimal(body.get("weightLb").toString()) : null;
+        BigDecimal price = body.get("price") != null ? new BigDecimal(body.get("price").toString()) : null;
+        Integer stockQuantity = intField(body, "stockQuantity", 0);
+        Integer lowStockThreshold = intField(body, "lowStockThreshold", 5);
+        Integer partYear = intField(body, "partYear");
+
+        Part p = service.create(categoryId, brandId, partNumber, title, description, compatibilityTags, weightLb, price, stockQuantity, lowStockThreshold, partYear);
+        p = service.replacePartGallery(p.getPartId(), imageBytes, imageTypes);
+        fillImageGalleryCount(p);
+
+        return Response.status(Response.Status.CREATED).entity(p).build();
+    }
+
+    /**
+     * Listado del catálogo, opcionalmente por categoría o marca.
+     * Sin {@code limit} ni {@code after} responde el arreglo completo (compatibilidad); con ellos responde
+     * una página {@code {items, nextCursor, hasMore}} ordenada por {@code sort} ({@code title} o {@code createdAt}).
+     * {@code GET /api/repuestos?categoryId=&brandId=&limit=&after=&sort=}
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response list(@QueryParam("categoryId") Long categoryId, @QueryParam("brandId") Long brandId) {
+    public Response list(@QueryParam("categoryId") Long categoryId, @QueryParam("brandId") Long brandId,
+                         @QueryParam("limit") Integer limit, @QueryParam("after") String after,
+                         @QueryParam("sort") String sort) {
         try {
+            if (limit != null || (after != null && !after.isBlank())) {
+                return Response.ok(service.listPage(categoryId, brandId, sort, after,
+                    limit != null ? limit : DEFAULT_PAGE_SIZE)).build();
+            }
             List<Part> list;
             if (categoryId != null) {
                 list = service.listByCategory(categoryId);
@@ -96,6 +176,8 @@ public class PartResource {
                 list = service.listAll();
             }
             return Response.ok(list).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
             return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
         }
@@ -104,7 +186,9 @@ public class PartResource {
     /**
      * Servicio de búsqueda. Recibe nombre, descripción, especificaciones.
      * Responde: lista de repuestos con código (partNumber).
-     * {@code GET /api/repuestos/busqueda?nombre=&descripcion=&especificaciones=}
+     * {@code GET /api/repuestos/busqueda?nombre=&descripcion=&especificaciones=&compatibilityTags=&partNumber=}
+     * Se resuelve en el índice en memoria del catálogo. Con {@code limit}/{@code after} responde una página
+     * {@code {items, nextCursor, hasMore}} ordenada por título.
      */
     @GET
     @Path("/busqueda")
@@ -113,28 +197,46 @@ public class PartResource {
             @QueryParam("nombre") String nombre,
             @QueryParam("descripcion") String descripcion,
             @QueryParam("especificaciones") String especificaciones,
-            @QueryParam("compatibilityTags") String compatibilityTags) {
+            @QueryParam("compatibilityTags") String compatibilityTags,
+            @QueryParam("partNumber") String partNumber,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after) {
         try {
-            List<Part> list = service.search(nombre, descripcion, especificaciones, compatibilityTags);
+            if (limit != null || (after != null && !after.isBlank())) {
+                return Response.ok(service.searchPage(nombre, descripcion, especificaciones, compatibilityTags,
+                    partNumber, after, limit != null ? limit : DEFAULT_PAGE_SIZE)).build();
+            }
+            List<Part> list = service.search(nombre, descripcion, especificaciones, compatibilityTags, partNumber);
             return Response.ok(list).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
             return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
         }
     }
 
     /**
-     * Exportar repuestos a JSON.
-     * GET /api/repuestos/export?userId=
+     * Exportar repuestos. Se envía en streaming a medida que se lee de BD.
+     * GET /api/repuestos/export?userId=&format=json|ndjson|csv
      */
     @GET
     @Path("/export")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response export(@QueryParam("userId") Long userId) {
+    @Produces({MediaType.APPLICATION_JSON, "application/x-ndjson", "text/csv"})
+    public Response export(@QueryParam("userId") Long userId, @QueryParam("format") String format) {
         try {
-            List<Part> list = service.exportRepuestos(userId);
-            return Response.ok(list).build();
+            CatalogExportWriter.Format fmt = CatalogExportWriter.Format.fromParam(format);
+            StreamingOutput body = out -> service.exportRepuestos(userId, fmt, out);
+            Response.ResponseBuilder rb = Response.ok(body, fmt.getMediaType() + ";charset=UTF-8");
+            if (fmt == CatalogExportWriter.Format.CSV) {
+                rb.header("Content-Disposition", "attachment; filename=\"repuestos.csv\"");
+            }
+            return rb.build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).type(MediaType.APPLICATION_JSON)
+                .entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
-            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+            return Response.status(500).type(MediaType.APPLICATION_JSON)
+                .entity(new ErrorResponse(500, e.getMessage())).build();
         }
     }
 
@@ -214,29 +316,8 @@ public class PartResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response update(@PathParam("id") Long id, Map<String, Object> body) {
         try {
-            Long categoryId = body.get("categoryId") != null ? ((Number) body.get("categoryId")).longValue() : null;
-            Long brandId = body.get("brandId") != null ? ((Number) body.get("brandId")).longValue() : null;
-            String title = (String) body.get("title");
-            String description = (String) body.get("description");
-            String compatibilityTags = body.containsKey("compatibilityTags")
-                    ? parseCompatibilityTags(body.get("compatibilityTags"))
-                    : null;
-            BigDecimal weightLb = body.get("weightLb") != null ? new BigDecimal(body.get("weightLb").toString()) : null;
-            BigDecimal price = body.get("price") != null ? new BigDecimal(body.get("price").toString()) : null;
-            Integer active = body.get("active") != null ? ((Number) body.get("active")).intValue() : null;
-            Integer stockQuantity = body.get("stockQuantity") != null ? ((Number) body.get("stockQuantity")).intValue() : null;
-            Integer lowStockThreshold = body.get("lowStockThreshold") != null ? ((Number) body.get("lowStockThreshold")).intValue() : null;
-            Integer partYear = body.containsKey("partYear") ? (body.get("partYear") != null ? ((Number) body.get("partYear")).intValue() : null) : null;
-            Boolean updatePartYear = body.containsKey("partYear");
-            
-            // Actualizar datos básicos
-            Part p = service.update(id, categoryId, brandId, title, description, compatibilityTags, weightLb, price, active, partYear, updatePartYear);
-            
-            // Actualizar inventario si se proporcionó
-            if (stockQuantity != null || lowStockThreshold != null) {
-                p = service.updateInventory(id, stockQuantity, lowStockThreshold);
-            }
-            
+            List<byte[]> imageBytes = null;
+            List<String> imageTypes = null;
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> images = (List<Map<String, Object>>) body.get("images");
             if (images != null) {
@@ -245,8 +326,8 @@ public class PartResource {
                             .entity(new ErrorResponse(400, "Debe enviar entre 2 y 5 imágenes en images"))
                             .build();
                 }
-                List<byte[]> imageBytes = new ArrayList<>();
-                List<String> imageTypes = new ArrayList<>();
+                imageBytes = new ArrayList<>();
+                imageTypes = new ArrayList<>();
                 for (Map<String, Object> im : images) {
                     String base64Data = im.get("imageData") != null ? im.get("imageData").toString() : null;
                     String imageType = im.get("imageType") != null ? im.get("imageType").toString() : "image/jpeg";
@@ -261,19 +342,47 @@ public class PartResource {
                     imageBytes.add(Base64.getDecoder().decode(base64Data));
                     imageTypes.add(imageType);
                 }
-                p = service.replacePartGallery(id, imageBytes, imageTypes);
-            } else if (body.containsKey("imageData") && body.get("imageData") != null) {
+            }
+            byte[] imageData = null;
+            String imageType = null;
+            if (images == null && body.containsKey("imageData") && body.get("imageData") != null) {
                 String base64Data = (String) body.get("imageData");
-                String imageType = (String) body.get("imageType");
+                imageType = (String) body.get("imageType");
                 if (base64Data.contains(",")) {
                     base64Data = base64Data.split(",", 2)[1];
                 }
-                byte[] imageData = Base64.getDecoder().decode(base64Data);
-                p = service.updateImage(id, imageData, imageType);
+                imageData = Base64.getDecoder().decode(base64Data);
             }
+            return updatePart(id, body, imageBytes, imageTypes, imageData, imageType);
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
+        } catch (Exception e) {
+            return Response.status(500).entity(new ErrorResponse(500, e.getMessage())).build();
+        }
+    }
 
-            fillImageGalleryCount(p);
-            return Response.ok(p).build();
+    /**
+     * Modificación con {@code multipart/form-data}: campos de texto como en el JSON (en blanco = sin cambios; para
+     * borrar uno, nombrarlo en {@code clear}, p. ej. {@code clear=partYear}) y, opcionalmente, 2 a 5 archivos en
+     * {@code images} (reemplazan la galería) o un archivo en {@code image} (solo la principal).
+     */
+    @PUT
+    @Path("/{id: \\d+}")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response updateMultipart(@PathParam("id") Long id, FormDataMultiPart form) {
+        try {
+            MultipartUploads.Images gallery = MultipartUploads.images(form, "images");
+            if (!gallery.isEmpty() && (gallery.data.size() < 2 || gallery.data.size() > 5)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse(400, "Debe enviar entre 2 y 5 imágenes en images"))
+                        .build();
+            }
+            MultipartUploads.Images main = gallery.isEmpty()
+                    ? MultipartUploads.images(form, "image") : new MultipartUploads.Images();
+            return updatePart(id, MultipartUploads.textFields(form, NUMERIC_FIELDS),
+                    gallery.isEmpty() ? null : gallery.data, gallery.types,
+                    main.isEmpty() ? null : main.data.get(0), main.isEmpty() ? null : main.types.get(0));
         } catch (IllegalArgumentException e) {
             return Response.status(400).entity(new ErrorResponse(400, e.getMessage())).build();
         } catch (Exception e) {
@@ -281,6 +390,45 @@ public class PartResource {
         }
     }
 
+    /**
+     * Aplica una modificación: datos básicos, inventario y luego la galería ({@code imageBytes}) o solo la
+     * imagen principal ({@code imageData}), si vienen.
+     */
+    private Response updatePart(Long id, Map<String, Object> body, List<byte[]> imageBytes, List<String> imageTypes,
+                                byte[] imageData, String imageType) {
+        Long categoryId = longField(body, "categoryId");
+        Long brandId = longField(body, "brandId");
+        String title = (String) body.get("title");
+        String description = (String) body.get("description");
+        String compatibilityTags = body.containsKey("compatibilityTags")
+                ? parseCompatibilityTags(body.get("compatibilityTags"))
+                : null;
+        BigDecimal weightLb = body.get("weightLb") != null ? new BigDecimal(body.get("weightLb").toString()) : null;
+        BigDecimal price = body.get("price") != null ? new BigDecimal(body.get("price").toString()) : null;
+        Integer active = intField(body, "active");
+        Integer stockQuantity = intField(body, "stockQuantity");
+        Integer lowStockThreshold = intField(body, "lowStockThreshold");
+        Integer partYear = intField(body, "partYear");
+        Boolean updatePartYear = body.containsKey("partYear");
+        
+        // Actualizar datos básicos
+        Part p = service.update(id, categoryId, brandId, title, description, compatibilityTags, weightLb, price, active, partYear, updatePartYear);
+        
+        // Actualizar inventario si se proporcionó
+        if (stockQuantity != null || lowStockThreshold != null) {
+            p = service.updateInventory(id, stockQuantity, lowStockThreshold);
+        }
+        
+        if (imageBytes != null) {
+            p = service.replacePartGallery(id, imageBytes, imageTypes);
+        } else if (imageData != null) {
+            p = service.updateImage(id, imageData, imageType);
+        }
+
+        fillImageGalleryCount(p);
+        return Response.ok(p).build();
+    }
+
     @DELETE
     @Path("/{id: \\d+}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -155,7 +155,8 @@ public class UsuarioResource {
     /**
      * Admin: asignar usuario como empresarial y configurar descuento.
      * PUT /api/usuarios/{id}/empresarial
-     * Body: { adminUserId, discountPercent }
+     * Body: { adminUserId, discountPercent }, o el propio usuario: { userId, defaultAddressText?, defaultCardToken?,
+     * defaultCardLast4?, deliveryWindow?, webhookUrl?, webhookSecret? }
      */
     @PUT
     @Path("/{id}/empresarial")
@@ -173,16 +174,19 @@ public class UsuarioResource {
                 EnterpriseProfile p = enterpriseProfileService.assignEnterprise(userId, discountPercent, adminUserId);
                 return Response.ok(p).build();
             }
-            // Si no, es el propio usuario empresarial actualizando su perfil (dirección, tarjeta, horario)
+            // Si no, es el propio usuario empresarial actualizando su perfil (dirección, tarjeta, horario, webhook)
             String defaultAddressText = (String) body.get("defaultAddressText");
             String defaultCardToken = (String) body.get("defaultCardToken");
             String defaultCardLast4 = (String) body.get("defaultCardLast4");
             String deliveryWindow = (String) body.get("deliveryWindow");
+            String webhookUrl = (String) body.get("webhookUrl");
+            String webhookSecret = (String) body.get("webhookSecret");
             Long selfUserId = body.get("userId") != null ? ((Number) body.get("userId")).longValue() : null;
             if (selfUserId == null || !selfUserId.equals(userId)) {
                 return Response.status(403).entity(new ErrorResponse(403, "Solo puedes actualizar tu propio perfil")).build();
             }
-            EnterpriseProfile p = enterpriseProfileService.updateProfile(userId, defaultAddressText, defaultCardToken, defaultCardLast4, deliveryWindow);
+            EnterpriseProfile p = enterpriseProfileService.updateProfile(userId, defaultAddressText, defaultCardToken, defaultCardLast4, deliveryWindow,
+                webhookUrl, webhookSecret);
             return Response.ok(p).build();
         } catch (SecurityException e) {
             return Response.status(403).entity(new ErrorResponse(403, e.getMessage())).build();
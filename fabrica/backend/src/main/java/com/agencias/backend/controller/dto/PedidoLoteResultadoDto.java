@@ -0,0 +1,48 @@
+package com.agencias.backend.controller.dto;
+
+import com.agencias.backend.model.OrderHeader;
+
+/** Resultado de un pedido dentro de un lote: creado (con el pedido) o rechazado (con el motivo). */
+public class PedidoLoteResultadoDto {
+    public static final String CREATED = "CREATED";
+    public static final String REJECTED = "REJECTED";
+
+    /** Posición del pedido en el arreglo enviado (desde 0). */
+    private int index;
+    /** Referencia opcional del cliente (p. ej. número de pedido de la tienda), devuelta tal cual. */
+    private String reference;
+    private String status;
+    private OrderHeader order;
+    private String error;
+
+    public PedidoLoteResultadoDto() {
+    }
+
+    public PedidoLoteResultadoDto(int index, String reference) {
+        this.index = index;
+        this.reference = reference;
+    }
+
+    public void created(OrderHeader order) {
+        this.status = CREATED;
+        this.order = order;
+        this.error = null;
+    }
+
+    public void rejected(String error) {
+        this.status = REJECTED;
+        this.order = null;
+        this.error = error;
+    }
+
+    public int getIndex() { return index; }
+    public void setIndex(int index) { this.index = index; }
+    public String getReference() { return reference; }
+    public void setReference(String reference) { this.reference = reference; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public OrderHeader getOrder() { return order; }
+    public void setOrder(OrderHeader order) { this.order = order; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
@@ -1,5 +1,6 @@
 package com.agencias.backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 
@@ -46,6 +47,15 @@ public class EnterpriseProfile {
     @Column(name = "discount_percent", precision = 5, scale = 2)
     private BigDecimal discountPercent;
 
+    /** Webhook de cambios de estado de los pedidos que crea con su api_key; vacío = el webhook global. */
+    @Column(name = "webhook_url", length = 500)
+    private String webhookUrl;
+
+    /** Se envía en X-Fabrica-Webhook-Secret; no se devuelve en las respuestas. */
+    @Column(name = "webhook_secret", length = 255)
+    @JsonIgnore
+    private String webhookSecret;
+
     public EnterpriseProfile() {
     }
 
@@ -69,4 +79,8 @@ public class EnterpriseProfile {
     public void setDeliveryWindow(String deliveryWindow) { this.deliveryWindow = deliveryWindow; }
     public BigDecimal getDiscountPercent() { return discountPercent; }
     public void setDiscountPercent(BigDecimal discountPercent) { this.discountPercent = discountPercent; }
+    public String getWebhookUrl() { return webhookUrl; }
+    public void setWebhookUrl(String webhookUrl) { this.webhookUrl = webhookUrl; }
+    public String getWebhookSecret() { return webhookSecret; }
+    public void setWebhookSecret(String webhookSecret) { this.webhookSecret = webhookSecret; }
 }
@@ -0,0 +1,69 @@
+package com.agencias.backend.model;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Resultado de una petición con cabecera {@code Idempotency-Key}: mientras se procesa queda en
+ * {@code IN_PROGRESS}; al terminar guarda el código y el cuerpo JSON de la respuesta para repetirlos.
+ */
+@Entity
+@Table(name = "IDEMPOTENCY_RECORD")
+public class IdempotencyRecord {
+
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+
+    /** Ámbito + clave del cliente (p. ej. {@code pedidos:3f1c...}). */
+    @Id
+    @Column(name = "IDEMPOTENCY_KEY", length = 300)
+    private String idempotencyKey;
+
+    /** SHA-256 del cuerpo de la petición: la misma clave con otro cuerpo se rechaza. */
+    @Column(name = "REQUEST_HASH", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "STATUS", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "RESPONSE_STATUS")
+    private Integer responseStatus;
+
+    @Lob
+    @Column(name = "RESPONSE_BODY")
+    private String responseBody;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    @Column(name = "EXPIRES_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expiresAt;
+
+    /** Token de la ejecución que tomó la clave: solo ella puede completarla o liberarla. */
+    @Column(name = "OWNER_TOKEN", length = 36)
+    private String ownerToken;
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) createdAt = new Date();
+    }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    public String getRequestHash() { return requestHash; }
+    public void setRequestHash(String requestHash) { this.requestHash = requestHash; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Integer getResponseStatus() { return responseStatus; }
+    public void setResponseStatus(Integer responseStatus) { this.responseStatus = responseStatus; }
+    public String getResponseBody() { return responseBody; }
+    public void setResponseBody(String responseBody) { this.responseBody = responseBody; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+    public String getOwnerToken() { return ownerToken; }
+    public void setOwnerToken(String ownerToken) { this.ownerToken = ownerToken; }
+}
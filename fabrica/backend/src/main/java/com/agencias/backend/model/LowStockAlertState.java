@@ -0,0 +1,78 @@
+package com.agencias.backend.model;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Estado de la alerta de stock bajo de un repuesto. Sin fila (o {@code ARMED}) la alerta está armada; al quedar
+ * lo disponible en o bajo el umbral pasa a {@code FIRED} una sola vez por cruce, y vuelve a armarse
+ * ({@code RECOVERED}) cuando se repone por encima. {@code notifiedAt} nulo = cruce aún no incluido en un resumen.
+ */
+@Entity
+@Table(name = "LOW_STOCK_ALERT_STATE")
+public class LowStockAlertState {
+
+    public static final String ARMED = "ARMED";
+    public static final String FIRED = "FIRED";
+    public static final String RECOVERED = "RECOVERED";
+
+    @Id
+    @Column(name = "PART_ID")
+    private Long partId;
+
+    @Column(name = "STATE", nullable = false, length = 16)
+    private String state;
+
+    /** Disponible (stock - reservado) y umbral al momento del último cruce. */
+    @Column(name = "AVAILABLE_QTY")
+    private Integer availableQty;
+
+    @Column(name = "THRESHOLD")
+    private Integer threshold;
+
+    @Column(name = "CROSSINGS", nullable = false)
+    private Integer crossings = 0;
+
+    @Column(name = "FIRED_AT")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date firedAt;
+
+    @Column(name = "NOTIFIED_AT")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date notifiedAt;
+
+    @Column(name = "RECOVERED_AT")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date recoveredAt;
+
+    @Column(name = "UPDATED_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    public LowStockAlertState() {
+    }
+
+    public LowStockAlertState(Long partId, String state) {
+        this.partId = partId;
+        this.state = state;
+    }
+
+    public Long getPartId() { return partId; }
+    public void setPartId(Long partId) { this.partId = partId; }
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+    public Integer getAvailableQty() { return availableQty; }
+    public void setAvailableQty(Integer availableQty) { this.availableQty = availableQty; }
+    public Integer getThreshold() { return threshold; }
+    public void setThreshold(Integer threshold) { this.threshold = threshold; }
+    public Integer getCrossings() { return crossings; }
+    public void setCrossings(Integer crossings) { this.crossings = crossings; }
+    public Date getFiredAt() { return firedAt; }
+    public void setFiredAt(Date firedAt) { this.firedAt = firedAt; }
+    public Date getNotifiedAt() { return notifiedAt; }
+    public void setNotifiedAt(Date notifiedAt) { this.notifiedAt = notifiedAt; }
+    public Date getRecoveredAt() { return recoveredAt; }
+    public void setRecoveredAt(Date recoveredAt) { this.recoveredAt = recoveredAt; }
+    public Date getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -26,6 +26,10 @@ public class OrderHeader {
     @Column(name = "ORDER_ORIGIN", length = 24)
     private String orderOrigin = "FABRICA_WEB";
 
+    /** Distribuidora (ENTERPRISE_PROFILE) cuya X-Distributor-Api-Key creó el pedido; recibe sus webhooks. */
+    @Column(name = "SOURCE_ENTERPRISE_ID")
+    private Long sourceEnterpriseId;
+
     @Column(nullable = false, precision = 12, scale = 2)
     private BigDecimal subtotal;
 
@@ -42,6 +46,17 @@ public class OrderHeader {
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdAt;
 
+    /**
+     * Último estado del historial (copia de ORDER_STATUS_HISTORY); se actualiza en la misma transacción que
+     * cada cambio de estado para filtrar por estado sin consultar el historial.
+     */
+    @Column(name = "CURRENT_STATUS", length = 30)
+    private String currentStatus;
+
+    @Column(name = "STATUS_CHANGED_AT")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date statusChangedAt;
+
     @PrePersist
     public void prePersist() {
         if (createdAt == null) {
@@ -74,6 +89,8 @@ public class OrderHeader {
     public void setOrderType(String orderType) { this.orderType = orderType; }
     public String getOrderOrigin() { return orderOrigin; }
     public void setOrderOrigin(String orderOrigin) { this.orderOrigin = orderOrigin; }
+    public Long getSourceEnterpriseId() { return sourceEnterpriseId; }
+    public void setSourceEnterpriseId(Long sourceEnterpriseId) { this.sourceEnterpriseId = sourceEnterpriseId; }
     public BigDecimal getSubtotal() { return subtotal; }
     public void setSubtotal(BigDecimal subtotal) { this.subtotal = subtotal; }
     public BigDecimal getShippingTotal() { return shippingTotal; }
@@ -84,4 +101,8 @@ public class OrderHeader {
     public void setCurrency(String currency) { this.currency = currency; }
     public Date getCreatedAt() { return createdAt; }
     public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public String getCurrentStatus() { return currentStatus; }
+    public void setCurrentStatus(String currentStatus) { this.currentStatus = currentStatus; }
+    public Date getStatusChangedAt() { return statusChangedAt; }
+    public void setStatusChangedAt(Date statusChangedAt) { this.statusChangedAt = statusChangedAt; }
 }
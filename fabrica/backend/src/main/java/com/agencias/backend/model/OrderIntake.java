@@ -0,0 +1,111 @@
+package com.agencias.backend.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Solicitud de pedido recibida en modo asíncrono ({@code POST /api/pedidos?async=true}): se guarda
+ * {@code PENDING} antes de responder 202 con el ticket y un worker la convierte en pedido
+ * ({@code COMPLETED}) o la descarta con el motivo ({@code REJECTED} por validación, {@code FAILED} tras
+ * agotar los reintentos).
+ */
+@Entity
+@Table(name = "ORDER_INTAKE")
+public class OrderIntake {
+
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String REJECTED = "REJECTED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @Column(name = "TICKET", length = 36)
+    private String ticket;
+
+    @Column(name = "STATUS", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "USER_ID", nullable = false)
+    private Long userId;
+
+    @Column(name = "ORDER_ORIGIN", length = 24)
+    private String orderOrigin;
+
+    /** Distribuidora cuya X-Distributor-Api-Key envió la solicitud (ver {@link OrderHeader#getSourceEnterpriseId}). */
+    @Column(name = "SOURCE_ENTERPRISE_ID")
+    @JsonIgnore
+    private Long sourceEnterpriseId;
+
+    /** Artículos del pedido en JSON ({@code [{partId, qty}, ...]}). */
+    @Lob
+    @Column(name = "PAYLOAD", nullable = false)
+    @JsonIgnore
+    private String payload;
+
+    /** 1 = enviar el correo de confirmación al crear el pedido (la petición traía datos de pago). */
+    @Column(name = "SEND_CONFIRMATION", nullable = false)
+    @JsonIgnore
+    private Integer sendConfirmation = 0;
+
+    /**
+     * Número asignado al recibir la solicitud: si el nodo cae después de crear el pedido y antes de marcar la
+     * solicitud, al reintentar se encuentra el pedido por este número en lugar de crear otro.
+     */
+    @Column(name = "ORDER_NUMBER", nullable = false, length = 50)
+    private String orderNumber;
+
+    @Column(name = "ORDER_ID")
+    private Long orderId;
+
+    @Column(name = "ERROR_MESSAGE", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "ATTEMPTS", nullable = false)
+    @JsonIgnore
+    private Integer attempts = 0;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    @Column(name = "UPDATED_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) createdAt = new Date();
+        if (updatedAt == null) updatedAt = createdAt;
+        if (attempts == null) attempts = 0;
+        if (sendConfirmation == null) sendConfirmation = 0;
+    }
+
+    public String getTicket() { return ticket; }
+    public void setTicket(String ticket) { this.ticket = ticket; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public String getOrderOrigin() { return orderOrigin; }
+    public void setOrderOrigin(String orderOrigin) { this.orderOrigin = orderOrigin; }
+    public Long getSourceEnterpriseId() { return sourceEnterpriseId; }
+    public void setSourceEnterpriseId(Long sourceEnterpriseId) { this.sourceEnterpriseId = sourceEnterpriseId; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+    public Integer getSendConfirmation() { return sendConfirmation; }
+    public void setSendConfirmation(Integer sendConfirmation) { this.sendConfirmation = sendConfirmation; }
+    public String getOrderNumber() { return orderNumber; }
+    public void setOrderNumber(String orderNumber) { this.orderNumber = orderNumber; }
+    public Long getOrderId() { return orderId; }
+    public void setOrderId(Long orderId) { this.orderId = orderId; }
+    public String getErrorMessage() { return errorMessage; }
+    public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
+}
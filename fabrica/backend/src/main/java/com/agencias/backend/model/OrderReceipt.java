@@ -0,0 +1,57 @@
+package com.agencias.backend.model;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * PDF del recibo de un pedido ya generado. Las líneas de un pedido no cambian después de crearlo, así que se
+ * genera una vez por versión de la plantilla ({@code templateVersion}); si la plantilla cambia se vuelve a
+ * generar y se reemplaza la fila.
+ */
+@Entity
+@Table(name = "ORDER_RECEIPT")
+public class OrderReceipt {
+
+    @Id
+    @Column(name = "ORDER_ID")
+    private Long orderId;
+
+    @Column(name = "TEMPLATE_VERSION", nullable = false)
+    private Integer templateVersion;
+
+    @Column(name = "ORDER_NUMBER", length = 50)
+    private String orderNumber;
+
+    /** ETag fuerte del PDF (hash del contenido), ya entre comillas. */
+    @Column(name = "ETAG", nullable = false, length = 64)
+    private String etag;
+
+    @Lob
+    @Column(name = "PDF_DATA", nullable = false)
+    private byte[] pdfData;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) createdAt = new Date();
+    }
+
+    public OrderReceipt() {
+    }
+
+    public Long getOrderId() { return orderId; }
+    public void setOrderId(Long orderId) { this.orderId = orderId; }
+    public Integer getTemplateVersion() { return templateVersion; }
+    public void setTemplateVersion(Integer templateVersion) { this.templateVersion = templateVersion; }
+    public String getOrderNumber() { return orderNumber; }
+    public void setOrderNumber(String orderNumber) { this.orderNumber = orderNumber; }
+    public String getEtag() { return etag; }
+    public void setEtag(String etag) { this.etag = etag; }
+    public byte[] getPdfData() { return pdfData; }
+    public void setPdfData(byte[] pdfData) { this.pdfData = pdfData; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+}
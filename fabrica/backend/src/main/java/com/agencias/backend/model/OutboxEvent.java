@@ -0,0 +1,117 @@
+package com.agencias.backend.model;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Efecto secundario pendiente (correo, webhook, alerta) guardado en la misma transacción que el cambio que lo
+ * origina. El despachador lo entrega después ({@code SENT}); si falla lo reintenta con espera creciente y, agotados
+ * los intentos o ante un error definitivo, lo deja en {@code DEAD} con el último error para revisarlo a mano.
+ */
+@Entity
+@Table(name = "OUTBOX_EVENT")
+public class OutboxEvent {
+
+    public static final String PENDING = "PENDING";
+    public static final String SENT = "SENT";
+    public static final String DEAD = "DEAD";
+
+    /** Correo de confirmación al comprador ({@code aggregateId} = pedido). */
+    public static final String ORDER_CONFIRMATION_MAIL = "ORDER_CONFIRMATION_MAIL";
+    /** Correo de cambio de estado al comprador ({@code aggregateId} = pedido). */
+    public static final String ORDER_STATUS_MAIL = "ORDER_STATUS_MAIL";
+    /** Webhook de cambio de estado a la distribuidora ({@code aggregateId} = pedido). */
+    public static final String ORDER_STATUS_WEBHOOK = "ORDER_STATUS_WEBHOOK";
+    /**
+     * Webhook con el resultado de una solicitud de pedido asíncrona ({@code aggregateId} = distribuidora, 0 = webhook
+     * global; {@code payload} = cuerpo del aviso).
+     */
+    public static final String ORDER_INTAKE_WEBHOOK = "ORDER_INTAKE_WEBHOOK";
+    /**
+     * Alerta de stock bajo de un solo repuesto ({@code aggregateId} = repuesto). Ya no se generan: quedan las
+     * encoladas antes de {@link #LOW_STOCK_DIGEST}.
+     */
+    public static final String LOW_STOCK_ALERT = "LOW_STOCK_ALERT";
+    /**
+     * Resumen de stock bajo a los administradores ({@code aggregateId} = 0; {@code payload} = repuestos que
+     * cruzaron el umbral desde el resumen anterior).
+     */
+    public static final String LOW_STOCK_DIGEST = "LOW_STOCK_DIGEST";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "OUTBOX_SEQ", allocationSize = 1)
+    @Column(name = "EVENT_ID")
+    private Long eventId;
+
+    @Column(name = "EVENT_TYPE", nullable = false, length = 40)
+    private String eventType;
+
+    /** Pedido o repuesto al que se refiere; los eventos de un mismo tipo y agregado se entregan en orden. */
+    @Column(name = "AGGREGATE_ID", nullable = false)
+    private Long aggregateId;
+
+    /** Datos del evento en JSON (p. ej. el estado, comentario y tracking tal como quedaron al cambiar). */
+    @Lob
+    @Column(name = "PAYLOAD")
+    private String payload;
+
+    @Column(name = "STATUS", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "ATTEMPTS", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "NEXT_ATTEMPT_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date nextAttemptAt;
+
+    @Column(name = "LAST_ERROR", length = 1000)
+    private String lastError;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    @Column(name = "SENT_AT")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date sentAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) createdAt = new Date();
+        if (nextAttemptAt == null) nextAttemptAt = createdAt;
+        if (status == null) status = PENDING;
+        if (attempts == null) attempts = 0;
+    }
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(String eventType, Long aggregateId, String payload) {
+        this.eventType = eventType;
+        this.aggregateId = aggregateId;
+        this.payload = payload;
+    }
+
+    public Long getEventId() { return eventId; }
+    public void setEventId(Long eventId) { this.eventId = eventId; }
+    public String getEventType() { return eventType; }
+    public void setEventType(String eventType) { this.eventType = eventType; }
+    public Long getAggregateId() { return aggregateId; }
+    public void setAggregateId(Long aggregateId) { this.aggregateId = aggregateId; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+    public Date getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Date nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getSentAt() { return sentAt; }
+    public void setSentAt(Date sentAt) { this.sentAt = sentAt; }
+}
@@ -68,6 +68,12 @@ public class Part {
     @Column(name = "PART_YEAR")
     private Integer partYear;
 
+    /** Versión para bloqueo optimista; los UPDATE masivos por SQL también la incrementan. */
+    @Version
+    @Column(name = "VERSION", nullable = false, columnDefinition = "NUMBER(19) DEFAULT 0 NOT NULL")
+    @JsonIgnore
+    private Long version = 0L;
+
     @Transient
     private Boolean hasImage;
 
@@ -157,6 +163,8 @@ public class Part {
     public void setAvailableQuantity(Integer availableQuantity) { this.availableQuantity = availableQuantity; }
     public Integer getPartYear() { return partYear; }
     public void setPartYear(Integer partYear) { this.partYear = partYear; }
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
     public Integer getImageGalleryCount() { return imageGalleryCount; }
     public void setImageGalleryCount(Integer imageGalleryCount) { this.imageGalleryCount = imageGalleryCount; }
 }
@@ -0,0 +1,34 @@
+package com.agencias.backend.model;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Lease de una tarea periódica que debe correr en un solo nodo a la vez: la ejecuta quien figura en
+ * {@code owner} mientras {@code leasedUntil} no haya pasado; vencido, cualquier nodo puede tomarla.
+ */
+@Entity
+@Table(name = "SCHEDULER_LEASE")
+public class SchedulerLease {
+
+    @Id
+    @Column(name = "LEASE_NAME", length = 64)
+    private String leaseName;
+
+    @Column(name = "OWNER", nullable = false, length = 100)
+    private String owner;
+
+    @Column(name = "LEASED_UNTIL", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leasedUntil;
+
+    public SchedulerLease() {
+    }
+
+    public String getLeaseName() { return leaseName; }
+    public void setLeaseName(String leaseName) { this.leaseName = leaseName; }
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+    public Date getLeasedUntil() { return leasedUntil; }
+    public void setLeasedUntil(Date leasedUntil) { this.leasedUntil = leasedUntil; }
+}
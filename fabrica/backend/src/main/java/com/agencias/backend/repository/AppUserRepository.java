@@ -4,8 +4,12 @@ import com.agencias.backend.model.AppUser;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public class AppUserRepository {
     private final EntityManagerFactory emf;
@@ -44,6 +48,26 @@ public class AppUserRepository {
         }
     }
 
+    /** Cuáles de {@code ids} existen, en consultas de hasta 500 ids. */
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        Set<Long> found = new HashSet<>();
+        if (ids == null || ids.isEmpty()) {
+            return found;
+        }
+        List<Long> all = new ArrayList<>(ids);
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (int i = 0; i < all.size(); i += 500) {
+                found.addAll(em.createQuery("SELECT u.userId FROM AppUser u WHERE u.userId IN :ids", Long.class)
+                    .setParameter("ids", all.subList(i, Math.min(i + 500, all.size())))
+                    .getResultList());
+            }
+            return found;
+        } finally {
+            em.close();
+        }
+    }
+
     public Optional<AppUser> findByEmail(String email) {
         EntityManager em = emf.createEntityManager();
         try {
@@ -4,6 +4,8 @@ import com.agencias.backend.model.EnterpriseProfile;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,6 +28,49 @@ public class EnterpriseProfileRepository {
         }
     }
 
+    public Optional<EnterpriseProfile> findById(Long enterpriseId) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return Optional.ofNullable(em.find(EnterpriseProfile.class, enterpriseId));
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Perfil dueño de una api_key (la que envía una distribuidora en X-Distributor-Api-Key). */
+    public Optional<EnterpriseProfile> findByApiKey(String apiKey) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT e FROM EnterpriseProfile e WHERE e.apiKey = :key", EnterpriseProfile.class)
+                .setParameter("key", apiKey)
+                .setMaxResults(1)
+                .getResultList().stream().findFirst();
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Perfiles de varios usuarios (los que no tienen perfil no aparecen), en consultas de hasta 500 ids. */
+    public List<EnterpriseProfile> findByUserIds(Collection<Long> userIds) {
+        List<EnterpriseProfile> out = new ArrayList<>();
+        if (userIds == null || userIds.isEmpty()) {
+            return out;
+        }
+        List<Long> all = new ArrayList<>(userIds);
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (int i = 0; i < all.size(); i += 500) {
+                out.addAll(em.createQuery(
+                        "SELECT e FROM EnterpriseProfile e WHERE e.userId IN :uids", EnterpriseProfile.class)
+                    .setParameter("uids", all.subList(i, Math.min(i + 500, all.size())))
+                    .getResultList());
+            }
+            return out;
+        } finally {
+            em.close();
+        }
+    }
+
     public List<EnterpriseProfile> findAll() {
         EntityManager em = emf.createEntityManager();
         try {
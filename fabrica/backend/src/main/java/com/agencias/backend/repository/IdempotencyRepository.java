@@ -0,0 +1,125 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.IdempotencyRecord;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Filas de IDEMPOTENCY_RECORD. Los vencimientos se calculan y se comparan con la hora de la BD
+ * ({@code SYSTIMESTAMP}), como en {@link SchedulerLeaseRepository}, y completar, renovar o liberar una clave
+ * en curso exige el {@code OWNER_TOKEN} de quien la tomó: si su lease venció y otro nodo la retomó, esas
+ * operaciones no tocan la fila nueva y devuelven false.
+ */
+public class IdempotencyRepository {
+    private static final String INSERT_SQL =
+        "INSERT INTO IDEMPOTENCY_RECORD (IDEMPOTENCY_KEY, REQUEST_HASH, STATUS, OWNER_TOKEN, CREATED_AT, EXPIRES_AT) "
+        + "VALUES (?1, ?2, 'IN_PROGRESS', ?3, SYSTIMESTAMP, SYSTIMESTAMP + NUMTODSINTERVAL(?4, 'SECOND'))";
+    private static final String RENEW_SQL =
+        "UPDATE IDEMPOTENCY_RECORD SET EXPIRES_AT = SYSTIMESTAMP + NUMTODSINTERVAL(?3, 'SECOND') "
+        + "WHERE IDEMPOTENCY_KEY = ?1 AND OWNER_TOKEN = ?2 AND STATUS = 'IN_PROGRESS'";
+    private static final String COMPLETE_SQL =
+        "UPDATE IDEMPOTENCY_RECORD SET STATUS = 'COMPLETED', RESPONSE_STATUS = ?3, RESPONSE_BODY = ?4, "
+        + "EXPIRES_AT = SYSTIMESTAMP + NUMTODSINTERVAL(?5, 'SECOND') "
+        + "WHERE IDEMPOTENCY_KEY = ?1 AND OWNER_TOKEN = ?2 AND STATUS = 'IN_PROGRESS'";
+    private static final String DELETE_SQL =
+        "DELETE FROM IDEMPOTENCY_RECORD WHERE IDEMPOTENCY_KEY = ?1 AND OWNER_TOKEN = ?2 AND STATUS = 'IN_PROGRESS'";
+    private static final String DELETE_IF_EXPIRED_SQL =
+        "DELETE FROM IDEMPOTENCY_RECORD WHERE IDEMPOTENCY_KEY = ?1 AND EXPIRES_AT <= SYSTIMESTAMP";
+    private static final String DELETE_EXPIRED_SQL =
+        "DELETE FROM IDEMPOTENCY_RECORD WHERE EXPIRES_AT < SYSTIMESTAMP";
+
+    private final EntityManagerFactory emf;
+
+    public IdempotencyRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * Inserta la fila {@code IN_PROGRESS} que reserva la clave para {@code ownerToken} durante {@code leaseMillis}.
+     * @return false si la clave ya existe (otra petición la tomó antes, en este nodo o en otro)
+     */
+    public boolean tryInsert(String key, String requestHash, String ownerToken, long leaseMillis) {
+        try {
+            return Transactions.inTransaction(emf, em -> em.createNativeQuery(INSERT_SQL)
+                .setParameter(1, key)
+                .setParameter(2, requestHash)
+                .setParameter(3, ownerToken)
+                .setParameter(4, seconds(leaseMillis))
+                .executeUpdate() == 1);
+        } catch (PersistenceException e) {
+            if (findByKey(key).isPresent()) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    public Optional<IdempotencyRecord> findByKey(String key) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return Optional.ofNullable(em.find(IdempotencyRecord.class, key));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Alarga el lease de una clave en curso mientras su petición sigue ejecutándose.
+     * @return false si {@code ownerToken} ya no es su dueño
+     */
+    public boolean renew(String key, String ownerToken, long leaseMillis) {
+        return Transactions.inTransaction(emf, em -> em.createNativeQuery(RENEW_SQL)
+            .setParameter(1, key)
+            .setParameter(2, ownerToken)
+            .setParameter(3, seconds(leaseMillis))
+            .executeUpdate() == 1);
+    }
+
+    /**
+     * Guarda la respuesta final y pasa la fila a {@code COMPLETED}, vigente {@code ttlMillis}.
+     * @return false si {@code ownerToken} ya no es su dueño (la fila no se toca)
+     */
+    public boolean complete(String key, String ownerToken, int responseStatus, String responseBody, long ttlMillis) {
+        return Transactions.inTransaction(emf, em -> em.createNativeQuery(COMPLETE_SQL)
+            .setParameter(1, key)
+            .setParameter(2, ownerToken)
+            .setParameter(3, responseStatus)
+            .setParameter(4, responseBody)
+            .setParameter(5, seconds(ttlMillis))
+            .executeUpdate() == 1);
+    }
+
+    /**
+     * Libera la clave (la petición falló sin resultado que repetir).
+     * @return false si {@code ownerToken} ya no es su dueño (la fila no se toca)
+     */
+    public boolean delete(String key, String ownerToken) {
+        return Transactions.inTransaction(emf, em -> em.createNativeQuery(DELETE_SQL)
+            .setParameter(1, key)
+            .setParameter(2, ownerToken)
+            .executeUpdate() == 1);
+    }
+
+    /**
+     * Borra la fila si sigue vencida según la hora de la BD (no la que otro nodo acaba de insertar tras borrar
+     * la vencida).
+     * @return false si ya no existe o no está vencida
+     */
+    public boolean deleteIfExpired(String key) {
+        return Transactions.inTransaction(emf, em -> em.createNativeQuery(DELETE_IF_EXPIRED_SQL)
+            .setParameter(1, key)
+            .executeUpdate() == 1);
+    }
+
+    /** @return filas vencidas eliminadas */
+    public int deleteExpired() {
+        return Transactions.inTransaction(emf, em -> em.createNativeQuery(DELETE_EXPIRED_SQL).executeUpdate());
+    }
+
+    private static BigDecimal seconds(long millis) {
+        return BigDecimal.valueOf(millis, 3);
+    }
+}
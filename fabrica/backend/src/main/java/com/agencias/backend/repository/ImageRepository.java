@@ -0,0 +1,66 @@
+package com.agencias.backend.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lectura de solo la imagen (bytes y tipo MIME) de repuestos, categorías, marcas y vehículos, sin cargar la entidad.
+ */
+public class ImageRepository {
+    /** Tipo de entidad de la URL → entidad JPA y su atributo id. */
+    private static final Map<String, String[]> ENTITIES = Map.of(
+        "part", new String[]{"Part", "partId"},
+        "category", new String[]{"Category", "categoryId"},
+        "brand", new String[]{"Brand", "brandId"},
+        "vehicle", new String[]{"Vehicle", "vehicleId"});
+
+    private final EntityManagerFactory emf;
+
+    public ImageRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public static boolean isEntityType(String entityType) {
+        return ENTITIES.containsKey(entityType);
+    }
+
+    /**
+     * @param entityType part, category, brand o vehicle
+     * @return {@code [byte[] imageData, String imageType]}; null si la entidad no existe
+     */
+    public Object[] findMainImage(String entityType, Long id) {
+        String[] e = ENTITIES.get(entityType);
+        if (e == null) {
+            throw new IllegalArgumentException("Tipo de entidad no válido");
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT x.imageData, x.imageType FROM " + e[0] + " x WHERE x." + e[1] + " = :id", Object[].class)
+                .setParameter("id", id)
+                .getResultList();
+            return rows.isEmpty() ? null : rows.get(0);
+        } finally {
+            em.close();
+        }
+    }
+
+    /** @return {@code [byte[] imageData, String imageType]} de PART_IMAGE; null si no hay fila */
+    public Object[] findGalleryImage(Long partId, int sortOrder) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT pi.imageData, pi.imageType FROM PartImage pi WHERE pi.partId = :pid AND pi.sortOrder = :so",
+                    Object[].class)
+                .setParameter("pid", partId)
+                .setParameter("so", sortOrder)
+                .setMaxResults(1)
+                .getResultList();
+            return rows.isEmpty() ? null : rows.get(0);
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.agencias.backend.repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Posición de paginación por keyset: valor de la columna de orden más el id de desempate de la última
+ * fila entregada. Viaja al cliente como token opaco (Base64 URL) y se valida contra el orden pedido,
+ * de modo que un cursor de un listado no se puede reutilizar con otro orden.
+ */
+public final class KeysetCursor {
+
+    private final String sortValue;
+    private final long id;
+
+    public KeysetCursor(String sortValue, long id) {
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    /**
+     * Valor de orden de una fecha con la precisión completa de TIMESTAMP(6): epoch ms, con los decimales de
+     * microsegundo cuando la fila los trae ({@code 1700000000123.456}); null si no hay fecha.
+     */
+    public static String timestampValue(Date d) {
+        if (d == null) {
+            return null;
+        }
+        int subMillisNanos = d instanceof Timestamp ? ((Timestamp) d).getNanos() % 1_000_000 : 0;
+        if (subMillisNanos == 0) {
+            return Long.toString(d.getTime());
+        }
+        return BigDecimal.valueOf(d.getTime()).add(BigDecimal.valueOf(subMillisNanos, 6))
+            .stripTrailingZeros().toPlainString();
+    }
+
+    /** Valor de la columna de orden (texto, o epoch ms para fechas); null si la fila no lo tenía. */
+    public String getSortValue() {
+        return sortValue;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Valor de orden interpretado como epoch ms; null si no hay valor.
+     * @throws IllegalArgumentException si el valor no es numérico
+     */
+    public Long getSortValueAsLong() {
+        if (sortValue == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(sortValue);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+    }
+
+    /**
+     * Valor de orden escrito con {@link #timestampValue}, sin perder los microsegundos; null si no hay valor.
+     * @throws IllegalArgumentException si el valor no es una fecha válida
+     */
+    public Timestamp getSortValueAsTimestamp() {
+        if (sortValue == null) {
+            return null;
+        }
+        try {
+            BigDecimal ms = new BigDecimal(sortValue);
+            long millis = ms.setScale(0, RoundingMode.FLOOR).longValueExact();
+            int subMillisNanos = ms.subtract(BigDecimal.valueOf(millis)).movePointRight(6).intValueExact();
+            Timestamp t = new Timestamp(millis);
+            t.setNanos(t.getNanos() + subMillisNanos);
+            return t;
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+    }
+
+    /** Token opaco para {@code sortCode} (identificador del orden del listado). */
+    public String encode(String sortCode) {
+        String raw = sortCode + "|" + id + "|" + (sortValue != null ? "=" + sortValue : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return null si {@code token} está vacío
+     * @throws IllegalArgumentException si el token no es válido o pertenece a otro orden
+     */
+    public static KeysetCursor decode(String token, String sortCode) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+        String[] parts = raw.split("\\|", 3);
+        if (parts.length != 3 || !parts[0].equals(sortCode)) {
+            throw new IllegalArgumentException("Cursor de paginación inválido para este orden");
+        }
+        try {
+            return new KeysetCursor(parts[2].isEmpty() ? null : parts[2].substring(1), Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+    }
+}
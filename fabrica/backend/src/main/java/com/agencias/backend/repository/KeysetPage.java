@@ -0,0 +1,52 @@
+package com.agencias.backend.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de un listado paginado por keyset: filas, cursor de la siguiente página y si hay más.
+ * Se serializa tal cual como respuesta JSON ({@code items}, {@code nextCursor}, {@code hasMore} y, solo si se
+ * pidió el conteo, {@code total}).
+ */
+public class KeysetPage<T> {
+
+    private List<T> items;
+    private String nextCursor;
+    private boolean hasMore;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long total;
+
+    public KeysetPage() {
+    }
+
+    public KeysetPage(List<T> items, String nextCursor, boolean hasMore) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Arma la página a partir de una consulta que pidió {@code limit + 1} filas: la fila extra solo indica
+     * que hay más y no se entrega.
+     * @param cursorOf token de cursor de una fila (la última entregada)
+     */
+    public static <T> KeysetPage<T> fromLookahead(List<T> rows, int limit, Function<T, String> cursorOf) {
+        boolean more = rows.size() > limit;
+        List<T> items = more ? new ArrayList<>(rows.subList(0, limit)) : new ArrayList<>(rows);
+        String next = more && !items.isEmpty() ? cursorOf.apply(items.get(items.size() - 1)) : null;
+        return new KeysetPage<>(items, next, more);
+    }
+
+    public List<T> getItems() { return items; }
+    public void setItems(List<T> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+    /** Filas que cumplen el filtro (todas las páginas); null si no se pidió. */
+    public Long getTotal() { return total; }
+    public void setTotal(Long total) { this.total = total; }
+}
@@ -0,0 +1,148 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.LowStockAlertState;
+import com.agencias.backend.model.OutboxEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabla LOW_STOCK_ALERT_STATE. Los cambios de estado son UPDATE condicionados al estado anterior (o el INSERT
+ * del primer cruce), así entre varios nodos un mismo cruce se registra una sola vez.
+ */
+public class LowStockAlertRepository {
+    private static final int IN_CHUNK = 500;
+
+    private final EntityManagerFactory emf;
+
+    public LowStockAlertRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /** Estado guardado por repuesto (los que no figuran están armados). */
+    public Map<Long, String> findStates() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            Map<Long, String> states = new HashMap<>();
+            for (Object[] r : em.createQuery("SELECT s.partId, s.state FROM LowStockAlertState s", Object[].class)
+                .getResultList()) {
+                states.put((Long) r[0], (String) r[1]);
+            }
+            return states;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Repuestos con lo disponible en o bajo su umbral, como estados sin guardar ({@code partId},
+     * {@code availableQty}, {@code threshold}).
+     */
+    public List<LowStockAlertState> findLowStockParts() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<LowStockAlertState> low = new ArrayList<>();
+            for (Object[] r : em.createQuery(
+                    "SELECT p.partId, p.stockQuantity - p.reservedQuantity, p.lowStockThreshold FROM Part p "
+                        + "WHERE p.stockQuantity - p.reservedQuantity <= p.lowStockThreshold", Object[].class)
+                .getResultList()) {
+                LowStockAlertState s = new LowStockAlertState((Long) r[0], LowStockAlertState.ARMED);
+                s.setAvailableQty(((Number) r[1]).intValue());
+                s.setThreshold(((Number) r[2]).intValue());
+                low.add(s);
+            }
+            return low;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Registra el cruce bajo el umbral.
+     * @return false si el repuesto ya estaba en {@code FIRED} (otro hilo u otro nodo registró este cruce)
+     */
+    public boolean fire(Long partId, int available, int threshold, Date now) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int updated = em.createQuery(
+                    "UPDATE LowStockAlertState s SET s.state = :fired, s.availableQty = :available, "
+                        + "s.threshold = :threshold, s.crossings = s.crossings + 1, s.firedAt = :now, "
+                        + "s.notifiedAt = NULL, s.updatedAt = :now WHERE s.partId = :id AND s.state <> :fired")
+                .setParameter("fired", LowStockAlertState.FIRED)
+                .setParameter("available", available)
+                .setParameter("threshold", threshold)
+                .setParameter("now", now)
+                .setParameter("id", partId)
+                .executeUpdate();
+            if (updated == 0 && em.find(LowStockAlertState.class, partId) == null) {
+                LowStockAlertState s = new LowStockAlertState(partId, LowStockAlertState.FIRED);
+                s.setAvailableQty(available);
+                s.setThreshold(threshold);
+                s.setCrossings(1);
+                s.setFiredAt(now);
+                s.setUpdatedAt(now);
+                em.persist(s);
+                updated = 1;
+            }
+            tx.commit();
+            return updated == 1;
+        } catch (PersistenceException e) {
+            // Otro nodo insertó la fila primero: el cruce ya está registrado
+            if (tx.isActive()) tx.rollback();
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Vuelve a armar la alerta. @return false si no estaba en {@code FIRED} */
+    public boolean recover(Long partId, Date now) {
+        return Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE LowStockAlertState s SET s.state = :recovered, s.recoveredAt = :now, s.updatedAt = :now "
+                    + "WHERE s.partId = :id AND s.state = :fired")
+            .setParameter("recovered", LowStockAlertState.RECOVERED)
+            .setParameter("now", now)
+            .setParameter("id", partId)
+            .setParameter("fired", LowStockAlertState.FIRED)
+            .executeUpdate()) == 1;
+    }
+
+    /**
+     * Marca como notificados los cruces aún no incluidos en un resumen y, en la misma transacción, encola en
+     * OUTBOX_EVENT el correo de resumen ({@code payload} = repuestos de esos cruces).
+     * @return repuestos del resumen encolado; vacío si no había cruces nuevos (no se encola nada)
+     */
+    public List<Long> queueDigest(Date now) {
+        return Transactions.inTransaction(emf, em -> {
+            List<Long> ids = em.createQuery(
+                    "SELECT s.partId FROM LowStockAlertState s WHERE s.state = :fired AND s.notifiedAt IS NULL "
+                        + "ORDER BY s.partId", Long.class)
+                .setParameter("fired", LowStockAlertState.FIRED)
+                .getResultList();
+            if (ids.isEmpty()) {
+                return ids;
+            }
+            for (int from = 0; from < ids.size(); from += IN_CHUNK) {
+                em.createQuery("UPDATE LowStockAlertState s SET s.notifiedAt = :now WHERE s.partId IN :ids")
+                    .setParameter("now", now)
+                    .setParameter("ids", ids.subList(from, Math.min(from + IN_CHUNK, ids.size())))
+                    .executeUpdate();
+            }
+            StringBuilder payload = new StringBuilder("{\"partIds\":[");
+            for (int i = 0; i < ids.size(); i++) {
+                payload.append(i > 0 ? "," : "").append(ids.get(i));
+            }
+            payload.append("]}");
+            em.persist(new OutboxEvent(OutboxEvent.LOW_STOCK_DIGEST, 0L, payload.toString()));
+            return ids;
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.OrderIntake;
+import com.agencias.backend.model.OutboxEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cola durable de solicitudes de pedido asíncronas. Los cambios de estado son UPDATE condicionados al estado
+ * actual, así dos workers (del mismo nodo o de otro) nunca procesan la misma solicitud.
+ */
+public class OrderIntakeRepository {
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final EntityManagerFactory emf;
+
+    public OrderIntakeRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public OrderIntake insert(OrderIntake intake) {
+        return Transactions.inTransaction(emf, em -> {
+            em.persist(intake);
+            return intake;
+        });
+    }
+
+    public Optional<OrderIntake> findByTicket(String ticket) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return Optional.ofNullable(em.find(OrderIntake.class, ticket));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Toma la solicitud para procesarla ({@code PENDING} a {@code PROCESSING}) y cuenta el intento.
+     * @return false si ya no estaba pendiente (la tomó otro worker o ya terminó)
+     */
+    public boolean claim(String ticket, Date now) {
+        return Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OrderIntake i SET i.status = :processing, i.attempts = i.attempts + 1, i.updatedAt = :now "
+                    + "WHERE i.ticket = :ticket AND i.status = :pending")
+            .setParameter("processing", OrderIntake.PROCESSING)
+            .setParameter("pending", OrderIntake.PENDING)
+            .setParameter("now", now)
+            .setParameter("ticket", ticket)
+            .executeUpdate()) == 1;
+    }
+
+    /**
+     * {@code PROCESSING} a {@code COMPLETED} con el pedido creado; {@code events} (el aviso del resultado) se
+     * encolan en OUTBOX_EVENT en la misma transacción, solo si la solicitud seguía siendo de este worker.
+     */
+    public void complete(String ticket, Long orderId, Date now, List<OutboxEvent> events) {
+        finish(ticket, OrderIntake.COMPLETED, orderId, null, now, events);
+    }
+
+    /**
+     * {@code PROCESSING} a un estado final sin pedido ({@code REJECTED} o {@code FAILED}) con el motivo; los
+     * {@code events} como en {@link #complete}.
+     */
+    public void fail(String ticket, String status, String error, Date now, List<OutboxEvent> events) {
+        finish(ticket, status, null, error, now, events);
+    }
+
+    /** Devuelve la solicitud a {@code PENDING} (error transitorio) para que se reintente más tarde. */
+    public void release(String ticket, String error, Date now) {
+        finish(ticket, OrderIntake.PENDING, null, error, now, List.of());
+    }
+
+    private void finish(String ticket, String status, Long orderId, String error, Date now,
+                        List<OutboxEvent> events) {
+        Transactions.inTransaction(emf, em -> {
+            int updated = em.createQuery(
+                    "UPDATE OrderIntake i SET i.status = :status, i.orderId = :orderId, i.errorMessage = :error, "
+                        + "i.updatedAt = :now WHERE i.ticket = :ticket AND i.status = :processing")
+                .setParameter("status", status)
+                .setParameter("orderId", orderId)
+                .setParameter("error", truncate(error))
+                .setParameter("now", now)
+                .setParameter("ticket", ticket)
+                .setParameter("processing", OrderIntake.PROCESSING)
+                .executeUpdate();
+            if (updated == 1) {
+                OutboxRepository.persistAll(em, events);
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Solicitudes pendientes sin movimiento desde {@code before} (no despachadas por estar la cola llena,
+     * liberadas para reintento o recibidas por un nodo que se detuvo), las más antiguas primero.
+     */
+    public List<OrderIntake> findPendingBefore(Date before, int limit) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery(
+                    "SELECT i FROM OrderIntake i WHERE i.status = :pending AND i.updatedAt < :before "
+                        + "ORDER BY i.createdAt, i.ticket", OrderIntake.class)
+                .setParameter("pending", OrderIntake.PENDING)
+                .setParameter("before", before)
+                .setMaxResults(limit)
+                .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Devuelve a {@code PENDING} las solicitudes que quedaron {@code PROCESSING} desde antes de {@code before}
+     * (el nodo que las tomó se detuvo a mitad).
+     * @return solicitudes recuperadas
+     */
+    public int resetStale(Date before, Date now) {
+        return Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OrderIntake i SET i.status = :pending, i.updatedAt = :now "
+                    + "WHERE i.status = :processing AND i.updatedAt < :before")
+            .setParameter("pending", OrderIntake.PENDING)
+            .setParameter("processing", OrderIntake.PROCESSING)
+            .setParameter("now", now)
+            .setParameter("before", before)
+            .executeUpdate());
+    }
+
+    /** @return solicitudes terminadas antes de {@code before} eliminadas */
+    public int deleteFinishedBefore(Date before) {
+        return Transactions.inTransaction(emf, em -> em.createQuery(
+                "DELETE FROM OrderIntake i WHERE i.status IN (:done) AND i.updatedAt < :before")
+            .setParameter("done", List.of(OrderIntake.COMPLETED, OrderIntake.REJECTED, OrderIntake.FAILED))
+            .setParameter("before", before)
+            .executeUpdate());
+    }
+
+    private static String truncate(String s) {
+        return s != null && s.length() > MAX_ERROR_LENGTH ? s.substring(0, MAX_ERROR_LENGTH) : s;
+    }
+}
@@ -0,0 +1,69 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.OrderReceipt;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.PersistenceException;
+import java.util.List;
+import java.util.Optional;
+
+/** Tabla ORDER_RECEIPT: PDF de recibo ya generado por pedido y versión de plantilla. */
+public class OrderReceiptRepository {
+    private final EntityManagerFactory emf;
+
+    public OrderReceiptRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /** ETag del recibo guardado con esa versión de plantilla, sin leer el PDF. */
+    public Optional<String> findEtag(Long orderId, int templateVersion) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<String> etags = em.createQuery(
+                    "SELECT r.etag FROM OrderReceipt r WHERE r.orderId = :id AND r.templateVersion = :version",
+                    String.class)
+                .setParameter("id", orderId)
+                .setParameter("version", templateVersion)
+                .getResultList();
+            return etags.stream().findFirst();
+        } finally {
+            em.close();
+        }
+    }
+
+    public Optional<OrderReceipt> find(Long orderId, int templateVersion) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            OrderReceipt r = em.find(OrderReceipt.class, orderId);
+            return r != null && r.getTemplateVersion() == templateVersion ? Optional.of(r) : Optional.empty();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Guarda el recibo reemplazando el de otra versión de plantilla. Si otro nodo ya guardó esta misma versión
+     * (lo generó a la vez), se conserva el suyo.
+     */
+    public void save(OrderReceipt receipt) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.createQuery("DELETE FROM OrderReceipt r WHERE r.orderId = :id AND r.templateVersion <> :version")
+                .setParameter("id", receipt.getOrderId())
+                .setParameter("version", receipt.getTemplateVersion())
+                .executeUpdate();
+            if (em.find(OrderReceipt.class, receipt.getOrderId()) == null) {
+                em.persist(receipt);
+            }
+            tx.commit();
+        } catch (PersistenceException e) {
+            // Otro nodo insertó la fila primero: su PDF es igual de válido
+            if (tx.isActive()) tx.rollback();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -1,14 +1,88 @@
 package com.agencias.backend.repository;
 
 import com.agencias.backend.model.OrderHeader;
+import com.agencias.backend.model.OrderItem;
 import com.agencias.backend.model.OrderStatusHistory;
+import com.agencias.backend.model.OutboxEvent;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class OrderRepository {
+    /** Descuenta stock solo si alcanza lo disponible (stock - reservado); 0 filas = no alcanza. */
+    private static final String SELL_STOCK_SQL =
+        "UPDATE PART SET STOCK_QUANTITY = STOCK_QUANTITY - ?, VERSION = VERSION + 1 "
+        + "WHERE PART_ID = ? AND STOCK_QUANTITY - RESERVED_QUANTITY >= ?";
+    private static final String INSERT_ITEM_SQL =
+        "INSERT INTO ORDER_ITEM (ORDER_ITEM_ID, ORDER_ID, PART_ID, QTY, UNIT_PRICE, LINE_TOTAL) "
+        + "VALUES (ORDER_ITEM_SEQ.NEXTVAL, ?, ?, ?, ?, ?)";
+    /** Último estado del historial (a igual fecha, el último insertado) de un lote de pedidos sin CURRENT_STATUS. */
+    private static final String BACKFILL_STATUS_SQL =
+        "UPDATE ORDER_HEADER o SET (CURRENT_STATUS, STATUS_CHANGED_AT) = ("
+        + " SELECT h.STATUS, h.CHANGED_AT FROM ORDER_STATUS_HISTORY h WHERE h.ORDER_ID = o.ORDER_ID"
+        + " ORDER BY h.CHANGED_AT DESC, h.STATUS_ID DESC FETCH FIRST 1 ROWS ONLY) "
+        + "WHERE o.ORDER_ID IN ("
+        + " SELECT oh.ORDER_ID FROM ORDER_HEADER oh WHERE oh.CURRENT_STATUS IS NULL"
+        + " AND EXISTS (SELECT 1 FROM ORDER_STATUS_HISTORY x WHERE x.ORDER_ID = oh.ORDER_ID)"
+        + " FETCH FIRST ? ROWS ONLY)";
+
+    /** El stock de {@link #getPartId()} ya no alcanza al confirmar el pedido; la transacción se revirtió. */
+    public static class StockConflictException extends RuntimeException {
+        private final Long partId;
+
+        public StockConflictException(Long partId) {
+            super("Stock insuficiente para el repuesto " + partId);
+            this.partId = partId;
+        }
+
+        public Long getPartId() {
+            return partId;
+        }
+    }
+
+    /** Pedido listo para {@link #placeOrders}: cabecera, artículos, estado inicial y cantidad total por repuesto. */
+    public static final class NewOrder {
+        private final OrderHeader order;
+        private final SortedMap<Long, Integer> qtyByPart;
+        private final List<OrderItem> items;
+        private final OrderStatusHistory initialStatus;
+        private final boolean confirmationMail;
+
+        public NewOrder(OrderHeader order, SortedMap<Long, Integer> qtyByPart, List<OrderItem> items,
+                        OrderStatusHistory initialStatus) {
+            this(order, qtyByPart, items, initialStatus, false);
+        }
+
+        /** @param confirmationMail encolar (en la misma transacción) el correo de confirmación al comprador */
+        public NewOrder(OrderHeader order, SortedMap<Long, Integer> qtyByPart, List<OrderItem> items,
+                        OrderStatusHistory initialStatus, boolean confirmationMail) {
+            this.order = order;
+            this.qtyByPart = qtyByPart;
+            this.items = items;
+            this.initialStatus = initialStatus;
+            this.confirmationMail = confirmationMail;
+        }
+
+        public OrderHeader getOrder() { return order; }
+        public SortedMap<Long, Integer> getQtyByPart() { return qtyByPart; }
+        public List<OrderItem> getItems() { return items; }
+        public OrderStatusHistory getInitialStatus() { return initialStatus; }
+        public boolean isConfirmationMail() { return confirmationMail; }
+    }
+
     private final EntityManagerFactory emf;
 
     public OrderRepository(EntityManagerFactory emf) {
@@ -31,6 +105,101 @@ public class OrderRepository {
         }
     }
 
+    /**
+     * Registra un pedido completo en una sola transacción: descuenta el stock con UPDATE condicionados
+     * (en orden de partId, para que dos pedidos concurrentes no se bloqueen en orden cruzado), inserta la
+     * cabecera, los artículos en un lote JDBC y el estado inicial, y confirma una vez.
+     * @param qtyByPart cantidad total por repuesto, ordenada por partId
+     * @throws StockConflictException si algún repuesto ya no tiene stock suficiente (no se guarda nada)
+     */
+    public OrderHeader placeOrder(OrderHeader order, SortedMap<Long, Integer> qtyByPart, List<OrderItem> items,
+                                  OrderStatusHistory initialStatus) {
+        placeOrders(List.of(new NewOrder(order, qtyByPart, items, initialStatus)));
+        return order;
+    }
+
+    /**
+     * Igual que {@link #placeOrder} para varios pedidos a la vez, todo o nada: un UPDATE de stock por repuesto
+     * con la suma de todos los pedidos, las cabeceras y estados en lotes de Hibernate y todos los artículos en
+     * un único lote JDBC. En la misma transacción se encolan en OUTBOX_EVENT los correos de confirmación pedidos
+     * (las alertas de stock bajo las registra después {@code PartService#afterOrdersPlaced}, y el resumen
+     * periódico recoge las que se pierdan si el nodo cae en medio).
+     * @throws StockConflictException si algún repuesto no alcanza para el total (no se guarda ningún pedido)
+     */
+    public void placeOrders(List<NewOrder> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        SortedMap<Long, Integer> totalByPart = new TreeMap<>();
+        for (NewOrder o : orders) {
+            o.qtyByPart.forEach((partId, qty) -> totalByPart.merge(partId, qty, Integer::sum));
+        }
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            Session session = em.unwrap(Session.class);
+            session.doWork(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(SELL_STOCK_SQL)) {
+                    for (Map.Entry<Long, Integer> e : totalByPart.entrySet()) {
+                        ps.setInt(1, e.getValue());
+                        ps.setLong(2, e.getKey());
+                        ps.setInt(3, e.getValue());
+                        if (ps.executeUpdate() == 0) {
+                            throw new StockConflictException(e.getKey());
+                        }
+                    }
+                }
+            });
+            for (NewOrder o : orders) {
+                if (o.initialStatus.getChangedAt() == null) {
+                    o.initialStatus.setChangedAt(new Date());
+                }
+                o.order.setCurrentStatus(o.initialStatus.getStatus());
+                o.order.setStatusChangedAt(o.initialStatus.getChangedAt());
+                em.persist(o.order);
+            }
+            em.flush();
+            session.doWork(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_ITEM_SQL)) {
+                    for (NewOrder o : orders) {
+                        for (OrderItem item : o.items) {
+                            ps.setLong(1, o.order.getOrderId());
+                            ps.setLong(2, item.getPartId());
+                            ps.setInt(3, item.getQty());
+                            ps.setBigDecimal(4, item.getUnitPrice());
+                            ps.setBigDecimal(5, item.getLineTotal());
+                            ps.addBatch();
+                        }
+                    }
+                    ps.executeBatch();
+                }
+            });
+            List<OutboxEvent> events = new ArrayList<>();
+            for (NewOrder o : orders) {
+                o.initialStatus.setOrderId(o.order.getOrderId());
+                em.persist(o.initialStatus);
+                if (o.confirmationMail) {
+                    events.add(new OutboxEvent(OutboxEvent.ORDER_CONFIRMATION_MAIL, o.order.getOrderId(), null));
+                }
+            }
+            OutboxRepository.persistAll(em, events);
+            tx.commit();
+            for (NewOrder o : orders) {
+                for (OrderItem item : o.items) {
+                    item.setOrderId(o.order.getOrderId());
+                }
+            }
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
     public Optional<OrderHeader> findById(Long id) {
         EntityManager em = emf.createEntityManager();
         try {
@@ -71,48 +240,183 @@ public class OrderRepository {
     }
 
     /**
-     * Lista pedidos con filtros opcionales. Si status no es null, solo pedidos cuyo último estado sea ese.
+     * Lista pedidos con filtros opcionales. Si status no es null, solo pedidos cuyo último estado sea ese
+     * (columna CURRENT_STATUS de la cabecera).
      * @param orderOrigin ej. FABRICA_WEB o DISTRIBUIDORA; null = sin filtro
      */
     public List<OrderHeader> findAllFiltered(String status, Long userId, Date fromDate, Date toDate, String orderOrigin) {
+        return findFiltered(status, null, userId, fromDate, toDate, orderOrigin);
+    }
+
+    /**
+     * Pedidos creados en el rango cuyo último estado no es {@code excludedStatus} (p. ej. CANCELLED para
+     * reportes de ventas). Los pedidos sin estado registrado se incluyen.
+     */
+    public List<OrderHeader> findByCreatedAtExcludingStatus(Date fromDate, Date toDate, String excludedStatus) {
+        return findFiltered(null, excludedStatus, null, fromDate, toDate, null);
+    }
+
+    private List<OrderHeader> findFiltered(String status, String excludedStatus, Long userId, Date fromDate,
+                                           Date toDate, String orderOrigin) {
         EntityManager em = emf.createEntityManager();
         try {
             StringBuilder jpql = new StringBuilder("SELECT o FROM OrderHeader o WHERE 1=1 ");
-            if (userId != null) jpql.append("AND o.userId = :userId ");
-            if (fromDate != null) jpql.append("AND o.createdAt >= :fromDate ");
-            if (toDate != null) jpql.append("AND o.createdAt <= :toDate ");
-            if (orderOrigin != null && !orderOrigin.isBlank()) {
-                String o = orderOrigin.trim();
-                if ("FABRICA_WEB".equalsIgnoreCase(o)) {
-                    jpql.append("AND (o.orderOrigin = :orderOrigin OR o.orderOrigin IS NULL) ");
-                } else {
-                    jpql.append("AND o.orderOrigin = :orderOrigin ");
-                }
-            }
+            Map<String, Object> params = new HashMap<>();
+            appendFilters(jpql, params, status, excludedStatus, userId, fromDate, toDate, orderOrigin);
             jpql.append("ORDER BY o.createdAt DESC");
+            TypedQuery<OrderHeader> q = em.createQuery(jpql.toString(), OrderHeader.class);
+            params.forEach(q::setParameter);
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
 
-            var q = em.createQuery(jpql.toString(), OrderHeader.class);
-            if (userId != null) q.setParameter("userId", userId);
-            if (fromDate != null) q.setParameter("fromDate", fromDate);
-            if (toDate != null) q.setParameter("toDate", toDate);
-            if (orderOrigin != null && !orderOrigin.isBlank()) {
-                String o = orderOrigin.trim();
-                q.setParameter("orderOrigin", "FABRICA_WEB".equalsIgnoreCase(o) ? "FABRICA_WEB" : o);
-            }
-            List<OrderHeader> list = q.getResultList();
-
-            if (status != null && !status.isBlank()) {
-                OrderStatusRepository statusRepo = new OrderStatusRepository(emf);
-                list = list.stream()
-                    .filter(o -> {
-                        OrderStatusHistory latest = statusRepo.findLatestByOrderId(o.getOrderId());
-                        return latest != null && status.equalsIgnoreCase(latest.getStatus());
-                    })
-                    .collect(java.util.stream.Collectors.toList());
-            }
-            return list;
+    /**
+     * Página de pedidos con los mismos filtros que {@link #findAllFiltered}, por keyset sobre {@code sort} + orderId.
+     * Devuelve hasta {@code limit + 1} filas: la fila extra indica que hay página siguiente.
+     * @param after posición de la última fila de la página anterior; null para la primera
+     */
+    public List<OrderHeader> findPage(String status, Long userId, Date fromDate, Date toDate, String orderOrigin,
+                                      OrderSort sort, KeysetCursor after, int limit) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            StringBuilder jpql = new StringBuilder("SELECT o FROM OrderHeader o WHERE 1=1 ");
+            Map<String, Object> params = new HashMap<>();
+            appendFilters(jpql, params, status, null, userId, fromDate, toDate, orderOrigin);
+            appendKeyset(jpql, params, sort, after);
+            TypedQuery<OrderHeader> q = em.createQuery(jpql.toString(), OrderHeader.class);
+            params.forEach(q::setParameter);
+            q.setMaxResults(limit + 1);
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Cantidad de pedidos que cumplen los filtros (para mostrar el total junto a una página). */
+    public long countFiltered(String status, Long userId, Date fromDate, Date toDate, String orderOrigin) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            StringBuilder jpql = new StringBuilder("SELECT COUNT(o) FROM OrderHeader o WHERE 1=1 ");
+            Map<String, Object> params = new HashMap<>();
+            appendFilters(jpql, params, status, null, userId, fromDate, toDate, orderOrigin);
+            TypedQuery<Long> q = em.createQuery(jpql.toString(), Long.class);
+            params.forEach(q::setParameter);
+            return q.getSingleResult();
         } finally {
             em.close();
         }
     }
+
+    private static void appendFilters(StringBuilder jpql, Map<String, Object> params, String status,
+                                      String excludedStatus, Long userId, Date fromDate, Date toDate,
+                                      String orderOrigin) {
+        if (status != null && !status.isBlank()) {
+            jpql.append("AND o.currentStatus = :status ");
+            params.put("status", status.trim().toUpperCase());
+        }
+        if (excludedStatus != null) {
+            jpql.append("AND (o.currentStatus IS NULL OR o.currentStatus <> :excludedStatus) ");
+            params.put("excludedStatus", excludedStatus);
+        }
+        if (userId != null) {
+            jpql.append("AND o.userId = :userId ");
+            params.put("userId", userId);
+        }
+        if (fromDate != null) {
+            jpql.append("AND o.createdAt >= :fromDate ");
+            params.put("fromDate", fromDate);
+        }
+        if (toDate != null) {
+            jpql.append("AND o.createdAt <= :toDate ");
+            params.put("toDate", toDate);
+        }
+        if (orderOrigin != null && !orderOrigin.isBlank()) {
+            String o = orderOrigin.trim();
+            if ("FABRICA_WEB".equalsIgnoreCase(o)) {
+                jpql.append("AND (o.orderOrigin = :orderOrigin OR o.orderOrigin IS NULL) ");
+                params.put("orderOrigin", "FABRICA_WEB");
+            } else {
+                jpql.append("AND o.orderOrigin = :orderOrigin ");
+                params.put("orderOrigin", o);
+            }
+        }
+    }
+
+    /** Condición "después del cursor" y ORDER BY del keyset. */
+    private static void appendKeyset(StringBuilder jpql, Map<String, Object> params, OrderSort sort,
+                                     KeysetCursor after) {
+        switch (sort) {
+            case OLDEST -> {
+                if (after != null) {
+                    jpql.append("AND (o.createdAt > :kv OR (o.createdAt = :kv AND o.orderId > :kid)) ");
+                    params.put("kv", cursorDate(after));
+                    params.put("kid", after.getId());
+                }
+                jpql.append("ORDER BY o.createdAt, o.orderId");
+            }
+            case TOTAL -> {
+                if (after != null) {
+                    jpql.append("AND (o.total < :kv OR (o.total = :kv AND o.orderId < :kid)) ");
+                    params.put("kv", cursorDecimal(after));
+                    params.put("kid", after.getId());
+                }
+                jpql.append("ORDER BY o.total DESC, o.orderId DESC");
+            }
+            default -> {
+                if (after != null) {
+                    jpql.append("AND (o.createdAt < :kv OR (o.createdAt = :kv AND o.orderId < :kid)) ");
+                    params.put("kv", cursorDate(after));
+                    params.put("kid", after.getId());
+                }
+                jpql.append("ORDER BY o.createdAt DESC, o.orderId DESC");
+            }
+        }
+    }
+
+    private static Date cursorDate(KeysetCursor after) {
+        Timestamp t = after.getSortValueAsTimestamp();
+        return t != null ? t : new Date(0L);
+    }
+
+    private static BigDecimal cursorDecimal(KeysetCursor after) {
+        try {
+            return after.getSortValue() != null ? new BigDecimal(after.getSortValue()) : BigDecimal.ZERO;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+    }
+
+    /**
+     * Completa CURRENT_STATUS / STATUS_CHANGED_AT de los pedidos anteriores a la columna (o que quedaron sin
+     * ella), copiando el último registro del historial. Trabaja en lotes de {@code batchSize} pedidos con un
+     * commit por lote, así no retiene locks sobre toda la tabla; es idempotente y se ejecuta al arrancar.
+     * @return pedidos actualizados
+     */
+    public int backfillCurrentStatus(int batchSize) {
+        int total = 0;
+        while (true) {
+            EntityManager em = emf.createEntityManager();
+            EntityTransaction tx = em.getTransaction();
+            try {
+                tx.begin();
+                int updated = em.createNativeQuery(BACKFILL_STATUS_SQL)
+                    .setParameter(1, batchSize)
+                    .executeUpdate();
+                tx.commit();
+                total += updated;
+                if (updated < batchSize) {
+                    return total;
+                }
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            } finally {
+                em.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.OrderHeader;
+
+/**
+ * Órdenes admitidos en los listados paginados de pedidos. Cada uno desempata por {@code orderId}
+ * (en el mismo sentido) para que el keyset sea estable.
+ */
+public enum OrderSort {
+    /** Más recientes primero (fecha de creación descendente). */
+    NEWEST("newest"),
+    /** Más antiguos primero. */
+    OLDEST("oldest"),
+    /** Mayor importe total primero. */
+    TOTAL("total");
+
+    private final String param;
+
+    OrderSort(String param) {
+        this.param = param;
+    }
+
+    /** Nombre usado en {@code ?sort=} y en los cursores. */
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * @param value valor de {@code ?sort=}; vacío devuelve {@link #NEWEST}
+     * @throws IllegalArgumentException si no es un orden conocido
+     */
+    public static OrderSort fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return NEWEST;
+        }
+        for (OrderSort s : values()) {
+            if (s.param.equalsIgnoreCase(value.trim())) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("sort debe ser newest, oldest o total");
+    }
+
+    /** Cursor que apunta justo después de {@code o} en este orden. */
+    public String cursorOf(OrderHeader o) {
+        String value;
+        if (this == TOTAL) {
+            value = o.getTotal() != null ? o.getTotal().toPlainString() : "0";
+        } else {
+            value = o.getCreatedAt() != null ? KeysetCursor.timestampValue(o.getCreatedAt()) : "0";
+        }
+        return new KeysetCursor(value, o.getOrderId()).encode(param);
+    }
+}
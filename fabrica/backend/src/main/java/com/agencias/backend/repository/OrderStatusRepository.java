@@ -1,11 +1,22 @@
 package com.agencias.backend.repository;
 
+import com.agencias.backend.model.OrderHeader;
 import com.agencias.backend.model.OrderStatusHistory;
+import com.agencias.backend.model.OutboxEvent;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public class OrderStatusRepository {
+    /** Tamaño de cada lista IN (Oracle admite hasta 1000 elementos). */
+    private static final int IN_CHUNK = 500;
+
     private final EntityManagerFactory emf;
 
     private static boolean isOrderStatusCheckConstraintViolation(Throwable e) {
@@ -25,18 +36,51 @@ public class OrderStatusRepository {
         this.emf = emf;
     }
 
+    /**
+     * Guarda el cambio de estado y, en la misma transacción, lo copia a CURRENT_STATUS / STATUS_CHANGED_AT
+     * de la cabecera del pedido.
+     */
     public OrderStatusHistory save(OrderStatusHistory status) {
+        return save(status, List.of());
+    }
+
+    /**
+     * Igual que {@link #save(OrderStatusHistory)} y además encola en OUTBOX_EVENT, en la misma transacción, los
+     * avisos del cambio (correo, webhook): se guardan los dos o ninguno.
+     */
+    public OrderStatusHistory save(OrderStatusHistory status, List<OutboxEvent> events) {
+        return save(status, header -> events);
+    }
+
+    /**
+     * Guarda el cambio de estado con la cabecera del pedido bloqueada ({@code SELECT ... FOR UPDATE}):
+     * {@code prepare} recibe esa cabecera, valida la transición contra su CURRENT_STATUS (lanzando
+     * IllegalArgumentException si no procede) y devuelve los avisos a encolar. Dos cambios concurrentes del mismo
+     * pedido se serializan y el segundo se valida contra el estado que dejó el primero en vez de pisarlo.
+     * @throws IllegalArgumentException si el pedido no existe o {@code prepare} rechaza el cambio
+     */
+    public OrderStatusHistory save(OrderStatusHistory status, Function<OrderHeader, List<OutboxEvent>> prepare) {
         EntityManager em = emf.createEntityManager();
         try {
             em.getTransaction().begin();
+            OrderHeader header = em.find(OrderHeader.class, status.getOrderId(), LockModeType.PESSIMISTIC_WRITE);
+            if (header == null) {
+                throw new IllegalArgumentException("Pedido no encontrado");
+            }
+            List<OutboxEvent> events = prepare.apply(header);
             em.persist(status);
-            em.flush();
+            OutboxRepository.persistAll(em, events);
+            header.setCurrentStatus(status.getStatus());
+            header.setStatusChangedAt(status.getChangedAt());
             em.getTransaction().commit();
             return status;
         } catch (Exception e) {
             if (em.getTransaction().isActive()) {
                 em.getTransaction().rollback();
             }
+            if (e instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e;
+            }
             if (isOrderStatusCheckConstraintViolation(e)) {
                 throw new IllegalArgumentException(
                     "Oracle rechaza el estado: el CHECK CHK_OSH_STATUS de ORDER_STATUS_HISTORY no incluye ese valor "
@@ -76,4 +120,34 @@ public class OrderStatusRepository {
             em.close();
         }
     }
+
+    /**
+     * Último estado de cada pedido en una consulta por bloque de ids: la fila del historial cuya fecha coincide
+     * con STATUS_CHANGED_AT de la cabecera. Los pedidos sin historial no aparecen en el mapa.
+     */
+    public Map<Long, OrderStatusHistory> findLatestByOrderIds(Collection<Long> orderIds) {
+        Map<Long, OrderStatusHistory> latest = new HashMap<>();
+        if (orderIds == null || orderIds.isEmpty()) {
+            return latest;
+        }
+        List<Long> ids = new ArrayList<>(orderIds);
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (int from = 0; from < ids.size(); from += IN_CHUNK) {
+                List<OrderStatusHistory> rows = em.createQuery(
+                    "SELECT osh FROM OrderStatusHistory osh, OrderHeader o "
+                        + "WHERE o.orderId IN :ids AND osh.orderId = o.orderId AND osh.changedAt = o.statusChangedAt",
+                    OrderStatusHistory.class)
+                    .setParameter("ids", ids.subList(from, Math.min(from + IN_CHUNK, ids.size())))
+                    .getResultList();
+                for (OrderStatusHistory h : rows) {
+                    // Dos cambios en el mismo instante: gana el último insertado
+                    latest.merge(h.getOrderId(), h, (a, b) -> a.getStatusId() >= b.getStatusId() ? a : b);
+                }
+            }
+            return latest;
+        } finally {
+            em.close();
+        }
+    }
 }
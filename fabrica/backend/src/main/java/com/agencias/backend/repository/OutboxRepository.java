@@ -0,0 +1,158 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.OutboxEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tabla OUTBOX_EVENT. Los eventos se insertan dentro de la transacción del cambio que los origina
+ * ({@link #persistAll}); el despachador los toma uno a uno con un UPDATE condicionado ({@link #claim}) que los
+ * oculta hasta {@code lockedUntil}, así varios nodos pueden despachar a la vez sin entregar dos veces el mismo
+ * intento, y si un nodo cae a mitad el evento vuelve a quedar disponible al vencer ese plazo.
+ */
+public class OutboxRepository {
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final EntityManagerFactory emf;
+
+    public OutboxRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /** Inserta los eventos en la transacción abierta de {@code em} (la del cambio que los origina). */
+    public static void persistAll(EntityManager em, Collection<OutboxEvent> events) {
+        for (OutboxEvent e : events) {
+            em.persist(e);
+        }
+    }
+
+    /** Inserta un evento en su propia transacción (cambios que no tienen una transacción a la que sumarse). */
+    public OutboxEvent insert(OutboxEvent event) {
+        return Transactions.inTransaction(emf, em -> {
+            em.persist(event);
+            return event;
+        });
+    }
+
+    /**
+     * Eventos pendientes cuyo próximo intento ya llegó, los más antiguos primero. Solo devuelve el primero
+     * pendiente de cada tipo y agregado: el siguiente estado de un pedido no se entrega antes que el anterior.
+     */
+    public List<OutboxEvent> findDue(Date now, int limit) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery(
+                    "SELECT e FROM OutboxEvent e WHERE e.status = :pending AND e.nextAttemptAt <= :now "
+                        + "AND NOT EXISTS (SELECT 1 FROM OutboxEvent p WHERE p.eventType = e.eventType "
+                        + "AND p.aggregateId = e.aggregateId AND p.status = :pending AND p.eventId < e.eventId) "
+                        + "ORDER BY e.eventId", OutboxEvent.class)
+                .setParameter("pending", OutboxEvent.PENDING)
+                .setParameter("now", now)
+                .setMaxResults(limit)
+                .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Toma el evento para un intento: cuenta el intento y lo oculta hasta {@code lockedUntil}.
+     * @return false si otro despachador lo tomó primero (cambió {@code attempts}) o ya no está pendiente
+     */
+    public boolean claim(OutboxEvent event, Date lockedUntil) {
+        return Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OutboxEvent e SET e.attempts = e.attempts + 1, e.nextAttemptAt = :lockedUntil "
+                    + "WHERE e.eventId = :id AND e.status = :pending AND e.attempts = :seen")
+            .setParameter("lockedUntil", lockedUntil)
+            .setParameter("id", event.getEventId())
+            .setParameter("pending", OutboxEvent.PENDING)
+            .setParameter("seen", event.getAttempts())
+            .executeUpdate()) == 1;
+    }
+
+    /** @return true si hay un evento pendiente posterior del mismo tipo y agregado (el que lo reemplaza) */
+    public boolean hasNewerPending(OutboxEvent event) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery(
+                    "SELECT COUNT(e) FROM OutboxEvent e WHERE e.eventType = :type AND e.aggregateId = :aggregate "
+                        + "AND e.status = :pending AND e.eventId > :id", Long.class)
+                .setParameter("type", event.getEventType())
+                .setParameter("aggregate", event.getAggregateId())
+                .setParameter("pending", OutboxEvent.PENDING)
+                .setParameter("id", event.getEventId())
+                .getSingleResult() > 0;
+        } finally {
+            em.close();
+        }
+    }
+
+    public void markSent(Long eventId, Date now) {
+        Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OutboxEvent e SET e.status = :sent, e.sentAt = :now, e.lastError = NULL "
+                    + "WHERE e.eventId = :id")
+            .setParameter("sent", OutboxEvent.SENT)
+            .setParameter("now", now)
+            .setParameter("id", eventId)
+            .executeUpdate());
+    }
+
+    /** Cierra sin entregar un evento que otro posterior del mismo agregado deja obsoleto. */
+    public void markSuperseded(Long eventId, Date now) {
+        Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OutboxEvent e SET e.status = :sent, e.sentAt = :now, e.lastError = :note "
+                    + "WHERE e.eventId = :id")
+            .setParameter("sent", OutboxEvent.SENT)
+            .setParameter("now", now)
+            .setParameter("note", "Reemplazado por un evento posterior sin entregar")
+            .setParameter("id", eventId)
+            .executeUpdate());
+    }
+
+    /** Deja el evento pendiente para reintentar en {@code nextAttemptAt}. */
+    public void markRetry(Long eventId, String error, Date nextAttemptAt) {
+        Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OutboxEvent e SET e.nextAttemptAt = :next, e.lastError = :error WHERE e.eventId = :id")
+            .setParameter("next", nextAttemptAt)
+            .setParameter("error", truncate(error))
+            .setParameter("id", eventId)
+            .executeUpdate());
+    }
+
+    /** Pospone un evento que no se llegó a intentar: devuelve el intento contado al tomarlo. */
+    public void markDeferred(Long eventId, String reason, Date nextAttemptAt) {
+        Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OutboxEvent e SET e.attempts = e.attempts - 1, e.nextAttemptAt = :next, e.lastError = :error "
+                    + "WHERE e.eventId = :id")
+            .setParameter("next", nextAttemptAt)
+            .setParameter("error", truncate(reason))
+            .setParameter("id", eventId)
+            .executeUpdate());
+    }
+
+    /** Descarta el evento (error definitivo o intentos agotados) conservando el último error. */
+    public void markDead(Long eventId, String error) {
+        Transactions.inTransaction(emf, em -> em.createQuery(
+                "UPDATE OutboxEvent e SET e.status = :dead, e.lastError = :error WHERE e.eventId = :id")
+            .setParameter("dead", OutboxEvent.DEAD)
+            .setParameter("error", truncate(error))
+            .setParameter("id", eventId)
+            .executeUpdate());
+    }
+
+    /** @return eventos entregados antes de {@code before} eliminados (los DEAD se conservan) */
+    public int deleteSentBefore(Date before) {
+        return Transactions.inTransaction(emf, em -> em.createQuery(
+                "DELETE FROM OutboxEvent e WHERE e.status = :sent AND e.sentAt < :before")
+            .setParameter("sent", OutboxEvent.SENT)
+            .setParameter("before", before)
+            .executeUpdate());
+    }
+
+    private static String truncate(String s) {
+        return s != null && s.length() > MAX_ERROR_LENGTH ? s.substring(0, MAX_ERROR_LENGTH) : s;
+    }
+}
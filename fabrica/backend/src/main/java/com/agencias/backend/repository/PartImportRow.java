@@ -0,0 +1,65 @@
+package com.agencias.backend.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fila ya validada de una importación de repuestos. Los campos null no se tocan al actualizar;
+ * al crear se usan los valores por defecto del alta.
+ */
+public class PartImportRow {
+
+    private final String partNumber;
+    private String title;
+    private String description;
+    private Long categoryId;
+    private Long brandId;
+    private BigDecimal price;
+    private BigDecimal weightLb;
+    private Integer stockQuantity;
+    private Integer lowStockThreshold;
+    private Integer active;
+    /** Filas del archivo (1-based) que aportaron a esta fila; más de una si el partNumber se repite. */
+    private final List<Integer> rowNumbers = new ArrayList<>();
+
+    public PartImportRow(String partNumber, int rowNumber) {
+        this.partNumber = partNumber;
+        this.rowNumbers.add(rowNumber);
+    }
+
+    /** Aplica encima los campos no nulos de una fila posterior con el mismo partNumber (gana la última). */
+    public void mergeFrom(PartImportRow later) {
+        if (later.title != null) title = later.title;
+        if (later.description != null) description = later.description;
+        if (later.categoryId != null) categoryId = later.categoryId;
+        if (later.brandId != null) brandId = later.brandId;
+        if (later.price != null) price = later.price;
+        if (later.weightLb != null) weightLb = later.weightLb;
+        if (later.stockQuantity != null) stockQuantity = later.stockQuantity;
+        if (later.lowStockThreshold != null) lowStockThreshold = later.lowStockThreshold;
+        if (later.active != null) active = later.active;
+        rowNumbers.addAll(later.rowNumbers);
+    }
+
+    public String getPartNumber() { return partNumber; }
+    public List<Integer> getRowNumbers() { return rowNumbers; }
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+    public Long getCategoryId() { return categoryId; }
+    public void setCategoryId(Long categoryId) { this.categoryId = categoryId; }
+    public Long getBrandId() { return brandId; }
+    public void setBrandId(Long brandId) { this.brandId = brandId; }
+    public BigDecimal getPrice() { return price; }
+    public void setPrice(BigDecimal price) { this.price = price; }
+    public BigDecimal getWeightLb() { return weightLb; }
+    public void setWeightLb(BigDecimal weightLb) { this.weightLb = weightLb; }
+    public Integer getStockQuantity() { return stockQuantity; }
+    public void setStockQuantity(Integer stockQuantity) { this.stockQuantity = stockQuantity; }
+    public Integer getLowStockThreshold() { return lowStockThreshold; }
+    public void setLowStockThreshold(Integer lowStockThreshold) { this.lowStockThreshold = lowStockThreshold; }
+    public Integer getActive() { return active; }
+    public void setActive(Integer active) { this.active = active; }
+}
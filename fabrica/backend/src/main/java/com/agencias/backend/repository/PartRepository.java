@@ -4,11 +4,37 @@ import com.agencias.backend.model.Part;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class PartRepository {
+    static final int IN_CHUNK = 1000;
+    /** Filas por viaje al servidor al recorrer el catálogo completo. */
+    private static final int EXPORT_FETCH_SIZE = 500;
+
+    /**
+     * Proyección de listados: todas las columnas menos IMAGE_DATA (el BLOB de la imagen principal);
+     * {@code hasImage} se resuelve en la propia consulta.
+     */
+    private static final String SUMMARY_SELECT =
+        "SELECT p.partId, p.categoryId, p.brandId, p.partNumber, p.title, p.description, p.compatibilityTags, "
+        + "p.weightLb, p.price, p.active, p.createdAt, p.imageType, p.stockQuantity, p.lowStockThreshold, "
+        + "p.reservedQuantity, p.partYear, CASE WHEN p.imageData IS NULL THEN 0 ELSE 1 END, p.version FROM Part p";
+
     private final EntityManagerFactory emf;
 
     public PartRepository(EntityManagerFactory emf) {
@@ -45,6 +71,223 @@ public class PartRepository {
         }
     }
 
+    /**
+     * Carga varios repuestos por id (proyección de listado, ver {@link #toSummary}) en bloques de
+     * {@value #IN_CHUNK} (límite de Oracle para IN), conservando el orden de {@code ids}; los que no existen se omiten.
+     */
+    public List<Part> findSummariesByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            Map<Long, Part> byId = new HashMap<>();
+            List<Long> all = new ArrayList<>(ids);
+            for (int i = 0; i < all.size(); i += IN_CHUNK) {
+                List<Long> chunk = all.subList(i, Math.min(i + IN_CHUNK, all.size()));
+                TypedQuery<Object[]> q = em.createQuery(SUMMARY_SELECT + " WHERE p.partId IN :ids", Object[].class);
+                q.setParameter("ids", chunk);
+                for (Part p : toSummaries(q.getResultList())) {
+                    byId.put(p.getPartId(), p);
+                }
+            }
+            List<Part> out = new ArrayList<>(byId.size());
+            for (Long id : all) {
+                Part p = byId.get(id);
+                if (p != null) {
+                    out.add(p);
+                }
+            }
+            return out;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * partNumber → partId de los que existen, consultando en bloques de {@value #IN_CHUNK}.
+     */
+    public Map<String, Long> findIdsByPartNumbers(Collection<String> partNumbers) {
+        Map<String, Long> out = new HashMap<>();
+        if (partNumbers == null || partNumbers.isEmpty()) {
+            return out;
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<String> all = new ArrayList<>(partNumbers);
+            for (int i = 0; i < all.size(); i += IN_CHUNK) {
+                List<String> chunk = all.subList(i, Math.min(i + IN_CHUNK, all.size()));
+                List<Object[]> rows = em.createQuery(
+                        "SELECT p.partNumber, p.partId FROM Part p WHERE p.partNumber IN :pns", Object[].class)
+                    .setParameter("pns", chunk)
+                    .getResultList();
+                for (Object[] r : rows) {
+                    out.put((String) r[0], (Long) r[1]);
+                }
+            }
+            return out;
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Proyección de listado de los repuestos con esos partNumber (sin IMAGE_DATA). */
+    public List<Part> findSummariesByPartNumbers(Collection<String> partNumbers) {
+        List<Part> out = new ArrayList<>();
+        if (partNumbers == null || partNumbers.isEmpty()) {
+            return out;
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<String> all = new ArrayList<>(partNumbers);
+            for (int i = 0; i < all.size(); i += IN_CHUNK) {
+                List<String> chunk = all.subList(i, Math.min(i + IN_CHUNK, all.size()));
+                out.addAll(toSummaries(em.createQuery(SUMMARY_SELECT + " WHERE p.partNumber IN :pns", Object[].class)
+                    .setParameter("pns", chunk)
+                    .getResultList()));
+            }
+            return out;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Aplica un bloque de importación en una sola transacción con dos lotes JDBC: INSERT de los nuevos y
+     * UPDATE (solo columnas informadas) de los existentes. Si algo falla se revierte el bloque entero.
+     * @param existingIds partNumber → partId de las filas de {@code updates}
+     */
+    public void applyImportBatch(List<PartImportRow> inserts, List<PartImportRow> updates, Map<String, Long> existingIds) {
+        EntityManager em = emf.createEntityManager();
+        jakarta.persistence.EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.unwrap(Session.class).doWork(conn -> {
+                if (!inserts.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(IMPORT_INSERT_SQL)) {
+                        Timestamp now = new Timestamp(System.currentTimeMillis());
+                        for (PartImportRow r : inserts) {
+                            ps.setLong(1, r.getCategoryId() != null ? r.getCategoryId() : 1L);
+                            ps.setLong(2, r.getBrandId() != null ? r.getBrandId() : 1L);
+                            ps.setString(3, r.getPartNumber());
+                            ps.setString(4, r.getTitle() != null && !r.getTitle().isBlank() ? r.getTitle() : r.getPartNumber());
+                            setNullable(ps, 5, r.getDescription(), Types.CLOB);
+                            setNullable(ps, 6, r.getWeightLb(), Types.NUMERIC);
+                            ps.setBigDecimal(7, r.getPrice() != null ? r.getPrice() : BigDecimal.ZERO);
+                            ps.setInt(8, r.getActive() != null ? r.getActive() : 1);
+                            ps.setTimestamp(9, now);
+                            ps.setInt(10, r.getStockQuantity() != null ? r.getStockQuantity() : 0);
+                            ps.setInt(11, r.getLowStockThreshold() != null ? r.getLowStockThreshold() : 5);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (!updates.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(IMPORT_UPDATE_SQL)) {
+                        for (PartImportRow r : updates) {
+                            setNullable(ps, 1, r.getCategoryId(), Types.BIGINT);
+                            setNullable(ps, 2, r.getBrandId(), Types.BIGINT);
+                            setNullable(ps, 3, r.getTitle(), Types.VARCHAR);
+                            setNullable(ps, 4, r.getDescription(), Types.CLOB);
+                            setNullable(ps, 5, r.getWeightLb(), Types.NUMERIC);
+                            setNullable(ps, 6, r.getPrice(), Types.NUMERIC);
+                            setNullable(ps, 7, r.getActive(), Types.INTEGER);
+                            setNullable(ps, 8, r.getStockQuantity(), Types.INTEGER);
+                            setNullable(ps, 9, r.getLowStockThreshold(), Types.INTEGER);
+                            ps.setLong(10, existingIds.get(r.getPartNumber()));
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+            });
+            tx.commit();
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Fija STOCK_QUANTITY por partNumber con un único UPDATE en lote JDBC y una transacción.
+     * Las filas se aplican en orden (si un partNumber se repite, queda el último valor).
+     * @return por fila, cuántos repuestos se actualizaron (0 = partNumber inexistente)
+     */
+    public int[] updateStockByPartNumber(List<String> partNumbers, List<Integer> quantities) {
+        int[] counts = new int[partNumbers.size()];
+        if (partNumbers.isEmpty()) {
+            return counts;
+        }
+        EntityManager em = emf.createEntityManager();
+        jakarta.persistence.EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.unwrap(Session.class).doWork(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE PART SET STOCK_QUANTITY = ?, VERSION = VERSION + 1 WHERE PART_NUMBER = ?")) {
+                    for (int i = 0; i < partNumbers.size(); i++) {
+                        ps.setInt(1, quantities.get(i));
+                        ps.setString(2, partNumbers.get(i));
+                        ps.addBatch();
+                    }
+                    int[] result = ps.executeBatch();
+                    System.arraycopy(result, 0, counts, 0, Math.min(result.length, counts.length));
+                }
+            });
+            tx.commit();
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+        // Drivers que no informan filas por sentencia (SUCCESS_NO_INFO): se resuelve con una consulta IN
+        boolean noInfo = false;
+        for (int c : counts) {
+            if (c == Statement.SUCCESS_NO_INFO) {
+                noInfo = true;
+                break;
+            }
+        }
+        if (noInfo) {
+            Map<String, Long> existing = findIdsByPartNumbers(partNumbers);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                    counts[i] = existing.containsKey(partNumbers.get(i)) ? 1 : 0;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static final String IMPORT_INSERT_SQL =
+        "INSERT INTO PART (PART_ID, CATEGORY_ID, BRAND_ID, PART_NUMBER, TITLE, DESCRIPTION, WEIGHT_LB, PRICE, ACTIVE, "
+        + "CREATED_AT, STOCK_QUANTITY, LOW_STOCK_THRESHOLD, RESERVED_QUANTITY, VERSION) "
+        + "VALUES (PART_SEQ.NEXTVAL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0)";
+
+    private static final String IMPORT_UPDATE_SQL =
+        "UPDATE PART SET CATEGORY_ID = COALESCE(?, CATEGORY_ID), BRAND_ID = COALESCE(?, BRAND_ID), "
+        + "TITLE = COALESCE(?, TITLE), DESCRIPTION = COALESCE(?, DESCRIPTION), WEIGHT_LB = COALESCE(?, WEIGHT_LB), "
+        + "PRICE = COALESCE(?, PRICE), ACTIVE = COALESCE(?, ACTIVE), STOCK_QUANTITY = COALESCE(?, STOCK_QUANTITY), "
+        + "LOW_STOCK_THRESHOLD = COALESCE(?, LOW_STOCK_THRESHOLD), VERSION = VERSION + 1 WHERE PART_ID = ?";
+
+    private static void setNullable(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else if (value instanceof String str) {
+            ps.setString(index, str);
+        } else if (value instanceof BigDecimal bd) {
+            ps.setBigDecimal(index, bd);
+        } else if (value instanceof Long l) {
+            ps.setLong(index, l);
+        } else {
+            ps.setInt(index, (Integer) value);
+        }
+    }
+
     public Optional<Part> findByPartNumber(String partNumber) {
         EntityManager em = emf.createEntityManager();
         try {
@@ -56,11 +299,12 @@ public class PartRepository {
         }
     }
 
+    /** Repuestos activos, más recientes primero (proyección de listado: sin IMAGE_DATA). */
     public List<Part> findAll() {
         EntityManager em = emf.createEntityManager();
         try {
-            TypedQuery<Part> q = em.createQuery("SELECT p FROM Part p WHERE p.active = 1 ORDER BY p.createdAt DESC", Part.class);
-            return q.getResultList();
+            TypedQuery<Object[]> q = em.createQuery(SUMMARY_SELECT + " WHERE p.active = 1 ORDER BY p.createdAt DESC", Object[].class);
+            return toSummaries(q.getResultList());
         } finally {
             em.close();
         }
@@ -69,9 +313,9 @@ public class PartRepository {
     public List<Part> findByCategory(Long categoryId) {
         EntityManager em = emf.createEntityManager();
         try {
-            TypedQuery<Part> q = em.createQuery("SELECT p FROM Part p WHERE p.categoryId = :cid AND p.active = 1 ORDER BY p.title", Part.class);
+            TypedQuery<Object[]> q = em.createQuery(SUMMARY_SELECT + " WHERE p.categoryId = :cid AND p.active = 1 ORDER BY p.title", Object[].class);
             q.setParameter("cid", categoryId);
-            return q.getResultList();
+            return toSummaries(q.getResultList());
         } finally {
             em.close();
         }
@@ -80,9 +324,9 @@ public class PartRepository {
     public List<Part> findByBrand(Long brandId) {
         EntityManager em = emf.createEntityManager();
         try {
-            TypedQuery<Part> q = em.createQuery("SELECT p FROM Part p WHERE p.brandId = :bid AND p.active = 1 ORDER BY p.title", Part.class);
+            TypedQuery<Object[]> q = em.createQuery(SUMMARY_SELECT + " WHERE p.brandId = :bid AND p.active = 1 ORDER BY p.title", Object[].class);
             q.setParameter("bid", brandId);
-            return q.getResultList();
+            return toSummaries(q.getResultList());
         } finally {
             em.close();
         }
@@ -113,49 +357,192 @@ public class PartRepository {
     public List<Part> search(String nombre, String descripcion, String especificaciones, String compatibilityTags) {
         EntityManager em = emf.createEntityManager();
         try {
-            StringBuilder jpql = new StringBuilder("SELECT p FROM Part p WHERE p.active = 1");
-            List<String> conditions = new ArrayList<>();
-            if (nombre != null && !nombre.isBlank()) {
-                conditions.add("(LOWER(p.title) LIKE :nombre OR LOWER(p.compatibilityTags) LIKE :nombre)");
-            }
-            if (descripcion != null && !descripcion.isBlank()) {
-                conditions.add("LOWER(p.description) LIKE :descripcion");
-            }
-            if (especificaciones != null && !especificaciones.isBlank()) {
-                conditions.add("(LOWER(p.description) LIKE :espec OR LOWER(p.compatibilityTags) LIKE :espec)");
-            }
-            if (compatibilityTags != null && !compatibilityTags.isBlank()) {
-                conditions.add("LOWER(p.compatibilityTags) LIKE :ctags");
-            }
-            if (!conditions.isEmpty()) {
-                jpql.append(" AND ").append(String.join(" AND ", conditions));
-            }
+            StringBuilder jpql = new StringBuilder(SUMMARY_SELECT + " WHERE p.active = 1");
+            Map<String, Object> params = new HashMap<>();
+            appendSearchConditions(jpql, params, nombre, descripcion, especificaciones, compatibilityTags);
             jpql.append(" ORDER BY p.title");
-            TypedQuery<Part> q = em.createQuery(jpql.toString(), Part.class);
-            if (nombre != null && !nombre.isBlank()) {
-                q.setParameter("nombre", "%" + nombre.toLowerCase().trim() + "%");
+            TypedQuery<Object[]> q = em.createQuery(jpql.toString(), Object[].class);
+            params.forEach(q::setParameter);
+            return toSummaries(q.getResultList());
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Página de repuestos activos (filtro opcional por categoría o marca) por keyset sobre {@code sort} + partId.
+     * Devuelve hasta {@code limit + 1} filas: la fila extra indica que hay página siguiente.
+     * @param after posición de la última fila de la página anterior; null para la primera
+     */
+    public List<Part> findPage(Long categoryId, Long brandId, PartSort sort, KeysetCursor after, int limit) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            StringBuilder jpql = new StringBuilder(SUMMARY_SELECT + " WHERE p.active = 1");
+            Map<String, Object> params = new HashMap<>();
+            if (categoryId != null) {
+                jpql.append(" AND p.categoryId = :cid");
+                params.put("cid", categoryId);
             }
-            if (descripcion != null && !descripcion.isBlank()) {
-                q.setParameter("descripcion", "%" + descripcion.toLowerCase().trim() + "%");
+            if (brandId != null) {
+                jpql.append(" AND p.brandId = :bid");
+                params.put("bid", brandId);
             }
-            if (especificaciones != null && !especificaciones.isBlank()) {
-                q.setParameter("espec", "%" + especificaciones.toLowerCase().trim() + "%");
+            appendKeyset(jpql, params, sort, after);
+            TypedQuery<Object[]> q = em.createQuery(jpql.toString(), Object[].class);
+            params.forEach(q::setParameter);
+            q.setMaxResults(limit + 1);
+            return toSummaries(q.getResultList());
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Igual que {@link #search} pero paginado por keyset (título + partId), hasta {@code limit + 1} filas. */
+    public List<Part> searchPage(String nombre, String descripcion, String especificaciones, String compatibilityTags,
+                                 KeysetCursor after, int limit) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            StringBuilder jpql = new StringBuilder(SUMMARY_SELECT + " WHERE p.active = 1");
+            Map<String, Object> params = new HashMap<>();
+            appendSearchConditions(jpql, params, nombre, descripcion, especificaciones, compatibilityTags);
+            appendKeyset(jpql, params, PartSort.TITLE, after);
+            TypedQuery<Object[]> q = em.createQuery(jpql.toString(), Object[].class);
+            params.forEach(q::setParameter);
+            q.setMaxResults(limit + 1);
+            return toSummaries(q.getResultList());
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void appendSearchConditions(StringBuilder jpql, Map<String, Object> params, String nombre,
+                                               String descripcion, String especificaciones, String compatibilityTags) {
+        List<String> conditions = new ArrayList<>();
+        if (nombre != null && !nombre.isBlank()) {
+            conditions.add("(LOWER(p.title) LIKE :nombre OR LOWER(p.compatibilityTags) LIKE :nombre)");
+            params.put("nombre", "%" + nombre.toLowerCase().trim() + "%");
+        }
+        if (descripcion != null && !descripcion.isBlank()) {
+            conditions.add("LOWER(p.description) LIKE :descripcion");
+            params.put("descripcion", "%" + descripcion.toLowerCase().trim() + "%");
+        }
+        if (especificaciones != null && !especificaciones.isBlank()) {
+            conditions.add("(LOWER(p.description) LIKE :espec OR LOWER(p.compatibilityTags) LIKE :espec)");
+            params.put("espec", "%" + especificaciones.toLowerCase().trim() + "%");
+        }
+        if (compatibilityTags != null && !compatibilityTags.isBlank()) {
+            conditions.add("LOWER(p.compatibilityTags) LIKE :ctags");
+            params.put("ctags", "%" + compatibilityTags.toLowerCase().trim() + "%");
+        }
+        if (!conditions.isEmpty()) {
+            jpql.append(" AND ").append(String.join(" AND ", conditions));
+        }
+    }
+
+    /** Condición "después del cursor" y ORDER BY del keyset. */
+    private static void appendKeyset(StringBuilder jpql, Map<String, Object> params, PartSort sort, KeysetCursor after) {
+        if (sort == PartSort.TITLE) {
+            if (after != null) {
+                jpql.append(" AND (p.title > :kv OR (p.title = :kv AND p.partId > :kid))");
+                params.put("kv", after.getSortValue() != null ? after.getSortValue() : "");
+                params.put("kid", after.getId());
             }
-            if (compatibilityTags != null && !compatibilityTags.isBlank()) {
-                q.setParameter("ctags", "%" + compatibilityTags.toLowerCase().trim() + "%");
+            jpql.append(" ORDER BY p.title, p.partId");
+        } else {
+            if (after != null) {
+                Timestamp createdAt = after.getSortValueAsTimestamp();
+                if (createdAt == null) {
+                    jpql.append(" AND p.createdAt IS NULL AND p.partId < :kid");
+                } else {
+                    jpql.append(" AND (p.createdAt < :kv OR (p.createdAt = :kv AND p.partId < :kid) OR p.createdAt IS NULL)");
+                    params.put("kv", createdAt);
+                }
+                params.put("kid", after.getId());
             }
-            return q.getResultList();
+            jpql.append(" ORDER BY p.createdAt DESC NULLS LAST, p.partId DESC");
+        }
+    }
+
+    /**
+     * Recorre todos los repuestos (incluye inactivos) por partId con un cursor de solo avance, sin IMAGE_DATA,
+     * entregándolos uno a uno a {@code sink}: la memoria usada no depende del tamaño del catálogo.
+     * @return cantidad de repuestos entregados
+     */
+    public long streamForExport(Consumer<Part> sink) {
+        EntityManager em = emf.createEntityManager();
+        try (Stream<Object[]> rows = em.createQuery(SUMMARY_SELECT + " ORDER BY p.partId", Object[].class)
+                .setHint("org.hibernate.fetchSize", EXPORT_FETCH_SIZE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream()) {
+            long[] count = {0};
+            rows.forEach(r -> {
+                sink.accept(toSummary(r));
+                count[0]++;
+            });
+            return count[0];
         } finally {
             em.close();
         }
     }
 
-    /** Lista todos los repuestos (incluye inactivos) para exportación. */
-    public List<Part> findAllForExport() {
+    /**
+     * Fila de {@link #SUMMARY_SELECT} como {@link Part} no gestionado, con los campos calculados de
+     * {@code @PostLoad}. No trae {@code imageData}: no debe guardarse con {@link #save}.
+     */
+    private static Part toSummary(Object[] r) {
+        Part p = new Part();
+        p.setPartId((Long) r[0]);
+        p.setCategoryId((Long) r[1]);
+        p.setBrandId((Long) r[2]);
+        p.setPartNumber((String) r[3]);
+        p.setTitle((String) r[4]);
+        p.setDescription((String) r[5]);
+        p.setCompatibilityTags((String) r[6]);
+        p.setWeightLb((BigDecimal) r[7]);
+        p.setPrice((BigDecimal) r[8]);
+        p.setActive((Integer) r[9]);
+        p.setCreatedAt((Date) r[10]);
+        p.setImageType((String) r[11]);
+        p.setStockQuantity((Integer) r[12]);
+        p.setLowStockThreshold((Integer) r[13]);
+        p.setReservedQuantity((Integer) r[14]);
+        p.setPartYear((Integer) r[15]);
+        p.postLoad();
+        p.setHasImage(((Number) r[16]).intValue() == 1);
+        p.setVersion((Long) r[17]);
+        return p;
+    }
+
+    private static List<Part> toSummaries(List<Object[]> rows) {
+        List<Part> out = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            out.add(toSummary(r));
+        }
+        return out;
+    }
+
+    /**
+     * Campos de texto de todos los repuestos para el índice de búsqueda en memoria
+     * ({@link com.agencias.backend.service.CatalogSearchIndex}). No lee IMAGE_DATA.
+     */
+    public List<Part> findAllForSearchIndex() {
         EntityManager em = emf.createEntityManager();
         try {
-            TypedQuery<Part> q = em.createQuery("SELECT p FROM Part p ORDER BY p.partId", Part.class);
-            return q.getResultList();
+            List<Object[]> rows = em.createQuery(
+                "SELECT p.partId, p.partNumber, p.title, p.description, p.compatibilityTags, p.active FROM Part p",
+                Object[].class).getResultList();
+            List<Part> out = new ArrayList<>(rows.size());
+            for (Object[] r : rows) {
+                Part p = new Part();
+                p.setPartId((Long) r[0]);
+                p.setPartNumber((String) r[1]);
+                p.setTitle((String) r[2]);
+                p.setDescription((String) r[3]);
+                p.setCompatibilityTags((String) r[4]);
+                p.setActive((Integer) r[5]);
+                out.add(p);
+            }
+            return out;
         } finally {
             em.close();
         }
@@ -0,0 +1,52 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.Part;
+
+/**
+ * Órdenes admitidos en los listados paginados del catálogo. Cada uno desempata por {@code partId}
+ * para que el keyset sea estable.
+ */
+public enum PartSort {
+    /** Título ascendente. */
+    TITLE("title"),
+    /** Más recientes primero (fecha de alta descendente, sin fecha al final). */
+    CREATED_AT("createdAt");
+
+    private final String param;
+
+    PartSort(String param) {
+        this.param = param;
+    }
+
+    /** Nombre usado en {@code ?sort=} y en los cursores. */
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * @param value valor de {@code ?sort=}; vacío devuelve {@code defaultSort}
+     * @throws IllegalArgumentException si no es un orden conocido
+     */
+    public static PartSort fromParam(String value, PartSort defaultSort) {
+        if (value == null || value.isBlank()) {
+            return defaultSort;
+        }
+        for (PartSort s : values()) {
+            if (s.param.equalsIgnoreCase(value.trim())) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("sort debe ser title o createdAt");
+    }
+
+    /** Cursor que apunta justo después de {@code p} en este orden. */
+    public String cursorOf(Part p) {
+        String value;
+        if (this == TITLE) {
+            value = p.getTitle() != null ? p.getTitle() : "";
+        } else {
+            value = KeysetCursor.timestampValue(p.getCreatedAt());
+        }
+        return new KeysetCursor(value, p.getPartId()).encode(param);
+    }
+}
@@ -0,0 +1,117 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.SchedulerLease;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.PersistenceException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.UUID;
+import org.hibernate.exception.ConstraintViolationException;
+
+/**
+ * Leases de tareas periódicas en SCHEDULER_LEASE. Tomar o renovar es un UPDATE condicionado (o el INSERT de la
+ * primera vez), así que entre varios nodos solo uno obtiene el lease aunque lo intenten a la vez. El vencimiento
+ * se calcula y se compara con la hora de la BD ({@code SYSTIMESTAMP}), no con el reloj de cada nodo, para que un
+ * nodo con el reloj adelantado no robe un lease vigente.
+ */
+public class SchedulerLeaseRepository {
+    private static final String ACQUIRE_SQL =
+        "UPDATE SCHEDULER_LEASE SET OWNER = ?1, LEASED_UNTIL = SYSTIMESTAMP + NUMTODSINTERVAL(?2, 'SECOND') "
+        + "WHERE LEASE_NAME = ?3 AND (OWNER = ?1 OR LEASED_UNTIL < SYSTIMESTAMP)";
+    private static final String INSERT_SQL =
+        "INSERT INTO SCHEDULER_LEASE (LEASE_NAME, OWNER, LEASED_UNTIL) "
+        + "VALUES (?1, ?2, SYSTIMESTAMP + NUMTODSINTERVAL(?3, 'SECOND'))";
+    private static final String RELEASE_SQL =
+        "UPDATE SCHEDULER_LEASE SET LEASED_UNTIL = SYSTIMESTAMP WHERE LEASE_NAME = ?1 AND OWNER = ?2";
+
+    private final EntityManagerFactory emf;
+
+    public SchedulerLeaseRepository(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /** Identifica a este proceso como dueño de un lease (host + sufijo aleatorio por llamada, cabe en OWNER). */
+    public static String ownerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        String id = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return id.length() > 100 ? id.substring(id.length() - 100) : id;
+    }
+
+    /**
+     * Toma el lease (o lo renueva si ya es de {@code owner}) por {@code leaseMillis} desde la hora de la BD.
+     * @return false si otro nodo lo tiene y todavía no venció
+     * @throws PersistenceException si la BD falla por otra causa que la fila que otro nodo insertó primero
+     */
+    public boolean tryAcquire(String name, String owner, long leaseMillis) {
+        BigDecimal seconds = BigDecimal.valueOf(leaseMillis, 3);
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int updated = em.createNativeQuery(ACQUIRE_SQL)
+                .setParameter(1, owner)
+                .setParameter(2, seconds)
+                .setParameter(3, name)
+                .executeUpdate();
+            if (updated == 0 && em.find(SchedulerLease.class, name) == null) {
+                updated = em.createNativeQuery(INSERT_SQL)
+                    .setParameter(1, name)
+                    .setParameter(2, owner)
+                    .setParameter(3, seconds)
+                    .executeUpdate();
+            }
+            tx.commit();
+            return updated == 1;
+        } catch (PersistenceException e) {
+            if (tx.isActive()) tx.rollback();
+            if (isDuplicateLease(e)) {
+                // Otro nodo insertó la fila primero: el lease es suyo
+                return false;
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /** true si la causa (directa o anidada) es la clave primaria duplicada del INSERT (ORA-00001). */
+    private static boolean isDuplicateLease(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof ConstraintViolationException || t instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            String m = t.getMessage();
+            if (m != null && m.contains("ORA-00001")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Suelta el lease si sigue siendo de {@code owner} (al detener el nodo, para que otro lo tome sin esperar). */
+    public void release(String name, String owner) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.createNativeQuery(RELEASE_SQL)
+                .setParameter(1, name)
+                .setParameter(2, owner)
+                .executeUpdate();
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.agencias.backend.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import java.util.function.Function;
+
+/**
+ * Transacción de un solo uso para los repositorios: abre un EntityManager, ejecuta {@code work} entre
+ * begin/commit y hace rollback ante cualquier RuntimeException (que se relanza tal cual).
+ */
+final class Transactions {
+
+    private Transactions() {
+    }
+
+    static <T> T inTransaction(EntityManagerFactory emf, Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+}
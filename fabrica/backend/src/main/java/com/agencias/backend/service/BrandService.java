@@ -36,12 +36,15 @@ public class BrandService {
 
     public void delete(Long id) {
         repo.delete(id);
+        ImageCache.shared().invalidate("brand", id);
     }
 
     public Brand updateImage(Long id, byte[] imageData, String imageType) {
         Brand b = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Marca no encontrada"));
         b.setImageData(imageData);
         b.setImageType(imageType);
-        return repo.save(b);
+        b = repo.save(b);
+        ImageCache.shared().invalidate("brand", id);
+        return b;
     }
 }
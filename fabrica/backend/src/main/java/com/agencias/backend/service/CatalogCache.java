@@ -0,0 +1,193 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.Part;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caché de lectura de los listados del catálogo ({@code GET /api/repuestos}): una entrada por clave
+ * (todos, por categoría, por marca, y la primera página de esos listados), con tope de entradas (LRU) y TTL. Las
+ * páginas siguientes (con cursor) no se cachean: serían una entrada por cursor que desplazaría a los listados
+ * completos, y su consulta keyset ya es barata.
+ * <p>
+ * {@link PartService} invalida solo las claves afectadas cuando cambia un repuesto, su stock o su galería.
+ * Es compartida por todas las instancias del servicio; los contadores se exponen en {@code GET /api/metricas}.
+ * </p>
+ */
+public final class CatalogCache {
+
+    public static final String KEY_ALL = "all";
+
+    private static final CatalogCache SHARED = new CatalogCache(
+        (int) ConfigLoader.getLongSetting("CATALOG_CACHE_MAX_ENTRIES", "catalog.cache.max.entries", 500),
+        ConfigLoader.getLongSetting("CATALOG_CACHE_TTL_SECONDS", "catalog.cache.ttl.seconds", 300) * 1000L,
+        System::currentTimeMillis);
+
+    /** Caché compartida por el proceso. */
+    public static CatalogCache shared() {
+        return SHARED;
+    }
+
+    public static String categoryKey(Long categoryId) {
+        return "category:" + categoryId;
+    }
+
+    public static String brandKey(Long brandId) {
+        return "brand:" + brandId;
+    }
+
+    /** Clave de la primera página del listado {@code baseKey}; se invalida junto con su listado. */
+    public static String firstPageKey(String baseKey, String sort, int limit) {
+        return baseKey + "|" + sort + "|" + limit;
+    }
+
+    /** Listado al que pertenece una clave de página, o null si {@code key} es un listado completo. */
+    private static String listingOf(String key) {
+        int bar = key.indexOf('|');
+        return bar < 0 ? null : key.substring(0, bar);
+    }
+
+    private static final class Entry {
+        final List<Part> value;
+        final long expiresAt;
+
+        Entry(List<Part> value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries;
+    /** Claves de página cacheadas por listado, para invalidarlas sin recorrer todas las claves. */
+    private final Map<String, Set<String>> pagesByListing = new HashMap<>();
+    /** Se incrementa en cada invalidación; una carga que se solapa con una invalidación no se guarda. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    CatalogCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > CatalogCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    forgetPage(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Devuelve la lista cacheada para {@code key} o la carga con {@code loader}.
+     * La lista devuelta es de solo lectura.
+     */
+    public List<Part> get(String key, Supplier<List<Part>> loader) {
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e != null && e.expiresAt > now) {
+                hits.incrementAndGet();
+                return e.value;
+            }
+            if (e != null) {
+                entries.remove(key);
+                forgetPage(key);
+            }
+        }
+        misses.incrementAndGet();
+        long gen = generation.get();
+        List<Part> value = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        synchronized (entries) {
+            if (generation.get() == gen) {
+                String listing = listingOf(key);
+                if (listing != null) {
+                    pagesByListing.computeIfAbsent(listing, k -> new HashSet<>()).add(key);
+                }
+                entries.put(key, new Entry(value, clock.getAsLong() + ttlMillis));
+            }
+        }
+        return value;
+    }
+
+    /** Invalida las claves en las que puede aparecer un repuesto de esa categoría y marca. */
+    public void invalidatePart(Long categoryId, Long brandId) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            invalidations.incrementAndGet();
+            removeListing(KEY_ALL);
+            if (categoryId != null) {
+                removeListing(categoryKey(categoryId));
+            }
+            if (brandId != null) {
+                removeListing(brandKey(brandId));
+            }
+        }
+    }
+
+    /** Quita el listado completo y sus páginas (llamar con el lock de {@code entries}). */
+    private void removeListing(String baseKey) {
+        entries.remove(baseKey);
+        Set<String> pages = pagesByListing.remove(baseKey);
+        if (pages != null) {
+            entries.keySet().removeAll(pages);
+        }
+    }
+
+    /** Deja de registrar una página quitada (llamar con el lock de {@code entries}). */
+    private void forgetPage(String key) {
+        String listing = listingOf(key);
+        Set<String> pages = listing != null ? pagesByListing.get(listing) : null;
+        if (pages != null && pages.remove(key) && pages.isEmpty()) {
+            pagesByListing.remove(listing);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            invalidations.incrementAndGet();
+            entries.clear();
+            pagesByListing.clear();
+        }
+    }
+
+    /** Contadores para dimensionar la caché. */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long h = hits.get();
+        long mi = misses.get();
+        synchronized (entries) {
+            m.put("entries", entries.size());
+        }
+        m.put("maxEntries", maxEntries);
+        m.put("ttlSeconds", ttlMillis / 1000);
+        m.put("hits", h);
+        m.put("misses", mi);
+        m.put("hitRatio", h + mi == 0 ? 0.0 : (double) h / (h + mi));
+        m.put("evictions", evictions.get());
+        m.put("invalidations", invalidations.get());
+        return m;
+    }
+}
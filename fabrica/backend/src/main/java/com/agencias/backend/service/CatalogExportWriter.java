@@ -0,0 +1,138 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.Part;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Escribe la exportación del catálogo fila a fila (sin acumular la lista en memoria).
+ * Formatos: arreglo JSON (el mismo de siempre), NDJSON (un repuesto por línea) o CSV.
+ */
+public final class CatalogExportWriter implements AutoCloseable {
+
+    public enum Format {
+        JSON("application/json"),
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        private final String mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * @param value {@code json}, {@code ndjson} o {@code csv}; vacío = json
+         * @throws IllegalArgumentException si el formato no existe
+         */
+        public static Format fromParam(String value) {
+            if (value == null || value.isBlank()) {
+                return JSON;
+            }
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("format debe ser json, ndjson o csv");
+            }
+        }
+    }
+
+    /** Columnas del CSV; coinciden con los campos que acepta la importación. */
+    static final String[] CSV_COLUMNS = {
+        "partId", "partNumber", "title", "description", "categoryId", "brandId", "compatibilityTags",
+        "weightLb", "price", "stockQuantity", "reservedQuantity", "lowStockThreshold", "active", "partYear"
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Format format;
+    private final Writer writer;
+    private final JsonGenerator json;
+
+    public CatalogExportWriter(Format format, OutputStream out) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == Format.CSV) {
+            this.json = null;
+            writer.write(String.join(",", CSV_COLUMNS));
+            writer.write("\r\n");
+        } else {
+            this.json = MAPPER.getFactory().createGenerator(writer);
+            if (format == Format.NDJSON) {
+                json.setRootValueSeparator(null);
+            } else {
+                json.writeStartArray();
+            }
+        }
+    }
+
+    /** Escribe un repuesto; los errores de E/S (cliente desconectado) se propagan sin comprobar. */
+    public void write(Part p) {
+        try {
+            switch (format) {
+                case JSON -> json.writeObject(p);
+                case NDJSON -> {
+                    json.writeObject(p);
+                    json.flush();
+                    writer.write('\n');
+                }
+                case CSV -> writeCsvRow(p);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCsvRow(Part p) throws IOException {
+        Object[] values = {
+            p.getPartId(), p.getPartNumber(), p.getTitle(), p.getDescription(), p.getCategoryId(), p.getBrandId(),
+            p.getCompatibilityTags(), p.getWeightLb() != null ? p.getWeightLb().toPlainString() : null,
+            p.getPrice() != null ? p.getPrice().toPlainString() : null, p.getStockQuantity(), p.getReservedQuantity(),
+            p.getLowStockThreshold(), p.getActive(), p.getPartYear()
+        };
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvField(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    /** Campo CSV (RFC 4180): entre comillas si contiene separador, comillas o saltos de línea. */
+    static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String s = value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    /** Cierra el arreglo JSON (si aplica) y vacía el buffer; no cierra el stream de la respuesta. */
+    @Override
+    public void close() throws IOException {
+        if (json != null) {
+            if (format == Format.JSON) {
+                json.writeEndArray();
+            }
+            json.flush();
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,451 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.Part;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Índice invertido en memoria del catálogo (título, descripción, tags de compatibilidad y número de parte).
+ * <p>
+ * Sustituye los {@code LIKE '%term%'} de {@link com.agencias.backend.repository.PartRepository#search}: los
+ * tokens del término filtran candidatos por vocabulario y luego se verifica la frase completa sobre el texto
+ * en minúsculas, de modo que el resultado es el mismo que el LIKE original. Se comparte entre todas las
+ * instancias de {@link PartService}; {@link PartService} lo carga al arrancar y lo mantiene al día en cada
+ * alta, edición, baja o importación.
+ * </p>
+ * <p>
+ * El vocabulario guarda cada sufijo de cada token, así "token que contiene t" es un rango
+ * {@code [t, t + '\uffff')} del {@code TreeMap} en vez de recorrer todo el vocabulario. La recarga completa
+ * ({@link #rebuild}) arma un índice nuevo sin bloquear las búsquedas y lo reemplaza de una vez; las altas y
+ * bajas incrementales que llegan mientras tanto se vuelven a aplicar sobre el nuevo antes del cambio.
+ * </p>
+ */
+public final class CatalogSearchIndex {
+
+    /** Campos indexados de {@link Part}. */
+    public enum Field { TITLE, DESCRIPTION, TAGS, PART_NUMBER }
+
+    private static final CatalogSearchIndex SHARED = new CatalogSearchIndex();
+
+    /** Índice compartido por el proceso. */
+    public static CatalogSearchIndex shared() {
+        return SHARED;
+    }
+
+    private static final class Doc {
+        final long partId;
+        final String title;
+        final boolean active;
+        final EnumMap<Field, String> text = new EnumMap<>(Field.class);
+
+        Doc(long partId, String title, boolean active) {
+            this.partId = partId;
+            this.title = title != null ? title : "";
+            this.active = active;
+        }
+    }
+
+    /** Repuesto encontrado con el título con que el índice lo ordenó (para paginar por título sin ir a BD). */
+    public static final class Hit {
+        private final long partId;
+        private final String title;
+
+        Hit(long partId, String title) {
+            this.partId = partId;
+            this.title = title;
+        }
+
+        public long getPartId() { return partId; }
+        public String getTitle() { return title; }
+    }
+
+    /** Documentos y vocabulario; una recarga completa arma uno nuevo y lo reemplaza entero. */
+    private static final class State {
+        final Map<Long, Doc> docs = new HashMap<>();
+        /** Por campo: sufijo de token → ids de repuesto con un token que termina así. */
+        final EnumMap<Field, TreeMap<String, Set<Long>>> postings = new EnumMap<>(Field.class);
+
+        State() {
+            for (Field f : Field.values()) {
+                postings.put(f, new TreeMap<>());
+            }
+        }
+    }
+
+    private static final Comparator<Doc> BY_TITLE =
+        Comparator.comparing((Doc d) -> d.title).thenComparingLong(d -> d.partId);
+
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-search-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Una recarga completa a la vez (no bloquea las búsquedas). */
+    private final Object rebuildMonitor = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private State state = new State();
+    /** Cambios incrementales durante una recarga, para aplicarlos al índice nuevo; null si no hay recarga. */
+    private List<Consumer<State>> pending;
+    private volatile long loadedAtMillis;
+
+    /** true si ya se hizo una carga completa con {@link #rebuild}. */
+    public boolean isLoaded() {
+        return loadedAtMillis > 0;
+    }
+
+    /** Momento (epoch ms) de la última carga completa; 0 si nunca se cargó. */
+    public long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return state.docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Reemplaza todo el contenido del índice por los repuestos dados. */
+    public void rebuild(Collection<Part> parts) {
+        rebuild(() -> parts);
+    }
+
+    /**
+     * Recarga completa: {@code loader} (la lectura de BD) y el armado del índice nuevo corren sin bloquear las
+     * búsquedas, que siguen usando el actual hasta el reemplazo.
+     */
+    public void rebuild(Supplier<? extends Collection<Part>> loader) {
+        synchronized (rebuildMonitor) {
+            setPending(new ArrayList<>());
+            try {
+                State fresh = new State();
+                for (Part p : loader.get()) {
+                    if (p != null && p.getPartId() != null) {
+                        putLocked(fresh, p);
+                    }
+                }
+                lock.writeLock().lock();
+                try {
+                    for (Consumer<State> change : pending) {
+                        change.accept(fresh);
+                    }
+                    state = fresh;
+                    loadedAtMillis = System.currentTimeMillis();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } finally {
+                setPending(null);
+            }
+        }
+    }
+
+    /**
+     * Lanza {@link #rebuild} en segundo plano, salvo que ya haya una en curso.
+     * @return false si ya había una recarga en curso
+     */
+    public boolean refreshInBackground(Supplier<? extends Collection<Part>> loader) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return false;
+        }
+        REFRESHER.submit(() -> {
+            try {
+                rebuild(loader);
+            } catch (RuntimeException e) {
+                System.err.println("No se pudo recargar el índice de búsqueda: " + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void setPending(List<Consumer<State>> changes) {
+        lock.writeLock().lock();
+        try {
+            pending = changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Alta o actualización incremental de un repuesto. */
+    public void put(Part p) {
+        if (p == null || p.getPartId() == null) {
+            return;
+        }
+        apply(s -> putLocked(s, p));
+    }
+
+    public void remove(Long partId) {
+        if (partId == null) {
+            return;
+        }
+        apply(s -> removeLocked(s, partId));
+    }
+
+    private void apply(Consumer<State> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(state);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mismas reglas que {@link com.agencias.backend.repository.PartRepository#search}: solo activos,
+     * cada término no vacío se combina con AND, coincidencia por subcadena sin distinguir mayúsculas.
+     * <ul>
+     *   <li>{@code nombre}: título o tags</li>
+     *   <li>{@code descripcion}: descripción</li>
+     *   <li>{@code especificaciones}: descripción o tags</li>
+     *   <li>{@code compatibilityTags}: tags</li>
+     *   <li>{@code partNumber}: número de parte</li>
+     * </ul>
+     * @return ids de repuesto ordenados por título (y id)
+     */
+    public List<Long> search(String nombre, String descripcion, String especificaciones,
+                             String compatibilityTags, String partNumber) {
+        List<Doc> hits = find(nombre, descripcion, especificaciones, compatibilityTags, partNumber);
+        List<Long> out = new ArrayList<>(hits.size());
+        for (Doc d : hits) {
+            out.add(d.partId);
+        }
+        return out;
+    }
+
+    /**
+     * Como {@link #search}, pero cada id con su título, leídos del mismo estado del índice que el orden: una
+     * edición o recarga concurrente no puede dejar la lista desordenada respecto de esos títulos.
+     */
+    public List<Hit> searchHits(String nombre, String descripcion, String especificaciones,
+                                String compatibilityTags, String partNumber) {
+        List<Doc> hits = find(nombre, descripcion, especificaciones, compatibilityTags, partNumber);
+        List<Hit> out = new ArrayList<>(hits.size());
+        for (Doc d : hits) {
+            out.add(new Hit(d.partId, d.title));
+        }
+        return out;
+    }
+
+    private List<Doc> find(String nombre, String descripcion, String especificaciones,
+                           String compatibilityTags, String partNumber) {
+        lock.readLock().lock();
+        try {
+            State s = state;
+            List<Criterion> criteria = new ArrayList<>();
+            addCriterion(criteria, nombre, Field.TITLE, Field.TAGS);
+            addCriterion(criteria, descripcion, Field.DESCRIPTION);
+            addCriterion(criteria, especificaciones, Field.DESCRIPTION, Field.TAGS);
+            addCriterion(criteria, compatibilityTags, Field.TAGS);
+            addCriterion(criteria, partNumber, Field.PART_NUMBER);
+
+            Set<Long> candidates = null;
+            for (Criterion c : criteria) {
+                Set<Long> ids = c.candidates(s);
+                if (ids == null) {
+                    continue; // término sin tokens alfanuméricos: se verifica abajo
+                }
+                if (candidates == null) {
+                    candidates = ids;
+                } else {
+                    candidates.retainAll(ids);
+                }
+                if (candidates.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            List<Doc> hits = new ArrayList<>();
+            Collection<Long> scan = candidates != null ? candidates : s.docs.keySet();
+            for (Long id : scan) {
+                Doc d = s.docs.get(id);
+                if (d == null || !d.active) {
+                    continue;
+                }
+                boolean ok = true;
+                for (Criterion c : criteria) {
+                    if (!c.matches(d)) {
+                        ok = false;
+                        break;
+                    }
+                }
+                if (ok) {
+                    hits.add(d);
+                }
+            }
+            hits.sort(BY_TITLE);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addCriterion(List<Criterion> criteria, String term, Field... fields) {
+        if (term == null || term.isBlank()) {
+            return;
+        }
+        criteria.add(new Criterion(normalize(term.trim()), fields));
+    }
+
+    /** Un término de búsqueda aplicado a uno o varios campos (OR entre campos). */
+    private final class Criterion {
+        final String phrase;
+        final List<String> tokens;
+        final Field[] fields;
+
+        Criterion(String phrase, Field[] fields) {
+            this.phrase = phrase;
+            this.tokens = tokenize(phrase);
+            this.fields = fields;
+        }
+
+        /**
+         * Repuestos cuyo campo contiene un token que incluye cada token del término.
+         * Toda coincidencia de la frase pasa este filtro: cada token de la frase es subcadena de algún token del texto.
+         */
+        Set<Long> candidates(State s) {
+            if (tokens.isEmpty()) {
+                return null;
+            }
+            Set<Long> result = null;
+            for (String t : tokens) {
+                Set<Long> forToken = new HashSet<>();
+                for (Field f : fields) {
+                    collect(s.postings.get(f), t, forToken);
+                }
+                if (result == null) {
+                    result = forToken;
+                } else {
+                    result.retainAll(forToken);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        boolean matches(Doc d) {
+            for (Field f : fields) {
+                String text = d.text.get(f);
+                if (text != null && text.contains(phrase)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Repuestos con un token que contiene {@code t}: como el vocabulario tiene los sufijos de cada token, son los
+     * sufijos que empiezan por {@code t}, un rango del TreeMap.
+     */
+    private static void collect(TreeMap<String, Set<Long>> vocabulary, String t, Set<Long> into) {
+        for (Set<Long> ids : vocabulary.subMap(t, true, t + Character.MAX_VALUE, false).values()) {
+            into.addAll(ids);
+        }
+    }
+
+    private static void putLocked(State s, Part p) {
+        long id = p.getPartId();
+        removeLocked(s, id);
+        Doc d = new Doc(id, p.getTitle(), p.getActive() == null || p.getActive() == 1);
+        index(s, d, Field.TITLE, p.getTitle());
+        index(s, d, Field.DESCRIPTION, p.getDescription());
+        index(s, d, Field.TAGS, p.getCompatibilityTags());
+        index(s, d, Field.PART_NUMBER, p.getPartNumber());
+        s.docs.put(id, d);
+    }
+
+    private static void index(State s, Doc d, Field f, String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return;
+        }
+        String text = normalize(raw);
+        d.text.put(f, text);
+        TreeMap<String, Set<Long>> vocabulary = s.postings.get(f);
+        for (String suffix : suffixes(text)) {
+            vocabulary.computeIfAbsent(suffix, k -> new HashSet<>()).add(d.partId);
+        }
+    }
+
+    private static void removeLocked(State s, long id) {
+        Doc old = s.docs.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (Map.Entry<Field, String> e : old.text.entrySet()) {
+            TreeMap<String, Set<Long>> vocabulary = s.postings.get(e.getKey());
+            for (String token : suffixes(e.getValue())) {
+                Set<Long> ids = vocabulary.get(token);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        vocabulary.remove(token);
+                    }
+                }
+            }
+        }
+    }
+
+    static String normalize(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    /** Sufijos de cada token del texto (cada token es su propio primer sufijo). */
+    static Set<String> suffixes(String text) {
+        Set<String> out = new HashSet<>();
+        for (String token : tokenize(text)) {
+            for (int i = 0; i < token.length(); i++) {
+                out.add(token.substring(i));
+            }
+        }
+        return out;
+    }
+
+    /** Secuencias de letras/dígitos del texto (ya normalizado). */
+    static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                out.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            out.add(text.substring(start));
+        }
+        return out;
+    }
+}
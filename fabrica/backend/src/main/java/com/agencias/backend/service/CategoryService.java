@@ -38,12 +38,15 @@ public class CategoryService {
 
     public void delete(Long id) {
         repo.delete(id);
+        ImageCache.shared().invalidate("category", id);
     }
 
     public Category updateImage(Long id, byte[] imageData, String imageType) {
         Category c = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Categoría no encontrada"));
         c.setImageData(imageData);
         c.setImageType(imageType);
-        return repo.save(c);
+        c = repo.save(c);
+        ImageCache.shared().invalidate("category", id);
+        return c;
     }
 }
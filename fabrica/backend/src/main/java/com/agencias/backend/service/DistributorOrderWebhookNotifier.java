@@ -1,52 +1,125 @@
 package com.agencias.backend.service;
 
 import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.OrderIntake;
+import com.agencias.backend.model.OutboxEvent;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
+import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.CompletableFuture;
 
 /**
- * Notifica a la distribuidora un cambio de estado del pedido en fábrica (pedidos con origen DISTRIBUIDORA).
- * URL y secreto: variables de entorno {@code DISTRIBUIDORA_PEDIDOS_WEBHOOK_URL} y
- * {@code DISTRIBUIDORA_PEDIDOS_WEBHOOK_SECRET}, o {@code distribuidora.pedidos.webhook.url} /
- * {@code distribuidora.pedidos.webhook.secret} en application.properties.
+ * Notifica a la distribuidora un cambio de estado del pedido en fábrica y el resultado de sus solicitudes
+ * asíncronas; los dos avisos se encolan en OUTBOX_EVENT y los entrega {@link OutboxDispatcher}. Cada distribuidora puede tener su propio webhook en su perfil empresarial
+ * ({@code webhookUrl}/{@code webhookSecret}); sin él se usa el global: variables de entorno
+ * {@code DISTRIBUIDORA_PEDIDOS_WEBHOOK_URL} y {@code DISTRIBUIDORA_PEDIDOS_WEBHOOK_SECRET}, o
+ * {@code distribuidora.pedidos.webhook.url} / {@code distribuidora.pedidos.webhook.secret} en application.properties.
  */
 public final class DistributorOrderWebhookNotifier {
 
+    /** URL y secreto de un webhook de distribuidora. */
+    public static final class Endpoint {
+        private final String url;
+        private final String secret;
+
+        public Endpoint(String url, String secret) {
+            this.url = url;
+            this.secret = secret;
+        }
+
+        public String getUrl() { return url; }
+        public String getSecret() { return secret; }
+    }
+
     private DistributorOrderWebhookNotifier() {
     }
 
-    public static void notifyOrderStatusAsync(
+    /** Webhook global, o null si no hay URL configurada (el secreto puede faltar: se avisa al enviar). */
+    public static Endpoint globalEndpoint() {
+        String url = configuredUrl();
+        if (url == null) {
+            return null;
+        }
+        String secret = configuredSecret();
+        return new Endpoint(url.trim(), secret != null ? secret.trim() : null);
+    }
+
+    /**
+     * Envía el cambio de estado a {@code target} en el hilo actual por {@link WebhookDeliveryEngine} (lo llama
+     * {@link OutboxDispatcher}, que reintenta si falla). Sin destino no hace nada.
+     * @throws WebhookDeliveryEngine.EndpointBusyException si el endpoint ya tiene todos sus envíos en curso
+     * @throws IOException si la distribuidora no responde 2xx o no se pudo conectar
+     * @throws IllegalStateException si falta el secreto del destino, o la distribuidora responde un 4xx
+     *         definitivo (error de configuración, no se reintenta)
+     */
+    public static void deliverOrderStatus(
+        Endpoint target,
         long fabricaOrderId,
         String status,
         String comment,
         String trackingNumber,
         Integer etaDays
-    ) {
-        String url = firstNonBlank(
+    ) throws IOException, InterruptedException {
+        deliver(target, buildJson(fabricaOrderId, status, comment, trackingNumber, etaDays));
+    }
+
+    /**
+     * Evento con el resultado de una solicitud asíncrona ({@code POST /api/pedidos?async=true}) para encolarlo en
+     * OUTBOX_EVENT en la misma transacción que la cierra: ticket, estado final y el pedido creado o el motivo del
+     * rechazo. Solo para solicitudes con origen DISTRIBUIDORA o enviadas con la api_key de una distribuidora (el
+     * agregado es esa distribuidora; 0 = webhook global); el resto consulta {@code GET /api/pedidos/solicitudes/{ticket}}.
+     * @return lista vacía si no hay a quién avisar
+     */
+    public static List<OutboxEvent> intakeResultEvents(OrderIntake intake) {
+        if (!"DISTRIBUIDORA".equals(intake.getOrderOrigin()) && intake.getSourceEnterpriseId() == null) {
+            return List.of();
+        }
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"event\":\"ORDER_INTAKE\",\"ticket\":\"").append(jsonEscape(intake.getTicket())).append('"');
+        sb.append(",\"status\":\"").append(jsonEscape(intake.getStatus())).append('"');
+        if (intake.getOrderId() != null) {
+            sb.append(",\"fabricaOrderId\":").append(intake.getOrderId());
+            sb.append(",\"orderNumber\":\"").append(jsonEscape(intake.getOrderNumber())).append('"');
+        }
+        if (intake.getErrorMessage() != null) {
+            sb.append(",\"error\":\"").append(jsonEscape(intake.getErrorMessage())).append('"');
+        }
+        sb.append('}');
+        long aggregateId = intake.getSourceEnterpriseId() != null ? intake.getSourceEnterpriseId() : 0L;
+        return List.of(new OutboxEvent(OutboxEvent.ORDER_INTAKE_WEBHOOK, aggregateId, sb.toString()));
+    }
+
+    /**
+     * Envía a {@code target} el aviso de {@link #intakeResultEvents} (su {@code payload}) en el hilo actual; lo
+     * llama {@link OutboxDispatcher}, igual que {@link #deliverOrderStatus}.
+     */
+    public static void deliverIntakeResult(Endpoint target, String json) throws IOException, InterruptedException {
+        deliver(target, json);
+    }
+
+    private static void deliver(Endpoint target, String json) throws IOException, InterruptedException {
+        if (target == null) {
+            return;
+        }
+        if (target.getSecret() == null || target.getSecret().isBlank()) {
+            throw new IllegalStateException("DistributorOrderWebhookNotifier: falta el secreto del webhook "
+                + target.getUrl());
+        }
+        WebhookDeliveryEngine.shared().deliver(target.getUrl(), target.getSecret(), json);
+    }
+
+    private static String configuredUrl() {
+        return firstNonBlank(
             System.getenv("DISTRIBUIDORA_PEDIDOS_WEBHOOK_URL"),
             prop("distribuidora.pedidos.webhook.url")
         );
-        if (url == null || url.isBlank()) {
-            return;
-        }
-        String secret = firstNonBlank(
+    }
+
+    private static String configuredSecret() {
+        return firstNonBlank(
             System.getenv("DISTRIBUIDORA_PEDIDOS_WEBHOOK_SECRET"),
             prop("distribuidora.pedidos.webhook.secret")
         );
-        if (secret == null || secret.isBlank()) {
-            System.err.println("DistributorOrderWebhookNotifier: falta secreto (DISTRIBUIDORA_PEDIDOS_WEBHOOK_SECRET o distribuidora.pedidos.webhook.secret)");
-            return;
-        }
-
-        String json = buildJson(fabricaOrderId, status, comment, trackingNumber, etaDays);
-        CompletableFuture.runAsync(() -> postJson(url.trim(), secret.trim(), json));
     }
 
     private static String prop(String key) {
@@ -95,23 +168,4 @@ public final class DistributorOrderWebhookNotifier {
         sb.append('}');
         return sb.toString();
     }
-
-    private static void postJson(String url, String secret, String json) {
-        try {
-            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(8)).build();
-            HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(Duration.ofSeconds(15))
-                .header("Content-Type", "application/json; charset=UTF-8")
-                .header("X-Fabrica-Webhook-Secret", secret)
-                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
-                .build();
-            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
-                System.err.println("DistributorOrderWebhookNotifier: HTTP " + resp.statusCode() + " body=" + resp.body());
-            }
-        } catch (Exception e) {
-            System.err.println("DistributorOrderWebhookNotifier: " + e.getMessage());
-        }
-    }
 }
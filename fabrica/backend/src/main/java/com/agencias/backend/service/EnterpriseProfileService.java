@@ -8,6 +8,8 @@ import com.agencias.backend.repository.EnterpriseProfileRepository;
 import com.agencias.backend.repository.RoleRepository;
 import jakarta.persistence.EntityManagerFactory;
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -31,6 +33,17 @@ public class EnterpriseProfileService {
         return profileRepo.findAll();
     }
 
+    /**
+     * Distribuidora que envía la petición, por su {@code X-Distributor-Api-Key}.
+     * @return id del perfil empresarial dueño de la clave, o null si no hay clave o no es de ningún perfil
+     */
+    public Long enterpriseIdForApiKey(String apiKey) {
+        if (apiKey == null || apiKey.isBlank()) {
+            return null;
+        }
+        return profileRepo.findByApiKey(apiKey.trim()).map(EnterpriseProfile::getEnterpriseId).orElse(null);
+    }
+
     /**
      * Admin: asigna usuario como empresarial y configura descuento.
      * Crea o actualiza EnterpriseProfile y asigna rol ENTERPRISE.
@@ -88,6 +101,19 @@ public class EnterpriseProfileService {
      */
     public EnterpriseProfile updateProfile(Long userId, String defaultAddressText, String defaultCardToken,
                                            String defaultCardLast4, String deliveryWindow) {
+        return updateProfile(userId, defaultAddressText, defaultCardToken, defaultCardLast4, deliveryWindow,
+            null, null);
+    }
+
+    /**
+     * Como {@link #updateProfile(Long, String, String, String, String)} y además el webhook propio de la
+     * distribuidora (cambios de estado de los pedidos creados con su api_key). Cadena vacía = quitarlo y volver
+     * al webhook global; null = sin cambios.
+     * @throws IllegalArgumentException si la URL no es http(s) absoluta o se configura sin secreto
+     */
+    public EnterpriseProfile updateProfile(Long userId, String defaultAddressText, String defaultCardToken,
+                                           String defaultCardLast4, String deliveryWindow,
+                                           String webhookUrl, String webhookSecret) {
         EnterpriseProfile profile = profileRepo.findByUserId(userId)
             .orElseThrow(() -> new IllegalArgumentException("No tienes perfil empresarial. Contacta al administrador."));
         AppUser user = userRepo.findById(userId).orElse(null);
@@ -98,6 +124,23 @@ public class EnterpriseProfileService {
         if (defaultCardToken != null) profile.setDefaultCardToken(defaultCardToken.trim().isEmpty() ? null : defaultCardToken.trim());
         if (defaultCardLast4 != null) profile.setDefaultCardLast4(defaultCardLast4.trim().isEmpty() ? null : defaultCardLast4.trim());
         if (deliveryWindow != null) profile.setDeliveryWindow(deliveryWindow.trim().isEmpty() ? null : deliveryWindow.trim());
+        if (webhookUrl != null) profile.setWebhookUrl(webhookUrl.trim().isEmpty() ? null : validWebhookUrl(webhookUrl.trim()));
+        if (webhookSecret != null) profile.setWebhookSecret(webhookSecret.trim().isEmpty() ? null : webhookSecret.trim());
+        if (profile.getWebhookUrl() != null && profile.getWebhookSecret() == null) {
+            throw new IllegalArgumentException("El webhook necesita un secreto (webhookSecret)");
+        }
         return profileRepo.save(profile);
     }
+
+    private static String validWebhookUrl(String url) {
+        try {
+            URI uri = new URI(url);
+            String scheme = uri.getScheme();
+            if (uri.getHost() != null && ("https".equalsIgnoreCase(scheme) || "http".equalsIgnoreCase(scheme))) {
+                return url;
+            }
+        } catch (URISyntaxException ignored) {
+        }
+        throw new IllegalArgumentException("webhookUrl debe ser una URL http(s) absoluta");
+    }
 }
@@ -0,0 +1,402 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.IdempotencyRecord;
+import com.agencias.backend.repository.IdempotencyRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Soporte de la cabecera {@code Idempotency-Key}: la primera petición con una clave se ejecuta y su respuesta
+ * (código y cuerpo JSON) se guarda en IDEMPOTENCY_RECORD con vencimiento; los reintentos con la misma clave
+ * reciben esa respuesta sin volver a ejecutar nada.
+ * <ul>
+ *   <li>Delante de la tabla hay una caché en memoria (LRU con TTL) de respuestas ya terminadas.</li>
+ *   <li>Un duplicado que llega mientras la original sigue en curso espera a que termine: en el mismo nodo sobre
+ *       su future; en otro nodo consultando la fila {@code IN_PROGRESS} hasta que pase a {@code COMPLETED}.</li>
+ *   <li>Las respuestas 5xx (o una excepción) no se guardan: la clave se libera y el cliente puede reintentar.</li>
+ *   <li>La fila {@code IN_PROGRESS} vence a los {@code orders.idempotency.lease.seconds} (del orden de la espera
+ *       máxima): si el nodo que la tomó cae a mitad de la petición, otro nodo la retoma al vencer en vez de
+ *       responder 409 hasta que venza la respuesta guardada. Solo las {@code COMPLETED} duran el TTL completo.
+ *       Mientras la petición se ejecuta el lease se renueva cada tercio de su duración y los vencimientos se
+ *       comparan con la hora de la BD: solo se retoma la clave de un nodo que dejó de renovarla.</li>
+ *   <li>Cada ejecución toma la clave con su propio token y completar o liberar la fila exige seguir siendo su
+ *       dueño: un nodo que perdió el lease no pisa ni borra la fila del nodo que la retomó.</li>
+ * </ul>
+ */
+public class IdempotencyService {
+
+    /** La clave ya se usó con otro cuerpo de petición (422). */
+    public static class KeyReusedException extends RuntimeException {
+        public KeyReusedException() {
+            super("La Idempotency-Key ya se usó con una petición distinta");
+        }
+    }
+
+    /** La petición original sigue en curso tras la espera máxima (409). */
+    public static class InProgressException extends RuntimeException {
+        public InProgressException() {
+            super("Hay una petición con la misma Idempotency-Key en curso; reintente en unos segundos");
+        }
+    }
+
+    /** Respuesta a devolver; {@code replayed} = viene de una ejecución anterior. */
+    public static final class StoredResponse {
+        private final int status;
+        private final String body;
+        private final boolean replayed;
+
+        public StoredResponse(int status, String body) {
+            this(status, body, false);
+        }
+
+        private StoredResponse(int status, String body, boolean replayed) {
+            this.status = status;
+            this.body = body;
+            this.replayed = replayed;
+        }
+
+        public int getStatus() { return status; }
+        public String getBody() { return body; }
+        public boolean isReplayed() { return replayed; }
+
+        StoredResponse asReplay() {
+            return new StoredResponse(status, body, true);
+        }
+    }
+
+    private static final class Completed {
+        final String requestHash;
+        final StoredResponse response;
+        final long expiresAt;
+
+        Completed(String requestHash, StoredResponse response, long expiresAt) {
+            this.requestHash = requestHash;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static final int MAX_KEY_LENGTH = 255;
+    /** Cada cuántas claves nuevas se borran de la tabla las vencidas. */
+    private static final int PURGE_EVERY = 500;
+    private static final long POLL_MILLIS = 100;
+
+    private static final ObjectMapper CANONICAL = JsonMapper.builder()
+        .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+        .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+        .build();
+
+    private static final ScheduledExecutorService RENEWER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "idempotency-lease");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile IdempotencyService shared;
+
+    /** Instancia compartida (caché y peticiones en curso comunes a todos los recursos). */
+    public static IdempotencyService shared(EntityManagerFactory emf) {
+        IdempotencyService s = shared;
+        if (s == null) {
+            synchronized (IdempotencyService.class) {
+                if (shared == null) {
+                    shared = new IdempotencyService(new IdempotencyRepository(emf),
+                        ConfigLoader.getLongSetting("ORDERS_IDEMPOTENCY_TTL_HOURS", "orders.idempotency.ttl.hours", 24)
+                            * 3_600_000L,
+                        ConfigLoader.getLongSetting("ORDERS_IDEMPOTENCY_LEASE_SECONDS",
+                            "orders.idempotency.lease.seconds", 60) * 1000L,
+                        (int) ConfigLoader.getLongSetting("ORDERS_IDEMPOTENCY_MAX_ENTRIES",
+                            "orders.idempotency.max.entries", 10_000),
+                        ConfigLoader.getLongSetting("ORDERS_IDEMPOTENCY_WAIT_SECONDS",
+                            "orders.idempotency.wait.seconds", 30) * 1000L,
+                        System::currentTimeMillis);
+                }
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    private final IdempotencyRepository repo;
+    private final long ttlMillis;
+    private final long leaseMillis;
+    private final int maxEntries;
+    private final long waitMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Completed> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong inserts = new AtomicLong();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replayedFromMemory = new AtomicLong();
+    private final AtomicLong replayedFromDb = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong takenOver = new AtomicLong();
+    private final AtomicLong lostOwnership = new AtomicLong();
+
+    IdempotencyService(IdempotencyRepository repo, long ttlMillis, long leaseMillis, int maxEntries, long waitMillis,
+                       LongSupplier clock) {
+        this.repo = repo;
+        this.ttlMillis = ttlMillis;
+        this.leaseMillis = leaseMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.waitMillis = waitMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Ejecuta {@code action} una sola vez por {@code scope}+{@code key}; los duplicados reciben la misma respuesta.
+     * @param requestHash ver {@link #hashOf}
+     * @throws KeyReusedException si la clave ya se usó con otra petición
+     * @throws InProgressException si la original no terminó dentro de la espera máxima
+     */
+    public StoredResponse execute(String scope, String key, String requestHash, Supplier<StoredResponse> action) {
+        String id = scope + ":" + key;
+        long deadline = clock.getAsLong() + waitMillis;
+        while (true) {
+            Completed done = fromMemory(id);
+            if (done != null) {
+                replayedFromMemory.incrementAndGet();
+                return replay(done.requestHash, done.response, requestHash);
+            }
+
+            CompletableFuture<Void> mine = new CompletableFuture<>();
+            CompletableFuture<Void> other = inFlight.putIfAbsent(id, mine);
+            if (other != null) {
+                waited.incrementAndGet();
+                awaitLocal(other, deadline);
+                continue;
+            }
+            try {
+                String ownerToken = UUID.randomUUID().toString();
+                StoredResponse stored = reserveOrReplay(id, requestHash, ownerToken, deadline);
+                if (stored != null) {
+                    return stored;
+                }
+                return runAndStore(id, requestHash, ownerToken, action);
+            } finally {
+                inFlight.remove(id, mine);
+                mine.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Toma la clave en BD; si ya existe devuelve la respuesta guardada (esperando si está en curso en otro nodo).
+     * @return null si la clave quedó reservada para esta petición con {@code ownerToken}
+     */
+    private StoredResponse reserveOrReplay(String id, String requestHash, String ownerToken, long deadline) {
+        while (true) {
+            if (repo.tryInsert(id, requestHash, ownerToken, leaseMillis)) {
+                if (inserts.incrementAndGet() % PURGE_EVERY == 0) {
+                    purgeExpired();
+                }
+                return null;
+            }
+            IdempotencyRecord existing = repo.findByKey(id).orElse(null);
+            if (existing == null) {
+                continue; // se liberó entre el INSERT y la lectura
+            }
+            boolean inProgress = IdempotencyRecord.IN_PROGRESS.equals(existing.getStatus());
+            // Petición abandonada (su nodo cayó y dejó de renovar el lease) o respuesta vencida; decide la hora de la BD
+            if ((inProgress || existing.getExpiresAt().getTime() <= clock.getAsLong()) && repo.deleteIfExpired(id)) {
+                if (inProgress) {
+                    takenOver.incrementAndGet();
+                }
+                continue;
+            }
+            if (!existing.getRequestHash().equals(requestHash)) {
+                rejected.incrementAndGet();
+                throw new KeyReusedException();
+            }
+            if (IdempotencyRecord.COMPLETED.equals(existing.getStatus())) {
+                StoredResponse response = new StoredResponse(existing.getResponseStatus(), existing.getResponseBody());
+                remember(id, existing.getRequestHash(), response, existing.getExpiresAt().getTime());
+                replayedFromDb.incrementAndGet();
+                return response.asReplay();
+            }
+            // En curso en otro nodo
+            waited.incrementAndGet();
+            if (clock.getAsLong() >= deadline) {
+                throw new InProgressException();
+            }
+            sleep(POLL_MILLIS);
+        }
+    }
+
+    private StoredResponse runAndStore(String id, String requestHash, String ownerToken,
+                                       Supplier<StoredResponse> action) {
+        StoredResponse response;
+        ScheduledFuture<?> renewal = scheduleRenewal(id, ownerToken);
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            releaseQuietly(id, ownerToken);
+            throw e;
+        } finally {
+            renewal.cancel(false);
+        }
+        executed.incrementAndGet();
+        if (response.getStatus() >= 500) {
+            releaseQuietly(id, ownerToken);
+            return response;
+        }
+        try {
+            if (!repo.complete(id, ownerToken, response.getStatus(), response.getBody(), ttlMillis)) {
+                // Otro nodo retomó la clave: su fila manda y esta respuesta no se repite a nadie más
+                lostOwnership.incrementAndGet();
+                System.err.println("Idempotency-Key " + id + ": se perdió el lease antes de guardar la respuesta");
+                return response;
+            }
+        } catch (RuntimeException e) {
+            // El pedido ya se creó: si no se pudo guardar, al menos este nodo repetirá la respuesta desde memoria
+            System.err.println("Idempotency-Key " + id + ": no se pudo guardar la respuesta: " + e.getMessage());
+        }
+        remember(id, requestHash, response, clock.getAsLong() + ttlMillis);
+        return response;
+    }
+
+    /** Renueva el lease de la clave cada tercio de su duración mientras la petición sigue en curso. */
+    private ScheduledFuture<?> scheduleRenewal(String id, String ownerToken) {
+        long period = Math.max(1, leaseMillis / 3);
+        return RENEWER.scheduleAtFixedRate(() -> {
+            try {
+                if (!repo.renew(id, ownerToken, leaseMillis)) {
+                    System.err.println("Idempotency-Key " + id + ": otro nodo retomó la clave en curso");
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Idempotency-Key " + id + ": no se pudo renovar el lease: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private StoredResponse replay(String storedHash, StoredResponse response, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            rejected.incrementAndGet();
+            throw new KeyReusedException();
+        }
+        return response.asReplay();
+    }
+
+    private void awaitLocal(CompletableFuture<Void> other, long deadline) {
+        long remaining = deadline - clock.getAsLong();
+        if (remaining <= 0) {
+            throw new InProgressException();
+        }
+        try {
+            other.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new InProgressException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InProgressException();
+        } catch (ExecutionException e) {
+            // el future nunca se completa con error
+        }
+    }
+
+    private synchronized Completed fromMemory(String id) {
+        Completed c = memory.get(id);
+        if (c != null && c.expiresAt <= clock.getAsLong()) {
+            memory.remove(id);
+            return null;
+        }
+        return c;
+    }
+
+    private synchronized void remember(String id, String requestHash, StoredResponse response, long expiresAt) {
+        memory.put(id, new Completed(requestHash, response, expiresAt));
+        Iterator<String> it = memory.keySet().iterator();
+        while (memory.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void releaseQuietly(String id, String ownerToken) {
+        try {
+            repo.delete(id, ownerToken);
+        } catch (RuntimeException e) {
+            System.err.println("Idempotency-Key " + id + ": no se pudo liberar: " + e.getMessage());
+        }
+    }
+
+    private void purgeExpired() {
+        try {
+            repo.deleteExpired();
+        } catch (RuntimeException e) {
+            System.err.println("No se pudieron borrar las Idempotency-Key vencidas: " + e.getMessage());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InProgressException();
+        }
+    }
+
+    /**
+     * Hash de la petición: SHA-256 del cuerpo en JSON canónico (claves ordenadas) más las partes extra
+     * (p. ej. cabeceras que cambian el resultado).
+     */
+    public static String hashOf(Object body, String... extra) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(CANONICAL.writeValueAsBytes(body));
+            for (String e : extra) {
+                md.update((byte) 0);
+                if (e != null) {
+                    md.update(e.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (this) {
+            m.put("memoryEntries", memory.size());
+        }
+        m.put("inFlight", inFlight.size());
+        m.put("executed", executed.get());
+        m.put("replayedFromMemory", replayedFromMemory.get());
+        m.put("replayedFromDb", replayedFromDb.get());
+        m.put("waited", waited.get());
+        m.put("rejected", rejected.get());
+        m.put("takenOver", takenOver.get());
+        m.put("lostOwnership", lostOwnership.get());
+        return m;
+    }
+}
@@ -0,0 +1,215 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.controller.ETags;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché de imágenes servidas por {@code /api/images}, por clave (tipo de entidad, id, orden en galería):
+ * <ul>
+ *   <li>ETag (hash del contenido): muchas entradas, pocos bytes; permite responder 304 sin leer el BLOB.</li>
+ *   <li>bytes de las imágenes más pedidas: LRU acotado por tamaño total.</li>
+ * </ul>
+ * Las dos partes tienen TTL (cambios hechos por otro nodo) y se invalidan al cambiar la imagen en este nodo.
+ * Antes de leer de BD se toma {@link #generation()}: si hubo una invalidación mientras tanto, {@link #put}
+ * no guarda la lectura (podría ser la imagen anterior).
+ */
+public final class ImageCache {
+
+    /** Imagen lista para servir. */
+    public static final class Entry {
+        private final byte[] data;
+        private final String contentType;
+        private final String etag;
+
+        Entry(byte[] data, String contentType, String etag) {
+            this.data = data;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+
+        public byte[] getData() { return data; }
+        public String getContentType() { return contentType; }
+        /** ETag fuerte, ya entre comillas. */
+        public String getEtag() { return etag; }
+    }
+
+    private static final class Meta {
+        final String etag;
+        final long expiresAt;
+
+        Meta(String etag, long expiresAt) {
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Bytes {
+        final Entry entry;
+        final long expiresAt;
+
+        Bytes(Entry entry, long expiresAt) {
+            this.entry = entry;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final ImageCache SHARED = new ImageCache(
+        ConfigLoader.getLongSetting("IMAGES_CACHE_MAX_MB", "images.cache.max.mb", 64) * 1024 * 1024,
+        (int) ConfigLoader.getLongSetting("IMAGES_CACHE_MAX_ENTRIES", "images.cache.max.entries", 20_000),
+        ConfigLoader.getLongSetting("IMAGES_CACHE_TTL_SECONDS", "images.cache.ttl.seconds", 600) * 1000L,
+        System::currentTimeMillis);
+
+    public static ImageCache shared() {
+        return SHARED;
+    }
+
+    /** Clave de la imagen; {@code sortOrder} 0 = imagen principal de la entidad. */
+    public static String key(String entityType, Long id, int sortOrder) {
+        return entityType + ":" + id + ":" + sortOrder;
+    }
+
+    /** Clave de la versión de {@code width} px; comparte prefijo con la original y se invalida con ella. */
+    public static String variantKey(String key, int width) {
+        return key + ":w" + width;
+    }
+
+    private final long maxBytes;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Meta> meta = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Bytes> bytes = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytesHeld;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ImageCache(long maxBytes, int maxEntries, long ttlMillis, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /** ETag conocido y vigente de la imagen, o null (hay que leerla). */
+    public synchronized String etagOf(String key) {
+        Meta m = meta.get(key);
+        if (m == null) {
+            return null;
+        }
+        if (m.expiresAt <= clock.getAsLong()) {
+            meta.remove(key);
+            return null;
+        }
+        return m.etag;
+    }
+
+    /** Cuenta una respuesta 304 (para las métricas). */
+    public void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /** Bytes cacheados y vigentes, o null. */
+    public synchronized Entry get(String key) {
+        Bytes b = bytes.get(key);
+        if (b != null && b.expiresAt > clock.getAsLong()) {
+            hits.incrementAndGet();
+            return b.entry;
+        }
+        if (b != null) {
+            removeBytes(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Marca a tomar antes de leer una imagen de BD para pasarla luego a {@link #put}. */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Registra una imagen recién leída de BD: calcula su ETag y la guarda (los bytes solo si caben en la
+     * caché; una imagen mayor que un octavo del total no desplaza al resto).
+     * @param readGeneration valor de {@link #generation()} tomado antes de la lectura
+     */
+    public Entry put(String key, byte[] data, String contentType, long readGeneration) {
+        return put(key, new Entry(data, contentType, ETags.forContent(data)), readGeneration);
+    }
+
+    /** Igual que {@link #put(String, byte[], String, long)} con el ETag ya calculado (versiones redimensionadas). */
+    public Entry put(String key, Entry entry, long readGeneration) {
+        byte[] data = entry.data;
+        long expiresAt = clock.getAsLong() + ttlMillis;
+        synchronized (this) {
+            if (readGeneration != generation) {
+                return entry;
+            }
+            meta.put(key, new Meta(entry.etag, expiresAt));
+            while (meta.size() > maxEntries) {
+                Iterator<String> it = meta.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+            if (data.length <= maxBytes / 8) {
+                removeBytes(key);
+                bytes.put(key, new Bytes(entry, expiresAt));
+                bytesHeld += data.length;
+                Iterator<Map.Entry<String, Bytes>> it = bytes.entrySet().iterator();
+                while (bytesHeld > maxBytes && it.hasNext()) {
+                    Map.Entry<String, Bytes> eldest = it.next();
+                    bytesHeld -= eldest.getValue().entry.data.length;
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        return entry;
+    }
+
+    /** Invalida todas las imágenes (principal y galería) de la entidad. */
+    public synchronized void invalidate(String entityType, Long id) {
+        generation++;
+        String prefix = entityType + ":" + id + ":";
+        meta.keySet().removeIf(k -> k.startsWith(prefix));
+        Iterator<Map.Entry<String, Bytes>> it = bytes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Bytes> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                bytesHeld -= e.getValue().entry.data.length;
+                it.remove();
+            }
+        }
+    }
+
+    private void removeBytes(String key) {
+        Bytes old = bytes.remove(key);
+        if (old != null) {
+            bytesHeld -= old.entry.data.length;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (this) {
+            m.put("etagEntries", meta.size());
+            m.put("byteEntries", bytes.size());
+            m.put("bytesHeld", bytesHeld);
+        }
+        m.put("maxBytes", maxBytes);
+        m.put("hits", hits.get());
+        m.put("misses", misses.get());
+        m.put("notModified", notModified.get());
+        m.put("evictions", evictions.get());
+        return m;
+    }
+}
@@ -0,0 +1,108 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.repository.ImageRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.Locale;
+
+/**
+ * Imágenes de {@code /api/images} servidas a través de {@link ImageCache}: solo se lee el BLOB de BD cuando la
+ * imagen no está en memoria.
+ */
+public class ImageService {
+
+    /** La entidad o la imagen no existen; el mensaje es el que se devuelve en el 404. */
+    public static class ImageNotFoundException extends RuntimeException {
+        public ImageNotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    private final ImageRepository repo;
+
+    public ImageService(EntityManagerFactory emf) {
+        this.repo = new ImageRepository(emf);
+    }
+
+    /**
+     * Normaliza y valida el tipo de entidad de la URL.
+     * @throws IllegalArgumentException si no es part, category, brand ni vehicle
+     */
+    public static String entityType(String raw) {
+        String t = raw != null ? raw.toLowerCase(Locale.ROOT) : "";
+        if (!ImageRepository.isEntityType(t)) {
+            throw new IllegalArgumentException("Tipo de entidad no válido");
+        }
+        return t;
+    }
+
+    /**
+     * Imagen principal ({@code sortOrder} 0) o de galería de repuesto ({@code sortOrder} 1..4).
+     * @throws ImageNotFoundException si no existe
+     */
+    public ImageCache.Entry get(String entityType, Long id, int sortOrder) {
+        ImageCache cache = ImageCache.shared();
+        String key = ImageCache.key(entityType, id, sortOrder);
+        ImageCache.Entry cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        Object[] row;
+        if (sortOrder == 0) {
+            row = repo.findMainImage(entityType, id);
+            if (row == null) {
+                throw new ImageNotFoundException("Entidad no encontrada");
+            }
+        } else {
+            row = repo.findGalleryImage(id, sortOrder);
+        }
+        byte[] data = row != null ? (byte[]) row[0] : null;
+        if (data == null || data.length == 0) {
+            throw new ImageNotFoundException(sortOrder == 0 ? "Imagen no encontrada" : "Imagen de galería no encontrada");
+        }
+        String contentType = row[1] != null ? (String) row[1] : "image/jpeg";
+        return cache.put(key, data, contentType, generation);
+    }
+
+    /**
+     * Igual que {@link #get(String, Long, int)} pero reducida a {@code width} px de ancho (ver
+     * {@link ImageVariantService#resolveWidth}); {@code width} 0 = original. La versión se busca primero en
+     * memoria y luego en disco (por el ETag conocido de la original); la original solo se lee si hay que generarla.
+     */
+    public ImageCache.Entry get(String entityType, Long id, int sortOrder, int width) {
+        if (width <= 0) {
+            return get(entityType, id, sortOrder);
+        }
+        ImageCache cache = ImageCache.shared();
+        String key = ImageCache.key(entityType, id, sortOrder);
+        String variantKey = ImageCache.variantKey(key, width);
+        ImageCache.Entry cached = cache.get(variantKey);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        ImageVariantService variants = ImageVariantService.shared();
+        String sourceEtag = cache.etagOf(key);
+        ImageCache.Entry variant = sourceEtag != null ? variants.stored(sourceEtag, width) : null;
+        if (variant == null) {
+            ImageCache.Entry original = get(entityType, id, sortOrder);
+            variant = variants.variant(original, width);
+            if (variant == original) {
+                return original; // sin hueco para redimensionar: la original, sin guardarla como versión
+            }
+        }
+        return cache.put(variantKey, variant, generation);
+    }
+
+    /** ETag vigente en memoria, o null si hay que leer la imagen para conocerlo. */
+    public String knownEtag(String entityType, Long id, int sortOrder) {
+        return ImageCache.shared().etagOf(ImageCache.key(entityType, id, sortOrder));
+    }
+
+    /** ETag vigente de la versión de {@code width} px (derivado del de la original), o null. */
+    public String knownEtag(String entityType, Long id, int sortOrder, int width) {
+        String etag = knownEtag(entityType, id, sortOrder);
+        return etag != null && width > 0 ? ImageVariantService.variantEtag(etag, width) : etag;
+    }
+}
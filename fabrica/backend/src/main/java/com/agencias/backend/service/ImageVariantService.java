@@ -0,0 +1,422 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.controller.ETags;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Versiones redimensionadas de las imágenes ({@code ?w=} o {@code ?size=} en {@code /api/images}).
+ * <p>
+ * Cada versión se guarda en disco con nombre derivado del hash de la imagen original, el ancho y el formato
+ * (direccionado por contenido): si la imagen cambia, su hash cambia y la versión vieja simplemente deja de
+ * pedirse; la poda por tamaño del directorio la elimina con el tiempo. Solo se reduce (nunca se amplía);
+ * PNG se mantiene en PNG (transparencias), el resto sale en JPEG.
+ * </p>
+ * <p>
+ * Las imágenes que se sirven sin redimensionar (ya más angostas, formatos que ImageIO no lee como webp, o con
+ * más de {@code images.variants.max.pixels} según su cabecera) dejan un archivo marcador vacío para ese ancho,
+ * así las siguientes peticiones no vuelven a decodificar la original. Las dimensiones se leen de la cabecera
+ * antes de decodificar: un archivo chico que declara dimensiones enormes no llega a reservar la memoria.
+ * </p>
+ * <p>
+ * A lo sumo {@code images.variants.max.concurrent} redimensionados a la vez por nodo: con todos ocupados, una
+ * petición recibe la original (con su propio ETag) en vez de esperar o de sumar otra imagen decodificada al heap.
+ * </p>
+ */
+public final class ImageVariantService {
+
+    /** Tamaños con nombre para {@code ?size=}. */
+    public static final Map<String, Integer> NAMED_SIZES = Map.of(
+        "thumb", 200, "small", 320, "medium", 640, "large", 1280);
+
+    /** Anchos que se generan: un {@code ?w=} arbitrario se redondea hacia arriba al siguiente. */
+    static final int[] WIDTHS = {100, 200, 320, 480, 640, 800, 1024, 1280, 1600, 2048};
+
+    private static final float JPEG_QUALITY = 0.85f;
+    /** Cada cuántas escrituras se revisa el tamaño del directorio. */
+    private static final int PRUNE_EVERY = 200;
+    /** Sufijo del marcador "servir la original" para un ancho. */
+    private static final String PASSTHROUGH_SUFFIX = ".orig";
+    /** Tope por defecto de píxeles (ancho x alto) a decodificar: unos 160 MB en ARGB. */
+    static final long DEFAULT_MAX_PIXELS = 40_000_000L;
+    static final int DEFAULT_MAX_CONCURRENT = 2;
+
+    private static final ImageVariantService SHARED = new ImageVariantService(
+        Path.of(settingOrDefault("IMAGES_VARIANTS_DIR", "images.variants.dir",
+            Path.of(System.getProperty("java.io.tmpdir"), "agencias-image-variants").toString())),
+        ConfigLoader.getLongSetting("IMAGES_VARIANTS_MAX_MB", "images.variants.max.mb", 1024) * 1024 * 1024,
+        ConfigLoader.getLongSetting("IMAGES_VARIANTS_MAX_PIXELS", "images.variants.max.pixels", DEFAULT_MAX_PIXELS),
+        (int) ConfigLoader.getLongSetting("IMAGES_VARIANTS_MAX_CONCURRENT", "images.variants.max.concurrent",
+            DEFAULT_MAX_CONCURRENT));
+
+    public static ImageVariantService shared() {
+        return SHARED;
+    }
+
+    private static String settingOrDefault(String env, String prop, String def) {
+        String v = ConfigLoader.getSetting(env, prop);
+        return v != null ? v : def;
+    }
+
+    private final Path dir;
+    private final long maxDirBytes;
+    private final long maxPixels;
+    private final Semaphore resizes;
+    private final AtomicInteger writes = new AtomicInteger();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "image-variants");
+        t.setDaemon(true);
+        return t;
+    });
+
+    ImageVariantService(Path dir, long maxDirBytes) {
+        this(dir, maxDirBytes, DEFAULT_MAX_PIXELS);
+    }
+
+    ImageVariantService(Path dir, long maxDirBytes, long maxPixels) {
+        this(dir, maxDirBytes, maxPixels, DEFAULT_MAX_CONCURRENT);
+    }
+
+    ImageVariantService(Path dir, long maxDirBytes, long maxPixels, int maxConcurrent) {
+        this.dir = dir;
+        this.maxDirBytes = maxDirBytes;
+        this.maxPixels = maxPixels;
+        this.resizes = new Semaphore(Math.max(0, maxConcurrent));
+    }
+
+    /**
+     * Ancho pedido ya normalizado a {@link #WIDTHS}; 0 si se pide la original.
+     * @throws IllegalArgumentException si {@code size} no existe o {@code w} no es positivo
+     */
+    public static int resolveWidth(Integer w, String size) {
+        if (size != null && !size.isBlank()) {
+            Integer named = NAMED_SIZES.get(size.trim().toLowerCase(Locale.ROOT));
+            if (named == null) {
+                throw new IllegalArgumentException("size debe ser thumb, small, medium o large");
+            }
+            return named;
+        }
+        if (w == null) {
+            return 0;
+        }
+        if (w <= 0) {
+            throw new IllegalArgumentException("w debe ser mayor a cero");
+        }
+        for (int candidate : WIDTHS) {
+            if (candidate >= w) {
+                return candidate;
+            }
+        }
+        return 0; // más ancho que el mayor tamaño generado: se sirve la original
+    }
+
+    /** ETag de una versión: derivado del de la original, así se conoce sin leer nada. */
+    public static String variantEtag(String sourceEtag, int width) {
+        String raw = sourceEtag.startsWith("\"") ? sourceEtag.substring(1, sourceEtag.length() - 1) : sourceEtag;
+        return "\"" + raw + "-w" + width + "\"";
+    }
+
+    /**
+     * Versión ya generada en disco de la original con ETag {@code sourceEtag}, sin leer la original; null si
+     * todavía no existe (o si para ese ancho se sirve la original).
+     */
+    public ImageCache.Entry stored(String sourceEtag, int width) {
+        String etag = variantEtag(sourceEtag, width);
+        for (String outType : new String[] {"image/jpeg", "image/png"}) {
+            Path file = fileFor(sourceEtag, width, outType);
+            if (Files.isRegularFile(file)) {
+                try {
+                    return new ImageCache.Entry(Files.readAllBytes(file), outType, etag);
+                } catch (IOException e) {
+                    System.err.println("No se pudo leer la variante " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Versión de {@code original} con ancho máximo {@code width}: desde disco si ya existe; si no, se genera y guarda.
+     * Si la imagen no se puede decodificar, ya es más angosta o supera el tope de píxeles, se devuelven los bytes
+     * originales (y se deja el marcador para no volver a intentarlo). Si ya hay
+     * {@code images.variants.max.concurrent} redimensionados en curso devuelve {@code original} tal cual (el mismo
+     * objeto, con su ETag): no se guarda nada y la próxima petición lo vuelve a intentar.
+     */
+    public ImageCache.Entry variant(ImageCache.Entry original, int width) {
+        return variant(original, width, false);
+    }
+
+    private ImageCache.Entry variant(ImageCache.Entry original, int width, boolean waitForSlot) {
+        String etag = variantEtag(original.getEtag(), width);
+        String outType = outputType(original.getContentType());
+        Path file = fileFor(original.getEtag(), width, outType);
+        if (Files.isRegularFile(file)) {
+            try {
+                return new ImageCache.Entry(Files.readAllBytes(file), outType, etag);
+            } catch (IOException e) {
+                System.err.println("No se pudo leer la variante " + file + ": " + e.getMessage());
+            }
+        }
+        Path marker = passthroughMarker(file);
+        if (Files.isRegularFile(marker)) {
+            return new ImageCache.Entry(original.getData(), original.getContentType(), etag);
+        }
+        if (waitForSlot) {
+            resizes.acquireUninterruptibly();
+        } else if (!resizes.tryAcquire()) {
+            return original;
+        }
+        byte[] data;
+        try {
+            data = resize(original.getData(), width, outType, maxPixels);
+        } finally {
+            resizes.release();
+        }
+        if (data == null) {
+            store(marker, new byte[0]);
+            return new ImageCache.Entry(original.getData(), original.getContentType(), etag);
+        }
+        store(file, data);
+        return new ImageCache.Entry(data, outType, etag);
+    }
+
+    /** Genera en segundo plano los tamaños {@code widths} de las imágenes recién subidas. */
+    public void pregenerateAsync(List<byte[]> images, List<String> types, List<Integer> widths) {
+        if (widths.isEmpty()) {
+            return;
+        }
+        List<byte[]> copyImages = new ArrayList<>(images);
+        List<String> copyTypes = new ArrayList<>(types);
+        background.submit(() -> {
+            for (int i = 0; i < copyImages.size(); i++) {
+                ImageCache.Entry original = new ImageCache.Entry(copyImages.get(i),
+                    copyTypes.get(i) != null ? copyTypes.get(i) : "image/jpeg", ETags.forContent(copyImages.get(i)));
+                for (int w : widths) {
+                    try {
+                        variant(original, w, true);
+                    } catch (RuntimeException e) {
+                        System.err.println("No se pudo generar la variante w=" + w + ": " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /** Anchos a pregenerar al subir imágenes ({@code images.variants.pregenerate}, nombres o números). */
+    public static List<Integer> pregenerateWidths() {
+        String v = settingOrDefault("IMAGES_VARIANTS_PREGENERATE", "images.variants.pregenerate", "thumb");
+        List<Integer> out = new ArrayList<>();
+        for (String s : v.split(",")) {
+            String t = s.trim();
+            if (t.isEmpty()) {
+                continue;
+            }
+            try {
+                int w = NAMED_SIZES.containsKey(t) ? resolveWidth(null, t) : resolveWidth(Integer.parseInt(t), null);
+                if (w > 0 && !out.contains(w)) {
+                    out.add(w);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("images.variants.pregenerate: valor ignorado '" + t + "'");
+            }
+        }
+        return out;
+    }
+
+    static String outputType(String sourceType) {
+        return "image/png".equalsIgnoreCase(sourceType) ? "image/png" : "image/jpeg";
+    }
+
+    Path fileFor(String sourceEtag, int width, String outType) {
+        String name = sha256Hex(sourceEtag + "|" + width + "|" + outType);
+        return dir.resolve(name.substring(0, 2)).resolve(name + (outType.equals("image/png") ? ".png" : ".jpg"));
+    }
+
+    static Path passthroughMarker(Path variantFile) {
+        return variantFile.resolveSibling(variantFile.getFileName() + PASSTHROUGH_SUFFIX);
+    }
+
+    /**
+     * Lee las dimensiones de la cabecera y solo decodifica si hace falta reducir y no supera {@code maxPixels}.
+     * @return bytes redimensionados, o null si no se puede decodificar, no hace falta reducir o es demasiado grande
+     */
+    static byte[] resize(byte[] source, int width, String outType, long maxPixels) {
+        BufferedImage src;
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long srcWidth = reader.getWidth(0);
+                long srcHeight = reader.getHeight(0);
+                if (srcWidth <= width || srcWidth * srcHeight > maxPixels) {
+                    return null;
+                }
+                src = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null; // cabecera o datos dañados: se sirve la original
+        }
+        int height = Math.max(1, (int) Math.round((double) src.getHeight() * width / src.getWidth()));
+        boolean png = outType.equals("image/png");
+        BufferedImage current = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        // Reducción por pasos de a la mitad: mejor calidad que un único escalado bilineal grande
+        do {
+            w = Math.max(width, w / 2);
+            h = w == width ? height : Math.max(height, h / 2);
+            BufferedImage step = new BufferedImage(w, h, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = step.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!png) {
+                    g.setColor(java.awt.Color.WHITE);
+                    g.fillRect(0, 0, w, h);
+                }
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = step;
+        } while (w > width);
+        try {
+            return png ? writePng(current) : writeJpeg(current);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] writePng(BufferedImage img) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] writeJpeg(BufferedImage img) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /** Escritura atómica (archivo temporal + move) para que un lector nunca vea un archivo a medias. */
+    private void store(Path file, byte[] data) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "tmp-", ".part");
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la variante " + file + ": " + e.getMessage());
+            return;
+        }
+        if (writes.incrementAndGet() % PRUNE_EVERY == 0) {
+            background.submit(this::prune);
+        }
+    }
+
+    /** Borra las variantes más antiguas hasta quedar bajo {@code images.variants.max.mb}. */
+    void prune() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(dir)) {
+            files = new ArrayList<>(s.filter(Files::isRegularFile).toList());
+        } catch (IOException e) {
+            return;
+        }
+        long total = 0;
+        for (Path f : files) {
+            total += sizeOf(f);
+        }
+        if (total <= maxDirBytes) {
+            return;
+        }
+        files.sort(Comparator.comparing(ImageVariantService::modifiedOf));
+        for (Path f : files) {
+            if (total <= maxDirBytes) {
+                break;
+            }
+            long size = sizeOf(f);
+            try {
+                Files.deleteIfExists(f);
+                total -= size;
+            } catch (IOException ignored) {
+                // otro hilo la está usando; se reintenta en la próxima poda
+            }
+        }
+    }
+
+    private static long sizeOf(Path f) {
+        try {
+            return Files.size(f);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime modifiedOf(Path f) {
+        try {
+            return Files.getLastModifiedTime(f);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String sha256Hex(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
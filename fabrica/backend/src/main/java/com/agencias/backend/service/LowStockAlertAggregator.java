@@ -0,0 +1,237 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.LowStockAlertState;
+import com.agencias.backend.model.Part;
+import com.agencias.backend.repository.LowStockAlertRepository;
+import com.agencias.backend.repository.SchedulerLeaseRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Alertas de stock bajo sin repetir: cada repuesto tiene su estado (armada, disparada, repuesta) en memoria y en
+ * LOW_STOCK_ALERT_STATE, y solo el paso de armada a disparada cuenta como alerta; las ventas siguientes de un
+ * repuesto que ya está bajo no escriben ni envían nada.
+ * <ul>
+ *   <li>{@link #observe} se llama tras cada cambio de stock; solo toca la base cuando hay un cruce.</li>
+ *   <li>Cada {@code stock.alert.digest.minutes} un solo nodo (lease {@value #LEASE_NAME}) revisa la tabla PART
+ *       (cambios que nadie observó: otro nodo, SQL, un nodo caído a mitad) y, si hubo cruces nuevos, encola en
+ *       OUTBOX_EVENT un único correo de resumen con todos los repuestos bajo el umbral.</li>
+ *   <li>Los demás nodos recargan su copia en memoria en cada vuelta.</li>
+ * </ul>
+ */
+public class LowStockAlertAggregator {
+
+    static final String LEASE_NAME = "low-stock-digest";
+
+    private static volatile LowStockAlertAggregator shared;
+
+    public static LowStockAlertAggregator shared(EntityManagerFactory emf) {
+        LowStockAlertAggregator s = shared;
+        if (s == null) {
+            synchronized (LowStockAlertAggregator.class) {
+                if (shared == null) {
+                    shared = new LowStockAlertAggregator(new LowStockAlertRepository(emf),
+                        new SchedulerLeaseRepository(emf), SchedulerLeaseRepository.ownerId(),
+                        ConfigLoader.getLongSetting("STOCK_ALERT_LEASE_SECONDS", "stock.alert.lease.seconds", 1800)
+                            * 1000L,
+                        System::currentTimeMillis);
+                }
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    private final LowStockAlertRepository repo;
+    private final SchedulerLeaseRepository leases;
+    private final String owner;
+    private final long leaseMillis;
+    private final LongSupplier clock;
+    private final Map<Long, String> states = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong observed = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong reconciled = new AtomicLong();
+    private final AtomicLong digests = new AtomicLong();
+    private final AtomicLong digestParts = new AtomicLong();
+    private final AtomicLong skippedNoLease = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long lastDigestAt;
+    private volatile boolean leaseHeld;
+
+    LowStockAlertAggregator(LowStockAlertRepository repo, SchedulerLeaseRepository leases, String owner,
+                            long leaseMillis, LongSupplier clock) {
+        this.repo = repo;
+        this.leases = leases;
+        this.owner = owner;
+        this.leaseMillis = leaseMillis;
+        this.clock = clock;
+    }
+
+    /** Revisa y resume cada {@code intervalMillis} (menor que la duración del lease para conservarlo). */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "low-stock-digest");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tickQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Detiene la tarea y suelta el lease para que otro nodo la tome sin esperar a que venza. */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        if (leaseHeld) {
+            try {
+                leases.release(LEASE_NAME, owner);
+            } catch (RuntimeException e) {
+                System.err.println("No se pudo soltar el lease " + LEASE_NAME + ": " + e.getMessage());
+            }
+            leaseHeld = false;
+        }
+    }
+
+    /**
+     * Compara lo disponible del repuesto con su umbral y registra el cruce si lo hay (en o bajo el umbral con la
+     * alerta armada: {@code FIRED}; por encima con la alerta disparada: {@code RECOVERED}).
+     */
+    public void observe(Part p) {
+        if (p == null || p.getPartId() == null) {
+            return;
+        }
+        observed.incrementAndGet();
+        ensureLoaded();
+        int available = (p.getStockQuantity() != null ? p.getStockQuantity() : 0)
+            - (p.getReservedQuantity() != null ? p.getReservedQuantity() : 0);
+        int threshold = p.getLowStockThreshold() != null ? p.getLowStockThreshold() : 5;
+        boolean low = available <= threshold;
+        boolean wasFired = LowStockAlertState.FIRED.equals(states.get(p.getPartId()));
+        if (low == wasFired) {
+            if (low) {
+                suppressed.incrementAndGet(); // sigue bajo: ya se avisó en este cruce
+            }
+            return;
+        }
+        Date now = new Date(clock.getAsLong());
+        if (low) {
+            if (repo.fire(p.getPartId(), available, threshold, now)) {
+                fired.incrementAndGet();
+            }
+            states.put(p.getPartId(), LowStockAlertState.FIRED);
+        } else {
+            if (repo.recover(p.getPartId(), now)) {
+                recovered.incrementAndGet();
+            }
+            states.put(p.getPartId(), LowStockAlertState.RECOVERED);
+        }
+    }
+
+    /**
+     * Una vuelta: recarga los estados y, con el lease, corrige los cruces que nadie observó y encola el resumen.
+     * @return repuestos con cruces nuevos en el resumen encolado (0 si no hubo o si otro nodo tiene el lease)
+     */
+    synchronized int tick() {
+        long now = clock.getAsLong();
+        reload();
+        leaseHeld = leases.tryAcquire(LEASE_NAME, owner, leaseMillis);
+        if (!leaseHeld) {
+            skippedNoLease.incrementAndGet();
+            return 0;
+        }
+        Set<Long> lowIds = new HashSet<>();
+        for (LowStockAlertState low : repo.findLowStockParts()) {
+            lowIds.add(low.getPartId());
+            if (!LowStockAlertState.FIRED.equals(states.get(low.getPartId()))
+                && repo.fire(low.getPartId(), low.getAvailableQty(), low.getThreshold(), new Date(now))) {
+                reconciled.incrementAndGet();
+                fired.incrementAndGet();
+            }
+        }
+        for (Map.Entry<Long, String> e : states.entrySet()) {
+            if (LowStockAlertState.FIRED.equals(e.getValue()) && !lowIds.contains(e.getKey())
+                && repo.recover(e.getKey(), new Date(now))) {
+                reconciled.incrementAndGet();
+                recovered.incrementAndGet();
+            }
+        }
+        reload();
+        List<Long> digested = repo.queueDigest(new Date(now));
+        if (!digested.isEmpty()) {
+            digests.incrementAndGet();
+            digestParts.addAndGet(digested.size());
+            lastDigestAt = now;
+            OutboxDispatcher.nudgeShared();
+        }
+        return digested.size();
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            System.err.println("Resumen de stock bajo: " + e.getMessage());
+        }
+    }
+
+    /** La primera observación carga los estados guardados (si falla, se reintenta en la siguiente). */
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    private void reload() {
+        Map<Long, String> fresh = repo.findStates();
+        states.keySet().retainAll(fresh.keySet());
+        states.putAll(fresh);
+        loaded = true;
+    }
+
+    public Map<String, Object> stats() {
+        long firedNow = states.values().stream().filter(LowStockAlertState.FIRED::equals).count();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("owner", owner);
+        m.put("leaseHeld", leaseHeld);
+        m.put("lowStockParts", firedNow);
+        m.put("observed", observed.get());
+        m.put("suppressed", suppressed.get());
+        m.put("fired", fired.get());
+        m.put("recovered", recovered.get());
+        m.put("reconciled", reconciled.get());
+        m.put("digests", digests.get());
+        m.put("digestParts", digestParts.get());
+        m.put("skippedNoLease", skippedNoLease.get());
+        m.put("errors", errors.get());
+        m.put("lastDigestAt", lastDigestAt > 0 ? new Date(lastDigestAt) : null);
+        return m;
+    }
+}
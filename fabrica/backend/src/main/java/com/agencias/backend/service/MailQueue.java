@@ -0,0 +1,364 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cola de correo con un pool pequeño de conexiones SMTP autenticadas de larga vida, en lugar de abrir
+ * TCP + TLS + AUTH por mensaje con {@code Transport.send}.
+ * <ul>
+ *   <li>Cada hilo ({@code mail.queue.connections}) mantiene su conexión y envía por ella los mensajes que
+ *       van llegando, hasta {@code mail.queue.messages.per.connection}; la cierra (QUIT) tras
+ *       {@code mail.queue.idle.seconds} sin trabajo.</li>
+ *   <li>La cola es acotada ({@code mail.queue.capacity}); llena, {@link #submit} falla con
+ *       {@link QueueFullException}.</li>
+ *   <li>Si una conexión reutilizada resulta caída (el servidor la cerró), se reenvía en el acto por una nueva.
+ *       Los demás fallos transitorios reintentan con espera exponencial y jitter hasta
+ *       {@code mail.queue.max.attempts}; un rechazo 5xx o de autenticación falla sin reintentar.</li>
+ * </ul>
+ */
+public class MailQueue {
+
+    /** La cola está llena; el mensaje no se encoló. */
+    public static class QueueFullException extends MessagingException {
+        public QueueFullException(int capacity) {
+            super("Cola de correo llena (" + capacity + " mensajes)");
+        }
+    }
+
+    /** Abre una conexión SMTP ya autenticada (reemplazable en pruebas). */
+    interface Connector {
+        Transport connect() throws MessagingException;
+    }
+
+    private static volatile MailQueue shared;
+
+    /** Cola compartida; la crea el primer {@link MailService} con SMTP configurado. */
+    static MailQueue shared(Connector connector) {
+        MailQueue s = shared;
+        if (s == null) {
+            synchronized (MailQueue.class) {
+                if (shared == null) {
+                    shared = new MailQueue(connector,
+                        (int) ConfigLoader.getLongSetting("MAIL_QUEUE_CONNECTIONS", "mail.queue.connections", 2),
+                        (int) ConfigLoader.getLongSetting("MAIL_QUEUE_CAPACITY", "mail.queue.capacity", 500),
+                        (int) ConfigLoader.getLongSetting("MAIL_QUEUE_MESSAGES_PER_CONNECTION",
+                            "mail.queue.messages.per.connection", 50),
+                        ConfigLoader.getLongSetting("MAIL_QUEUE_IDLE_SECONDS", "mail.queue.idle.seconds", 30) * 1000L,
+                        (int) ConfigLoader.getLongSetting("MAIL_QUEUE_MAX_ATTEMPTS", "mail.queue.max.attempts", 3),
+                        ConfigLoader.getLongSetting("MAIL_QUEUE_RETRY_BASE_MS", "mail.queue.retry.base.ms", 1_000),
+                        ConfigLoader.getLongSetting("MAIL_QUEUE_RETRY_MAX_MS", "mail.queue.retry.max.ms", 10_000),
+                        ConfigLoader.getLongSetting("MAIL_QUEUE_SEND_TIMEOUT_SECONDS",
+                            "mail.queue.send.timeout.seconds", 60) * 1000L,
+                        System::currentTimeMillis);
+                }
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    /** Estadísticas de la cola compartida, o solo {@code started=false} si no hay SMTP configurado. */
+    public static Map<String, Object> sharedStats() {
+        MailQueue s = shared;
+        if (s != null) {
+            return s.stats();
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("started", false);
+        return m;
+    }
+
+    /** Detiene la cola compartida si llegó a crearse; los mensajes aún en cola fallan. */
+    public static void stopShared() {
+        MailQueue s = shared;
+        if (s != null) {
+            s.stop();
+        }
+    }
+
+    /** Mensaje encolado; {@code result} se completa al enviarse o al fallar definitivamente. */
+    private static final class Item {
+        final MimeMessage message;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        int attempts;
+
+        Item(MimeMessage message) {
+            this.message = message;
+        }
+    }
+
+    private final Connector connector;
+    private final BlockingQueue<Item> queue;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retries;
+    private final int capacity;
+    private final int messagesPerConnection;
+    private final long idleMillis;
+    private final int maxAttempts;
+    private final RetryBackoff backoff;
+    private final long sendTimeoutMillis;
+    private final LongSupplier clock;
+    private volatile boolean running = true;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong reconnected = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicInteger connectionsOpen = new AtomicInteger();
+    private final AtomicLong sendTotalMillis = new AtomicLong();
+    private final AtomicLong sendMaxMillis = new AtomicLong();
+    private volatile String lastError;
+
+    MailQueue(Connector connector, int poolSize, int capacity, int messagesPerConnection, long idleMillis,
+              int maxAttempts, long retryBaseMillis, long retryMaxMillis, long sendTimeoutMillis, LongSupplier clock) {
+        this.connector = connector;
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.messagesPerConnection = Math.max(1, messagesPerConnection);
+        this.idleMillis = Math.max(1, idleMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoff = new RetryBackoff(retryBaseMillis, retryMaxMillis);
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.clock = clock;
+        int threads = Math.max(1, poolSize);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "mail-smtp-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.retries = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mail-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Encola el mensaje y vuelve enseguida.
+     * @return se completa al enviarse, o con la {@link MessagingException} del último intento
+     * @throws QueueFullException si la cola está llena
+     */
+    public CompletableFuture<Void> submit(MimeMessage message) throws MessagingException {
+        if (!running) {
+            throw new MessagingException("Cola de correo detenida");
+        }
+        message.saveChanges(); // lo hace Transport.send; sendMessage no
+        Item item = new Item(message);
+        if (!queue.offer(item)) {
+            rejected.incrementAndGet();
+            throw new QueueFullException(capacity);
+        }
+        return item.result;
+    }
+
+    /**
+     * Encola el mensaje y espera a que salga (lo usa {@link OutboxDispatcher}, que guarda el evento y reintenta
+     * si falla). Si no sale en {@code mail.queue.send.timeout.seconds} se retira de la cola, salvo que ya se
+     * esté enviando.
+     */
+    public void send(MimeMessage message) throws MessagingException {
+        CompletableFuture<Void> result = submit(message);
+        try {
+            result.get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MessagingException) {
+                throw (MessagingException) e.getCause();
+            }
+            throw new MessagingException("Error enviando correo: " + e.getCause(), (Exception) e.getCause());
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            throw new MessagingException("Correo sin enviar tras " + sendTimeoutMillis + " ms en la cola");
+        } catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Envío de correo interrumpido");
+        }
+    }
+
+    /** Bucle de un hilo del pool: una conexión propia que se reutiliza mientras haya mensajes. */
+    private void work() {
+        Transport connection = null;
+        int sentOnConnection = 0;
+        try {
+            while (running) {
+                Item item = queue.poll(idleMillis, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    connection = close(connection); // sin trabajo: no retener la sesión en el servidor
+                    continue;
+                }
+                if (item.result.isDone()) {
+                    continue; // el que esperaba desistió
+                }
+                if (connection != null && sentOnConnection >= messagesPerConnection) {
+                    connection = close(connection);
+                }
+                boolean reused = connection != null;
+                try {
+                    if (connection == null) {
+                        connection = open();
+                        sentOnConnection = 0;
+                    }
+                    try {
+                        transmit(connection, item);
+                    } catch (MessagingException e) {
+                        if (!reused || isPermanent(e)) {
+                            throw e;
+                        }
+                        // la conexión se cayó estando ociosa: se reenvía por una nueva sin contar intento
+                        reconnected.incrementAndGet();
+                        close(connection);
+                        connection = open();
+                        sentOnConnection = 0;
+                        transmit(connection, item);
+                    }
+                    sentOnConnection++;
+                    sent.incrementAndGet();
+                    item.result.complete(null);
+                } catch (MessagingException e) {
+                    connection = close(connection); // estado de la sesión SMTP incierto
+                    failed(item, e);
+                } catch (RuntimeException e) {
+                    connection = close(connection);
+                    lastError = String.valueOf(e.getMessage());
+                    failed.incrementAndGet();
+                    item.result.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(connection);
+        }
+    }
+
+    private Transport open() throws MessagingException {
+        Transport t = connector.connect();
+        connectionsOpened.incrementAndGet();
+        connectionsOpen.incrementAndGet();
+        return t;
+    }
+
+    private Transport close(Transport connection) {
+        if (connection != null) {
+            connectionsOpen.decrementAndGet();
+            try {
+                connection.close();
+            } catch (MessagingException ignored) {
+                // el servidor ya la había cerrado
+            }
+        }
+        return null;
+    }
+
+    private void transmit(Transport connection, Item item) throws MessagingException {
+        long start = clock.getAsLong();
+        try {
+            connection.sendMessage(item.message, item.message.getAllRecipients());
+        } finally {
+            long elapsed = clock.getAsLong() - start;
+            sendTotalMillis.addAndGet(elapsed);
+            sendMaxMillis.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    private void failed(Item item, MessagingException e) {
+        lastError = e.getMessage();
+        item.attempts++;
+        if (isPermanent(e) || item.attempts >= maxAttempts || !running) {
+            failed.incrementAndGet();
+            item.result.completeExceptionally(e);
+            return;
+        }
+        retried.incrementAndGet();
+        retries.schedule(() -> {
+            if (!item.result.isDone() && !queue.offer(item)) {
+                rejected.incrementAndGet();
+                item.result.completeExceptionally(new QueueFullException(capacity));
+            }
+        }, backoff.delay(item.attempts), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rechazos que no se arreglan reintentando: respuesta 5xx del servidor (destinatario o mensaje) o
+     * credenciales inválidas. Las 4xx y los cortes de conexión son transitorios.
+     */
+    static boolean isPermanent(MessagingException e) {
+        for (Exception x = e; x != null;
+             x = x instanceof MessagingException ? ((MessagingException) x).getNextException() : null) {
+            if (x instanceof SMTPSendFailedException) {
+                return ((SMTPSendFailedException) x).getReturnCode() >= 500;
+            }
+            if (x instanceof SMTPAddressFailedException) {
+                return ((SMTPAddressFailedException) x).getReturnCode() >= 500;
+            }
+        }
+        return e instanceof AuthenticationFailedException || e instanceof SendFailedException;
+    }
+
+    /** Cierra las conexiones (QUIT) y hace fallar lo que quedó en cola. */
+    public void stop() {
+        running = false;
+        retries.shutdownNow();
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Item> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Item item : pending) {
+            item.result.completeExceptionally(new MessagingException("Cola de correo detenida"));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long done = sent.get() + failed.get();
+        m.put("started", true);
+        m.put("sent", sent.get());
+        m.put("failed", failed.get());
+        m.put("retried", retried.get());
+        m.put("reconnected", reconnected.get());
+        m.put("rejected", rejected.get());
+        m.put("queued", queue.size());
+        m.put("capacity", capacity);
+        m.put("connectionsOpen", connectionsOpen.get());
+        m.put("connectionsOpened", connectionsOpened.get());
+        m.put("messagesPerConnection", connectionsOpened.get() > 0
+            ? (double) sent.get() / connectionsOpened.get() : 0.0);
+        m.put("avgSendMs", done > 0 ? sendTotalMillis.get() / done : 0L);
+        m.put("maxSendMs", sendMaxMillis.get());
+        m.put("lastError", lastError);
+        return m;
+    }
+}
@@ -1,5 +1,6 @@
 package com.agencias.backend.service;
 
+import com.agencias.backend.config.ConfigLoader;
 import com.agencias.backend.model.OrderHeader;
 import com.agencias.backend.model.OrderItem;
 import com.agencias.backend.model.Part;
@@ -9,13 +10,16 @@ import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import jakarta.mail.*;
 import jakarta.mail.internet.*;
 
 /**
- * Servicio de envío de correo. Si no hay SMTP configurado, simula el envío (log).
+ * Servicio de envío de correo. Si no hay SMTP configurado, simula el envío (log). Los mensajes salen por
+ * {@link MailQueue}, que reutiliza unas pocas conexiones SMTP autenticadas.
  */
 public class MailService {
 
@@ -24,6 +28,8 @@ public class MailService {
     private final String user;
     private final String password;
     private final boolean enabled;
+    private final Session session;
+    private final MailQueue queue;
 
     public MailService() {
         Properties mailProps = loadMailProperties();
@@ -46,6 +52,29 @@ public class MailService {
         if (!enabled && (host != null || user != null)) {
             System.out.println("[MailService] Correo no enviado: configura mail.sender.email y mail.sender.password en mail.properties (o MAIL_USER y MAIL_PASSWORD) para enviar correos reales.");
         }
+        this.session = enabled ? smtpSession() : null;
+        this.queue = enabled ? MailQueue.shared(this::connect) : null;
+    }
+
+    private Session smtpSession() {
+        String timeout =
+            String.valueOf(ConfigLoader.getLongSetting("MAIL_SMTP_TIMEOUT_MS", "mail.smtp.timeout.ms", 15_000));
+        Properties props = new Properties();
+        props.put("mail.smtp.host", host);
+        props.put("mail.smtp.port", String.valueOf(port));
+        props.put("mail.smtp.auth", "true");
+        props.put("mail.smtp.starttls.enable", "true");
+        props.put("mail.smtp.connectiontimeout", timeout);
+        props.put("mail.smtp.timeout", timeout);
+        props.put("mail.smtp.writetimeout", timeout);
+        return Session.getInstance(props);
+    }
+
+    /** Conexión autenticada para el pool de {@link MailQueue}. */
+    private Transport connect() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        transport.connect(host, port, user, password);
+        return transport;
     }
 
     private static Properties loadMailProperties() {
@@ -78,23 +107,26 @@ public class MailService {
 
     /**
      * Envía un correo con el detalle del pedido al comprador.
-     * Si SMTP no está configurado, escribe el contenido en log (simulación).
+     * Si SMTP no está configurado, escribe el contenido en log (simulación). No espera al servidor SMTP: el
+     * mensaje queda en {@link MailQueue} y un fallo solo se registra en log.
      */
     public void sendOrderConfirmation(String toEmail, String customerName, OrderHeader order,
                                        List<OrderItem> items, Function<Long, Optional<Part>> partById) {
         String subject = "Confirmación de pedido #" + order.getOrderNumber();
-        String htmlBody = buildOrderEmailHtml(order, items, customerName, partById);
+        enqueue(List.of(toEmail), subject, buildOrderEmailHtml(order, items, customerName, partById),
+            "[MailService] Error enviando correo real: ");
+    }
 
-        if (enabled) {
-            try {
-                sendMail(toEmail, subject, htmlBody);
-            } catch (Exception e) {
-                System.err.println("[MailService] Error enviando correo real: " + e.getMessage());
-                logSimulatedEmail(toEmail, subject, htmlBody);
-            }
-        } else {
-            logSimulatedEmail(toEmail, subject, htmlBody);
-        }
+    /**
+     * Igual que {@link #sendOrderConfirmation} pero propaga el error de SMTP (para que el despachador de
+     * OUTBOX_EVENT lo reintente).
+     */
+    public void deliverOrderConfirmation(String toEmail, String customerName, OrderHeader order,
+                                         List<OrderItem> items, Function<Long, Optional<Part>> partById)
+        throws MessagingException {
+        String subject = "Confirmación de pedido #" + order.getOrderNumber();
+        String htmlBody = buildOrderEmailHtml(order, items, customerName, partById);
+        deliver(List.of(toEmail), subject, htmlBody);
     }
 
     private void logSimulatedEmail(String to, String subject, String htmlBody) {
@@ -106,31 +138,64 @@ public class MailService {
         System.out.println("------------------------------------");
     }
 
-    private void sendMail(String to, String subject, String htmlContent) throws MessagingException {
-        Properties props = new Properties();
-        props.put("mail.smtp.host", host);
-        props.put("mail.smtp.port", String.valueOf(port));
-        props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.starttls.enable", "true");
+    /**
+     * Envía por SMTP (un solo mensaje para todos los destinatarios, en Bcc si son varios) y espera a que salga de
+     * {@link MailQueue}; si SMTP no está configurado, simula el envío en el log.
+     */
+    private void deliver(List<String> to, String subject, String htmlBody) throws MessagingException {
+        if (enabled) {
+            queue.send(buildMessage(to, subject, htmlBody));
+        } else {
+            logSimulatedEmail(String.join(", ", to), subject, htmlBody);
+        }
+    }
 
-        Session session = Session.getInstance(props, new Authenticator() {
-            @Override
-            protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(user, password != null ? password : "");
-            }
-        });
+    /** Como {@link #deliver} pero sin esperar; los errores solo se registran con {@code errorPrefix}. */
+    private void enqueue(List<String> to, String subject, String htmlBody, String errorPrefix) {
+        if (!enabled) {
+            logSimulatedEmail(String.join(", ", to), subject, htmlBody);
+            return;
+        }
+        try {
+            CompletableFuture<Void> result = queue.submit(buildMessage(to, subject, htmlBody));
+            result.whenComplete((ok, e) -> {
+                if (e != null) {
+                    System.err.println(errorPrefix + e.getMessage());
+                }
+            });
+        } catch (MessagingException e) {
+            System.err.println(errorPrefix + e.getMessage());
+        }
+    }
 
+    private MimeMessage buildMessage(List<String> to, String subject, String htmlContent) throws MessagingException {
         MimeMessage msg = new MimeMessage(session);
         try {
             msg.setFrom(new InternetAddress(user, "Fábrica - Agencias Vehículos", "UTF-8"));
         } catch (UnsupportedEncodingException e) {
             msg.setFrom(new InternetAddress(user));
         }
-        msg.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+        setRecipients(msg, user, to);
         msg.setSubject(subject, "UTF-8");
         msg.setContent(htmlContent, "text/html; charset=UTF-8");
+        return msg;
+    }
 
-        Transport.send(msg);
+    /**
+     * Un destinatario va en To. Con varios (los admins de mail.admin.emails) van todos en Bcc y en To el remitente,
+     * para que ninguno vea las direcciones de los demás; sale igual un solo mensaje por el pool SMTP.
+     */
+    static void setRecipients(MimeMessage msg, String sender, List<String> to) throws MessagingException {
+        InternetAddress[] recipients = new InternetAddress[to.size()];
+        for (int i = 0; i < recipients.length; i++) {
+            recipients[i] = new InternetAddress(to.get(i).trim());
+        }
+        if (recipients.length == 1) {
+            msg.setRecipients(Message.RecipientType.TO, recipients);
+        } else {
+            msg.setRecipient(Message.RecipientType.TO, new InternetAddress(sender));
+            msg.setRecipients(Message.RecipientType.BCC, recipients);
+        }
     }
 
     private String buildOrderEmailHtml(OrderHeader order, List<OrderItem> items, String customerName,
@@ -172,8 +237,22 @@ public class MailService {
      */
     public void sendOrderStatusUpdate(String toEmail, String customerName, String orderNumber, String newStatus,
                                        String comment, String trackingNumber, Integer etaDays) {
+        enqueue(List.of(toEmail), "Actualización de pedido #" + orderNumber,
+            buildStatusEmailHtml(customerName, orderNumber, newStatus, comment, trackingNumber, etaDays),
+            "[MailService] Error enviando correo de actualización: ");
+    }
+
+    /** Igual que {@link #sendOrderStatusUpdate} pero espera el envío y propaga el error de SMTP. */
+    public void deliverOrderStatusUpdate(String toEmail, String customerName, String orderNumber, String newStatus,
+                                         String comment, String trackingNumber, Integer etaDays)
+        throws MessagingException {
+        deliver(List.of(toEmail), "Actualización de pedido #" + orderNumber,
+            buildStatusEmailHtml(customerName, orderNumber, newStatus, comment, trackingNumber, etaDays));
+    }
+
+    private static String buildStatusEmailHtml(String customerName, String orderNumber, String newStatus,
+                                               String comment, String trackingNumber, Integer etaDays) {
         String statusLabel = formatStatusLabel(newStatus);
-        String subject = "Actualización de pedido #" + orderNumber;
         StringBuilder body = new StringBuilder();
         body.append("<!DOCTYPE html><html><head><meta charset='UTF-8'></head><body style='font-family: sans-serif;'>");
         body.append("<h2>Actualización de tu pedido</h2>");
@@ -191,17 +270,7 @@ public class MailService {
         }
         body.append("<p>Puedes ver el detalle en <strong>Mis Pedidos</strong> en la aplicación.</p>");
         body.append("<p>— Fábrica Agencias Vehículos</p></body></html>");
-
-        String htmlBody = body.toString();
-        if (enabled) {
-            try {
-                sendMail(toEmail, subject, htmlBody);
-            } catch (Exception e) {
-                System.err.println("[MailService] Error enviando correo de actualización: " + e.getMessage());
-            }
-        } else {
-            logSimulatedEmail(toEmail, subject, htmlBody);
-        }
+        return body.toString();
     }
 
     private static String formatStatusLabel(String status) {
@@ -223,11 +292,24 @@ public class MailService {
     public void sendLowStockAlert(Part part) {
         List<String> toList = getAdminEmails();
         if (toList.isEmpty()) return;
+        enqueue(toList, "Alerta: bajo stock - " + part.getTitle(), buildLowStockHtml(part),
+            "[MailService] Error enviando alerta bajo stock: ");
+    }
 
+    /**
+     * Igual que {@link #sendLowStockAlert} pero espera el envío y propaga el error de SMTP. Sale un solo mensaje
+     * con todos los destinatarios en Bcc.
+     */
+    public void deliverLowStockAlert(Part part) throws MessagingException {
+        List<String> toList = getAdminEmails();
+        if (toList.isEmpty()) return;
+        deliver(toList, "Alerta: bajo stock - " + part.getTitle(), buildLowStockHtml(part));
+    }
+
+    private static String buildLowStockHtml(Part part) {
         int available = (part.getStockQuantity() != null ? part.getStockQuantity() : 0)
             - (part.getReservedQuantity() != null ? part.getReservedQuantity() : 0);
-        String subject = "Alerta: bajo stock - " + part.getTitle();
-        String htmlBody = "<!DOCTYPE html><html><head><meta charset='UTF-8'></head><body style='font-family: sans-serif;'>"
+        return "<!DOCTYPE html><html><head><meta charset='UTF-8'></head><body style='font-family: sans-serif;'>"
             + "<h2>Alerta de bajo stock</h2>"
             + "<p>El siguiente producto ha llegado al umbral de bajo inventario:</p>"
             + "<ul>"
@@ -237,18 +319,41 @@ public class MailService {
             + "<li><strong>Umbral:</strong> " + (part.getLowStockThreshold() != null ? part.getLowStockThreshold() : 5) + "</li>"
             + "</ul>"
             + "<p>— Fábrica Agencias Vehículos</p></body></html>";
+    }
 
-        for (String to : toList) {
-            if (enabled) {
-                try {
-                    sendMail(to.trim(), subject, htmlBody);
-                } catch (Exception e) {
-                    System.err.println("[MailService] Error enviando alerta bajo stock a " + to + ": " + e.getMessage());
-                }
-            } else {
-                logSimulatedEmail(to.trim(), subject, htmlBody);
-            }
+    /**
+     * Resumen de stock bajo a los correos de mail.admin.emails: un solo mensaje con todos los repuestos en o bajo
+     * su umbral, marcando los que lo cruzaron desde el resumen anterior ({@code newlyLow}). Espera el envío y
+     * propaga el error de SMTP.
+     */
+    public void deliverLowStockDigest(List<Part> parts, Set<Long> newlyLow) throws MessagingException {
+        List<String> toList = getAdminEmails();
+        if (toList.isEmpty() || parts.isEmpty()) return;
+
+        StringBuilder rows = new StringBuilder();
+        int newCount = 0;
+        for (Part part : parts) {
+            boolean isNew = newlyLow.contains(part.getPartId());
+            if (isNew) newCount++;
+            int available = (part.getStockQuantity() != null ? part.getStockQuantity() : 0)
+                - (part.getReservedQuantity() != null ? part.getReservedQuantity() : 0);
+            rows.append("<tr><td>").append(escape(part.getTitle()))
+                .append(isNew ? " <strong>(nuevo)</strong>" : "")
+                .append("</td><td>").append(escape(part.getPartNumber()))
+                .append("</td><td>").append(available)
+                .append("</td><td>").append(part.getLowStockThreshold() != null ? part.getLowStockThreshold() : 5)
+                .append("</td></tr>");
         }
+        String htmlBody = "<!DOCTYPE html><html><head><meta charset='UTF-8'></head><body style='font-family: sans-serif;'>"
+            + "<h2>Resumen de bajo stock</h2>"
+            + "<p>" + parts.size() + " producto(s) en o bajo su umbral de inventario"
+            + " (" + newCount + " nuevo(s) desde el resumen anterior):</p>"
+            + "<table border='1' cellpadding='8' style='border-collapse: collapse;'>"
+            + "<thead><tr><th>Producto</th><th>No. parte</th><th>Disponible</th><th>Umbral</th></tr></thead>"
+            + "<tbody>" + rows + "</tbody>"
+            + "</table>"
+            + "<p>— Fábrica Agencias Vehículos</p></body></html>";
+        deliver(toList, "Resumen: bajo stock - " + parts.size() + " producto(s)", htmlBody);
     }
 
     private List<String> getAdminEmails() {
@@ -0,0 +1,140 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.StaleStateException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reintentos ante conflictos de versión ({@code @Version} en {@link com.agencias.backend.model.Part}): cada intento
+ * vuelve a leer la fila y aplica el cambio sobre el valor actual. Entre intentos espera lo que indique
+ * {@link RetryBackoff} (creciente y con una parte al azar) para que los pedidos que chocan sobre el mismo repuesto
+ * no vuelvan a chocar en el mismo instante.
+ */
+public final class OptimisticRetry {
+
+    /** Se agotaron los intentos; el cambio no se aplicó. */
+    public static class ConflictException extends RuntimeException {
+        public ConflictException(String operation, Throwable cause) {
+            super("Conflicto de concurrencia en " + operation + "; intente de nuevo", cause);
+        }
+    }
+
+    /** Pausa entre intentos (reemplazable en pruebas). */
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private static final OptimisticRetry SHARED = new OptimisticRetry(
+        (int) ConfigLoader.getLongSetting("CATALOG_OPTIMISTIC_MAX_ATTEMPTS", "catalog.optimistic.max.attempts", 5),
+        ConfigLoader.getLongSetting("CATALOG_OPTIMISTIC_BACKOFF_MS", "catalog.optimistic.backoff.ms", 10),
+        ConfigLoader.getLongSetting("CATALOG_OPTIMISTIC_BACKOFF_MAX_MS", "catalog.optimistic.backoff.max.ms", 200),
+        Thread::sleep);
+
+    public static OptimisticRetry shared() {
+        return SHARED;
+    }
+
+    private static final class Counters {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong recovered = new AtomicLong();
+        final AtomicLong exhausted = new AtomicLong();
+    }
+
+    private final int maxAttempts;
+    private final RetryBackoff backoff;
+    private final Sleeper sleeper;
+    private final Map<String, Counters> byOperation = new ConcurrentHashMap<>();
+
+    OptimisticRetry(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Sleeper sleeper) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoff = new RetryBackoff(baseDelayMillis, maxDelayMillis);
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Ejecuta {@code action} (leer, modificar y guardar) y la repite desde cero si otro proceso modificó la fila.
+     * Las demás excepciones se propagan sin reintentar.
+     * @param operation nombre para las métricas (p. ej. {@code reserveStock})
+     * @throws ConflictException si todos los intentos chocaron
+     */
+    public <T> T run(String operation, Supplier<T> action) {
+        Counters c = byOperation.computeIfAbsent(operation, k -> new Counters());
+        c.calls.incrementAndGet();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = action.get();
+                if (attempt > 1) {
+                    c.recovered.incrementAndGet();
+                }
+                return result;
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                c.conflicts.incrementAndGet();
+                if (attempt >= maxAttempts) {
+                    c.exhausted.incrementAndGet();
+                    throw new ConflictException(operation, e);
+                }
+                pause(attempt, operation, e);
+            }
+        }
+    }
+
+    private void pause(int attempt, String operation, RuntimeException conflict) {
+        long delay = backoff.delay(attempt);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException(operation, conflict);
+        }
+    }
+
+    /** true si la causa (directa o anidada, p. ej. dentro de un RollbackException) es un conflicto de versión. */
+    static boolean isConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof OptimisticLockException || t instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("maxAttempts", maxAttempts);
+        long calls = 0, conflicts = 0, recovered = 0, exhausted = 0;
+        Map<String, Object> ops = new LinkedHashMap<>();
+        for (Map.Entry<String, Counters> e : new TreeMap<>(byOperation).entrySet()) {
+            Counters c = e.getValue();
+            Map<String, Object> op = new LinkedHashMap<>();
+            op.put("calls", c.calls.get());
+            op.put("conflicts", c.conflicts.get());
+            op.put("recovered", c.recovered.get());
+            op.put("exhausted", c.exhausted.get());
+            ops.put(e.getKey(), op);
+            calls += c.calls.get();
+            conflicts += c.conflicts.get();
+            recovered += c.recovered.get();
+            exhausted += c.exhausted.get();
+        }
+        m.put("calls", calls);
+        m.put("conflicts", conflicts);
+        m.put("recovered", recovered);
+        m.put("exhausted", exhausted);
+        m.put("operations", ops);
+        return m;
+    }
+}
@@ -0,0 +1,359 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.OrderHeader;
+import com.agencias.backend.model.OrderIntake;
+import com.agencias.backend.repository.OrderIntakeRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Recepción asíncrona de pedidos: {@link #submit} valida la forma de la solicitud, la guarda en ORDER_INTAKE
+ * ({@code PENDING}) y devuelve el ticket sin esperar a stock, inserts, correo ni webhook; un conjunto fijo de
+ * carriles de un solo worker la convierte en pedido.
+ * <ul>
+ *   <li>El carril se elige por el menor partId del pedido: los pedidos que empiezan por el mismo repuesto se
+ *       procesan en el orden en que llegaron (el stock igual queda protegido por los UPDATE condicionados).</li>
+ *   <li>Los workers usan hilos virtuales si la JVM los tiene (Java 21+); si no, hilos de plataforma.</li>
+ *   <li>Si la cola del carril está llena, la solicitud queda pendiente en BD y la toma el barrido periódico,
+ *       que también reintenta los errores transitorios y recupera las que quedaron {@code PROCESSING} en un
+ *       nodo que se detuvo.</li>
+ * </ul>
+ */
+public class OrderIntakeService {
+
+    /** Convierte la solicitud en pedido; {@link IllegalArgumentException} = rechazo definitivo, sin reintento. */
+    interface Processor {
+        OrderHeader place(OrderIntake intake, List<Map<String, Object>> items);
+    }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> ITEMS = new TypeReference<>() { };
+    /** Solicitudes pendientes que se leen por barrido. */
+    private static final int SWEEP_BATCH = 200;
+    /** Cada cuántos barridos se borran las solicitudes terminadas antiguas. */
+    private static final int PURGE_EVERY_SWEEPS = 100;
+    private static final boolean VIRTUAL_THREADS = virtualThreadsAvailable();
+
+    private static volatile OrderIntakeService shared;
+
+    /** Instancia compartida (carriles y barrido comunes a todos los recursos). */
+    public static OrderIntakeService shared(EntityManagerFactory emf) {
+        OrderIntakeService s = shared;
+        if (s == null) {
+            synchronized (OrderIntakeService.class) {
+                if (shared == null) {
+                    OrderService orders = new OrderService(emf);
+                    shared = new OrderIntakeService(new OrderIntakeRepository(emf),
+                        (intake, items) -> placeWith(orders, intake, items),
+                        (int) ConfigLoader.getLongSetting("ORDERS_INTAKE_WORKERS", "orders.intake.workers", 4),
+                        (int) ConfigLoader.getLongSetting("ORDERS_INTAKE_QUEUE_CAPACITY",
+                            "orders.intake.queue.capacity", 1000),
+                        (int) ConfigLoader.getLongSetting("ORDERS_INTAKE_MAX_ATTEMPTS", "orders.intake.max.attempts", 5),
+                        ConfigLoader.getLongSetting("ORDERS_INTAKE_RETRY_SECONDS", "orders.intake.retry.seconds", 10)
+                            * 1000L,
+                        ConfigLoader.getLongSetting("ORDERS_INTAKE_STALE_SECONDS", "orders.intake.stale.seconds", 300)
+                            * 1000L,
+                        ConfigLoader.getLongSetting("ORDERS_INTAKE_RETENTION_HOURS", "orders.intake.retention.hours", 72)
+                            * 3_600_000L,
+                        laneThreadFactory(),
+                        System::currentTimeMillis);
+                }
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    private static OrderHeader placeWith(OrderService orders, OrderIntake intake, List<Map<String, Object>> items) {
+        // Reintento tras una caída entre crear el pedido y marcar la solicitud: el pedido ya existe
+        OrderHeader existing = orders.getOrderByNumber(intake.getOrderNumber());
+        if (existing != null) {
+            return existing;
+        }
+        return orders.createOrder(intake.getUserId(), items, intake.getOrderOrigin(), intake.getOrderNumber(),
+            Integer.valueOf(1).equals(intake.getSendConfirmation()), intake.getSourceEnterpriseId());
+    }
+
+    private final OrderIntakeRepository repo;
+    private final Processor processor;
+    private final ThreadPoolExecutor[] lanes;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final long staleMillis;
+    private final long retentionMillis;
+    private final LongSupplier clock;
+    /** Tickets ya encolados en un carril de este nodo (el barrido no los vuelve a encolar). */
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService sweeper;
+    private int sweeps;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+
+    OrderIntakeService(OrderIntakeRepository repo, Processor processor, int laneCount, int laneCapacity, int maxAttempts, long retryDelayMillis, long staleMillis,
+                       long retentionMillis, ThreadFactory threadFactory, LongSupplier clock) {
+        this.repo = repo;
+        this.processor = processor;
+        this.lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, laneCapacity)), threadFactory);
+        }
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = Math.max(0, retryDelayMillis);
+        this.staleMillis = staleMillis;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Guarda la solicitud y la encola; el pedido se crea después (ver {@link #find}).
+     * @param items artículos {@code [{partId, qty}, ...]}, validados aquí solo en su forma
+     * @param sendConfirmation enviar el correo de confirmación al crear el pedido
+     * @throws IllegalArgumentException si falta userId o algún artículo es inválido
+     */
+    public OrderIntake submit(Long userId, Object items, String xOrderOriginHeader, boolean sendConfirmation) {
+        return submit(userId, items, xOrderOriginHeader, sendConfirmation, null);
+    }
+
+    /** @param sourceEnterpriseId distribuidora cuya api_key envió la solicitud (recibe el aviso del resultado) */
+    public OrderIntake submit(Long userId, Object items, String xOrderOriginHeader, boolean sendConfirmation,
+                              Long sourceEnterpriseId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId es obligatorio");
+        }
+        List<Map<String, Object>> list = OrderService.itemsOf(items);
+        long laneKey = OrderService.quantitiesByPart(list).firstKey();
+
+        OrderIntake intake = new OrderIntake();
+        intake.setTicket(UUID.randomUUID().toString());
+        intake.setStatus(OrderIntake.PENDING);
+        intake.setUserId(userId);
+        intake.setOrderOrigin(OrderFlowRules.normalizeOrderOrigin(xOrderOriginHeader));
+        intake.setSourceEnterpriseId(sourceEnterpriseId);
+        intake.setPayload(toJson(list));
+        intake.setSendConfirmation(sendConfirmation ? 1 : 0);
+        intake.setOrderNumber(OrderNumberGenerator.shared().next());
+        Date now = new Date(clock.getAsLong());
+        intake.setCreatedAt(now);
+        intake.setUpdatedAt(now);
+        repo.insert(intake);
+        submitted.incrementAndGet();
+        dispatch(intake.getTicket(), laneKey);
+        return intake;
+    }
+
+    public Optional<OrderIntake> find(String ticket) {
+        return repo.findByTicket(ticket);
+    }
+
+    /** Inicia el barrido periódico (el primero recupera lo que quedó pendiente de una ejecución anterior). */
+    public synchronized void start(long sweepIntervalMillis) {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-intake-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, 0, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Detiene el barrido y los carriles; lo que quede en cola sigue {@code PENDING} en BD. */
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    static int laneOf(long partId, int laneCount) {
+        return Math.floorMod(Long.hashCode(partId), laneCount);
+    }
+
+    private void dispatch(String ticket, long laneKey) {
+        if (!queued.add(ticket)) {
+            return;
+        }
+        try {
+            lanes[laneOf(laneKey, lanes.length)].execute(() -> process(ticket));
+        } catch (RejectedExecutionException e) {
+            // Cola llena (o apagando): queda PENDING en BD y la toma el barrido
+            queued.remove(ticket);
+            deferred.incrementAndGet();
+        }
+    }
+
+    void process(String ticket) {
+        try {
+            if (!repo.claim(ticket, new Date(clock.getAsLong()))) {
+                return;
+            }
+            OrderIntake intake = repo.findByTicket(ticket).orElse(null);
+            if (intake == null) {
+                return;
+            }
+            // El aviso a la distribuidora se encola en OUTBOX_EVENT en la misma transacción que cierra la solicitud
+            try {
+                OrderHeader order = processor.place(intake, parseItems(intake.getPayload()));
+                intake.setStatus(OrderIntake.COMPLETED);
+                intake.setOrderId(order.getOrderId());
+                repo.complete(ticket, order.getOrderId(), new Date(clock.getAsLong()),
+                    DistributorOrderWebhookNotifier.intakeResultEvents(intake));
+                completed.incrementAndGet();
+            } catch (IllegalArgumentException e) {
+                intake.setStatus(OrderIntake.REJECTED);
+                intake.setErrorMessage(e.getMessage());
+                repo.fail(ticket, OrderIntake.REJECTED, e.getMessage(), new Date(clock.getAsLong()),
+                    DistributorOrderWebhookNotifier.intakeResultEvents(intake));
+                rejected.incrementAndGet();
+            } catch (RuntimeException e) {
+                String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                if (intake.getAttempts() < maxAttempts) {
+                    repo.release(ticket, error, new Date(clock.getAsLong()));
+                    retried.incrementAndGet();
+                    return;
+                }
+                intake.setStatus(OrderIntake.FAILED);
+                intake.setErrorMessage(error);
+                repo.fail(ticket, OrderIntake.FAILED, error, new Date(clock.getAsLong()),
+                    DistributorOrderWebhookNotifier.intakeResultEvents(intake));
+                failed.incrementAndGet();
+            }
+            OutboxDispatcher.nudgeShared();
+        } catch (RuntimeException e) {
+            // Sin BD: la solicitud queda como estaba y el barrido la retoma
+            System.err.println("Solicitud de pedido " + ticket + ": " + e.getMessage());
+        } finally {
+            queued.remove(ticket);
+        }
+    }
+
+    /** Recupera las {@code PROCESSING} abandonadas y encola las pendientes que no están en un carril de este nodo. */
+    void sweep() {
+        long now = clock.getAsLong();
+        recovered.addAndGet(repo.resetStale(new Date(now - staleMillis), new Date(now)));
+        for (OrderIntake intake : repo.findPendingBefore(new Date(now - retryDelayMillis), SWEEP_BATCH)) {
+            if (queued.contains(intake.getTicket())) {
+                continue;
+            }
+            long laneKey;
+            try {
+                laneKey = OrderService.quantitiesByPart(parseItems(intake.getPayload())).firstKey();
+            } catch (RuntimeException e) {
+                laneKey = 0; // el worker la rechazará con el motivo
+            }
+            dispatch(intake.getTicket(), laneKey);
+        }
+        if (++sweeps % PURGE_EVERY_SWEEPS == 0) {
+            repo.deleteFinishedBefore(new Date(now - retentionMillis));
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            System.err.println("Barrido de solicitudes de pedido: " + e.getMessage());
+        }
+    }
+
+    private static String toJson(List<Map<String, Object>> items) {
+        try {
+            return JSON.writeValueAsString(items);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Artículos inválidos");
+        }
+    }
+
+    private static List<Map<String, Object>> parseItems(String payload) {
+        try {
+            return JSON.readValue(payload, ITEMS);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Artículos ilegibles en la solicitud");
+        }
+    }
+
+    /** Hilos virtuales si la JVM los ofrece ({@code Thread.ofVirtual()}, Java 21+); si no, hilos daemon. */
+    static ThreadFactory laneThreadFactory() {
+        if (!VIRTUAL_THREADS) {
+            return platformThreadFactory();
+        }
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "order-intake-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return platformThreadFactory();
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "order-intake-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static boolean virtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("lanes", lanes.length);
+        m.put("virtualThreads", VIRTUAL_THREADS);
+        int backlog = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            backlog += lane.getQueue().size();
+        }
+        m.put("queued", backlog);
+        m.put("submitted", submitted.get());
+        m.put("completed", completed.get());
+        m.put("rejected", rejected.get());
+        m.put("failed", failed.get());
+        m.put("retried", retried.get());
+        m.put("deferred", deferred.get());
+        m.put("recovered", recovered.get());
+        return m;
+    }
+}
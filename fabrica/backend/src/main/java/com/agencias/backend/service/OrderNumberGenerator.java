@@ -0,0 +1,220 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.repository.SchedulerLeaseRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Números de pedido únicos y ordenados por tiempo: {@code ORD-<epochMillis>-<nodo 3 dígitos><secuencia 4 dígitos>}.
+ * <p>
+ * El estado (milisegundo y secuencia) vive en un único {@link AtomicLong} que se avanza con CAS, sin locks.
+ * Si en un milisegundo se agotan las {@value #MAX_SEQUENCE} + 1 secuencias, se toma prestado el milisegundo
+ * siguiente; si el reloj retrocede se sigue desde el último milisegundo usado. Así nunca se repite un número en
+ * el nodo, y el id de nodo evita choques entre nodos.
+ * </p>
+ * <p>
+ * El id de nodo es {@code order.node.id} si está configurado (distinto en cada backend); si no, {@link #start}
+ * toma uno libre en SCHEDULER_LEASE ({@code order-node-<id>}) y lo renueva mientras el proceso vive. Si no puede
+ * renovarlo antes de que venza deja de entregar números en vez de arriesgar un id que otro nodo ya pudo tomar.
+ * </p>
+ */
+public final class OrderNumberGenerator {
+
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1; // 4095: cabe en 4 dígitos
+    static final int MAX_NODE_ID = 999;
+    static final String NODE_LEASE_PREFIX = "order-node-";
+
+    private static volatile OrderNumberGenerator shared;
+    private static ScheduledExecutorService renewer;
+
+    /** @throws IllegalStateException si todavía no se llamó a {@link #start} */
+    public static OrderNumberGenerator shared() {
+        OrderNumberGenerator g = shared;
+        if (g == null) {
+            throw new IllegalStateException("Generador de números de pedido sin iniciar");
+        }
+        return g;
+    }
+
+    /**
+     * Inicia el generador compartido (al arrancar, antes de aceptar pedidos). Falla si {@code order.node.id} no es
+     * un número entre 0 y {@value #MAX_NODE_ID}, o si no queda ningún id libre en SCHEDULER_LEASE.
+     */
+    public static synchronized OrderNumberGenerator start(EntityManagerFactory emf) {
+        if (shared != null) {
+            return shared;
+        }
+        String configured = ConfigLoader.getSetting("ORDER_NODE_ID", "order.node.id");
+        if (configured != null) {
+            shared = new OrderNumberGenerator(parseNodeId(configured), System::currentTimeMillis);
+            return shared;
+        }
+        long leaseMillis = ConfigLoader.getLongSetting("ORDER_NODE_LEASE_SECONDS", "order.node.lease.seconds", 600)
+            * 1000L;
+        NodeLease lease = NodeLease.acquire(new SchedulerLeaseRepository(emf), SchedulerLeaseRepository.ownerId(),
+            leaseMillis, System::currentTimeMillis);
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-node-lease");
+            t.setDaemon(true);
+            return t;
+        });
+        renewer.scheduleWithFixedDelay(lease::renew, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+        shared = new OrderNumberGenerator(lease.nodeId, System::currentTimeMillis, lease);
+        System.out.println("Id de nodo para números de pedido: " + lease.nodeId);
+        return shared;
+    }
+
+    /** Detiene la renovación y suelta el id de nodo para que otro proceso lo reutilice sin esperar. */
+    public static synchronized void stopShared() {
+        OrderNumberGenerator g = shared;
+        shared = null;
+        if (renewer != null) {
+            renewer.shutdownNow();
+            renewer = null;
+        }
+        if (g != null && g.lease != null) {
+            g.lease.release();
+        }
+    }
+
+    /** Valor de {@code order.node.id}; no se ajusta con módulo para no repetir el id de otro nodo. */
+    static int parseNodeId(String value) {
+        int id;
+        try {
+            id = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("order.node.id no es un número: " + value);
+        }
+        if (id < 0 || id > MAX_NODE_ID) {
+            throw new IllegalStateException("order.node.id debe estar entre 0 y " + MAX_NODE_ID + ": " + value);
+        }
+        return id;
+    }
+
+    private final String nodePart;
+    private final LongSupplier clock;
+    /** Lease del id de nodo si se tomó de SCHEDULER_LEASE; null si vino de la configuración. */
+    private final NodeLease lease;
+    /** (milisegundo << SEQUENCE_BITS) | secuencia del último número entregado. */
+    private final AtomicLong state = new AtomicLong();
+
+    OrderNumberGenerator(int nodeId, LongSupplier clock) {
+        this(nodeId, clock, null);
+    }
+
+    OrderNumberGenerator(int nodeId, LongSupplier clock, NodeLease lease) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("order.node.id debe estar entre 0 y " + MAX_NODE_ID);
+        }
+        this.nodePart = String.format("%03d", nodeId);
+        this.clock = clock;
+        this.lease = lease;
+    }
+
+    /** @throws IllegalStateException si el lease del id de nodo venció sin poder renovarse */
+    public String next() {
+        if (lease != null && !lease.isHeld()) {
+            throw new IllegalStateException("Se perdió el id de nodo " + nodePart + " para números de pedido");
+        }
+        long packed = nextState();
+        long millis = packed >>> SEQUENCE_BITS;
+        long seq = packed & MAX_SEQUENCE;
+        StringBuilder sb = new StringBuilder(26).append("ORD-").append(millis).append('-').append(nodePart);
+        if (seq < 1000) sb.append('0');
+        if (seq < 100) sb.append('0');
+        if (seq < 10) sb.append('0');
+        return sb.append(seq).toString();
+    }
+
+    long nextState() {
+        while (true) {
+            long current = state.get();
+            long lastMillis = current >>> SEQUENCE_BITS;
+            long now = clock.getAsLong();
+            long next;
+            if (now > lastMillis) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // Mismo milisegundo (o reloj hacia atrás): siguiente secuencia; al desbordar pasa al ms siguiente
+                next = current + 1;
+            }
+            if (state.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Id de nodo tomado en SCHEDULER_LEASE. Mientras se renueve ningún otro proceso lo obtiene; si este proceso
+     * cae, el id queda libre al vencer el lease, y como el número lleva el milisegundo, el siguiente dueño ya no
+     * puede repetir los números anteriores.
+     */
+    static final class NodeLease {
+        final int nodeId;
+        private final SchedulerLeaseRepository leases;
+        private final String owner;
+        private final long leaseMillis;
+        private final LongSupplier clock;
+        /**
+         * Hasta cuándo el id es seguro según la última renovación exitosa: reloj local medido antes de pedirla, así
+         * que vence antes (nunca después) que el lease calculado con la hora de la BD.
+         */
+        private volatile long heldUntilMillis;
+
+        private NodeLease(int nodeId, SchedulerLeaseRepository leases, String owner, long leaseMillis,
+                          LongSupplier clock, long heldUntilMillis) {
+            this.nodeId = nodeId;
+            this.leases = leases;
+            this.owner = owner;
+            this.leaseMillis = leaseMillis;
+            this.clock = clock;
+            this.heldUntilMillis = heldUntilMillis;
+        }
+
+        /** Toma el primer id libre (0-{@value #MAX_NODE_ID}). */
+        static NodeLease acquire(SchedulerLeaseRepository leases, String owner, long leaseMillis, LongSupplier clock) {
+            for (int id = 0; id <= MAX_NODE_ID; id++) {
+                long now = clock.getAsLong();
+                if (leases.tryAcquire(NODE_LEASE_PREFIX + id, owner, leaseMillis)) {
+                    return new NodeLease(id, leases, owner, leaseMillis, clock, now + leaseMillis);
+                }
+            }
+            throw new IllegalStateException("No queda ningún id de nodo libre para números de pedido; "
+                + "configurar order.node.id");
+        }
+
+        boolean isHeld() {
+            return clock.getAsLong() < heldUntilMillis;
+        }
+
+        void renew() {
+            long now = clock.getAsLong();
+            try {
+                if (leases.tryAcquire(NODE_LEASE_PREFIX + nodeId, owner, leaseMillis)) {
+                    heldUntilMillis = now + leaseMillis;
+                } else {
+                    heldUntilMillis = 0;
+                    System.err.println("Otro nodo tomó el id " + nodeId + " de números de pedido");
+                }
+            } catch (RuntimeException e) {
+                // Se reintenta en la próxima renovación; el id sigue valiendo hasta que venza
+                System.err.println("No se pudo renovar el id de nodo " + nodeId + ": " + e.getMessage());
+            }
+        }
+
+        void release() {
+            try {
+                leases.release(NODE_LEASE_PREFIX + nodeId, owner);
+            } catch (RuntimeException e) {
+                System.err.println("No se pudo soltar el id de nodo " + nodeId + ": " + e.getMessage());
+            }
+        }
+    }
+}
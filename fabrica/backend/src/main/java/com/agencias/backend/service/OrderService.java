@@ -1,112 +1,311 @@
 package com.agencias.backend.service;
 
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.controller.dto.PedidoLoteResultadoDto;
 import com.agencias.backend.model.AppUser;
 import com.agencias.backend.model.OrderHeader;
 import com.agencias.backend.model.OrderItem;
 import com.agencias.backend.model.OrderStatusHistory;
+import com.agencias.backend.model.OutboxEvent;
 import com.agencias.backend.model.Part;
 import com.agencias.backend.repository.AppUserRepository;
+import com.agencias.backend.repository.KeysetCursor;
+import com.agencias.backend.repository.KeysetPage;
 import com.agencias.backend.repository.OrderRepository;
 import com.agencias.backend.repository.OrderItemRepository;
+import com.agencias.backend.repository.OrderSort;
 import com.agencias.backend.repository.OrderStatusRepository;
 import com.agencias.backend.repository.EnterpriseProfileRepository;
 import com.agencias.backend.repository.PartRepository;
 import com.agencias.backend.model.EnterpriseProfile;
+import com.agencias.backend.model.LowStockAlertState;
+import com.agencias.backend.repository.LowStockAlertRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityManagerFactory;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** Flujo: Iniciada → Preparación del pedido → Enviado → Entregado. No se puede volver atrás. */
 public class OrderService {
 
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /** Máximo de pedidos por llamada a {@link #createOrders}. */
+    public static final int MAX_BATCH_ORDERS =
+        (int) ConfigLoader.getLongSetting("ORDERS_BATCH_MAX_SIZE", "orders.batch.max.size", 500);
+
+    /** Máximo de pedidos por página en los listados paginados. */
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final OrderRepository orderRepo;
     private final OrderItemRepository itemRepo;
     private final OrderStatusRepository statusRepo;
     private final PartRepository partRepo;
     private final AppUserRepository userRepo;
     private final EnterpriseProfileRepository enterpriseProfileRepo;
+    private final LowStockAlertRepository lowStockAlertRepo;
     private final PartService partService;
     private final MailService mailService;
 
     public OrderService(EntityManagerFactory emf) {
+        this(emf, new OrderStatusRepository(emf));
+    }
+
+    OrderService(EntityManagerFactory emf, OrderStatusRepository statusRepo) {
         this.orderRepo = new OrderRepository(emf);
         this.itemRepo = new OrderItemRepository(emf);
-        this.statusRepo = new OrderStatusRepository(emf);
+        this.statusRepo = statusRepo;
         this.partRepo = new PartRepository(emf);
         this.userRepo = new AppUserRepository(emf);
         this.enterpriseProfileRepo = new EnterpriseProfileRepository(emf);
+        this.lowStockAlertRepo = new LowStockAlertRepository(emf);
         this.mailService = new MailService();
         this.partService = new PartService(emf, this.mailService);
     }
 
     public OrderHeader createOrder(Long userId, List<Map<String, Object>> items, String xOrderOriginHeader) {
+        return createOrder(userId, items, xOrderOriginHeader, null);
+    }
+
+    /**
+     * @param orderNumber número ya reservado (solicitudes asíncronas, ver {@link OrderIntakeService});
+     *                    null = generar uno nuevo
+     */
+    public OrderHeader createOrder(Long userId, List<Map<String, Object>> items, String xOrderOriginHeader,
+                                   String orderNumber) {
+        return createOrder(userId, items, xOrderOriginHeader, orderNumber, false);
+    }
+
+    /**
+     * @param confirmationMail encolar el correo de confirmación al comprador en la transacción del pedido
+     *                         (lo envía {@link OutboxDispatcher}, fuera de la petición)
+     */
+    public OrderHeader createOrder(Long userId, List<Map<String, Object>> items, String xOrderOriginHeader,
+                                   String orderNumber, boolean confirmationMail) {
+        return createOrder(userId, items, xOrderOriginHeader, orderNumber, confirmationMail, null);
+    }
+
+    /**
+     * @param sourceEnterpriseId distribuidora cuya api_key envió el pedido
+     *                           ({@link EnterpriseProfileService#enterpriseIdForApiKey}); recibe sus webhooks
+     */
+    public OrderHeader createOrder(Long userId, List<Map<String, Object>> items, String xOrderOriginHeader,
+                                   String orderNumber, boolean confirmationMail, Long sourceEnterpriseId) {
         if (items == null || items.isEmpty()) {
             throw new IllegalArgumentException("El pedido debe tener al menos un artículo");
         }
 
         if (userRepo.findById(userId).isEmpty()) {
-            throw new IllegalArgumentException(
-                "El userId " + userId + " no existe en APP_USER de esta fábrica. "
-                    + "Use un usuario válido o configure fabricaEnterpriseUserId en el proveedor de la distribuidora.");
+            throw unknownUser(userId);
         }
 
-        // 1. Validar disponibilidad de stock para todos los items
-        for (Map<String, Object> item : items) {
-            Long partId = ((Number) item.get("partId")).longValue();
-            Integer qty = ((Number) item.get("qty")).intValue();
+        // 1. Cantidades por repuesto (un repuesto repetido en varias líneas se descuenta una vez, sumado)
+        TreeMap<Long, Integer> qtyByPart = quantitiesByPart(items);
+
+        // 2. Repuestos (precio y disponibilidad) en una consulta
+        Map<Long, Part> parts = partsById(qtyByPart.keySet());
+        for (Map.Entry<Long, Integer> e : qtyByPart.entrySet()) {
+            Part part = parts.get(e.getKey());
+            if (part == null) {
+                throw new IllegalArgumentException("Repuesto no encontrado: " + e.getKey());
+            }
+            if (available(part) < e.getValue()) {
+                throw insufficientStock(part, e.getValue());
+            }
+        }
+
+        // 3. Totales, descuento empresarial y pedido armado
+        OrderRepository.NewOrder pending = buildOrder(userId, items, qtyByPart, parts,
+            enterpriseProfileRepo.findByUserId(userId).orElse(null), xOrderOriginHeader, orderNumber);
+        pending.getOrder().setSourceEnterpriseId(sourceEnterpriseId);
+
+        // 4. Orden, artículos, estado inicial, descuento de stock y avisos (OUTBOX_EVENT): una sola transacción
+        try {
+            orderRepo.placeOrders(List.of(new OrderRepository.NewOrder(pending.getOrder(), qtyByPart,
+                pending.getItems(), pending.getInitialStatus(), confirmationMail)));
+        } catch (OrderRepository.StockConflictException e) {
+            // Otro pedido se llevó el stock entre la validación y la confirmación
+            throw stockConflict(e, parts, qtyByPart);
+        }
+
+        // 5. Fuera de la transacción: cachés del catálogo; correo y alertas salen por el outbox
+        partService.afterOrdersPlaced(qtyByPart.keySet());
+        OutboxDispatcher.nudgeShared();
 
-            Part part = partRepo.findById(partId)
-                .orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado: " + partId));
+        return pending.getOrder();
+    }
+
+    /**
+     * Crea varios pedidos (p. ej. la reposición consolidada de una distribuidora) con lecturas compartidas:
+     * una consulta de usuarios, una de perfiles empresariales y una de repuestos para todo el lote. Cada pedido
+     * se valida por separado y el stock se asigna en el orden recibido; los que no pasan quedan rechazados con
+     * su motivo sin afectar a los demás. Los aceptados se guardan juntos con {@link OrderRepository#placeOrders};
+     * si entre la lectura y la confirmación otro pedido tomó stock, se confirman uno por uno.
+     * @param orders cada elemento {@code {userId, items, reference?}}
+     * @return un resultado por pedido, en el mismo orden
+     * @throws IllegalArgumentException si el lote está vacío o supera {@link #MAX_BATCH_ORDERS}
+     */
+    public List<PedidoLoteResultadoDto> createOrders(List<Map<String, Object>> orders, String xOrderOriginHeader) {
+        return createOrders(orders, xOrderOriginHeader, null);
+    }
 
-            if (!partService.checkAvailability(partId, qty)) {
-                throw new IllegalArgumentException("Stock insuficiente para: " + part.getTitle() + 
-                    " (disponible: " + (part.getStockQuantity() - part.getReservedQuantity()) + ", solicitado: " + qty + ")");
+    /** @param sourceEnterpriseId distribuidora cuya api_key envió el lote (se guarda en cada pedido) */
+    public List<PedidoLoteResultadoDto> createOrders(List<Map<String, Object>> orders, String xOrderOriginHeader,
+                                                     Long sourceEnterpriseId) {
+        if (orders == null || orders.isEmpty()) {
+            throw new IllegalArgumentException("El lote debe tener al menos un pedido");
+        }
+        if (orders.size() > MAX_BATCH_ORDERS) {
+            throw new IllegalArgumentException("El lote admite hasta " + MAX_BATCH_ORDERS + " pedidos");
+        }
+        int n = orders.size();
+        List<PedidoLoteResultadoDto> results = new ArrayList<>(n);
+        Long[] userIds = new Long[n];
+        List<List<Map<String, Object>>> itemsByOrder = new ArrayList<>(n);
+        List<TreeMap<Long, Integer>> qtyByOrder = new ArrayList<>(n);
+
+        // 1. Validación de forma de cada pedido
+        Set<Long> allUserIds = new HashSet<>();
+        Set<Long> allPartIds = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> data = orders.get(i);
+            Object ref = data != null ? data.get("reference") : null;
+            PedidoLoteResultadoDto result = new PedidoLoteResultadoDto(i, ref != null ? ref.toString() : null);
+            results.add(result);
+            itemsByOrder.add(null);
+            qtyByOrder.add(null);
+            try {
+                if (data == null || !(data.get("userId") instanceof Number uid)) {
+                    throw new IllegalArgumentException("userId es obligatorio");
+                }
+                List<Map<String, Object>> items = itemsOf(data.get("items"));
+                TreeMap<Long, Integer> qty = quantitiesByPart(items);
+                userIds[i] = uid.longValue();
+                itemsByOrder.set(i, items);
+                qtyByOrder.set(i, qty);
+                allUserIds.add(userIds[i]);
+                allPartIds.addAll(qty.keySet());
+            } catch (IllegalArgumentException e) {
+                result.rejected(e.getMessage());
             }
         }
 
-        // 2. Reservar stock para todos los items
-        for (Map<String, Object> item : items) {
-            Long partId = ((Number) item.get("partId")).longValue();
-            Integer qty = ((Number) item.get("qty")).intValue();
+        // 2. Lecturas compartidas por todo el lote
+        Set<Long> existingUsers = userRepo.findExistingIds(allUserIds);
+        Map<Long, EnterpriseProfile> profiles = new HashMap<>();
+        for (EnterpriseProfile ep : enterpriseProfileRepo.findByUserIds(allUserIds)) {
+            profiles.put(ep.getUserId(), ep);
+        }
+        Map<Long, Part> parts = partsById(allPartIds);
+        Map<Long, Integer> remaining = new HashMap<>();
+        for (Part p : parts.values()) {
+            remaining.put(p.getPartId(), available(p));
+        }
+
+        // 3. Asignación de stock en el orden del lote
+        List<OrderRepository.NewOrder> accepted = new ArrayList<>();
+        List<PedidoLoteResultadoDto> acceptedResults = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            PedidoLoteResultadoDto result = results.get(i);
+            TreeMap<Long, Integer> qty = qtyByOrder.get(i);
+            if (qty == null) {
+                continue;
+            }
+            String error = !existingUsers.contains(userIds[i]) ? unknownUser(userIds[i]).getMessage()
+                : shortage(qty, parts, remaining);
+            if (error != null) {
+                result.rejected(error);
+                continue;
+            }
+            qty.forEach((partId, q) -> remaining.merge(partId, -q, Integer::sum));
+            OrderRepository.NewOrder pending = buildOrder(userIds[i], itemsByOrder.get(i), qty, parts,
+                profiles.get(userIds[i]), xOrderOriginHeader, null);
+            pending.getOrder().setSourceEnterpriseId(sourceEnterpriseId);
+            accepted.add(pending);
+            acceptedResults.add(result);
+        }
 
-            if (!partService.reserveStock(partId, qty)) {
-                // Si falla la reserva, liberar todo lo reservado hasta ahora
-                rollbackReservations(items);
-                throw new IllegalArgumentException("No se pudo reservar el stock");
+        // 4. Guardado en una transacción (o uno por uno si el stock cambió mientras tanto)
+        if (accepted.isEmpty()) {
+            return results;
+        }
+        Set<Long> soldPartIds = new TreeSet<>();
+        try {
+            orderRepo.placeOrders(accepted);
+            for (int k = 0; k < accepted.size(); k++) {
+                acceptedResults.get(k).created(accepted.get(k).getOrder());
+                soldPartIds.addAll(accepted.get(k).getQtyByPart().keySet());
+            }
+        } catch (OrderRepository.StockConflictException e) {
+            for (int k = 0; k < accepted.size(); k++) {
+                OrderRepository.NewOrder pending = accepted.get(k);
+                try {
+                    orderRepo.placeOrders(List.of(pending));
+                    acceptedResults.get(k).created(pending.getOrder());
+                    soldPartIds.addAll(pending.getQtyByPart().keySet());
+                } catch (OrderRepository.StockConflictException conflict) {
+                    acceptedResults.get(k).rejected(stockConflict(conflict, parts, pending.getQtyByPart()).getMessage());
+                }
             }
         }
 
-        // 3. Calcular totales
+        // 5. Fuera de la transacción: cachés del catálogo, una vez por repuesto (las alertas salen por el outbox)
+        if (!soldPartIds.isEmpty()) {
+            partService.afterOrdersPlaced(soldPartIds);
+            OutboxDispatcher.nudgeShared();
+        }
+        return results;
+    }
+
+    /** Totales, descuento empresarial, cabecera, artículos y estado inicial de un pedido ya validado. */
+    private OrderRepository.NewOrder buildOrder(Long userId, List<Map<String, Object>> items,
+                                                TreeMap<Long, Integer> qtyByPart, Map<Long, Part> parts,
+                                                EnterpriseProfile profile, String xOrderOriginHeader,
+                                                String orderNumber) {
         BigDecimal subtotal = BigDecimal.ZERO;
-        for (Map<String, Object> item : items) {
-            Long partId = ((Number) item.get("partId")).longValue();
-            Integer qty = ((Number) item.get("qty")).intValue();
+        List<OrderItem> orderItems = new ArrayList<>(items.size());
+        for (Map<String, Object> itemData : items) {
+            Long partId = partIdOf(itemData);
+            int qty = qtyOf(itemData);
+            Part part = parts.get(partId);
 
-            Part part = partRepo.findById(partId).get();
-            BigDecimal lineTotal = part.getPrice().multiply(new BigDecimal(qty));
-            subtotal = subtotal.add(lineTotal);
+            OrderItem item = new OrderItem();
+            item.setPartId(partId);
+            item.setQty(qty);
+            item.setUnitPrice(part.getPrice());
+            item.setLineTotal(part.getPrice().multiply(new BigDecimal(qty)));
+            orderItems.add(item);
+            subtotal = subtotal.add(item.getLineTotal());
         }
 
         // Descuento empresarial si aplica
         BigDecimal total = subtotal;
         String orderType = "WEB";
-        java.util.Optional<EnterpriseProfile> enterpriseOpt = enterpriseProfileRepo.findByUserId(userId);
-        if (enterpriseOpt.isPresent()) {
-            EnterpriseProfile ep = enterpriseOpt.get();
-            BigDecimal discounted = OrderPricing.applyEnterpriseDiscount(subtotal, ep.getDiscountPercent());
+        if (profile != null) {
+            BigDecimal discounted = OrderPricing.applyEnterpriseDiscount(subtotal, profile.getDiscountPercent());
             if (discounted.compareTo(subtotal) < 0) {
                 total = discounted;
                 orderType = "ENTERPRISE_API";
             }
         }
 
-        // 4. Crear orden
         OrderHeader order = new OrderHeader();
-        order.setOrderNumber(generateOrderNumber());
+        order.setOrderNumber(orderNumber != null ? orderNumber : generateOrderNumber());
         order.setUserId(userId);
         order.setOrderType(orderType);
         order.setOrderOrigin(OrderFlowRules.normalizeOrderOrigin(xOrderOriginHeader));
@@ -115,38 +314,100 @@ public class OrderService {
         order.setTotal(total);
         order.setCurrency("USD");
 
-        order = orderRepo.save(order);
+        OrderStatusHistory status = new OrderStatusHistory();
+        status.setStatus("INITIATED");
+        status.setCommentText("Pedido creado");
+        status.setChangedByUserId(userId);
 
-        // 5. Crear items y confirmar venta (reducir stock)
-        for (Map<String, Object> itemData : items) {
-            Long partId = ((Number) itemData.get("partId")).longValue();
-            Integer qty = ((Number) itemData.get("qty")).intValue();
+        return new OrderRepository.NewOrder(order, qtyByPart, orderItems, status);
+    }
 
-            Part part = partRepo.findById(partId).get();
+    static TreeMap<Long, Integer> quantitiesByPart(List<Map<String, Object>> items) {
+        TreeMap<Long, Integer> qtyByPart = new TreeMap<>();
+        for (Map<String, Object> item : items) {
+            qtyByPart.merge(partIdOf(item), qtyOf(item), Integer::sum);
+        }
+        return qtyByPart;
+    }
 
-            OrderItem item = new OrderItem();
-            item.setOrderId(order.getOrderId());
-            item.setPartId(partId);
-            item.setQty(qty);
-            item.setUnitPrice(part.getPrice());
-            item.setLineTotal(part.getPrice().multiply(new BigDecimal(qty)));
+    private Map<Long, Part> partsById(Collection<Long> partIds) {
+        Map<Long, Part> parts = new HashMap<>();
+        for (Part p : partRepo.findSummariesByIds(partIds)) {
+            parts.put(p.getPartId(), p);
+        }
+        return parts;
+    }
 
-            itemRepo.save(item);
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> itemsOf(Object value) {
+        if (!(value instanceof List<?> list) || list.isEmpty()) {
+            throw new IllegalArgumentException("El pedido debe tener al menos un artículo");
+        }
+        for (Object item : list) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException("Cada artículo requiere partId");
+            }
+        }
+        return (List<Map<String, Object>>) list;
+    }
 
-            // Confirmar venta (reducir stock y cantidad reservada)
-            partService.confirmSale(partId, qty);
+    /** Motivo de rechazo si a algún repuesto no le alcanza lo que queda en el lote; null si alcanza. */
+    private static String shortage(Map<Long, Integer> qtyByPart, Map<Long, Part> parts, Map<Long, Integer> remaining) {
+        for (Map.Entry<Long, Integer> e : qtyByPart.entrySet()) {
+            Part part = parts.get(e.getKey());
+            if (part == null) {
+                return "Repuesto no encontrado: " + e.getKey();
+            }
+            int left = remaining.getOrDefault(e.getKey(), 0);
+            if (left < e.getValue()) {
+                return insufficientStock(part.getTitle(), left, e.getValue()).getMessage();
+            }
         }
+        return null;
+    }
 
-        // 6. Crear estado inicial
-        OrderStatusHistory status = new OrderStatusHistory();
-        status.setOrderId(order.getOrderId());
-        status.setStatus("INITIATED");
-        status.setCommentText("Pedido creado");
-        status.setChangedByUserId(userId);
+    private IllegalArgumentException stockConflict(OrderRepository.StockConflictException e, Map<Long, Part> parts,
+                                                   Map<Long, Integer> qtyByPart) {
+        Part part = partRepo.findSummariesByIds(List.of(e.getPartId())).stream().findFirst()
+            .orElse(parts.get(e.getPartId()));
+        return insufficientStock(part, qtyByPart.get(e.getPartId()));
+    }
+
+    private static IllegalArgumentException unknownUser(Long userId) {
+        return new IllegalArgumentException(
+            "El userId " + userId + " no existe en APP_USER de esta fábrica. "
+                + "Use un usuario válido o configure fabricaEnterpriseUserId en el proveedor de la distribuidora.");
+    }
 
-        statusRepo.save(status);
+    private static Long partIdOf(Map<String, Object> item) {
+        Object v = item != null ? item.get("partId") : null;
+        if (!(v instanceof Number n)) {
+            throw new IllegalArgumentException("Cada artículo requiere partId");
+        }
+        return n.longValue();
+    }
+
+    private static int qtyOf(Map<String, Object> item) {
+        Object v = item.get("qty");
+        if (!(v instanceof Number n) || n.intValue() <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
+        }
+        return n.intValue();
+    }
+
+    private static int available(Part part) {
+        int stock = part.getStockQuantity() != null ? part.getStockQuantity() : 0;
+        int reserved = part.getReservedQuantity() != null ? part.getReservedQuantity() : 0;
+        return stock - reserved;
+    }
 
-        return order;
+    private static IllegalArgumentException insufficientStock(Part part, int requested) {
+        return insufficientStock(part.getTitle(), available(part), requested);
+    }
+
+    private static IllegalArgumentException insufficientStock(String title, int available, int requested) {
+        return new IllegalArgumentException("Stock insuficiente para: " + title
+            + " (disponible: " + Math.max(0, available) + ", solicitado: " + requested + ")");
     }
 
     /**
@@ -169,29 +430,47 @@ public class OrderService {
         );
     }
 
+    public List<OrderHeader> getUserOrders(Long userId) {
+        return orderRepo.findByUserId(userId);
+    }
+
+    /** Historial de un usuario paginado; ver {@link #getOrdersPage}. */
+    public KeysetPage<OrderHeader> getUserOrdersPage(Long userId, String sort, String after, int limit,
+                                                     boolean withTotal) {
+        return getOrdersPage(null, userId, null, null, null, sort, after, limit, withTotal);
+    }
+
     /**
-     * Liberar reservas en caso de error
+     * Página de pedidos con filtros opcionales, por keyset: cada página cuesta lo mismo sin importar cuántos
+     * pedidos haya antes.
+     * @param sort {@code newest} (por defecto), {@code oldest} o {@code total}
+     * @param after cursor {@code nextCursor} de la página anterior; null para la primera
+     * @param withTotal si true, agrega el conteo de todos los pedidos que cumplen los filtros (una consulta más)
      */
-    private void rollbackReservations(List<Map<String, Object>> items) {
-        for (Map<String, Object> item : items) {
-            try {
-                Long partId = ((Number) item.get("partId")).longValue();
-                Integer qty = ((Number) item.get("qty")).intValue();
-                partService.releaseStock(partId, qty);
-            } catch (Exception e) {
-                // Ignorar errores en rollback
-            }
+    public KeysetPage<OrderHeader> getOrdersPage(String status, Long userId, java.util.Date fromDate,
+                                                 java.util.Date toDate, String orderOrigin, String sort,
+                                                 String after, int limit, boolean withTotal) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_PAGE_SIZE);
         }
-    }
-
-    public List<OrderHeader> getUserOrders(Long userId) {
-        return orderRepo.findByUserId(userId);
+        OrderSort order = OrderSort.fromParam(sort);
+        KeysetCursor cursor = KeysetCursor.decode(after, order.getParam());
+        List<OrderHeader> rows = orderRepo.findPage(status, userId, fromDate, toDate, orderOrigin, order, cursor, limit);
+        KeysetPage<OrderHeader> page = KeysetPage.fromLookahead(rows, limit, order::cursorOf);
+        if (withTotal) {
+            page.setTotal(orderRepo.countFiltered(status, userId, fromDate, toDate, orderOrigin));
+        }
+        return page;
     }
 
     public OrderHeader getOrderById(Long orderId) {
         return orderRepo.findById(orderId).orElse(null);
     }
 
+    public OrderHeader getOrderByNumber(String orderNumber) {
+        return orderRepo.findByOrderNumber(orderNumber).orElse(null);
+    }
+
     public List<OrderItem> getOrderItems(Long orderId) {
         return itemRepo.findByOrderId(orderId);
     }
@@ -204,31 +483,26 @@ public class OrderService {
         return statusRepo.findLatestByOrderId(orderId);
     }
 
+    /** Último estado de varios pedidos con una consulta por bloque (en vez de una por pedido). */
+    public Map<Long, OrderStatusHistory> getLatestStatuses(Collection<Long> orderIds) {
+        return statusRepo.findLatestByOrderIds(orderIds);
+    }
+
     /**
      * Actualiza el estado del pedido. No permite volver a un estado anterior.
      * Para estado SHIPPED se pueden indicar trackingNumber y etaDays (o usar default configurable).
      * Envía correo al cliente con la actualización (comentario, tracking y ETA si aplica).
+     * La transición se valida con la cabecera del pedido bloqueada, así que dos cambios simultáneos no pueden
+     * partir los dos del mismo estado.
      */
     public void updateOrderStatus(Long orderId, String status, String comment, Long changedByUserId,
                                    String trackingNumber, Integer etaDays) {
-        OrderStatusHistory current = statusRepo.findLatestByOrderId(orderId);
-        if (current == null) {
-            throw new IllegalArgumentException("Pedido no encontrado");
-        }
-        int currentIdx = OrderFlowRules.statusIndex(current.getStatus());
         int newIdx = OrderFlowRules.statusIndex(status);
         if (newIdx < 0) {
             throw new IllegalArgumentException("Estado no válido: " + status + ". Use: "
                 + String.join(", ", OrderFlowRules.STATUS_FLOW) + " o " + OrderFlowRules.STATUS_CANCELLED);
         }
         String newStatusUpper = status.toUpperCase();
-        if (OrderFlowRules.STATUS_CANCELLED.equals(newStatusUpper)) {
-            if (currentIdx >= OrderFlowRules.STATUS_FLOW.size() - 1) {
-                throw new IllegalArgumentException("No se puede cancelar un pedido ya entregado");
-            }
-        } else if (newIdx <= currentIdx) {
-            throw new IllegalArgumentException("No se puede regresar a un estado anterior. Estado actual: " + current.getStatus());
-        }
 
         int effectiveEta = etaDays != null ? etaDays : getDefaultEtaDays();
         if ("SHIPPED".equals(newStatusUpper) && effectiveEta < 0) {
@@ -244,35 +518,183 @@ public class OrderService {
             statusHistory.setTrackingNumber(trackingNumber);
             statusHistory.setEtaDays(effectiveEta > 0 ? effectiveEta : null);
         }
-        statusRepo.save(statusHistory);
+        String payload = statusPayload(statusHistory);
+        statusRepo.save(statusHistory, order -> {
+            checkTransition(order.getCurrentStatus(), newStatusUpper);
+            // Correo al comprador y webhook a la distribuidora: en OUTBOX_EVENT, en la transacción del estado
+            List<OutboxEvent> events = new ArrayList<>(2);
+            events.add(new OutboxEvent(OutboxEvent.ORDER_STATUS_MAIL, orderId, payload));
+            if ("DISTRIBUIDORA".equals(order.getOrderOrigin()) || order.getSourceEnterpriseId() != null) {
+                events.add(new OutboxEvent(OutboxEvent.ORDER_STATUS_WEBHOOK, orderId, payload));
+            }
+            return events;
+        });
+        OutboxDispatcher.nudgeShared();
+    }
+
+    /** Solo se avanza en el flujo; se puede cancelar mientras no esté entregado. */
+    private static void checkTransition(String currentStatus, String newStatusUpper) {
+        if (currentStatus == null) {
+            throw new IllegalArgumentException("Pedido no encontrado");
+        }
+        int currentIdx = OrderFlowRules.statusIndex(currentStatus);
+        if (OrderFlowRules.STATUS_CANCELLED.equals(newStatusUpper)) {
+            if (currentIdx >= OrderFlowRules.STATUS_FLOW.size() - 1) {
+                throw new IllegalArgumentException("No se puede cancelar un pedido ya entregado");
+            }
+        } else if (OrderFlowRules.statusIndex(newStatusUpper) <= currentIdx) {
+            throw new IllegalArgumentException("No se puede regresar a un estado anterior. Estado actual: " + currentStatus);
+        }
+    }
 
+    /**
+     * Entrega un evento de OUTBOX_EVENT (lo llama {@link OutboxDispatcher}). Las excepciones hacen que se
+     * reintente; {@link IllegalArgumentException} / {@link IllegalStateException} lo descartan sin reintentar.
+     * Con la cola de correo llena se pospone sin gastar intento.
+     */
+    public void deliverOutboxEvent(OutboxEvent event) throws Exception {
         try {
-            OrderHeader order = orderRepo.findById(orderId).orElse(null);
-            if (order != null) {
+            dispatchOutboxEvent(event);
+        } catch (MailQueue.QueueFullException e) {
+            throw new OutboxDispatcher.DeferredException(e.getMessage());
+        }
+    }
+
+    private void dispatchOutboxEvent(OutboxEvent event) throws Exception {
+        switch (event.getEventType()) {
+            case OutboxEvent.ORDER_CONFIRMATION_MAIL: {
+                OrderHeader order = requireOrder(event.getAggregateId());
                 AppUser user = userRepo.findById(order.getUserId()).orElse(null);
-                if (user != null && user.getEmail() != null) {
-                    mailService.sendOrderStatusUpdate(
-                        user.getEmail(),
-                        user.getFullName(),
-                        order.getOrderNumber(),
-                        statusHistory.getStatus(),
-                        comment,
-                        statusHistory.getTrackingNumber(),
-                        statusHistory.getEtaDays()
-                    );
+                if (user == null || user.getEmail() == null) {
+                    return;
+                }
+                List<OrderItem> items = itemRepo.findByOrderId(order.getOrderId());
+                Map<Long, Part> parts = partsById(itemPartIds(items));
+                mailService.deliverOrderConfirmation(user.getEmail(), user.getFullName(), order, items,
+                    partId -> Optional.ofNullable(parts.get(partId)));
+                return;
+            }
+            case OutboxEvent.ORDER_STATUS_MAIL: {
+                OrderHeader order = requireOrder(event.getAggregateId());
+                AppUser user = userRepo.findById(order.getUserId()).orElse(null);
+                if (user == null || user.getEmail() == null) {
+                    return;
+                }
+                Map<String, Object> st = parsePayload(event.getPayload());
+                mailService.deliverOrderStatusUpdate(user.getEmail(), user.getFullName(), order.getOrderNumber(),
+                    (String) st.get("status"), (String) st.get("comment"), (String) st.get("trackingNumber"),
+                    st.get("etaDays") != null ? ((Number) st.get("etaDays")).intValue() : null);
+                return;
+            }
+            case OutboxEvent.ORDER_STATUS_WEBHOOK: {
+                OrderHeader order = requireOrder(event.getAggregateId());
+                Map<String, Object> st = parsePayload(event.getPayload());
+                try {
+                    DistributorOrderWebhookNotifier.deliverOrderStatus(
+                        webhookEndpointFor(order.getSourceEnterpriseId()), event.getAggregateId(),
+                        (String) st.get("status"), (String) st.get("comment"), (String) st.get("trackingNumber"),
+                        st.get("etaDays") != null ? ((Number) st.get("etaDays")).intValue() : null);
+                } catch (WebhookDeliveryEngine.EndpointBusyException e) {
+                    throw new OutboxDispatcher.DeferredException(e.getMessage());
+                }
+                return;
+            }
+            case OutboxEvent.ORDER_INTAKE_WEBHOOK: {
+                Long enterpriseId = event.getAggregateId() != 0 ? event.getAggregateId() : null;
+                try {
+                    DistributorOrderWebhookNotifier.deliverIntakeResult(webhookEndpointFor(enterpriseId),
+                        event.getPayload());
+                } catch (WebhookDeliveryEngine.EndpointBusyException e) {
+                    throw new OutboxDispatcher.DeferredException(e.getMessage());
+                }
+                return;
+            }
+            case OutboxEvent.LOW_STOCK_ALERT: {
+                Part part = partRepo.findById(event.getAggregateId())
+                    .orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado: " + event.getAggregateId()));
+                int threshold = part.getLowStockThreshold() != null ? part.getLowStockThreshold() : 5;
+                if (available(part) <= threshold) { // si ya se repuso, no se avisa
+                    mailService.deliverLowStockAlert(part);
                 }
-                if ("DISTRIBUIDORA".equals(order.getOrderOrigin())) {
-                    DistributorOrderWebhookNotifier.notifyOrderStatusAsync(
-                        orderId,
-                        newStatusUpper,
-                        comment,
-                        statusHistory.getTrackingNumber(),
-                        statusHistory.getEtaDays()
-                    );
+                return;
+            }
+            case OutboxEvent.LOW_STOCK_DIGEST: {
+                Set<Long> crossed = new HashSet<>();
+                if (parsePayload(event.getPayload()).get("partIds") instanceof List<?> ids) {
+                    for (Object id : ids) {
+                        crossed.add(((Number) id).longValue());
+                    }
+                }
+                Set<Long> fired = new TreeSet<>(crossed);
+                lowStockAlertRepo.findStates().forEach((partId, state) -> {
+                    if (LowStockAlertState.FIRED.equals(state)) {
+                        fired.add(partId);
+                    }
+                });
+                List<Part> low = new ArrayList<>();
+                for (Part part : partsById(fired).values()) {
+                    int threshold = part.getLowStockThreshold() != null ? part.getLowStockThreshold() : 5;
+                    if (available(part) <= threshold) { // los ya repuestos no se listan
+                        low.add(part);
+                    }
+                }
+                if (!low.isEmpty()) {
+                    low.sort(Comparator.comparingInt(OrderService::available));
+                    mailService.deliverLowStockDigest(low, crossed);
                 }
+                return;
             }
-        } catch (Exception e) {
-            System.err.println("Error enviando correo de actualización de estado: " + e.getMessage());
+            default:
+                throw new IllegalArgumentException("Tipo de evento desconocido: " + event.getEventType());
+        }
+    }
+
+    /**
+     * Webhook de la distribuidora que creó el pedido (su perfil empresarial) o, si no tiene uno propio, el global.
+     * @return null si no hay a quién avisar
+     */
+    public DistributorOrderWebhookNotifier.Endpoint webhookEndpointFor(Long sourceEnterpriseId) {
+        EnterpriseProfile profile = sourceEnterpriseId != null
+            ? enterpriseProfileRepo.findById(sourceEnterpriseId).orElse(null) : null;
+        if (profile != null && profile.getWebhookUrl() != null && !profile.getWebhookUrl().isBlank()) {
+            return new DistributorOrderWebhookNotifier.Endpoint(profile.getWebhookUrl().trim(),
+                profile.getWebhookSecret());
+        }
+        return DistributorOrderWebhookNotifier.globalEndpoint();
+    }
+
+    private OrderHeader requireOrder(Long orderId) {
+        return orderRepo.findById(orderId)
+            .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado: " + orderId));
+    }
+
+    private static Set<Long> itemPartIds(List<OrderItem> items) {
+        Set<Long> ids = new TreeSet<>();
+        for (OrderItem item : items) {
+            ids.add(item.getPartId());
+        }
+        return ids;
+    }
+
+    /** Estado, comentario, tracking y ETA tal como quedaron al cambiar (el aviso no depende de cambios posteriores). */
+    private static String statusPayload(OrderStatusHistory h) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("status", h.getStatus());
+        m.put("comment", h.getCommentText());
+        m.put("trackingNumber", h.getTrackingNumber());
+        m.put("etaDays", h.getEtaDays());
+        try {
+            return JSON.writeValueAsString(m);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el estado del pedido", e);
+        }
+    }
+
+    private static Map<String, Object> parsePayload(String payload) {
+        try {
+            return JSON.readValue(payload, new TypeReference<Map<String, Object>>() { });
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Evento con datos ilegibles: " + payload);
         }
     }
 
@@ -307,7 +729,6 @@ public class OrderService {
     }
 
     private String generateOrderNumber() {
-        // Formato: ORD-timestamp
-        return "ORD-" + Instant.now().toEpochMilli();
+        return OrderNumberGenerator.shared().next();
     }
 }
@@ -0,0 +1,321 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.OutboxEvent;
+import com.agencias.backend.repository.OutboxRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Despacha OUTBOX_EVENT: correos, webhooks y alertas que se guardaron en la transacción del cambio que los
+ * origina, así la petición no espera a SMTP/HTTP y ningún aviso se pierde si el proceso cae.
+ * <ul>
+ *   <li>Lee lotes de eventos vencidos y los entrega en paralelo con un pool fijo. Cada evento se toma con un
+ *       UPDATE condicionado que lo oculta {@code outbox.claim.seconds}: varios nodos pueden despachar a la vez, y
+ *       si uno cae a mitad de la entrega, el evento se reintenta al vencer el plazo (entrega al menos una vez).</li>
+ *   <li>Un error transitorio deja el evento pendiente con espera exponencial y jitter; un
+ *       {@link IllegalArgumentException} / {@link IllegalStateException} o agotar {@code outbox.max.attempts} lo
+ *       pasa a {@code DEAD} con el último error; un {@link DeferredException} (destino saturado) lo pospone sin
+ *       contar el intento.</li>
+ *   <li>Los eventos de un mismo tipo y agregado salen en orden: el siguiente espera a que el anterior se
+ *       entregue o se descarte. En los tipos que solo informan el estado actual (webhook de estado), si ya hay
+ *       uno posterior pendiente el anterior se cierra sin enviarse ({@code coalesced}).</li>
+ * </ul>
+ */
+public class OutboxDispatcher {
+
+    /** Entrega un evento; cualquier excepción cuenta como fallo del intento (salvo {@link DeferredException}). */
+    interface Handler {
+        void deliver(OutboxEvent event) throws Exception;
+    }
+
+    /** El evento no se llegó a intentar (p. ej. su destino está saturado): se pospone sin gastar un intento. */
+    public static class DeferredException extends Exception {
+        public DeferredException(String message) {
+            super(message);
+        }
+    }
+
+    /** Lotes como máximo por pasada, para que una cola grande no retrase el siguiente sondeo sin fin. */
+    private static final int MAX_BATCHES_PER_DRAIN = 20;
+    /** Espera por un envío en curso cuando no queda nada vencido (puede liberar al siguiente de su agregado). */
+    private static final long IDLE_WAIT_MILLIS = 100;
+    /** Cada cuántas pasadas se borran los eventos entregados antiguos. */
+    private static final int PURGE_EVERY_DRAINS = 500;
+
+    private static volatile OutboxDispatcher shared;
+
+    public static OutboxDispatcher shared(EntityManagerFactory emf) {
+        OutboxDispatcher s = shared;
+        if (s == null) {
+            synchronized (OutboxDispatcher.class) {
+                if (shared == null) {
+                    OrderService orders = new OrderService(emf);
+                    shared = new OutboxDispatcher(new OutboxRepository(emf), orders::deliverOutboxEvent,
+                        Set.of(OutboxEvent.ORDER_STATUS_WEBHOOK),
+                        (int) ConfigLoader.getLongSetting("OUTBOX_WORKERS", "outbox.workers", 8),
+                        (int) ConfigLoader.getLongSetting("OUTBOX_BATCH_SIZE", "outbox.batch.size", 100),
+                        (int) ConfigLoader.getLongSetting("OUTBOX_MAX_ATTEMPTS", "outbox.max.attempts", 8),
+                        ConfigLoader.getLongSetting("OUTBOX_RETRY_BASE_SECONDS", "outbox.retry.base.seconds", 5)
+                            * 1000L,
+                        ConfigLoader.getLongSetting("OUTBOX_RETRY_MAX_SECONDS", "outbox.retry.max.seconds", 900)
+                            * 1000L,
+                        ConfigLoader.getLongSetting("OUTBOX_CLAIM_SECONDS", "outbox.claim.seconds", 120) * 1000L,
+                        ConfigLoader.getLongSetting("OUTBOX_RETENTION_HOURS", "outbox.retention.hours", 72)
+                            * 3_600_000L,
+                        System::currentTimeMillis);
+                }
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    /** Despacha enseguida lo recién encolado (si el despachador compartido está en marcha); si no, no hace nada. */
+    public static void nudgeShared() {
+        OutboxDispatcher s = shared;
+        if (s != null) {
+            s.nudge();
+        }
+    }
+
+    private static final class Counters {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong retried = new AtomicLong();
+        final AtomicLong dead = new AtomicLong();
+        final AtomicLong coalesced = new AtomicLong();
+        final AtomicLong deferred = new AtomicLong();
+    }
+
+    private final OutboxRepository repo;
+    private final Handler handler;
+    private final Set<String> coalescedTypes;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final RetryBackoff backoff;
+    private final long claimMillis;
+    private final long retentionMillis;
+    private final LongSupplier clock;
+    private final AtomicBoolean nudged = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+    private long drains;
+
+    private final Map<String, Counters> byType = new ConcurrentHashMap<>();
+    private final AtomicLong claimConflicts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String lastError;
+
+    OutboxDispatcher(OutboxRepository repo, Handler handler, Set<String> coalescedTypes, int workerCount,
+                     int batchSize, int maxAttempts, long retryBaseMillis, long retryMaxMillis, long claimMillis, long retentionMillis,
+                     LongSupplier clock) {
+        this.repo = repo;
+        this.handler = handler;
+        this.coalescedTypes = coalescedTypes;
+        AtomicInteger n = new AtomicInteger();
+        this.workerCount = Math.max(1, workerCount);
+        this.workers = Executors.newFixedThreadPool(this.workerCount, r -> {
+            Thread t = new Thread(r, "outbox-worker-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoff = new RetryBackoff(retryBaseMillis, retryMaxMillis);
+        this.claimMillis = claimMillis;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+    }
+
+    /** Sondea cada {@code pollMillis}; además, {@link #nudge} adelanta la pasada tras encolar. */
+    public synchronized void start(long pollMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::drainQuietly, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Detiene el despacho; lo pendiente queda en OUTBOX_EVENT para la próxima ejecución. */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        workers.shutdown();
+    }
+
+    /** Programa una pasada inmediata (a lo sumo una en espera). */
+    public synchronized void nudge() {
+        if (scheduler != null && nudged.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                nudged.set(false);
+                drainQuietly();
+            });
+        }
+    }
+
+    /**
+     * Entrega lo vencido sin esperar a que termine cada lote: en cuanto un hilo queda libre toma el siguiente
+     * evento, así un envío lento ocupa un hilo y no frena los de otros destinos.
+     * @return eventos entregados en esta pasada
+     */
+    int drain() throws InterruptedException {
+        CompletionService<Boolean> done = new ExecutorCompletionService<>(workers);
+        int inFlight = 0;
+        int delivered = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_DRAIN; batch++) {
+            List<OutboxEvent> due = repo.findDue(new Date(clock.getAsLong()), batchSize);
+            for (OutboxEvent event : due) {
+                if (inFlight >= workerCount) {
+                    delivered += collect(done.take());
+                    inFlight--;
+                }
+                if (repo.claim(event, new Date(clock.getAsLong() + claimMillis))) {
+                    event.setAttempts(event.getAttempts() + 1);
+                    done.submit(() -> deliverOne(event));
+                    inFlight++;
+                } else {
+                    claimConflicts.incrementAndGet();
+                }
+            }
+            if (due.isEmpty()) {
+                if (inFlight == 0) {
+                    break;
+                }
+                // Al terminar un envío puede quedar libre el siguiente evento de su agregado
+                Future<Boolean> f = done.poll(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (f != null) {
+                    delivered += collect(f);
+                    inFlight--;
+                }
+            }
+        }
+        for (; inFlight > 0; inFlight--) {
+            delivered += collect(done.take());
+        }
+        if (++drains % PURGE_EVERY_DRAINS == 0) {
+            repo.deleteSentBefore(new Date(clock.getAsLong() - retentionMillis));
+        }
+        return delivered;
+    }
+
+    private int collect(Future<Boolean> f) throws InterruptedException {
+        try {
+            return f.get() ? 1 : 0;
+        } catch (ExecutionException e) {
+            errors.incrementAndGet();
+            return 0;
+        }
+    }
+
+    private boolean deliverOne(OutboxEvent event) {
+        Counters c = byType.computeIfAbsent(event.getEventType(), k -> new Counters());
+        if (coalescedTypes.contains(event.getEventType()) && repo.hasNewerPending(event)) {
+            repo.markSuperseded(event.getEventId(), new Date(clock.getAsLong()));
+            c.coalesced.incrementAndGet();
+            return false;
+        }
+        try {
+            handler.deliver(event);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            repo.markDead(event.getEventId(), describe(e));
+            c.dead.incrementAndGet();
+            lastError = event.getEventType() + " " + event.getEventId() + ": " + describe(e);
+            return false;
+        } catch (DeferredException e) {
+            repo.markDeferred(event.getEventId(), describe(e), new Date(clock.getAsLong() + backoff.delay(1)));
+            c.deferred.incrementAndGet();
+            return false;
+        } catch (Exception e) {
+            String error = describe(e);
+            lastError = event.getEventType() + " " + event.getEventId() + ": " + error;
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (event.getAttempts() >= maxAttempts) {
+                repo.markDead(event.getEventId(), error);
+                c.dead.incrementAndGet();
+            } else {
+                repo.markRetry(event.getEventId(), error,
+                    new Date(clock.getAsLong() + backoff.delay(event.getAttempts())));
+                c.retried.incrementAndGet();
+            }
+            return false;
+        }
+        repo.markSent(event.getEventId(), new Date(clock.getAsLong()));
+        c.sent.incrementAndGet();
+        return true;
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            lastError = describe(e);
+            System.err.println("Despacho de OUTBOX_EVENT: " + e.getMessage());
+        }
+    }
+
+    private static String describe(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long sent = 0, retried = 0, dead = 0, coalesced = 0, deferred = 0;
+        Map<String, Object> types = new LinkedHashMap<>();
+        for (Map.Entry<String, Counters> e : new TreeMap<>(byType).entrySet()) {
+            Counters c = e.getValue();
+            Map<String, Object> t = new LinkedHashMap<>();
+            t.put("sent", c.sent.get());
+            t.put("retried", c.retried.get());
+            t.put("dead", c.dead.get());
+            t.put("coalesced", c.coalesced.get());
+            t.put("deferred", c.deferred.get());
+            types.put(e.getKey(), t);
+            sent += c.sent.get();
+            retried += c.retried.get();
+            dead += c.dead.get();
+            coalesced += c.coalesced.get();
+            deferred += c.deferred.get();
+        }
+        m.put("sent", sent);
+        m.put("retried", retried);
+        m.put("dead", dead);
+        m.put("coalesced", coalesced);
+        m.put("deferred", deferred);
+        m.put("claimConflicts", claimConflicts.get());
+        m.put("errors", errors.get());
+        m.put("lastError", lastError);
+        m.put("types", types);
+        return m;
+    }
+}
@@ -0,0 +1,163 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+import com.agencias.backend.model.Part;
+import com.agencias.backend.repository.PartImportRow;
+import com.agencias.backend.repository.PartRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Importación masiva de repuestos por bloques: valida todas las filas, resuelve los partNumber existentes con
+ * consultas IN y aplica cada bloque en una transacción con INSERT/UPDATE en lote JDBC.
+ * Si un bloque falla (FK, unicidad, etc.) se reintenta fila a fila para reportar el error exacto.
+ */
+final class PartImportEngine {
+
+    /** Filas por transacción. */
+    static final int CHUNK_SIZE = (int) Math.max(1, ConfigLoader.getLongSetting(
+        "CATALOG_IMPORT_CHUNK_SIZE", "catalog.import.chunk.size", 500));
+
+    /** Resultado: filas aplicadas y errores por número de fila (1-based). */
+    static final class Result {
+        int success;
+        final TreeMap<Integer, String> errors = new TreeMap<>();
+
+        List<String> detailLines() {
+            List<String> lines = new ArrayList<>(errors.size());
+            errors.forEach((row, msg) -> lines.add("Fila " + row + ": " + msg));
+            return lines;
+        }
+    }
+
+    private final PartRepository repo;
+    private final int chunkSize;
+
+    PartImportEngine(PartRepository repo) {
+        this(repo, CHUNK_SIZE);
+    }
+
+    PartImportEngine(PartRepository repo, int chunkSize) {
+        this.repo = repo;
+        this.chunkSize = chunkSize;
+    }
+
+    Result run(List<Map<String, Object>> items) {
+        Result result = new Result();
+        List<PartImportRow> rows = parse(items, result.errors);
+
+        for (int i = 0; i < rows.size(); i += chunkSize) {
+            List<PartImportRow> chunk = rows.subList(i, Math.min(i + chunkSize, rows.size()));
+            try {
+                applyChunk(chunk);
+                for (PartImportRow r : chunk) {
+                    result.success += r.getRowNumbers().size();
+                }
+            } catch (RuntimeException chunkError) {
+                for (PartImportRow r : chunk) {
+                    try {
+                        applyChunk(List.of(r));
+                        result.success += r.getRowNumbers().size();
+                    } catch (RuntimeException e) {
+                        String msg = rootMessage(e);
+                        for (Integer row : r.getRowNumbers()) {
+                            result.errors.put(row, msg);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void applyChunk(List<PartImportRow> chunk) {
+        List<String> partNumbers = new ArrayList<>(chunk.size());
+        for (PartImportRow r : chunk) {
+            partNumbers.add(r.getPartNumber());
+        }
+        Map<String, Long> existing = repo.findIdsByPartNumbers(partNumbers);
+        List<PartImportRow> inserts = new ArrayList<>();
+        List<PartImportRow> updates = new ArrayList<>();
+        for (PartImportRow r : chunk) {
+            (existing.containsKey(r.getPartNumber()) ? updates : inserts).add(r);
+        }
+        repo.applyImportBatch(inserts, updates, existing);
+
+        for (Part p : repo.findSummariesByPartNumbers(partNumbers)) {
+            CatalogSearchIndex.shared().put(p);
+        }
+    }
+
+    /**
+     * Convierte y valida las filas; las inválidas quedan en {@code errors}. Un partNumber repetido se fusiona
+     * sobre su primera aparición (los valores de la última fila prevalecen, como al aplicarlas en orden).
+     */
+    static List<PartImportRow> parse(List<Map<String, Object>> items, Map<Integer, String> errors) {
+        LinkedHashMap<String, PartImportRow> byPartNumber = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            int rowNumber = i + 1;
+            Map<String, Object> item = items.get(i);
+            try {
+                if (item == null) {
+                    throw new IllegalArgumentException("fila vacía");
+                }
+                String partNumber = item.get("partNumber") != null ? item.get("partNumber").toString().trim() : null;
+                if (partNumber == null || partNumber.isEmpty()) {
+                    errors.put(rowNumber, "falta partNumber");
+                    continue;
+                }
+                PartImportRow row = new PartImportRow(partNumber, rowNumber);
+                if (item.get("title") != null) row.setTitle(item.get("title").toString().trim());
+                if (item.get("description") != null) row.setDescription(item.get("description").toString().trim());
+                row.setCategoryId(asLong(item, "categoryId"));
+                row.setBrandId(asLong(item, "brandId"));
+                if (item.get("price") != null) row.setPrice(new BigDecimal(item.get("price").toString()));
+                if (item.get("weightLb") != null) row.setWeightLb(new BigDecimal(item.get("weightLb").toString()));
+                row.setStockQuantity(asInteger(item, "stockQuantity"));
+                row.setLowStockThreshold(asInteger(item, "lowStockThreshold"));
+                row.setActive(asInteger(item, "active"));
+
+                PartImportRow first = byPartNumber.get(partNumber);
+                if (first != null) {
+                    first.mergeFrom(row);
+                } else {
+                    byPartNumber.put(partNumber, row);
+                }
+            } catch (NumberFormatException e) {
+                errors.put(rowNumber, "valor numérico inválido (" + e.getMessage() + ")");
+            } catch (RuntimeException e) {
+                errors.put(rowNumber, e.getMessage());
+            }
+        }
+        return new ArrayList<>(byPartNumber.values());
+    }
+
+    private static Long asLong(Map<String, Object> item, String key) {
+        Object v = item.get(key);
+        if (v == null) return null;
+        if (v instanceof Number n) return n.longValue();
+        throw new IllegalArgumentException(key + " debe ser numérico");
+    }
+
+    private static Integer asInteger(Map<String, Object> item, String key) {
+        Object v = item.get(key);
+        if (v == null) return null;
+        if (v instanceof Number n) return n.intValue();
+        throw new IllegalArgumentException(key + " debe ser numérico");
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable t = e;
+        while (t.getCause() != null && t.getCause() != t) {
+            t = t.getCause();
+        }
+        String msg = t.getMessage() != null ? t.getMessage() : e.toString();
+        int nl = msg.indexOf('\n');
+        return nl > 0 ? msg.substring(0, nl).trim() : msg;
+    }
+}
@@ -1,25 +1,47 @@
 package com.agencias.backend.service;
 
+import com.agencias.backend.config.ConfigLoader;
 import com.agencias.backend.model.ImportExportLog;
 import com.agencias.backend.model.InventoryLog;
 import com.agencias.backend.model.Part;
 import com.agencias.backend.model.PartImage;
 import com.agencias.backend.repository.ImportExportLogRepository;
 import com.agencias.backend.repository.InventoryLogRepository;
+import com.agencias.backend.repository.KeysetCursor;
+import com.agencias.backend.repository.KeysetPage;
 import com.agencias.backend.repository.PartImageRepository;
 import com.agencias.backend.repository.PartRepository;
+import com.agencias.backend.repository.PartSort;
 import jakarta.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
 
 public class PartService {
+    /** Antigüedad máxima del índice de búsqueda antes de recargarlo completo (cambios hechos por otros nodos). */
+    private static final long SEARCH_INDEX_MAX_AGE_MS = ConfigLoader.getLongSetting(
+        "CATALOG_SEARCH_INDEX_REFRESH_MINUTES", "catalog.search.index.refresh.minutes", 10) * 60_000L;
+
+    /** Tamaño máximo de página en los listados paginados del catálogo. */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /** Filas por UPDATE en lote (y por transacción) en la carga masiva de inventario. */
+    static final int INVENTORY_CHUNK = 1000;
+
     private final PartRepository repo;
     private final PartImageRepository partImageRepo;
     private final MailService mailService;
     private final InventoryLogRepository inventoryLogRepo;
     private final ImportExportLogRepository importExportLogRepo;
+    private final LowStockAlertAggregator lowStockAlerts;
 
     public PartService(EntityManagerFactory emf) {
         this(emf, null);
@@ -31,22 +53,29 @@ public class PartService {
         this.mailService = mailService;
         this.inventoryLogRepo = new InventoryLogRepository(emf);
         this.importExportLogRepo = new ImportExportLogRepository(emf);
+        this.lowStockAlerts = mailService != null ? LowStockAlertAggregator.shared(emf) : null;
     }
 
+    /**
+     * Pasa el repuesto a {@link LowStockAlertAggregator}: si acaba de cruzar su umbral, entra en el próximo
+     * resumen de stock bajo; si ya estaba bajo no se vuelve a avisar.
+     */
     private void checkLowStockAndNotify(Part p) {
-        if (mailService == null) return;
+        if (lowStockAlerts == null) return;
         try {
-            int stock = p.getStockQuantity() != null ? p.getStockQuantity() : 0;
-            int reserved = p.getReservedQuantity() != null ? p.getReservedQuantity() : 0;
-            int threshold = p.getLowStockThreshold() != null ? p.getLowStockThreshold() : 5;
-            if (stock - reserved <= threshold) {
-                mailService.sendLowStockAlert(p);
-            }
+            lowStockAlerts.observe(p);
         } catch (Exception e) {
             System.err.println("checkLowStockAndNotify (no se cancela el pedido): " + e.getMessage());
         }
     }
 
+    /** Invalida en {@link CatalogCache} los listados en los que aparece el repuesto. */
+    private static void invalidateCatalog(Part p) {
+        if (p != null) {
+            CatalogCache.shared().invalidatePart(p.getCategoryId(), p.getBrandId());
+        }
+    }
+
     public Part create(Long categoryId, Long brandId, String partNumber, String title, 
                       String description, String compatibilityTags, BigDecimal weightLb, BigDecimal price, 
                       Integer stockQuantity, Integer lowStockThreshold, Integer partYear) {
@@ -75,22 +104,38 @@ public class PartService {
         p.setStockQuantity(stockQuantity != null ? stockQuantity : 0);
         p.setLowStockThreshold(lowStockThreshold != null ? lowStockThreshold : 5);
         p.setPartYear(partYear);
-        return repo.save(p);
+        p = repo.save(p);
+        CatalogSearchIndex.shared().put(p);
+        invalidateCatalog(p);
+        return p;
     }
 
+    /**
+     * Edición del administrador. Se aplica sobre la fila recién leída y se reintenta si una venta o reserva cambió
+     * la versión entre medio, así no falla por el tráfico de pedidos ni pisa el stock con un valor viejo.
+     */
     public Part update(Long id, Long categoryId, Long brandId, String title, 
                       String description, String compatibilityTags, BigDecimal weightLb, BigDecimal price, Integer active, Integer partYear, Boolean updatePartYear) {
-        Part p = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        if (categoryId != null) p.setCategoryId(categoryId);
-        if (brandId != null) p.setBrandId(brandId);
-        if (title != null && !title.isBlank()) p.setTitle(title.trim());
-        if (description != null) p.setDescription(description.trim());
-        if (compatibilityTags != null) p.setCompatibilityTags(normalizeTags(compatibilityTags));
-        if (weightLb != null) p.setWeightLb(weightLb);
-        if (price != null) p.setPrice(price);
-        if (active != null) p.setActive(active);
-        if (updatePartYear != null && updatePartYear) p.setPartYear(partYear);
-        return repo.save(p);
+        Long[] oldCategoryAndBrand = new Long[2];
+        Part p = OptimisticRetry.shared().run("updatePart", () -> {
+            Part current = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            oldCategoryAndBrand[0] = current.getCategoryId();
+            oldCategoryAndBrand[1] = current.getBrandId();
+            if (categoryId != null) current.setCategoryId(categoryId);
+            if (brandId != null) current.setBrandId(brandId);
+            if (title != null && !title.isBlank()) current.setTitle(title.trim());
+            if (description != null) current.setDescription(description.trim());
+            if (compatibilityTags != null) current.setCompatibilityTags(normalizeTags(compatibilityTags));
+            if (weightLb != null) current.setWeightLb(weightLb);
+            if (price != null) current.setPrice(price);
+            if (active != null) current.setActive(active);
+            if (updatePartYear != null && updatePartYear) current.setPartYear(partYear);
+            return repo.save(current);
+        });
+        CatalogSearchIndex.shared().put(p);
+        CatalogCache.shared().invalidatePart(oldCategoryAndBrand[0], oldCategoryAndBrand[1]);
+        invalidateCatalog(p);
+        return p;
     }
 
     private String normalizeTags(String raw) {
@@ -101,10 +146,19 @@ public class PartService {
     }
 
     public Part updateImage(Long id, byte[] imageData, String imageType) {
-        Part p = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        p.setImageData(imageData);
-        p.setImageType(imageType);
-        return repo.save(p);
+        Part p = OptimisticRetry.shared().run("updatePartImage", () -> {
+            Part current = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            current.setImageData(imageData);
+            current.setImageType(imageType);
+            return repo.save(current);
+        });
+        ImageCache.shared().invalidate("part", id);
+        invalidateCatalog(p);
+        if (imageData != null && imageData.length > 0) {
+            ImageVariantService.shared().pregenerateAsync(List.of(imageData), Collections.singletonList(imageType),
+                ImageVariantService.pregenerateWidths());
+        }
+        return p;
     }
 
     /**
@@ -118,10 +172,12 @@ public class PartService {
         if (imageTypes == null || imageTypes.size() != imageBytes.size()) {
             throw new IllegalArgumentException("Cada imagen requiere su imageType");
         }
-        Part p = repo.findById(partId).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        p.setImageData(imageBytes.get(0));
-        p.setImageType(imageTypes.get(0));
-        repo.save(p);
+        Part p = OptimisticRetry.shared().run("replacePartGallery", () -> {
+            Part current = repo.findById(partId).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            current.setImageData(imageBytes.get(0));
+            current.setImageType(imageTypes.get(0));
+            return repo.save(current);
+        });
         partImageRepo.deleteByPartId(partId);
         for (int i = 1; i < imageBytes.size(); i++) {
             PartImage row = new PartImage();
@@ -131,6 +187,9 @@ public class PartService {
             row.setImageType(imageTypes.get(i));
             partImageRepo.save(row);
         }
+        ImageCache.shared().invalidate("part", partId);
+        invalidateCatalog(p);
+        ImageVariantService.shared().pregenerateAsync(imageBytes, imageTypes, ImageVariantService.pregenerateWidths());
         return repo.findById(partId).orElse(p);
     }
 
@@ -139,16 +198,44 @@ public class PartService {
         return (int) partImageRepo.countByPartId(partId);
     }
 
+    /** Listado completo servido desde {@link CatalogCache}; la lista devuelta es de solo lectura. */
     public List<Part> listAll() {
-        return repo.findAll();
+        return CatalogCache.shared().get(CatalogCache.KEY_ALL, repo::findAll);
     }
 
     public List<Part> listByCategory(Long categoryId) {
-        return repo.findByCategory(categoryId);
+        return CatalogCache.shared().get(CatalogCache.categoryKey(categoryId), () -> repo.findByCategory(categoryId));
     }
 
     public List<Part> listByBrand(Long brandId) {
-        return repo.findByBrand(brandId);
+        return CatalogCache.shared().get(CatalogCache.brandKey(brandId), () -> repo.findByBrand(brandId));
+    }
+
+    /**
+     * Página del catálogo por keyset ({@code categoryId} tiene prioridad sobre {@code brandId}, como en el listado
+     * completo). La primera página se sirve desde {@link CatalogCache} y se invalida con su listado; las siguientes
+     * van siempre a BD por keyset.
+     * @param sort {@code title} o {@code createdAt}; por defecto el mismo orden que el listado sin paginar
+     * @param after cursor {@code nextCursor} de la página anterior; null para la primera
+     */
+    public KeysetPage<Part> listPage(Long categoryId, Long brandId, String sort, String after, int limit) {
+        checkPageSize(limit);
+        Long brandFilter = categoryId != null ? null : brandId;
+        String baseKey = categoryId != null ? CatalogCache.categoryKey(categoryId)
+            : brandFilter != null ? CatalogCache.brandKey(brandFilter) : CatalogCache.KEY_ALL;
+        PartSort order = PartSort.fromParam(sort, categoryId != null || brandFilter != null ? PartSort.TITLE : PartSort.CREATED_AT);
+        KeysetCursor cursor = KeysetCursor.decode(after, order.getParam());
+        List<Part> rows = cursor == null
+            ? CatalogCache.shared().get(CatalogCache.firstPageKey(baseKey, order.getParam(), limit),
+                () -> repo.findPage(categoryId, brandFilter, order, null, limit))
+            : repo.findPage(categoryId, brandFilter, order, cursor, limit);
+        return KeysetPage.fromLookahead(rows, limit, order::cursorOf);
+    }
+
+    private static void checkPageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_PAGE_SIZE);
+        }
     }
 
     public Part getById(Long id) {
@@ -160,22 +247,33 @@ public class PartService {
     }
 
     public void delete(Long id) {
+        Part existing = repo.findById(id).orElse(null);
         partImageRepo.deleteByPartId(id);
         repo.delete(id);
+        CatalogSearchIndex.shared().remove(id);
+        ImageCache.shared().invalidate("part", id);
+        if (existing != null) {
+            invalidateCatalog(existing);
+        } else {
+            CatalogCache.shared().invalidateAll();
+        }
     }
 
     /**
      * Actualizar inventario de un repuesto
      */
     public Part updateInventory(Long id, Integer stockQuantity, Integer lowStockThreshold) {
-        Part p = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        if (stockQuantity != null && stockQuantity >= 0) {
-            p.setStockQuantity(stockQuantity);
-        }
-        if (lowStockThreshold != null && lowStockThreshold >= 0) {
-            p.setLowStockThreshold(lowStockThreshold);
-        }
-        p = repo.save(p);
+        Part p = OptimisticRetry.shared().run("updateInventory", () -> {
+            Part current = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            if (stockQuantity != null && stockQuantity >= 0) {
+                current.setStockQuantity(stockQuantity);
+            }
+            if (lowStockThreshold != null && lowStockThreshold >= 0) {
+                current.setLowStockThreshold(lowStockThreshold);
+            }
+            return repo.save(current);
+        });
+        invalidateCatalog(p);
         checkLowStockAndNotify(p);
         return p;
     }
@@ -189,15 +287,19 @@ public class PartService {
             throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
         }
         
-        Part p = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        
-        int available = p.getStockQuantity() - p.getReservedQuantity();
-        if (available < quantity) {
-            return false; // No hay suficiente stock
+        Part p = OptimisticRetry.shared().run("reserveStock", () -> {
+            Part current = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            int available = current.getStockQuantity() - current.getReservedQuantity();
+            if (available < quantity) {
+                return null; // No hay suficiente stock
+            }
+            current.setReservedQuantity(current.getReservedQuantity() + quantity);
+            return repo.save(current);
+        });
+        if (p == null) {
+            return false;
         }
-        
-        p.setReservedQuantity(p.getReservedQuantity() + quantity);
-        repo.save(p);
+        invalidateCatalog(p);
         return true;
     }
 
@@ -209,12 +311,14 @@ public class PartService {
             throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
         }
         
-        Part p = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        
-        // Reducir stock y cantidad reservada
-        p.setStockQuantity(Math.max(0, p.getStockQuantity() - quantity));
-        p.setReservedQuantity(Math.max(0, p.getReservedQuantity() - quantity));
-        repo.save(p);
+        Part p = OptimisticRetry.shared().run("confirmSale", () -> {
+            Part current = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            // Reducir stock y cantidad reservada
+            current.setStockQuantity(Math.max(0, current.getStockQuantity() - quantity));
+            current.setReservedQuantity(Math.max(0, current.getReservedQuantity() - quantity));
+            return repo.save(current);
+        });
+        invalidateCatalog(p);
         checkLowStockAndNotify(p);
     }
 
@@ -226,9 +330,36 @@ public class PartService {
             throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
         }
         
-        Part p = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        p.setReservedQuantity(Math.max(0, p.getReservedQuantity() - quantity));
-        repo.save(p);
+        Part p = OptimisticRetry.shared().run("releaseStock", () -> {
+            Part current = repo.findById(id).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            current.setReservedQuantity(Math.max(0, current.getReservedQuantity() - quantity));
+            return repo.save(current);
+        });
+        invalidateCatalog(p);
+    }
+
+    /**
+     * Tras confirmar pedidos con {@link com.agencias.backend.repository.OrderRepository#placeOrders}: invalida los
+     * listados afectados y registra los cruces de umbral de stock bajo.
+     */
+    public void afterOrdersPlaced(Collection<Long> partIds) {
+        afterStockSold(partIds);
+    }
+
+    /**
+     * Tras confirmar una venta (el stock ya se descontó): invalida los listados afectados y registra los cruces de
+     * umbral de stock bajo con los valores ya confirmados.
+     */
+    public void afterStockSold(Collection<Long> partIds) {
+        try {
+            for (Part p : repo.findSummariesByIds(partIds)) {
+                invalidateCatalog(p);
+                checkLowStockAndNotify(p);
+            }
+        } catch (RuntimeException e) {
+            CatalogCache.shared().invalidateAll();
+            System.err.println("afterStockSold (el pedido ya está confirmado): " + e.getMessage());
+        }
     }
 
     /**
@@ -247,11 +378,17 @@ public class PartService {
         if (quantityAdded <= 0) {
             throw new IllegalArgumentException("La cantidad a agregar debe ser mayor a cero");
         }
-        Part p = repo.findById(partId).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
-        int previous = p.getStockQuantity() != null ? p.getStockQuantity() : 0;
-        int newQty = previous + quantityAdded;
-        p.setStockQuantity(newQty);
-        p = repo.save(p);
+        int[] previousAndNew = new int[2];
+        Part p = OptimisticRetry.shared().run("addInventory", () -> {
+            Part current = repo.findById(partId).orElseThrow(() -> new IllegalArgumentException("Repuesto no encontrado"));
+            previousAndNew[0] = current.getStockQuantity() != null ? current.getStockQuantity() : 0;
+            previousAndNew[1] = previousAndNew[0] + quantityAdded;
+            current.setStockQuantity(previousAndNew[1]);
+            return repo.save(current);
+        });
+        int previous = previousAndNew[0];
+        int newQty = previousAndNew[1];
+        invalidateCatalog(p);
 
         InventoryLog log = new InventoryLog();
         log.setPartId(partId);
@@ -269,64 +406,192 @@ public class PartService {
      * Búsqueda por nombre, descripción y especificaciones (descripción).
      */
     public List<Part> search(String nombre, String descripcion, String especificaciones, String compatibilityTags) {
-        return repo.search(nombre, descripcion, especificaciones, compatibilityTags);
+        return search(nombre, descripcion, especificaciones, compatibilityTags, null);
     }
 
     /**
-     * Exportar todos los repuestos (para log se requiere userId).
+     * Búsqueda resuelta en el índice en memoria ({@link CatalogSearchIndex}); solo se va a BD para cargar
+     * por id los repuestos encontrados. Si el índice no se puede cargar se usa la consulta LIKE original.
      */
-    public List<Part> exportRepuestos(Long userId) {
-        List<Part> list = repo.findAllForExport();
-        ImportExportLog log = new ImportExportLog();
-        log.setUserId(userId != null ? userId : 0L);
-        log.setOperation("EXPORT");
-        log.setSuccessCount(list.size());
-        log.setErrorCount(0);
-        importExportLogRepo.save(log);
-        return list;
+    public List<Part> search(String nombre, String descripcion, String especificaciones, String compatibilityTags,
+                             String partNumber) {
+        CatalogSearchIndex index;
+        try {
+            index = searchIndex();
+        } catch (RuntimeException e) {
+            System.err.println("Índice de búsqueda no disponible, se usa consulta a BD: " + e.getMessage());
+            List<Part> list = repo.search(nombre, descripcion, especificaciones, compatibilityTags);
+            if (partNumber != null && !partNumber.isBlank()) {
+                String pn = partNumber.trim().toLowerCase();
+                list.removeIf(p -> p.getPartNumber() == null || !p.getPartNumber().toLowerCase().contains(pn));
+            }
+            return list;
+        }
+        List<Long> ids = index.search(nombre, descripcion, especificaciones, compatibilityTags, partNumber);
+        List<Part> parts = repo.findSummariesByIds(ids);
+        parts.removeIf(p -> p.getActive() == null || p.getActive() != 1);
+        return parts;
     }
 
     /**
-     * Importar repuestos desde JSON. Sobreescribe por partNumber. Crea si no existe.
-     * @return mapa con successCount, errorCount, detail (mensajes de error)
+     * Búsqueda paginada por keyset sobre título + partId (el orden del índice). Solo se cargan de BD los
+     * repuestos de la página.
+     * @param after cursor {@code nextCursor} de la página anterior; null para la primera
      */
-    public Map<String, Object> importRepuestos(List<Map<String, Object>> items, Long userId, String fileName) {
-        int success = 0;
-        int errors = 0;
-        List<String> detailLines = new ArrayList<>();
-
-        for (int i = 0; i < items.size(); i++) {
-            Map<String, Object> item = items.get(i);
-            try {
-                String partNumber = item.get("partNumber") != null ? item.get("partNumber").toString().trim() : null;
-                if (partNumber == null || partNumber.isEmpty()) {
-                    errors++;
-                    detailLines.add("Fila " + (i + 1) + ": falta partNumber");
-                    continue;
+    public KeysetPage<Part> searchPage(String nombre, String descripcion, String especificaciones,
+                                       String compatibilityTags, String partNumber, String after, int limit) {
+        checkPageSize(limit);
+        KeysetCursor cursor = KeysetCursor.decode(after, PartSort.TITLE.getParam());
+        CatalogSearchIndex index;
+        try {
+            index = searchIndex();
+        } catch (RuntimeException e) {
+            System.err.println("Índice de búsqueda no disponible, se usa consulta a BD: " + e.getMessage());
+            if (partNumber != null && !partNumber.isBlank()) {
+                List<Part> all = search(nombre, descripcion, especificaciones, compatibilityTags, partNumber);
+                return pageInMemory(all, cursor, limit);
+            }
+            List<Part> rows = repo.searchPage(nombre, descripcion, especificaciones, compatibilityTags, cursor, limit);
+            return KeysetPage.fromLookahead(rows, limit, PartSort.TITLE::cursorOf);
+        }
+        List<CatalogSearchIndex.Hit> hits =
+            index.searchHits(nombre, descripcion, especificaciones, compatibilityTags, partNumber);
+        int from = 0;
+        if (cursor != null) {
+            String afterTitle = cursor.getSortValue() != null ? cursor.getSortValue() : "";
+            from = firstAfter(hits.size(), i -> compareTitleKey(hits.get(i).getTitle(), hits.get(i).getPartId(),
+                afterTitle, cursor.getId()));
+        }
+        // Los que la BD ya tiene inactivos (el índice aún no se enteró) no ocupan lugar en la página: se siguen
+        // cargando candidatos hasta completarla o agotar la lista
+        List<Part> parts = new ArrayList<>(limit);
+        int to = from;
+        while (parts.size() < limit && to < hits.size()) {
+            int end = Math.min(to + limit - parts.size(), hits.size());
+            List<Long> window = new ArrayList<>(end - to);
+            for (CatalogSearchIndex.Hit h : hits.subList(to, end)) {
+                window.add(h.getPartId());
+            }
+            for (Part p : repo.findSummariesByIds(window)) {
+                if (p.getActive() != null && p.getActive() == 1) {
+                    parts.add(p);
                 }
-                var existing = repo.findByPartNumber(partNumber);
-                if (existing.isPresent()) {
-                    Part p = existing.get();
-                    applyPartFromMap(p, item);
-                    repo.save(p);
-                } else {
-                    Part p = new Part();
-                    p.setPartNumber(partNumber);
-                    applyPartFromMap(p, item);
-                    if (p.getTitle() == null || p.getTitle().isBlank()) p.setTitle(partNumber);
-                    if (p.getPrice() == null) p.setPrice(BigDecimal.ZERO);
-                    if (p.getStockQuantity() == null) p.setStockQuantity(0);
-                    if (p.getLowStockThreshold() == null) p.setLowStockThreshold(5);
-                    if (p.getCategoryId() == null) p.setCategoryId(1L);
-                    if (p.getBrandId() == null) p.setBrandId(1L);
-                    repo.save(p);
+            }
+            to = end;
+        }
+        boolean more = to < hits.size();
+        String next = null;
+        if (more && to > from) {
+            CatalogSearchIndex.Hit last = hits.get(to - 1);
+            next = new KeysetCursor(last.getTitle(), last.getPartId()).encode(PartSort.TITLE.getParam());
+        }
+        return new KeysetPage<>(parts, next, more);
+    }
+
+    /** Respaldo sin índice: la lista ya viene ordenada por título; se recorta tras el cursor. */
+    private static KeysetPage<Part> pageInMemory(List<Part> sorted, KeysetCursor cursor, int limit) {
+        sorted.sort(Comparator.comparing((Part p) -> p.getTitle() != null ? p.getTitle() : "")
+            .thenComparing(Part::getPartId));
+        int from = 0;
+        if (cursor != null) {
+            String afterTitle = cursor.getSortValue() != null ? cursor.getSortValue() : "";
+            from = firstAfter(sorted.size(), i -> compareTitleKey(sorted.get(i).getTitle(), sorted.get(i).getPartId(),
+                afterTitle, cursor.getId()));
+        }
+        List<Part> rows = sorted.subList(from, Math.min(from + limit + 1, sorted.size()));
+        return KeysetPage.fromLookahead(rows, limit, PartSort.TITLE::cursorOf);
+    }
+
+    private static int compareTitleKey(String title, Long id, String afterTitle, long afterId) {
+        int c = (title != null ? title : "").compareTo(afterTitle);
+        return c != 0 ? c : Long.compare(id, afterId);
+    }
+
+    /** Primer índice en [0, size) cuya clave es mayor que el cursor (búsqueda binaria sobre una lista ordenada). */
+    private static int firstAfter(int size, IntUnaryOperator compareAt) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt.applyAsInt(mid) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Recarga completa del índice de búsqueda desde BD (arranque y refresco periódico). */
+    public void rebuildSearchIndex() {
+        CatalogSearchIndex.shared().rebuild(repo::findAllForSearchIndex);
+    }
+
+    /**
+     * Índice listo para buscar. Solo la primera carga hace esperar a la búsqueda; cuando está viejo se recarga en
+     * segundo plano y mientras tanto se sigue buscando en el actual.
+     */
+    private CatalogSearchIndex searchIndex() {
+        CatalogSearchIndex index = CatalogSearchIndex.shared();
+        if (!index.isLoaded()) {
+            synchronized (CatalogSearchIndex.class) {
+                if (!index.isLoaded()) {
+                    rebuildSearchIndex();
                 }
-                success++;
-            } catch (Exception e) {
-                errors++;
-                detailLines.add("Fila " + (i + 1) + ": " + e.getMessage());
             }
+        } else if (System.currentTimeMillis() - index.getLoadedAtMillis() > SEARCH_INDEX_MAX_AGE_MS) {
+            index.refreshInBackground(repo::findAllForSearchIndex);
         }
+        return index;
+    }
+
+    /**
+     * Exporta todos los repuestos escribiéndolos en {@code out} a medida que se leen de BD, y registra la
+     * operación en IMPORT_EXPORT_LOG al terminar (también si el envío se corta, con el error en el detalle).
+     * @param userId usuario para el log (0 si no se indica)
+     * @return cantidad de repuestos escritos
+     */
+    public long exportRepuestos(Long userId, CatalogExportWriter.Format format, OutputStream out) throws IOException {
+        long[] written = {0};
+        String error = null;
+        try (CatalogExportWriter writer = new CatalogExportWriter(format, out)) {
+            repo.streamForExport(p -> {
+                writer.write(p);
+                written[0]++;
+            });
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            ImportExportLog log = new ImportExportLog();
+            log.setUserId(userId != null ? userId : 0L);
+            log.setOperation("EXPORT");
+            log.setFileName("repuestos." + format.name().toLowerCase());
+            log.setSuccessCount((int) written[0]);
+            log.setErrorCount(error != null ? 1 : 0);
+            log.setDetail(error != null ? "Exportación interrumpida: " + error : null);
+            try {
+                importExportLogRepo.save(log);
+            } catch (RuntimeException e) {
+                System.err.println("No se pudo registrar la exportación: " + e.getMessage());
+            }
+        }
+        return written[0];
+    }
+
+    /**
+     * Importar repuestos desde JSON. Sobreescribe por partNumber. Crea si no existe.
+     * Se aplica por bloques con {@link PartImportEngine}; los errores se informan por fila.
+     * @return mapa con successCount, errorCount, detail (mensajes de error)
+     */
+    public Map<String, Object> importRepuestos(List<Map<String, Object>> items, Long userId, String fileName) {
+        PartImportEngine.Result result = new PartImportEngine(repo).run(items);
+        if (result.success > 0) {
+            CatalogCache.shared().invalidateAll();
+        }
+        int success = result.success;
+        int errors = result.errors.size();
+        List<String> detailLines = result.detailLines();
 
         ImportExportLog log = new ImportExportLog();
         log.setUserId(userId != null ? userId : 0L);
@@ -340,51 +605,61 @@ public class PartService {
         return Map.of("successCount", success, "errorCount", errors, "detail", String.join("\n", detailLines));
     }
 
-    private void applyPartFromMap(Part p, Map<String, Object> item) {
-        if (item.get("title") != null) p.setTitle(item.get("title").toString().trim());
-        if (item.get("description") != null) p.setDescription(item.get("description").toString().trim());
-        if (item.get("categoryId") != null) p.setCategoryId(((Number) item.get("categoryId")).longValue());
-        if (item.get("brandId") != null) p.setBrandId(((Number) item.get("brandId")).longValue());
-        if (item.get("price") != null) p.setPrice(new BigDecimal(item.get("price").toString()));
-        if (item.get("weightLb") != null) p.setWeightLb(new BigDecimal(item.get("weightLb").toString()));
-        if (item.get("stockQuantity") != null) p.setStockQuantity(((Number) item.get("stockQuantity")).intValue());
-        if (item.get("lowStockThreshold") != null) p.setLowStockThreshold(((Number) item.get("lowStockThreshold")).intValue());
-        if (item.get("active") != null) p.setActive(((Number) item.get("active")).intValue());
-    }
-
     /**
      * Carga masiva de inventario por JSON. Body: [{ partNumber, stockQuantity }, ...]
+     * Se aplica por bloques de {@value #INVENTORY_CHUNK} filas con un UPDATE en lote por bloque; los partNumber
+     * inexistentes salen del mismo paso (filas no actualizadas).
      */
     public Map<String, Object> importInventario(List<Map<String, Object>> items, Long userId, String fileName) {
         int success = 0;
-        int errors = 0;
-        List<String> detailLines = new ArrayList<>();
+        TreeMap<Integer, String> errorsByRow = new TreeMap<>();
+        List<String> notFound = new ArrayList<>();
 
+        List<Integer> rows = new ArrayList<>();
+        List<String> partNumbers = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
         for (int i = 0; i < items.size(); i++) {
             Map<String, Object> item = items.get(i);
+            Object pnRaw = item != null ? item.get("partNumber") : null;
+            Object stockRaw = item != null ? item.get("stockQuantity") : null;
+            String partNumber = pnRaw != null ? pnRaw.toString().trim() : null;
+            Integer stock = stockRaw instanceof Number n ? n.intValue() : null;
+            if (partNumber == null || partNumber.isEmpty() || stock == null || stock < 0) {
+                errorsByRow.put(i + 1, "partNumber y stockQuantity obligatorios (>= 0)");
+                continue;
+            }
+            rows.add(i + 1);
+            partNumbers.add(partNumber);
+            quantities.add(stock);
+        }
+
+        for (int from = 0; from < rows.size(); from += INVENTORY_CHUNK) {
+            int to = Math.min(from + INVENTORY_CHUNK, rows.size());
+            int[] counts;
             try {
-                String partNumber = item.get("partNumber") != null ? item.get("partNumber").toString().trim() : null;
-                Integer stock = item.get("stockQuantity") != null ? ((Number) item.get("stockQuantity")).intValue() : null;
-                if (partNumber == null || partNumber.isEmpty() || stock == null || stock < 0) {
-                    errors++;
-                    detailLines.add("Fila " + (i + 1) + ": partNumber y stockQuantity obligatorios (>= 0)");
-                    continue;
+                counts = repo.updateStockByPartNumber(partNumbers.subList(from, to), quantities.subList(from, to));
+            } catch (Exception e) {
+                for (int i = from; i < to; i++) {
+                    errorsByRow.put(rows.get(i), e.getMessage());
                 }
-                var existing = repo.findByPartNumber(partNumber);
-                if (existing.isEmpty()) {
-                    errors++;
-                    detailLines.add("Fila " + (i + 1) + ": repuesto no encontrado: " + partNumber);
-                    continue;
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                if (counts[i - from] > 0) {
+                    success++;
+                } else {
+                    errorsByRow.put(rows.get(i), "repuesto no encontrado: " + partNumbers.get(i));
+                    notFound.add(partNumbers.get(i));
                 }
-                Part p = existing.get();
-                p.setStockQuantity(stock);
-                repo.save(p);
-                success++;
-            } catch (Exception e) {
-                errors++;
-                detailLines.add("Fila " + (i + 1) + ": " + e.getMessage());
             }
         }
+        if (success > 0) {
+            CatalogCache.shared().invalidateAll();
+        }
+
+        List<String> detailLines = new ArrayList<>(errorsByRow.size());
+        errorsByRow.forEach((row, msg) -> detailLines.add("Fila " + row + ": " + msg));
+        int errors = errorsByRow.size();
 
         ImportExportLog log = new ImportExportLog();
         log.setUserId(userId != null ? userId : 0L);
@@ -395,6 +670,7 @@ public class PartService {
         log.setDetail(detailLines.isEmpty() ? null : String.join("\n", detailLines));
         importExportLogRepo.save(log);
 
-        return Map.of("successCount", success, "errorCount", errors, "detail", String.join("\n", detailLines));
+        return Map.of("successCount", success, "errorCount", errors, "detail", String.join("\n", detailLines),
+            "notFound", notFound);
     }
 }
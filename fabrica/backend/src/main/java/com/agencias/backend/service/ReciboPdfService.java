@@ -1,9 +1,12 @@
 package com.agencias.backend.service;
 
+import com.agencias.backend.controller.ETags;
 import com.agencias.backend.model.OrderHeader;
 import com.agencias.backend.model.OrderItem;
+import com.agencias.backend.model.OrderReceipt;
 import com.agencias.backend.model.Part;
 import com.agencias.backend.repository.OrderItemRepository;
+import com.agencias.backend.repository.OrderReceiptRepository;
 import com.agencias.backend.repository.OrderRepository;
 import com.agencias.backend.repository.PartRepository;
 import com.lowagie.text.*;
@@ -15,35 +18,107 @@ import jakarta.persistence.EntityManagerFactory;
 import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
- * Genera el PDF del recibo de un pedido.
+ * Genera el PDF del recibo de un pedido. Las líneas y montos de un pedido no cambian después de crearlo, así que el
+ * PDF se genera una sola vez y se guarda en ORDER_RECEIPT con su ETag; las descargas siguientes lo sirven tal cual.
  */
 public class ReciboPdfService {
 
+    /** Subir al cambiar el diseño del recibo: los guardados con otra versión se vuelven a generar. */
+    static final int TEMPLATE_VERSION = 1;
+
+    /** Recibo listo para enviar: PDF, su ETag (entre comillas) y el número de pedido para el nombre del archivo. */
+    public static final class Recibo {
+        private final byte[] pdf;
+        private final String etag;
+        private final String orderNumber;
+
+        Recibo(byte[] pdf, String etag, String orderNumber) {
+            this.pdf = pdf;
+            this.etag = etag;
+            this.orderNumber = orderNumber;
+        }
+
+        public byte[] getPdf() { return pdf; }
+        public String getEtag() { return etag; }
+        public String getOrderNumber() { return orderNumber; }
+    }
+
     private final OrderRepository orderRepo;
     private final OrderItemRepository itemRepo;
     private final PartRepository partRepo;
+    private final OrderReceiptRepository receiptRepo;
 
     public ReciboPdfService(EntityManagerFactory emf) {
-        this.orderRepo = new OrderRepository(emf);
-        this.itemRepo = new OrderItemRepository(emf);
-        this.partRepo = new PartRepository(emf);
+        this(new OrderRepository(emf), new OrderItemRepository(emf), new PartRepository(emf),
+            new OrderReceiptRepository(emf));
+    }
+
+    ReciboPdfService(OrderRepository orderRepo, OrderItemRepository itemRepo, PartRepository partRepo,
+                     OrderReceiptRepository receiptRepo) {
+        this.orderRepo = orderRepo;
+        this.itemRepo = itemRepo;
+        this.partRepo = partRepo;
+        this.receiptRepo = receiptRepo;
     }
 
     /**
-     * Genera el PDF del recibo para el pedido dado.
-     * @return bytes del PDF o null si el pedido no existe
+     * ETag del recibo ya guardado, sin leer el PDF (para responder 304 a un {@code If-None-Match}).
+     * @return null si el recibo aún no se generó
      */
-    public byte[] generarReciboPdf(Long orderId) {
+    public String knownEtag(Long orderId) {
+        return receiptRepo.findEtag(orderId, TEMPLATE_VERSION).orElse(null);
+    }
+
+    /**
+     * Recibo del pedido: el guardado si existe; si no, lo genera y lo guarda para las siguientes descargas.
+     * @return null si el pedido no existe
+     */
+    public Recibo obtenerRecibo(Long orderId) {
+        Optional<OrderReceipt> saved = receiptRepo.find(orderId, TEMPLATE_VERSION);
+        if (saved.isPresent()) {
+            OrderReceipt r = saved.get();
+            return new Recibo(r.getPdfData(), r.getEtag(), r.getOrderNumber());
+        }
         OrderHeader order = orderRepo.findById(orderId).orElse(null);
         if (order == null) {
             return null;
         }
-        List<OrderItem> items = itemRepo.findByOrderId(orderId);
+        byte[] pdf = generarPdf(order, itemRepo.findByOrderId(orderId));
+        OrderReceipt receipt = new OrderReceipt();
+        receipt.setOrderId(orderId);
+        receipt.setTemplateVersion(TEMPLATE_VERSION);
+        receipt.setOrderNumber(order.getOrderNumber());
+        receipt.setEtag(ETags.forContent(pdf));
+        receipt.setPdfData(pdf);
+        try {
+            receiptRepo.save(receipt);
+        } catch (RuntimeException e) {
+            // Se sirve igual; la próxima descarga lo vuelve a intentar
+            System.err.println("No se pudo guardar el recibo del pedido " + orderId + ": " + e.getMessage());
+        }
+        return new Recibo(pdf, receipt.getEtag(), order.getOrderNumber());
+    }
+
+    private byte[] generarPdf(OrderHeader order, List<OrderItem> items) {
+        // Todos los repuestos del pedido en una sola consulta
+        Set<Long> partIds = new LinkedHashSet<>();
+        for (OrderItem item : items) {
+            partIds.add(item.getPartId());
+        }
+        Map<Long, Part> parts = new HashMap<>();
+        for (Part p : partRepo.findSummariesByIds(new ArrayList<>(partIds))) {
+            parts.put(p.getPartId(), p);
+        }
 
         Document doc = new Document(PageSize.A4, 36, 36, 36, 36);
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -78,9 +153,8 @@ public class ReciboPdfService {
 
             for (OrderItem item : items) {
                 String partInfo = item.getPartId().toString();
-                Optional<Part> partOpt = partRepo.findById(item.getPartId());
-                if (partOpt.isPresent()) {
-                    Part p = partOpt.get();
+                Part p = parts.get(item.getPartId());
+                if (p != null) {
                     partInfo = p.getTitle() + " (" + p.getPartNumber() + ")";
                 }
                 table.addCell(cell(partInfo, false));
@@ -13,7 +13,6 @@ import com.agencias.backend.model.ImportExportLog;
 import com.agencias.backend.model.InventoryLog;
 import com.agencias.backend.model.OrderHeader;
 import com.agencias.backend.model.OrderItem;
-import com.agencias.backend.model.OrderStatusHistory;
 import com.agencias.backend.model.Part;
 import com.agencias.backend.model.PartEngagementLog;
 import com.agencias.backend.repository.ImportExportLogRepository;
@@ -22,7 +21,6 @@ import com.agencias.backend.repository.OrderItemRepository;
 import com.agencias.backend.repository.OrderRepository;
 import com.agencias.backend.repository.PartEngagementLogRepository;
 import com.agencias.backend.repository.PartRepository;
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -150,18 +148,9 @@ public class ReporteriaService {
     public List<MasVendidoDto> reporteMasVendidos(Date from, Date to, Integer limit) {
         Date fromDate = from != null ? from : startOfDay(90);
         Date toDate = to != null ? endOfDay(to) : endOfDay(new Date());
-        List<OrderHeader> orders = orderRepository.findAllFiltered(null, null, fromDate, toDate, null);
-        if (orders.isEmpty()) {
-            return List.of();
-        }
-        List<Long> orderIds = orders.stream().map(OrderHeader::getOrderId).toList();
-        Map<Long, OrderStatusHistory> latestByOrder = loadLatestStatusByOrderId(orderIds);
-        List<Long> activeOrderIds = orders.stream()
+        List<Long> activeOrderIds = orderRepository
+            .findByCreatedAtExcludingStatus(fromDate, toDate, OrderFlowRules.STATUS_CANCELLED).stream()
             .map(OrderHeader::getOrderId)
-            .filter(oid -> {
-                OrderStatusHistory st = latestByOrder.get(oid);
-                return st == null || !"CANCELLED".equalsIgnoreCase(st.getStatus());
-            })
             .toList();
         if (activeOrderIds.isEmpty()) {
             return List.of();
@@ -202,19 +191,14 @@ public class ReporteriaService {
     public List<VentaDiariaDto> reporteVentasPorDia(Date from, Date to) {
         Date fromDate = from != null ? from : startOfDay(90);
         Date toDate = to != null ? endOfDay(to) : endOfDay(new Date());
-        List<OrderHeader> orders = orderRepository.findAllFiltered(null, null, fromDate, toDate, null);
+        List<OrderHeader> orders = orderRepository.findByCreatedAtExcludingStatus(
+            fromDate, toDate, OrderFlowRules.STATUS_CANCELLED);
         if (orders.isEmpty()) {
             return List.of();
         }
-        Map<Long, OrderStatusHistory> latestByOrder = loadLatestStatusByOrderId(
-            orders.stream().map(OrderHeader::getOrderId).toList());
         Map<Date, Long> countByDay = new HashMap<>();
         Map<Date, BigDecimal> sumByDay = new HashMap<>();
         for (OrderHeader oh : orders) {
-            OrderStatusHistory st = latestByOrder.get(oh.getOrderId());
-            if (st != null && "CANCELLED".equalsIgnoreCase(st.getStatus())) {
-                continue;
-            }
             Date day = startOfDayForDate(oh.getCreatedAt());
             countByDay.merge(day, 1L, Long::sum);
             sumByDay.merge(day, oh.getTotal() != null ? oh.getTotal() : BigDecimal.ZERO, BigDecimal::add);
@@ -235,19 +219,14 @@ public class ReporteriaService {
     public List<PedidosPorOrigenDto> reportePedidosPorOrigen(Date from, Date to) {
         Date fromDate = from != null ? from : startOfDay(90);
         Date toDate = to != null ? endOfDay(to) : endOfDay(new Date());
-        List<OrderHeader> orders = orderRepository.findAllFiltered(null, null, fromDate, toDate, null);
+        List<OrderHeader> orders = orderRepository.findByCreatedAtExcludingStatus(
+            fromDate, toDate, OrderFlowRules.STATUS_CANCELLED);
         if (orders.isEmpty()) {
             return List.of();
         }
-        Map<Long, OrderStatusHistory> latestByOrder = loadLatestStatusByOrderId(
-            orders.stream().map(OrderHeader::getOrderId).toList());
         Map<String, Long> countByOrigin = new HashMap<>();
         Map<String, BigDecimal> sumByOrigin = new HashMap<>();
         for (OrderHeader oh : orders) {
-            OrderStatusHistory st = latestByOrder.get(oh.getOrderId());
-            if (st != null && "CANCELLED".equalsIgnoreCase(st.getStatus())) {
-                continue;
-            }
             String origin = oh.getOrderOrigin() != null && !oh.getOrderOrigin().isBlank()
                 ? oh.getOrderOrigin()
                 : "FABRICA_WEB";
@@ -266,39 +245,6 @@ public class ReporteriaService {
         return list;
     }
 
-    private Map<Long, OrderStatusHistory> loadLatestStatusByOrderId(List<Long> orderIds) {
-        if (orderIds.isEmpty()) {
-            return Map.of();
-        }
-        EntityManager em = emf.createEntityManager();
-        try {
-            List<OrderStatusHistory> all = em.createQuery(
-                "SELECT h FROM OrderStatusHistory h WHERE h.orderId IN :ids",
-                OrderStatusHistory.class)
-                .setParameter("ids", orderIds)
-                .getResultList();
-            Map<Long, OrderStatusHistory> map = new HashMap<>();
-            for (OrderStatusHistory h : all) {
-                OrderStatusHistory cur = map.get(h.getOrderId());
-                if (cur == null) {
-                    map.put(h.getOrderId(), h);
-                    continue;
-                }
-                Date hc = h.getChangedAt();
-                Date cc = cur.getChangedAt();
-                if (hc != null && (cc == null || hc.after(cc))) {
-                    map.put(h.getOrderId(), h);
-                } else if (hc == null && cc == null && h.getStatusId() != null && cur.getStatusId() != null
-                    && h.getStatusId() > cur.getStatusId()) {
-                    map.put(h.getOrderId(), h);
-                }
-            }
-            return map;
-        } finally {
-            em.close();
-        }
-    }
-
     private static Date startOfDayForDate(Date d) {
         Calendar c = Calendar.getInstance();
         c.setTime(d != null ? d : new Date());
@@ -0,0 +1,25 @@
+package com.agencias.backend.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Espera entre reintentos (OUTBOX_EVENT, correo, conflictos de versión): el techo empieza en {@code baseMillis} y se duplica en
+ * cada intento hasta {@code maxMillis}; la espera es la mitad fija del techo y la otra mitad al azar, para que los
+ * fallos simultáneos no se reintenten todos juntos.
+ */
+final class RetryBackoff {
+    private final long baseMillis;
+    private final long maxMillis;
+
+    RetryBackoff(long baseMillis, long maxMillis) {
+        this.baseMillis = Math.max(0, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+    }
+
+    /** Espera antes del intento {@code attempt + 1}. */
+    long delay(int attempt) {
+        long ceiling = Math.min(maxMillis, baseMillis << Math.min(Math.max(attempt - 1, 0), 20));
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+}
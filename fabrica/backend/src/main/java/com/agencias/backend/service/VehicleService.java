@@ -45,5 +45,6 @@ public class VehicleService {
 
     public void delete(Long id) {
         repo.delete(id);
+        ImageCache.shared().invalidate("vehicle", id);
     }
 }
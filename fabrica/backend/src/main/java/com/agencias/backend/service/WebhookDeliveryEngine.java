@@ -0,0 +1,179 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.config.ConfigLoader;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Entrega de webhooks a distribuidoras con un único {@link HttpClient} (HTTP/2, conexiones reutilizadas) y un
+ * pool de hilos acotado, en lugar de un cliente nuevo por aviso sobre el pool común. {@link #deliver} hace un
+ * intento en el hilo actual; lo usa {@link OutboxDispatcher}, que guarda el evento y reintenta.
+ * Cada endpoint ({@code esquema://host:puerto}) admite a lo sumo {@code webhook.max.per.endpoint} envíos a la
+ * vez; si está lleno se espera {@code webhook.endpoint.wait.ms} y luego se desiste con
+ * {@link EndpointBusyException}, así una distribuidora lenta no acapara los hilos de las demás.
+ */
+public class WebhookDeliveryEngine {
+
+    /** El endpoint ya tiene todos sus envíos en curso; no se llegó a intentar. */
+    public static class EndpointBusyException extends IOException {
+        public EndpointBusyException(String endpoint) {
+            super("Demasiados webhooks en curso hacia " + endpoint);
+        }
+    }
+
+    /** Envía el POST y devuelve el código HTTP (reemplazable en pruebas). */
+    interface Transport {
+        int post(URI uri, String secret, String json) throws IOException, InterruptedException;
+    }
+
+    private static volatile WebhookDeliveryEngine shared;
+
+    public static WebhookDeliveryEngine shared() {
+        WebhookDeliveryEngine s = shared;
+        if (s == null) {
+            synchronized (WebhookDeliveryEngine.class) {
+                if (shared == null) {
+                    int workers = (int) ConfigLoader.getLongSetting("WEBHOOK_WORKERS", "webhook.workers", 4);
+                    long timeoutMillis =
+                        ConfigLoader.getLongSetting("WEBHOOK_TIMEOUT_SECONDS", "webhook.timeout.seconds", 15) * 1000L;
+                    shared = new WebhookDeliveryEngine(httpTransport(workers, timeoutMillis),
+                        (int) ConfigLoader.getLongSetting("WEBHOOK_MAX_PER_ENDPOINT", "webhook.max.per.endpoint", 2),
+                        ConfigLoader.getLongSetting("WEBHOOK_ENDPOINT_WAIT_MS", "webhook.endpoint.wait.ms", 250),
+                        System::currentTimeMillis);
+                }
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    private static Transport httpTransport(int workers, long timeoutMillis) {
+        AtomicInteger n = new AtomicInteger();
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(8))
+            .executor(Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+                Thread t = new Thread(r, "webhook-http-" + n.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }))
+            .build();
+        return (uri, secret, json) -> {
+            HttpRequest req = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("X-Fabrica-Webhook-Secret", secret)
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+            return client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+        };
+    }
+
+    private static final class Counters {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong busy = new AtomicLong();
+        final AtomicLong latencyTotalMillis = new AtomicLong();
+        final AtomicLong latencyMaxMillis = new AtomicLong();
+        final Semaphore permits;
+
+        Counters(int maxConcurrent) {
+            this.permits = new Semaphore(maxConcurrent);
+        }
+    }
+
+    private final Transport transport;
+    private final int maxPerEndpoint;
+    private final long endpointWaitMillis;
+    private final LongSupplier clock;
+    private final Map<String, Counters> byEndpoint = new ConcurrentHashMap<>();
+
+    WebhookDeliveryEngine(Transport transport, int maxPerEndpoint, long endpointWaitMillis, LongSupplier clock) {
+        this.transport = transport;
+        this.maxPerEndpoint = Math.max(1, maxPerEndpoint);
+        this.endpointWaitMillis = endpointWaitMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Un intento de entrega en el hilo actual, respetando el límite del endpoint.
+     * @throws EndpointBusyException si el endpoint siguió lleno {@code webhook.endpoint.wait.ms}
+     * @throws IOException si no respondió 2xx (salvo los 4xx definitivos) o no se pudo conectar
+     * @throws IllegalStateException si respondió un 4xx que no se arregla reintentando (URL o secreto erróneos)
+     */
+    public void deliver(String url, String secret, String json) throws IOException, InterruptedException {
+        URI uri = URI.create(url);
+        Counters c = byEndpoint.computeIfAbsent(endpoint(uri), k -> new Counters(maxPerEndpoint));
+        if (!c.permits.tryAcquire(endpointWaitMillis, TimeUnit.MILLISECONDS)) {
+            c.busy.incrementAndGet();
+            throw new EndpointBusyException(endpoint(uri));
+        }
+        long start = clock.getAsLong();
+        int status;
+        try {
+            status = transport.post(uri, secret, json);
+        } catch (IOException e) {
+            c.failed.incrementAndGet();
+            throw e;
+        } finally {
+            c.permits.release();
+            long elapsed = clock.getAsLong() - start;
+            c.latencyTotalMillis.addAndGet(elapsed);
+            c.latencyMaxMillis.accumulateAndGet(elapsed, Math::max);
+        }
+        if (status >= 200 && status < 300) {
+            c.sent.incrementAndGet();
+            return;
+        }
+        c.failed.incrementAndGet();
+        if (status >= 400 && status < 500 && status != 408 && status != 425 && status != 429) {
+            throw new IllegalStateException("Webhook rechazado por " + endpoint(uri) + ": HTTP " + status);
+        }
+        throw new IOException("Webhook a " + endpoint(uri) + ": HTTP " + status);
+    }
+
+    private static String endpoint(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() >= 0 ? ":" + uri.getPort() : "");
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long sent = 0, failed = 0;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<String, Counters> e : new TreeMap<>(byEndpoint).entrySet()) {
+            Counters c = e.getValue();
+            long done = c.sent.get() + c.failed.get();
+            Map<String, Object> t = new LinkedHashMap<>();
+            t.put("sent", c.sent.get());
+            t.put("failed", c.failed.get());
+            t.put("busy", c.busy.get());
+            t.put("inFlight", maxPerEndpoint - c.permits.availablePermits());
+            t.put("avgLatencyMs", done > 0 ? c.latencyTotalMillis.get() / done : 0L);
+            t.put("maxLatencyMs", c.latencyMaxMillis.get());
+            endpoints.put(e.getKey(), t);
+            sent += c.sent.get();
+            failed += c.failed.get();
+        }
+        m.put("sent", sent);
+        m.put("failed", failed);
+        m.put("endpoints", endpoints);
+        return m;
+    }
+}
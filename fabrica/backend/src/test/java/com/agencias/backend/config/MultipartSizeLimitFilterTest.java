@@ -0,0 +1,29 @@
+package com.agencias.backend.config;
+
+import jakarta.ws.rs.WebApplicationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultipartSizeLimitFilterTest {
+
+    private final MultipartSizeLimitFilter filter = new MultipartSizeLimitFilter(1000);
+
+    @Test
+    void aceptaHastaElTope() throws IOException {
+        InputStream in = filter.new BoundedInputStream(new ByteArrayInputStream(new byte[1000]), 1000);
+        assertEquals(1000, in.readAllBytes().length);
+    }
+
+    @Test
+    void cortaCon413AlPasarseDelTope() {
+        InputStream in = filter.new BoundedInputStream(new ByteArrayInputStream(new byte[5000]), 1000);
+        WebApplicationException e = assertThrows(WebApplicationException.class, in::readAllBytes);
+        assertEquals(413, e.getResponse().getStatus());
+    }
+}
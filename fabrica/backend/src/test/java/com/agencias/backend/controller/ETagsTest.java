@@ -0,0 +1,26 @@
+package com.agencias.backend.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ETagsTest {
+
+    @Test
+    void etagPorContenido_eIfNoneMatch() {
+        String etag = ETags.forContent(new byte[]{1, 2, 3});
+        assertEquals(etag, ETags.forContent(new byte[]{1, 2, 3}));
+        assertFalse(etag.equals(ETags.forContent(new byte[]{1, 2, 4})));
+
+        assertTrue(ETags.matches(etag, etag));
+        assertTrue(ETags.matches("\"otro\", W/" + etag, etag));
+        assertTrue(ETags.matches("*", etag));
+        assertFalse(ETags.matches("\"otro\"", etag));
+        assertFalse(ETags.matches(null, etag));
+
+        assertEquals(etag.substring(1, etag.length() - 1), ETags.unquote(etag));
+        assertEquals("sin-comillas", ETags.unquote("sin-comillas"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.agencias.backend.controller;
+
+import org.glassfish.jersey.media.multipart.FormDataMultiPart;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultipartUploadsTest {
+
+    @Test
+    void readBounded_aceptaHastaElLimite() throws IOException {
+        byte[] data = new byte[100_000];
+        data[99_999] = 7;
+        byte[] read = MultipartUploads.readBounded(new ByteArrayInputStream(data), 100_000);
+        assertEquals(100_000, read.length);
+        assertEquals(7, read[99_999]);
+    }
+
+    @Test
+    void readBounded_cortaSinLeerElRestoDelArchivo() {
+        AtomicLong consumed = new AtomicLong();
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                consumed.incrementAndGet();
+                return 1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                consumed.addAndGet(len);
+                return len;
+            }
+        };
+        long max = 5L * 1024 * 1024;
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> MultipartUploads.readBounded(endless, max));
+        assertTrue(e.getMessage().contains("5MB"));
+        assertEquals(max + 1, consumed.get());
+    }
+
+    @Test
+    void textFields_enBlancoNoBorraYClearSi() {
+        FormDataMultiPart form = new FormDataMultiPart()
+            .field("title", "  Filtro ")
+            .field("partYear", "")
+            .field("compatibilityTags", " ")
+            .field("price", "12.50")
+            .field("clear", "description, brandId,price");
+
+        Map<String, Object> body = MultipartUploads.textFields(form, Set.of("partYear", "price", "brandId"));
+
+        assertEquals("Filtro", body.get("title"));
+        assertFalse(body.containsKey("partYear"));
+        assertFalse(body.containsKey("compatibilityTags"));
+        assertTrue(body.containsKey("description") && body.get("description") == null);
+        assertTrue(body.containsKey("brandId") && body.get("brandId") == null);
+        assertEquals(new BigDecimal("12.50"), body.get("price")); // con valor, gana el valor
+        assertFalse(body.containsKey("clear"));
+    }
+
+    @Test
+    void textFields_rechazaNumerosInvalidos() {
+        FormDataMultiPart form = new FormDataMultiPart().field("partYear", "dos mil");
+        assertThrows(IllegalArgumentException.class, () -> MultipartUploads.textFields(form, Set.of("partYear")));
+    }
+}
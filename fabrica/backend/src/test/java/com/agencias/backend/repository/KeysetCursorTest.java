@@ -0,0 +1,54 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.Part;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetCursorTest {
+
+    @Test
+    void idaYVuelta_conSeparadorEnElValor() {
+        String token = new KeysetCursor("Filtro | aceite", 42L).encode("title");
+        KeysetCursor c = KeysetCursor.decode(token, "title");
+        assertEquals("Filtro | aceite", c.getSortValue());
+        assertEquals(42L, c.getId());
+
+        KeysetCursor sinValor = KeysetCursor.decode(new KeysetCursor(null, 7L).encode("createdAt"), "createdAt");
+        assertNull(sinValor.getSortValue());
+        assertNull(sinValor.getSortValueAsLong());
+    }
+
+    @Test
+    void cursorDeOtroOrdenOCorruptoEsInvalido() {
+        String token = new KeysetCursor("abc", 1L).encode("title");
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(token, "createdAt"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("%%%", "title"));
+        assertNull(KeysetCursor.decode("  ", "title"));
+    }
+
+    @Test
+    void paginaConFilaDeMas() {
+        Part a = new Part();
+        a.setPartId(1L);
+        a.setTitle("A");
+        Part b = new Part();
+        b.setPartId(2L);
+        b.setTitle("B");
+
+        KeysetPage<Part> page = KeysetPage.fromLookahead(List.of(a, b), 1, PartSort.TITLE::cursorOf);
+        assertEquals(1, page.getItems().size());
+        assertTrue(page.isHasMore());
+        assertEquals(1L, KeysetCursor.decode(page.getNextCursor(), "title").getId());
+
+        KeysetPage<Part> last = KeysetPage.fromLookahead(List.of(b), 1, PartSort.TITLE::cursorOf);
+        assertFalse(last.isHasMore());
+        assertNull(last.getNextCursor());
+    }
+}
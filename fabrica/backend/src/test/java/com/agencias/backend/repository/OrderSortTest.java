@@ -0,0 +1,54 @@
+package com.agencias.backend.repository;
+
+import com.agencias.backend.model.OrderHeader;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OrderSortTest {
+
+    @Test
+    void fromParam_porDefectoMasRecientes() {
+        assertEquals(OrderSort.NEWEST, OrderSort.fromParam(null));
+        assertEquals(OrderSort.OLDEST, OrderSort.fromParam(" Oldest "));
+        assertEquals(OrderSort.TOTAL, OrderSort.fromParam("total"));
+        assertThrows(IllegalArgumentException.class, () -> OrderSort.fromParam("userId"));
+    }
+
+    @Test
+    void cursorGuardaFechaOTotalYElId() {
+        OrderHeader o = new OrderHeader();
+        o.setOrderId(15L);
+        o.setCreatedAt(new Date(1_700_000_000_123L));
+        o.setTotal(new BigDecimal("125.50"));
+
+        KeysetCursor byDate = KeysetCursor.decode(OrderSort.NEWEST.cursorOf(o), "newest");
+        assertEquals(1_700_000_000_123L, byDate.getSortValueAsLong());
+        assertEquals(15L, byDate.getId());
+
+        KeysetCursor byTotal = KeysetCursor.decode(OrderSort.TOTAL.cursorOf(o), "total");
+        assertEquals("125.50", byTotal.getSortValue());
+        assertThrows(IllegalArgumentException.class,
+            () -> KeysetCursor.decode(OrderSort.TOTAL.cursorOf(o), "newest"));
+    }
+
+    @Test
+    void cursorConservaLosMicrosegundosDeCreatedAt() {
+        Timestamp created = new Timestamp(1_700_000_000_123L);
+        created.setNanos(123_456_000);
+        OrderHeader o = new OrderHeader();
+        o.setOrderId(16L);
+        o.setCreatedAt(created);
+
+        KeysetCursor c = KeysetCursor.decode(OrderSort.OLDEST.cursorOf(o), "oldest");
+        assertEquals("1700000000123.456", c.getSortValue());
+        assertEquals(created, c.getSortValueAsTimestamp());
+        assertThrows(IllegalArgumentException.class,
+            () -> new KeysetCursor("1700000000123.4567891", 1L).getSortValueAsTimestamp());
+    }
+}
@@ -0,0 +1,91 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.Part;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link CatalogCache}: lectura con carga diferida, TTL, tope de entradas e invalidación por categoría/marca.
+ */
+class CatalogCacheTest {
+
+    private static Part part(long id) {
+        Part p = new Part();
+        p.setPartId(id);
+        return p;
+    }
+
+    @Test
+    void segundaLecturaEsAcierto_yExpiraPorTtl() {
+        AtomicLong now = new AtomicLong(1_000);
+        CatalogCache cache = new CatalogCache(10, 5_000, now::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(CatalogCache.KEY_ALL, () -> { loads.incrementAndGet(); return List.of(part(1)); });
+        cache.get(CatalogCache.KEY_ALL, () -> { loads.incrementAndGet(); return List.of(part(1)); });
+        assertEquals(1, loads.get());
+
+        now.addAndGet(5_001);
+        cache.get(CatalogCache.KEY_ALL, () -> { loads.incrementAndGet(); return List.of(part(1)); });
+        assertEquals(2, loads.get());
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+    }
+
+    @Test
+    void invalidacionSoloDeLasClavesAfectadas() {
+        CatalogCache cache = new CatalogCache(10, 60_000, () -> 0L);
+        AtomicInteger loads = new AtomicInteger();
+        for (String key : List.of(CatalogCache.KEY_ALL, CatalogCache.categoryKey(1L), CatalogCache.categoryKey(2L),
+                                  CatalogCache.brandKey(7L))) {
+            cache.get(key, () -> { loads.incrementAndGet(); return List.of(); });
+        }
+        assertEquals(4, loads.get());
+
+        cache.invalidatePart(1L, 7L);
+        for (String key : List.of(CatalogCache.KEY_ALL, CatalogCache.categoryKey(1L), CatalogCache.categoryKey(2L),
+                                  CatalogCache.brandKey(7L))) {
+            cache.get(key, () -> { loads.incrementAndGet(); return List.of(); });
+        }
+        assertEquals(7, loads.get()); // categoría 2 sigue cacheada
+    }
+
+    @Test
+    void respetaTopeDeEntradas() {
+        CatalogCache cache = new CatalogCache(2, 60_000, () -> 0L);
+        cache.get(CatalogCache.categoryKey(1L), List::of);
+        cache.get(CatalogCache.categoryKey(2L), List::of);
+        cache.get(CatalogCache.categoryKey(3L), List::of);
+        Map<String, Object> stats = cache.stats();
+        assertEquals(2, stats.get("entries"));
+        assertEquals(1L, stats.get("evictions"));
+    }
+
+    @Test
+    void primerasPaginasSeInvalidanConSuListado() {
+        CatalogCache cache = new CatalogCache(10, 60_000, () -> 0L);
+        AtomicInteger loads = new AtomicInteger();
+        List<String> keys = List.of(CatalogCache.firstPageKey(CatalogCache.KEY_ALL, "createdAt", 20),
+            CatalogCache.firstPageKey(CatalogCache.categoryKey(1L), "title", 20),
+            CatalogCache.firstPageKey(CatalogCache.categoryKey(1L), "title", 50),
+            CatalogCache.firstPageKey(CatalogCache.categoryKey(2L), "title", 20));
+        for (String key : keys) {
+            cache.get(key, () -> { loads.incrementAndGet(); return List.of(); });
+        }
+
+        cache.invalidatePart(1L, null);
+        for (String key : keys) {
+            cache.get(key, () -> { loads.incrementAndGet(); return List.of(); });
+        }
+        assertEquals(7, loads.get()); // la página de la categoría 2 sigue cacheada
+        assertEquals(4, cache.stats().get("entries"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.Part;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogExportWriterTest {
+
+    private static Part part(long id, String title) {
+        Part p = new Part();
+        p.setPartId(id);
+        p.setPartNumber("PN-" + id);
+        p.setTitle(title);
+        p.setPrice(new BigDecimal("9.90"));
+        return p;
+    }
+
+    private static String export(CatalogExportWriter.Format format, Part... parts) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CatalogExportWriter w = new CatalogExportWriter(format, out)) {
+            for (Part p : parts) {
+                w.write(p);
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void json_esUnArreglo_ndjson_unaLineaPorRepuesto() throws Exception {
+        assertEquals("[]", export(CatalogExportWriter.Format.JSON));
+        String json = export(CatalogExportWriter.Format.JSON, part(1, "A"), part(2, "B"));
+        assertTrue(json.startsWith("[{\"partId\":1") && json.endsWith("}]"));
+
+        String[] lines = export(CatalogExportWriter.Format.NDJSON, part(1, "A"), part(2, "B")).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].startsWith("{\"partId\":2"));
+    }
+
+    @Test
+    void csv_escapaComillasYSeparadores() throws Exception {
+        String csv = export(CatalogExportWriter.Format.CSV, part(1, "Filtro, \"premium\""));
+        String[] rows = csv.split("\r\n");
+        assertEquals(String.join(",", CatalogExportWriter.CSV_COLUMNS), rows[0]);
+        assertTrue(rows[1].startsWith("1,PN-1,\"Filtro, \"\"premium\"\"\",,"));
+        assertTrue(rows[1].contains(",9.90,"));
+    }
+
+    @Test
+    void formatoDesconocido() {
+        assertEquals(CatalogExportWriter.Format.JSON, CatalogExportWriter.Format.fromParam(null));
+        assertEquals(CatalogExportWriter.Format.CSV, CatalogExportWriter.Format.fromParam("CSV"));
+        assertThrows(IllegalArgumentException.class, () -> CatalogExportWriter.Format.fromParam("xml"));
+    }
+}
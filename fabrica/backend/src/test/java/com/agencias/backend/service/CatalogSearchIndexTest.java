@@ -0,0 +1,119 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.Part;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link CatalogSearchIndex} reproduce la semántica LIKE %término% de {@code PartRepository.search} en memoria.
+ */
+class CatalogSearchIndexTest {
+
+    private static Part part(long id, String pn, String title, String desc, String tags, int active) {
+        Part p = new Part();
+        p.setPartId(id);
+        p.setPartNumber(pn);
+        p.setTitle(title);
+        p.setDescription(desc);
+        p.setCompatibilityTags(tags);
+        p.setActive(active);
+        return p;
+    }
+
+    private static CatalogSearchIndex sample() {
+        CatalogSearchIndex index = new CatalogSearchIndex();
+        index.rebuild(List.of(
+            part(1, "FLT-100", "Filtro de aceite", "Alta eficiencia, rosca M20", "toyota corolla, honda civic 2018", 1),
+            part(2, "BRK-200", "Pastillas de freno", "Cerámica delantera", "toyota hilux", 1),
+            part(3, "FLT-300", "Filtro de aire", "Papel plisado", "nissan sentra", 1),
+            part(4, "OLD-1", "Filtro descontinuado", null, null, 0)
+        ));
+        return index;
+    }
+
+    @Test
+    void nombre_buscaEnTituloYTags_subcadenaSinMayusculas_ordenPorTitulo() {
+        CatalogSearchIndex index = sample();
+        assertEquals(List.of(1L, 3L), index.search("FILTRO", null, null, null, null));
+        assertEquals(List.of(1L, 2L), index.search("toyo", null, null, null, null));
+        assertEquals(List.of(1L), index.search("tro de ace", null, null, null, null));
+    }
+
+    @Test
+    void terminosSeCombinanConAnd_ySeExcluyenInactivos() {
+        CatalogSearchIndex index = sample();
+        assertEquals(List.of(1L), index.search("filtro", null, "m20", null, null));
+        assertEquals(List.of(2L), index.search(null, "cerámica", null, "hilux", null));
+        assertTrue(index.search("descontinuado", null, null, null, null).isEmpty());
+        assertEquals(List.of(3L), index.search(null, null, null, null, "flt-3"));
+    }
+
+    @Test
+    void searchHits_devuelveElTituloConElQueOrdeno() {
+        CatalogSearchIndex index = sample();
+        List<CatalogSearchIndex.Hit> hits = index.searchHits("filtro", null, null, null, null);
+        assertEquals(2, hits.size());
+        assertEquals(1L, hits.get(0).getPartId());
+        assertEquals("Filtro de aceite", hits.get(0).getTitle());
+        assertEquals(3L, hits.get(1).getPartId());
+        assertEquals("Filtro de aire", hits.get(1).getTitle());
+    }
+
+    @Test
+    void actualizacionIncremental() {
+        CatalogSearchIndex index = sample();
+        index.put(part(2, "BRK-200", "Pastillas de freno", "Cerámica", "mazda 3", 1));
+        assertTrue(index.search("hilux", null, null, null, null).isEmpty());
+        assertEquals(List.of(2L), index.search("mazda", null, null, null, null));
+
+        index.remove(1L);
+        assertEquals(List.of(3L), index.search("filtro", null, null, null, null));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void sufijos_cubrenLasSubcadenasDeCadaToken() {
+        assertEquals(java.util.Set.of("filtro", "iltro", "ltro", "tro", "ro", "o", "de", "e"),
+            CatalogSearchIndex.suffixes("filtro de"));
+        CatalogSearchIndex index = sample();
+        assertEquals(List.of(1L, 3L), index.search("ltr", null, null, null, null));
+        index.remove(3L);
+        assertEquals(List.of(1L), index.search("ltr", null, null, null, null));
+    }
+
+    @Test
+    void recargaNoBloqueaBusquedas_yConservaLosCambiosQueLleganMientras() throws Exception {
+        CatalogSearchIndex index = sample();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(index.refreshInBackground(() -> {
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(part(1, "FLT-100", "Filtro de aceite", null, null, 1));
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // Mientras la recarga lee la BD se sigue buscando en el índice actual
+        assertEquals(List.of(1L, 3L), index.search("filtro", null, null, null, null));
+        assertFalse(index.refreshInBackground(List::of));
+        index.put(part(5, "FLT-500", "Filtro de combustible", null, null, 1));
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (index.size() != 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(1L, 5L), index.search("filtro", null, null, null, null));
+    }
+}
@@ -2,13 +2,23 @@ package com.agencias.backend.service;
 
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
 /**
- * Sin URL de webhook configurada, la notificación no lanza (no-op seguro).
+ * Entrega de cambios de estado desde OUTBOX_EVENT: sin destino no hace nada; sin secreto falla sin reintento.
  */
 class DistributorOrderWebhookNotifierTest {
 
     @Test
-    void notifyOrderStatusAsync_noUrl_doesNotThrow() {
-        DistributorOrderWebhookNotifier.notifyOrderStatusAsync(99L, "SHIPPED", null, null, null);
+    void deliverOrderStatus_sinDestino_noHaceNada() throws Exception {
+        DistributorOrderWebhookNotifier.deliverOrderStatus(null, 99L, "SHIPPED", null, null, null);
+    }
+
+    @Test
+    void deliverOrderStatus_sinSecreto_esDefinitivo() {
+        DistributorOrderWebhookNotifier.Endpoint target =
+            new DistributorOrderWebhookNotifier.Endpoint("http://127.0.0.1:9/webhook", " ");
+        assertThrows(IllegalStateException.class,
+            () -> DistributorOrderWebhookNotifier.deliverOrderStatus(target, 99L, "SHIPPED", null, "TRK", 3));
     }
 }
@@ -0,0 +1,41 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.repository.SchedulerLeaseRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * SCHEDULER_LEASE en memoria para las pruebas, una fila por lease y con la misma regla que el UPDATE condicionado;
+ * {@code dbClock} hace de SYSTIMESTAMP.
+ */
+final class FakeLeases extends SchedulerLeaseRepository {
+    private final LongSupplier dbClock;
+    final Map<String, String> owners = new HashMap<>();
+    final Map<String, Long> until = new HashMap<>();
+
+    FakeLeases(LongSupplier dbClock) {
+        super(null);
+        this.dbClock = dbClock;
+    }
+
+    @Override
+    public synchronized boolean tryAcquire(String name, String who, long leaseMillis) {
+        long now = dbClock.getAsLong();
+        String owner = owners.get(name);
+        if (owner == null || owner.equals(who) || until.get(name) < now) {
+            owners.put(name, who);
+            until.put(name, now + leaseMillis);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void release(String name, String who) {
+        if (who.equals(owners.get(name))) {
+            until.put(name, dbClock.getAsLong());
+        }
+    }
+}
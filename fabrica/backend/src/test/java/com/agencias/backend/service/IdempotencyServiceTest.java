@@ -0,0 +1,324 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.IdempotencyRecord;
+import com.agencias.backend.repository.IdempotencyRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyServiceTest {
+
+    /** Tabla IDEMPOTENCY_RECORD en memoria; {@code dbClock} hace de SYSTIMESTAMP. */
+    static final class FakeRepository extends IdempotencyRepository {
+        final Map<String, IdempotencyRecord> rows = new ConcurrentHashMap<>();
+        final AtomicInteger renewals = new AtomicInteger();
+        private final LongSupplier dbClock;
+
+        FakeRepository(LongSupplier dbClock) {
+            super(null);
+            this.dbClock = dbClock;
+        }
+
+        @Override
+        public boolean tryInsert(String key, String requestHash, String ownerToken, long leaseMillis) {
+            IdempotencyRecord r = new IdempotencyRecord();
+            r.setIdempotencyKey(key);
+            r.setRequestHash(requestHash);
+            r.setStatus(IdempotencyRecord.IN_PROGRESS);
+            r.setOwnerToken(ownerToken);
+            r.setExpiresAt(new Date(dbClock.getAsLong() + leaseMillis));
+            return rows.putIfAbsent(key, r) == null;
+        }
+
+        @Override
+        public Optional<IdempotencyRecord> findByKey(String key) {
+            return Optional.ofNullable(rows.get(key));
+        }
+
+        @Override
+        public synchronized boolean renew(String key, String ownerToken, long leaseMillis) {
+            IdempotencyRecord r = owned(key, ownerToken);
+            if (r == null) {
+                return false;
+            }
+            renewals.incrementAndGet();
+            r.setExpiresAt(new Date(dbClock.getAsLong() + leaseMillis));
+            return true;
+        }
+
+        @Override
+        public synchronized boolean complete(String key, String ownerToken, int responseStatus, String responseBody,
+                                             long ttlMillis) {
+            IdempotencyRecord r = owned(key, ownerToken);
+            if (r == null) {
+                return false;
+            }
+            r.setResponseStatus(responseStatus);
+            r.setResponseBody(responseBody);
+            r.setStatus(IdempotencyRecord.COMPLETED);
+            r.setExpiresAt(new Date(dbClock.getAsLong() + ttlMillis));
+            return true;
+        }
+
+        @Override
+        public synchronized boolean delete(String key, String ownerToken) {
+            IdempotencyRecord r = owned(key, ownerToken);
+            return r != null && rows.remove(key, r);
+        }
+
+        @Override
+        public synchronized boolean deleteIfExpired(String key) {
+            IdempotencyRecord r = rows.get(key);
+            return r != null && r.getExpiresAt().getTime() <= dbClock.getAsLong() && rows.remove(key, r);
+        }
+
+        @Override
+        public int deleteExpired() {
+            return 0;
+        }
+
+        private IdempotencyRecord owned(String key, String ownerToken) {
+            IdempotencyRecord r = rows.get(key);
+            return r != null && ownerToken.equals(r.getOwnerToken())
+                && IdempotencyRecord.IN_PROGRESS.equals(r.getStatus()) ? r : null;
+        }
+    }
+
+    private final FakeRepository repo = new FakeRepository(System::currentTimeMillis);
+    private final IdempotencyService service =
+        new IdempotencyService(repo, 60_000, 5_000, 100, 5_000, System::currentTimeMillis);
+
+    @Test
+    void reintentoRepiteLaRespuestaSinEjecutar() {
+        AtomicInteger runs = new AtomicInteger();
+        String hash = IdempotencyService.hashOf(Map.of("userId", 1, "items", List.of()));
+
+        IdempotencyService.StoredResponse first = service.execute("pedidos", "k1", hash,
+            () -> new IdempotencyService.StoredResponse(201, "{\"orderId\":" + runs.incrementAndGet() + "}"));
+        IdempotencyService.StoredResponse again = service.execute("pedidos", "k1", hash,
+            () -> new IdempotencyService.StoredResponse(201, "{\"orderId\":" + runs.incrementAndGet() + "}"));
+
+        assertEquals(1, runs.get());
+        assertFalse(first.isReplayed());
+        assertTrue(again.isReplayed());
+        assertEquals(201, again.getStatus());
+        assertEquals("{\"orderId\":1}", again.getBody());
+        assertEquals(IdempotencyRecord.COMPLETED, repo.rows.get("pedidos:k1").getStatus());
+    }
+
+    @Test
+    void mismaClaveConOtroCuerpo_seRechaza() {
+        service.execute("pedidos", "k2", IdempotencyService.hashOf(Map.of("qty", 1)),
+            () -> new IdempotencyService.StoredResponse(201, "{}"));
+        assertThrows(IdempotencyService.KeyReusedException.class, () -> service.execute("pedidos", "k2",
+            IdempotencyService.hashOf(Map.of("qty", 2)), () -> new IdempotencyService.StoredResponse(201, "{}")));
+    }
+
+    @Test
+    void hashIgnoraElOrdenDeLasClaves() {
+        Map<String, Object> a = new java.util.LinkedHashMap<>();
+        a.put("userId", 1);
+        a.put("items", List.of(Map.of("partId", 2, "qty", 3)));
+        Map<String, Object> b = new java.util.LinkedHashMap<>();
+        b.put("items", List.of(Map.of("qty", 3, "partId", 2)));
+        b.put("userId", 1);
+        assertEquals(IdempotencyService.hashOf(a, "DISTRIBUIDORA"), IdempotencyService.hashOf(b, "DISTRIBUIDORA"));
+        assertFalse(IdempotencyService.hashOf(a, "DISTRIBUIDORA").equals(IdempotencyService.hashOf(a, (String) null)));
+    }
+
+    @Test
+    void mismaClaveDeOtraDistribuidora_noSeCruza() {
+        AtomicInteger runs = new AtomicInteger();
+        Map<String, Object> body = Map.of("userId", 1, "items", List.of());
+        IdempotencyService.StoredResponse a = service.execute("pedidos:e1", "PO-100",
+            IdempotencyService.hashOf(body, null, "1"),
+            () -> new IdempotencyService.StoredResponse(201, "{\"orderId\":" + runs.incrementAndGet() + "}"));
+        IdempotencyService.StoredResponse b = service.execute("pedidos:e2", "PO-100",
+            IdempotencyService.hashOf(body, null, "2"),
+            () -> new IdempotencyService.StoredResponse(201, "{\"orderId\":" + runs.incrementAndGet() + "}"));
+
+        assertEquals(2, runs.get());
+        assertFalse(b.isReplayed());
+        assertFalse(a.getBody().equals(b.getBody()));
+    }
+
+    @Test
+    void errores5xx_liberanLaClave() {
+        AtomicInteger runs = new AtomicInteger();
+        String hash = IdempotencyService.hashOf(Map.of());
+        service.execute("pedidos", "k3", hash, () -> {
+            runs.incrementAndGet();
+            return new IdempotencyService.StoredResponse(500, "{}");
+        });
+        assertThrows(IllegalStateException.class, () -> service.execute("pedidos", "k3", hash, () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("BD caída");
+        }));
+        IdempotencyService.StoredResponse ok = service.execute("pedidos", "k3", hash, () -> {
+            runs.incrementAndGet();
+            return new IdempotencyService.StoredResponse(201, "{}");
+        });
+        assertEquals(3, runs.get());
+        assertFalse(ok.isReplayed());
+    }
+
+    @Test
+    void respuestaGuardadaPorOtroNodo_seRepiteDesdeBd() {
+        IdempotencyRecord r = new IdempotencyRecord();
+        r.setIdempotencyKey("pedidos:k4");
+        r.setRequestHash("h");
+        r.setStatus(IdempotencyRecord.COMPLETED);
+        r.setResponseStatus(201);
+        r.setResponseBody("{\"orderId\":9}");
+        r.setExpiresAt(new Date(System.currentTimeMillis() + 60_000));
+        repo.rows.put(r.getIdempotencyKey(), r);
+
+        IdempotencyService.StoredResponse replay = service.execute("pedidos", "k4", "h", () -> {
+            throw new AssertionError("no debe ejecutarse");
+        });
+        assertTrue(replay.isReplayed());
+        assertEquals("{\"orderId\":9}", replay.getBody());
+    }
+
+    @Test
+    void peticionEnCursoDeUnNodoCaido_seRetomaAlVencerSuLease() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        FakeRepository repo = new FakeRepository(now::get);
+        IdempotencyService node = new IdempotencyService(repo, 86_400_000, 5_000, 100, 0, now::get);
+        IdempotencyRecord orphan = new IdempotencyRecord();
+        orphan.setIdempotencyKey("pedidos:k6");
+        orphan.setRequestHash("h");
+        orphan.setStatus(IdempotencyRecord.IN_PROGRESS);
+        orphan.setExpiresAt(new Date(now.get() + 5_000)); // lease corto del nodo que cayó
+        repo.rows.put(orphan.getIdempotencyKey(), orphan);
+
+        assertThrows(IdempotencyService.InProgressException.class, () -> node.execute("pedidos", "k6", "h",
+            () -> new IdempotencyService.StoredResponse(201, "{}")));
+        now.addAndGet(5_000);
+        IdempotencyService.StoredResponse r = node.execute("pedidos", "k6", "h",
+            () -> new IdempotencyService.StoredResponse(201, "{\"orderId\":6}"));
+
+        assertFalse(r.isReplayed());
+        assertEquals(1L, node.stats().get("takenOver"));
+        IdempotencyRecord done = repo.rows.get("pedidos:k6");
+        assertEquals(IdempotencyRecord.COMPLETED, done.getStatus());
+        assertEquals(now.get() + 86_400_000, done.getExpiresAt().getTime()); // la respuesta sí dura el TTL
+    }
+
+    @Test
+    void nodoQuePerdioElLease_noPisaLaRespuestaDelQueLaRetomo() throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000);
+        FakeRepository repo = new FakeRepository(now::get);
+        IdempotencyService slow = new IdempotencyService(repo, 86_400_000, 60_000, 100, 0, now::get);
+        IdempotencyService other = new IdempotencyService(repo, 86_400_000, 60_000, 100, 0, now::get);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<IdempotencyService.StoredResponse> first = pool.submit(() -> slow.execute("pedidos", "k7", "h", () -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new IdempotencyService.StoredResponse(201, "{\"orderId\":1}");
+        }));
+        started.await();
+
+        now.addAndGet(60_000); // el lease vence sin renovarse (p. ej. una pausa larga del nodo lento)
+        IdempotencyService.StoredResponse second = other.execute("pedidos", "k7", "h",
+            () -> new IdempotencyService.StoredResponse(201, "{\"orderId\":2}"));
+        finish.countDown();
+        first.get();
+        pool.shutdown();
+
+        assertFalse(second.isReplayed());
+        assertEquals(1L, other.stats().get("takenOver"));
+        assertEquals(1L, slow.stats().get("lostOwnership"));
+        IdempotencyRecord row = repo.rows.get("pedidos:k7");
+        assertEquals(IdempotencyRecord.COMPLETED, row.getStatus());
+        assertEquals("{\"orderId\":2}", row.getResponseBody());
+        assertEquals("{\"orderId\":2}", slow.execute("pedidos", "k7", "h", () -> {
+            throw new AssertionError("no debe ejecutarse");
+        }).getBody());
+    }
+
+    @Test
+    void peticionLarga_renuevaSuLeaseYNoSeRetoma() throws Exception {
+        FakeRepository repo = new FakeRepository(System::currentTimeMillis);
+        IdempotencyService node = new IdempotencyService(repo, 60_000, 150, 100, 0, System::currentTimeMillis);
+        IdempotencyService other = new IdempotencyService(repo, 60_000, 150, 100, 0, System::currentTimeMillis);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<IdempotencyService.StoredResponse> first = pool.submit(() -> node.execute("pedidos", "k8", "h", () -> {
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new IdempotencyService.StoredResponse(201, "{}");
+        }));
+
+        Thread.sleep(500); // más de tres leases
+        assertThrows(IdempotencyService.InProgressException.class, () -> other.execute("pedidos", "k8", "h",
+            () -> new IdempotencyService.StoredResponse(201, "{}")));
+        finish.countDown();
+        first.get();
+        pool.shutdown();
+
+        assertTrue(repo.renewals.get() > 0);
+        assertEquals(0L, other.stats().get("takenOver"));
+        assertEquals(IdempotencyRecord.COMPLETED, repo.rows.get("pedidos:k8").getStatus());
+    }
+
+    @Test
+    void duplicadosConcurrentes_esperanALaOriginal() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<IdempotencyService.StoredResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return service.execute("pedidos", "k5", "h", () -> {
+                    int n = runs.incrementAndGet();
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new IdempotencyService.StoredResponse(201, "{\"orderId\":" + n + "}");
+                });
+            }));
+        }
+        start.countDown();
+        int replays = 0;
+        for (Future<IdempotencyService.StoredResponse> f : futures) {
+            IdempotencyService.StoredResponse r = f.get();
+            assertEquals("{\"orderId\":1}", r.getBody());
+            if (r.isReplayed()) {
+                replays++;
+            }
+        }
+        pool.shutdown();
+        assertEquals(1, runs.get());
+        assertEquals(7, replays);
+    }
+}
@@ -0,0 +1,48 @@
+package com.agencias.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ImageCacheTest {
+
+    @Test
+    void bytesAcotadosPorTamanoTotal_etagSobrevive() {
+        ImageCache cache = new ImageCache(800, 100, 60_000, () -> 0L);
+        for (int i = 1; i <= 9; i++) {
+            cache.put(ImageCache.key("part", (long) i, 0), new byte[100], "image/png", cache.generation());
+        }
+        assertNull(cache.get(ImageCache.key("part", 1L, 0)));
+        assertNotNull(cache.get(ImageCache.key("part", 9L, 0)));
+        assertNotNull(cache.etagOf(ImageCache.key("part", 1L, 0)));
+        assertEquals(800L, cache.stats().get("bytesHeld"));
+    }
+
+    @Test
+    void invalidacionPorEntidad_yLecturaConcurrenteDescartada() {
+        AtomicLong now = new AtomicLong();
+        ImageCache cache = new ImageCache(10_000, 100, 1_000, now::get);
+        cache.put(ImageCache.key("part", 5L, 0), new byte[]{1}, "image/png", cache.generation());
+        cache.put(ImageCache.key("part", 5L, 2), new byte[]{2}, "image/png", cache.generation());
+        cache.put(ImageCache.key("brand", 5L, 0), new byte[]{3}, "image/png", cache.generation());
+        String thumb = ImageCache.variantKey(ImageCache.key("part", 5L, 0), 200);
+        cache.put(thumb, new ImageCache.Entry(new byte[]{4}, "image/jpeg", "\"v-w200\""), cache.generation());
+        assertEquals("\"v-w200\"", cache.get(thumb).getEtag());
+
+        long before = cache.generation();
+        cache.invalidate("part", 5L);
+        assertNull(cache.etagOf(ImageCache.key("part", 5L, 2)));
+        assertNotNull(cache.etagOf(ImageCache.key("brand", 5L, 0)));
+        assertNull(cache.get(thumb));
+
+        cache.put(ImageCache.key("part", 5L, 0), new byte[]{9}, "image/png", before);
+        assertNull(cache.get(ImageCache.key("part", 5L, 0)));
+
+        now.set(1_000);
+        assertNull(cache.etagOf(ImageCache.key("brand", 5L, 0)));
+    }
+}
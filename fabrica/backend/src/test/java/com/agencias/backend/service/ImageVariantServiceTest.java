@@ -0,0 +1,140 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.controller.ETags;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageVariantServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resolveWidth_redondeaYTamanosConNombre() {
+        assertEquals(0, ImageVariantService.resolveWidth(null, null));
+        assertEquals(200, ImageVariantService.resolveWidth(150, null));
+        assertEquals(200, ImageVariantService.resolveWidth(null, "thumb"));
+        assertEquals(640, ImageVariantService.resolveWidth(999, "Medium"));
+        assertEquals(0, ImageVariantService.resolveWidth(5000, null));
+        assertThrows(IllegalArgumentException.class, () -> ImageVariantService.resolveWidth(0, null));
+        assertThrows(IllegalArgumentException.class, () -> ImageVariantService.resolveWidth(null, "enorme"));
+    }
+
+    @Test
+    void variante_reduceYSeGuardaEnDisco() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, Long.MAX_VALUE);
+        byte[] png = image(800, 400);
+        ImageCache.Entry original = new ImageCache.Entry(png, "image/jpeg", ETags.forContent(png));
+
+        ImageCache.Entry thumb = service.variant(original, 200);
+        assertEquals("image/jpeg", thumb.getContentType());
+        assertEquals(ImageVariantService.variantEtag(original.getEtag(), 200), thumb.getEtag());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumb.getData()));
+        assertEquals(200, decoded.getWidth());
+        assertEquals(100, decoded.getHeight());
+
+        Path file = service.fileFor(original.getEtag(), 200, "image/jpeg");
+        assertTrue(Files.isRegularFile(file));
+        assertArrayEquals(thumb.getData(), service.variant(original, 200).getData());
+    }
+
+    @Test
+    void variante_noAmpliaNiFallaConFormatosIlegibles() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, Long.MAX_VALUE);
+        byte[] small = image(120, 60);
+        ImageCache.Entry original = new ImageCache.Entry(small, "image/png", ETags.forContent(small));
+        assertArrayEquals(small, service.variant(original, 200).getData());
+
+        byte[] webp = {1, 2, 3, 4};
+        ImageCache.Entry unreadable = new ImageCache.Entry(webp, "image/webp", ETags.forContent(webp));
+        ImageCache.Entry served = service.variant(unreadable, 200);
+        assertArrayEquals(webp, served.getData());
+        assertEquals("image/webp", served.getContentType());
+    }
+
+    @Test
+    void variante_sinRedimensionarDejaMarcadorYNoVuelveADecodificar() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, Long.MAX_VALUE);
+        byte[] small = image(120, 60);
+        ImageCache.Entry original = new ImageCache.Entry(small, "image/png", ETags.forContent(small));
+        service.variant(original, 200);
+
+        Path file = service.fileFor(original.getEtag(), 200, "image/png");
+        assertTrue(Files.isRegularFile(ImageVariantService.passthroughMarker(file)));
+        assertTrue(Files.notExists(file));
+        // Con el marcador ya no se decodifica: aunque los bytes sí se pudieran reducir, se sirven tal cual
+        byte[] wide = image(800, 400);
+        ImageCache.Entry sameEtag = new ImageCache.Entry(wide, "image/png", original.getEtag());
+        assertArrayEquals(wide, service.variant(sameEtag, 200).getData());
+    }
+
+    @Test
+    void variante_conDemasiadosPixelesSeSirveSinDecodificar() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, Long.MAX_VALUE, 1_000_000);
+        byte[] huge = image(2000, 1000); // 2 MP declarados en la cabecera, pocos KB de archivo
+        ImageCache.Entry original = new ImageCache.Entry(huge, "image/png", ETags.forContent(huge));
+
+        assertArrayEquals(huge, service.variant(original, 200).getData());
+        assertTrue(Files.isRegularFile(
+            ImageVariantService.passthroughMarker(service.fileFor(original.getEtag(), 200, "image/png"))));
+    }
+
+    @Test
+    void variante_yaGenerada_seLeeDeDiscoSinLaOriginal() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, Long.MAX_VALUE);
+        byte[] png = image(800, 400);
+        ImageCache.Entry original = new ImageCache.Entry(png, "image/png", ETags.forContent(png));
+        assertNull(service.stored(original.getEtag(), 320));
+
+        ImageCache.Entry generated = service.variant(original, 320);
+        ImageCache.Entry stored = service.stored(original.getEtag(), 320);
+        assertArrayEquals(generated.getData(), stored.getData());
+        assertEquals("image/png", stored.getContentType());
+        assertEquals(generated.getEtag(), stored.getEtag());
+    }
+
+    @Test
+    void variante_sinHuecoParaRedimensionar_devuelveLaOriginalSinGuardarNada() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, Long.MAX_VALUE, 1_000_000, 0);
+        byte[] png = image(800, 400);
+        ImageCache.Entry original = new ImageCache.Entry(png, "image/jpeg", ETags.forContent(png));
+
+        assertSame(original, service.variant(original, 200));
+        Path file = service.fileFor(original.getEtag(), 200, "image/jpeg");
+        assertTrue(Files.notExists(file));
+        assertTrue(Files.notExists(ImageVariantService.passthroughMarker(file)));
+    }
+
+    @Test
+    void prune_borraLasMasAntiguasHastaElTope() throws IOException {
+        ImageVariantService service = new ImageVariantService(dir, 250);
+        Path old = Files.write(dir.resolve("a.jpg"), new byte[200]);
+        Files.setLastModifiedTime(old, java.nio.file.attribute.FileTime.fromMillis(1_000));
+        Path recent = Files.write(dir.resolve("b.jpg"), new byte[200]);
+        service.prune();
+        assertTrue(Files.notExists(old));
+        assertTrue(Files.exists(recent));
+    }
+
+    private static byte[] image(int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,201 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.LowStockAlertState;
+import com.agencias.backend.model.Part;
+import com.agencias.backend.repository.LowStockAlertRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LowStockAlertAggregatorTest {
+
+    /** LOW_STOCK_ALERT_STATE en memoria; {@code available}/{@code thresholds} hacen de la tabla PART. */
+    static final class FakeAlerts extends LowStockAlertRepository {
+        final Map<Long, LowStockAlertState> rows = new LinkedHashMap<>();
+        final Map<Long, Integer> available = new LinkedHashMap<>();
+        final Map<Long, Integer> thresholds = new LinkedHashMap<>();
+        final List<List<Long>> digests = new ArrayList<>();
+        int writes;
+
+        FakeAlerts() {
+            super(null);
+        }
+
+        @Override
+        public synchronized Map<Long, String> findStates() {
+            Map<Long, String> states = new LinkedHashMap<>();
+            rows.forEach((id, s) -> states.put(id, s.getState()));
+            return states;
+        }
+
+        @Override
+        public synchronized List<LowStockAlertState> findLowStockParts() {
+            List<LowStockAlertState> low = new ArrayList<>();
+            for (Map.Entry<Long, Integer> e : available.entrySet()) {
+                if (e.getValue() <= thresholds.get(e.getKey())) {
+                    LowStockAlertState s = new LowStockAlertState(e.getKey(), LowStockAlertState.ARMED);
+                    s.setAvailableQty(e.getValue());
+                    s.setThreshold(thresholds.get(e.getKey()));
+                    low.add(s);
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public synchronized boolean fire(Long partId, int availableQty, int threshold, Date now) {
+            writes++;
+            LowStockAlertState s =
+                rows.computeIfAbsent(partId, id -> new LowStockAlertState(id, LowStockAlertState.ARMED));
+            if (LowStockAlertState.FIRED.equals(s.getState())) {
+                return false;
+            }
+            s.setState(LowStockAlertState.FIRED);
+            s.setCrossings(s.getCrossings() + 1);
+            s.setNotifiedAt(null);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean recover(Long partId, Date now) {
+            writes++;
+            LowStockAlertState s = rows.get(partId);
+            if (s == null || !LowStockAlertState.FIRED.equals(s.getState())) {
+                return false;
+            }
+            s.setState(LowStockAlertState.RECOVERED);
+            return true;
+        }
+
+        @Override
+        public synchronized List<Long> queueDigest(Date now) {
+            List<Long> ids = new ArrayList<>();
+            rows.forEach((id, s) -> {
+                if (LowStockAlertState.FIRED.equals(s.getState()) && s.getNotifiedAt() == null) {
+                    s.setNotifiedAt(now);
+                    ids.add(id);
+                }
+            });
+            if (!ids.isEmpty()) {
+                digests.add(ids);
+            }
+            return ids;
+        }
+    }
+
+    private final FakeAlerts alerts = new FakeAlerts();
+    private final AtomicLong clock = new AtomicLong(10_000L);
+    private final FakeLeases leases = new FakeLeases(clock::get);
+
+    private LowStockAlertAggregator node(String owner) {
+        return new LowStockAlertAggregator(alerts, leases, owner, 1_000, clock::get);
+    }
+
+    /** Repuesto con umbral 5 y {@code available} unidades disponibles (también queda así en la «tabla PART»). */
+    private Part part(long id, int available) {
+        alerts.available.put(id, available);
+        alerts.thresholds.put(id, 5);
+        Part p = new Part();
+        p.setPartId(id);
+        p.setStockQuantity(available + 2);
+        p.setReservedQuantity(2);
+        p.setLowStockThreshold(5);
+        return p;
+    }
+
+    @Test
+    void observe_firesOncePerCrossingAndIgnoresRepeatedSales() {
+        LowStockAlertAggregator agg = node("A");
+
+        agg.observe(part(1, 9));
+        agg.observe(part(1, 5)); // cruza
+        for (int available = 4; available >= 0; available--) {
+            agg.observe(part(1, available));
+        }
+
+        assertEquals(1, alerts.writes);
+        assertEquals(1, alerts.rows.get(1L).getCrossings());
+        assertEquals(1L, agg.stats().get("fired"));
+        assertEquals(5L, agg.stats().get("suppressed"));
+    }
+
+    @Test
+    void observe_reArmsAfterRestockAndFiresAgainOnTheNextCrossing() {
+        LowStockAlertAggregator agg = node("A");
+
+        agg.observe(part(1, 3));
+        agg.observe(part(1, 20));
+        assertEquals(LowStockAlertState.RECOVERED, alerts.rows.get(1L).getState());
+        agg.observe(part(1, 2));
+
+        assertEquals(LowStockAlertState.FIRED, alerts.rows.get(1L).getState());
+        assertEquals(2, alerts.rows.get(1L).getCrossings());
+        assertEquals(1L, agg.stats().get("recovered"));
+    }
+
+    @Test
+    void observe_startsFromThePersistedState() {
+        alerts.fire(1L, 2, 5, new Date());
+        alerts.writes = 0;
+        LowStockAlertAggregator agg = node("A"); // p. ej. tras reiniciar el nodo
+
+        agg.observe(part(1, 1));
+
+        assertEquals(0, alerts.writes);
+        assertEquals(1, alerts.rows.get(1L).getCrossings());
+    }
+
+    @Test
+    void tick_queuesOneDigestWithEveryNewCrossing() {
+        LowStockAlertAggregator agg = node("A");
+        agg.observe(part(1, 3));
+        agg.observe(part(2, 0));
+        agg.observe(part(3, 50));
+        agg.observe(part(4, 5));
+
+        assertEquals(3, agg.tick());
+        assertEquals(0, agg.tick()); // sin cruces nuevos no hay resumen
+
+        assertEquals(List.of(List.of(1L, 2L, 4L)), alerts.digests);
+        assertEquals(1L, agg.stats().get("digests"));
+    }
+
+    @Test
+    void tick_reconcilesChangesNobodyObserved() {
+        LowStockAlertAggregator agg = node("A");
+        agg.observe(part(8, 1));
+        agg.tick();
+        part(7, 2); // bajó por SQL u otro nodo sin pasar por observe
+        part(8, 40); // repuesto sin pasar por observe
+
+        assertEquals(1, agg.tick());
+
+        assertEquals(List.of(7L), alerts.digests.get(1));
+        assertEquals(LowStockAlertState.RECOVERED, alerts.rows.get(8L).getState());
+        assertEquals(2L, agg.stats().get("reconciled"));
+    }
+
+    @Test
+    void tick_queuesTheDigestOnlyOnTheNodeHoldingTheLease() {
+        LowStockAlertAggregator a = node("A");
+        LowStockAlertAggregator b = node("B");
+        a.observe(part(1, 0));
+        b.observe(part(2, 0));
+
+        assertEquals(2, a.tick());
+        assertEquals(0, b.tick());
+
+        assertEquals(1, alerts.digests.size());
+        assertEquals(1L, b.stats().get("skippedNoLease"));
+        assertEquals(2L, b.stats().get("lowStockParts")); // recargó lo que registró el otro nodo
+        assertTrue((Boolean) a.stats().get("leaseHeld"));
+    }
+}
@@ -0,0 +1,257 @@
+package com.agencias.backend.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailQueueTest {
+
+    /** Servidor SMTP mínimo en localhost: acepta todo salvo lo que se le indique y guarda los asuntos. */
+    static final class SmtpStandIn implements AutoCloseable {
+        final ServerSocket server;
+        final AtomicInteger connections = new AtomicInteger();
+        final List<String> subjects = new CopyOnWriteArrayList<>();
+        volatile int refuseConnections; // responde 421 al saludo a las primeras N conexiones
+        volatile int dropAfterMessages = Integer.MAX_VALUE; // cierra la conexión tras N mensajes
+
+        SmtpStandIn() throws IOException {
+            server = new ServerSocket(0);
+            Thread t = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket s = server.accept();
+                        Thread session = new Thread(() -> serve(s));
+                        session.setDaemon(true);
+                        session.start();
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                OutputStream out = socket.getOutputStream();
+                if (connections.incrementAndGet() <= refuseConnections) {
+                    reply(out, "421 saturado");
+                    return;
+                }
+                reply(out, "220 standin ESMTP");
+                int messages = 0;
+                String subject = null;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String cmd = line.toUpperCase();
+                    if (cmd.startsWith("EHLO") || cmd.startsWith("HELO")) {
+                        reply(out, "250 standin");
+                    } else if (cmd.startsWith("RCPT") && cmd.contains("RECHAZADO")) {
+                        reply(out, "550 buzon inexistente");
+                    } else if (cmd.startsWith("DATA")) {
+                        reply(out, "354 fin con .");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            if (line.startsWith("Subject: ")) {
+                                subject = line.substring("Subject: ".length());
+                            }
+                        }
+                        subjects.add(subject);
+                        reply(out, "250 encolado");
+                        if (++messages >= dropAfterMessages) {
+                            return;
+                        }
+                    } else if (cmd.startsWith("QUIT")) {
+                        reply(out, "221 adios");
+                        return;
+                    } else {
+                        reply(out, "250 ok"); // MAIL, RCPT, RSET, NOOP
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        private static void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+
+    private final Session session = Session.getInstance(new Properties());
+    private SmtpStandIn smtp;
+    private MailQueue queue;
+
+    private MailQueue queue(int poolSize, int capacity, int messagesPerConnection, int maxAttempts)
+        throws IOException {
+        smtp = new SmtpStandIn();
+        return queue(() -> {
+            Transport t = session.getTransport("smtp");
+            t.connect("localhost", smtp.port(), null, null);
+            return t;
+        }, poolSize, capacity, messagesPerConnection, maxAttempts);
+    }
+
+    private MailQueue queue(MailQueue.Connector connector, int poolSize, int capacity, int messagesPerConnection,
+                            int maxAttempts) {
+        queue = new MailQueue(connector, poolSize, capacity, messagesPerConnection, 10_000, maxAttempts, 1, 5,
+            5_000, System::currentTimeMillis);
+        return queue;
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        if (queue != null) {
+            queue.stop();
+        }
+        if (smtp != null) {
+            smtp.close();
+        }
+    }
+
+    private MimeMessage message(String to, String subject) throws MessagingException {
+        MimeMessage msg = new MimeMessage(session);
+        msg.setFrom(new InternetAddress("fabrica@example.com"));
+        msg.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+        msg.setSubject(subject);
+        msg.setText("hola");
+        return msg;
+    }
+
+    @Test
+    void send_reusesOneConnectionForConsecutiveMessages() throws Exception {
+        MailQueue q = queue(1, 10, 50, 3);
+
+        for (int i = 1; i <= 5; i++) {
+            q.send(message("cliente@example.com", "Pedido " + i));
+        }
+
+        assertEquals(List.of("Pedido 1", "Pedido 2", "Pedido 3", "Pedido 4", "Pedido 5"), smtp.subjects);
+        assertEquals(1, smtp.connections.get());
+        assertEquals(5L, q.stats().get("sent"));
+        assertEquals(1L, q.stats().get("connectionsOpened"));
+        assertEquals(1, q.stats().get("connectionsOpen"));
+    }
+
+    @Test
+    void send_renewsTheConnectionAfterMessagesPerConnection() throws Exception {
+        MailQueue q = queue(1, 10, 2, 3);
+
+        for (int i = 1; i <= 5; i++) {
+            q.send(message("cliente@example.com", "Pedido " + i));
+        }
+
+        assertEquals(5, smtp.subjects.size());
+        assertEquals(3, smtp.connections.get());
+    }
+
+    @Test
+    void send_resendsOnAFreshConnectionWhenTheServerDroppedThePooledOne() throws Exception {
+        MailQueue q = queue(1, 10, 50, 1);
+        smtp.dropAfterMessages = 1;
+
+        q.send(message("cliente@example.com", "Pedido 1"));
+        q.send(message("cliente@example.com", "Pedido 2")); // con un solo intento: la reconexión no cuenta
+
+        assertEquals(List.of("Pedido 1", "Pedido 2"), smtp.subjects);
+        assertEquals(2, smtp.connections.get());
+        assertEquals(1L, q.stats().get("reconnected"));
+        assertEquals(0L, q.stats().get("failed"));
+    }
+
+    @Test
+    void send_retriesTransientFailuresWithBackoff() throws Exception {
+        MailQueue q = queue(1, 10, 50, 3);
+        smtp.refuseConnections = 2;
+
+        q.send(message("cliente@example.com", "Pedido 1"));
+
+        assertEquals(List.of("Pedido 1"), smtp.subjects);
+        assertEquals(3, smtp.connections.get());
+        assertEquals(2L, q.stats().get("retried"));
+    }
+
+    @Test
+    void send_failsPermanentRejectionsWithoutRetry() throws Exception {
+        MailQueue q = queue(1, 10, 50, 3);
+
+        assertThrows(MessagingException.class, () -> q.send(message("rechazado@example.com", "Pedido 1")));
+        q.send(message("cliente@example.com", "Pedido 2"));
+
+        assertEquals(List.of("Pedido 2"), smtp.subjects);
+        assertEquals(1L, q.stats().get("failed"));
+        assertEquals(0L, q.stats().get("retried"));
+    }
+
+    @Test
+    void send_givesUpAfterMaxAttempts() throws Exception {
+        MailQueue q = queue(1, 10, 50, 2);
+        smtp.refuseConnections = 10;
+
+        assertThrows(MessagingException.class, () -> q.send(message("cliente@example.com", "Pedido 1")));
+
+        assertEquals(2, smtp.connections.get());
+        assertEquals(1L, q.stats().get("failed"));
+        assertTrue(smtp.subjects.isEmpty());
+    }
+
+    @Test
+    void submit_rejectsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MailQueue q = queue(() -> {
+            connecting.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new MessagingException("sin servidor");
+        }, 1, 2, 50, 1);
+
+        CompletableFuture<Void> first = q.submit(message("a@example.com", "1"));
+        assertTrue(connecting.await(2, TimeUnit.SECONDS)); // el único hilo quedó ocupado con el primero
+        q.submit(message("b@example.com", "2"));
+        q.submit(message("c@example.com", "3"));
+
+        assertThrows(MailQueue.QueueFullException.class, () -> q.submit(message("d@example.com", "4")));
+        assertEquals(1L, q.stats().get("rejected"));
+        assertFalse(first.isDone());
+        release.countDown();
+    }
+}
@@ -0,0 +1,42 @@
+package com.agencias.backend.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MailServiceTest {
+
+    private static MimeMessage message() {
+        return new MimeMessage(Session.getInstance(new Properties()));
+    }
+
+    @Test
+    void setRecipients_singleRecipientGoesInTo() throws Exception {
+        MimeMessage msg = message();
+        MailService.setRecipients(msg, "fabrica@example.com", List.of(" cliente@example.com "));
+
+        assertArrayEquals(new InternetAddress[]{new InternetAddress("cliente@example.com")},
+            msg.getRecipients(Message.RecipientType.TO));
+        assertNull(msg.getRecipients(Message.RecipientType.BCC));
+    }
+
+    @Test
+    void setRecipients_severalAdminsGoInBccWithTheSenderInTo() throws Exception {
+        MimeMessage msg = message();
+        MailService.setRecipients(msg, "fabrica@example.com", List.of("a@example.com", "b@example.com"));
+
+        assertArrayEquals(new InternetAddress[]{new InternetAddress("fabrica@example.com")},
+            msg.getRecipients(Message.RecipientType.TO));
+        assertEquals("fabrica@example.com", msg.getHeader("To", ","));
+        assertEquals(3, msg.getAllRecipients().length); // el pool SMTP entrega a To + Bcc
+    }
+}
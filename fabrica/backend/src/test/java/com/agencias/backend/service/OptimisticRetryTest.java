@@ -0,0 +1,61 @@
+package com.agencias.backend.service;
+
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.RollbackException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptimisticRetryTest {
+
+    @Test
+    void reintentaConflictosYRecupera() {
+        List<Long> pauses = new ArrayList<>();
+        OptimisticRetry retry = new OptimisticRetry(5, 10, 200, pauses::add);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = retry.run("reserveStock", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new RollbackException("commit", new OptimisticLockException("versión"));
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+        assertEquals(2, pauses.size());
+        // RetryBackoff: la mitad del techo fija y la otra al azar (techos de 10 y 20 ms)
+        assertTrue(pauses.get(0) >= 5 && pauses.get(0) <= 10);
+        assertTrue(pauses.get(1) >= 10 && pauses.get(1) <= 20);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> op = (Map<String, Object>) ((Map<String, Object>) retry.stats().get("operations")).get("reserveStock");
+        assertEquals(2L, op.get("conflicts"));
+        assertEquals(1L, op.get("recovered"));
+    }
+
+    @Test
+    void agotaIntentos_yNoReintentaOtrosErrores() {
+        OptimisticRetry retry = new OptimisticRetry(3, 0, 0, millis -> { });
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(OptimisticRetry.ConflictException.class, () -> retry.run("confirmSale", () -> {
+            calls.incrementAndGet();
+            throw new OptimisticLockException();
+        }));
+        assertEquals(3, calls.get());
+        assertEquals(1L, retry.stats().get("exhausted"));
+
+        calls.set(0);
+        assertThrows(IllegalArgumentException.class, () -> retry.run("confirmSale", () -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException("Repuesto no encontrado");
+        }));
+        assertEquals(1, calls.get());
+    }
+}
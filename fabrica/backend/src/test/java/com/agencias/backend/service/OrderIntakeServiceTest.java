@@ -0,0 +1,267 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.OrderHeader;
+import com.agencias.backend.model.OrderIntake;
+import com.agencias.backend.model.OutboxEvent;
+import com.agencias.backend.repository.OrderIntakeRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderIntakeServiceTest {
+
+    /**
+     * Tabla ORDER_INTAKE en memoria, con las mismas transiciones condicionadas que el repositorio real;
+     * {@code outbox} recibe los eventos que se encolan al cerrar cada solicitud.
+     */
+    static final class FakeRepository extends OrderIntakeRepository {
+        final Map<String, OrderIntake> rows = new ConcurrentHashMap<>();
+        final List<OutboxEvent> outbox = new CopyOnWriteArrayList<>();
+
+        FakeRepository() {
+            super(null);
+        }
+
+        @Override
+        public OrderIntake insert(OrderIntake intake) {
+            rows.put(intake.getTicket(), intake);
+            return intake;
+        }
+
+        /** Como el real, devuelve una copia separada: lo que el servicio cambie en ella no toca la fila. */
+        @Override
+        public Optional<OrderIntake> findByTicket(String ticket) {
+            return Optional.ofNullable(rows.get(ticket)).map(FakeRepository::copy);
+        }
+
+        private static OrderIntake copy(OrderIntake row) {
+            OrderIntake i = new OrderIntake();
+            i.setTicket(row.getTicket());
+            i.setStatus(row.getStatus());
+            i.setUserId(row.getUserId());
+            i.setOrderOrigin(row.getOrderOrigin());
+            i.setSourceEnterpriseId(row.getSourceEnterpriseId());
+            i.setPayload(row.getPayload());
+            i.setSendConfirmation(row.getSendConfirmation());
+            i.setOrderNumber(row.getOrderNumber());
+            i.setOrderId(row.getOrderId());
+            i.setErrorMessage(row.getErrorMessage());
+            i.setAttempts(row.getAttempts());
+            i.setCreatedAt(row.getCreatedAt());
+            i.setUpdatedAt(row.getUpdatedAt());
+            return i;
+        }
+
+        @Override
+        public synchronized boolean claim(String ticket, Date now) {
+            OrderIntake i = rows.get(ticket);
+            if (i == null || !OrderIntake.PENDING.equals(i.getStatus())) {
+                return false;
+            }
+            i.setStatus(OrderIntake.PROCESSING);
+            i.setAttempts(i.getAttempts() + 1);
+            i.setUpdatedAt(now);
+            return true;
+        }
+
+        @Override
+        public void complete(String ticket, Long orderId, Date now, List<OutboxEvent> events) {
+            finish(ticket, OrderIntake.COMPLETED, orderId, null, now, events);
+        }
+
+        @Override
+        public void fail(String ticket, String status, String error, Date now, List<OutboxEvent> events) {
+            finish(ticket, status, null, error, now, events);
+        }
+
+        @Override
+        public void release(String ticket, String error, Date now) {
+            finish(ticket, OrderIntake.PENDING, null, error, now, List.of());
+        }
+
+        private synchronized void finish(String ticket, String status, Long orderId, String error, Date now,
+                                         List<OutboxEvent> events) {
+            OrderIntake i = rows.get(ticket);
+            if (i != null && OrderIntake.PROCESSING.equals(i.getStatus())) {
+                i.setStatus(status);
+                i.setOrderId(orderId);
+                i.setErrorMessage(error);
+                i.setUpdatedAt(now);
+                outbox.addAll(events);
+            }
+        }
+
+        @Override
+        public List<OrderIntake> findPendingBefore(Date before, int limit) {
+            List<OrderIntake> out = new ArrayList<>();
+            for (OrderIntake i : rows.values()) {
+                if (OrderIntake.PENDING.equals(i.getStatus()) && i.getUpdatedAt().before(before)) {
+                    out.add(i);
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public int resetStale(Date before, Date now) {
+            return 0;
+        }
+
+        @Override
+        public int deleteFinishedBefore(Date before) {
+            return 0;
+        }
+    }
+
+    private final FakeRepository repo = new FakeRepository();
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    private OrderIntakeService service(OrderIntakeService.Processor processor) {
+        return new OrderIntakeService(repo, processor, 2, 10, 3, 1_000, 60_000, 3_600_000,
+            r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            }, clock::get);
+    }
+
+    private OrderIntake pending(String ticket) {
+        OrderIntake i = new OrderIntake();
+        i.setTicket(ticket);
+        i.setStatus(OrderIntake.PENDING);
+        i.setUserId(7L);
+        i.setOrderOrigin("DISTRIBUIDORA");
+        i.setPayload("[{\"partId\":3,\"qty\":2}]");
+        i.setOrderNumber("ORD-" + ticket);
+        i.setAttempts(0);
+        i.setCreatedAt(new Date(clock.get()));
+        i.setUpdatedAt(new Date(clock.get()));
+        return repo.insert(i);
+    }
+
+    private static OrderHeader order(long id) {
+        OrderHeader o = new OrderHeader();
+        o.setOrderId(id);
+        return o;
+    }
+
+    @Test
+    void process_completesAndNotifies() {
+        pending("t1");
+        AtomicInteger calls = new AtomicInteger();
+        OrderIntakeService svc = service((intake, items) -> {
+            calls.incrementAndGet();
+            assertEquals(1, items.size());
+            assertEquals(3, ((Number) items.get(0).get("partId")).intValue());
+            return order(42L);
+        });
+
+        svc.process("t1");
+        svc.process("t1"); // ya no está pendiente: no se vuelve a procesar
+
+        OrderIntake row = repo.rows.get("t1");
+        assertEquals(OrderIntake.COMPLETED, row.getStatus());
+        assertEquals(42L, row.getOrderId());
+        assertEquals(1, calls.get());
+        assertEquals(1, repo.outbox.size());
+        OutboxEvent event = repo.outbox.get(0);
+        assertEquals(OutboxEvent.ORDER_INTAKE_WEBHOOK, event.getEventType());
+        assertEquals(0L, event.getAggregateId()); // sin api_key de distribuidora: webhook global
+        assertEquals("{\"event\":\"ORDER_INTAKE\",\"ticket\":\"t1\",\"status\":\"COMPLETED\","
+            + "\"fabricaOrderId\":42,\"orderNumber\":\"ORD-t1\"}", event.getPayload());
+        assertEquals(1L, svc.stats().get("completed"));
+    }
+
+    @Test
+    void process_rejectsBusinessErrorsWithoutRetry() {
+        pending("t2");
+        OrderIntakeService svc = service((intake, items) -> {
+            throw new IllegalArgumentException("Stock insuficiente");
+        });
+
+        svc.process("t2");
+
+        OrderIntake row = repo.rows.get("t2");
+        assertEquals(OrderIntake.REJECTED, row.getStatus());
+        assertEquals("Stock insuficiente", row.getErrorMessage());
+        assertNull(row.getOrderId());
+        assertEquals(1, repo.outbox.size());
+        assertTrue(repo.outbox.get(0).getPayload().contains("\"error\":\"Stock insuficiente\""));
+    }
+
+    @Test
+    void process_releasesTransientErrorsUntilMaxAttempts() {
+        pending("t3");
+        OrderIntakeService svc = service((intake, items) -> {
+            throw new IllegalStateException("BD no disponible");
+        });
+
+        svc.process("t3");
+        assertEquals(OrderIntake.PENDING, repo.rows.get("t3").getStatus());
+        svc.process("t3");
+        assertEquals(OrderIntake.PENDING, repo.rows.get("t3").getStatus());
+        assertTrue(repo.outbox.isEmpty());
+
+        svc.process("t3"); // tercer intento = máximo configurado
+        OrderIntake row = repo.rows.get("t3");
+        assertEquals(OrderIntake.FAILED, row.getStatus());
+        assertEquals("BD no disponible", row.getErrorMessage());
+        assertEquals(3, row.getAttempts());
+        assertEquals(1, repo.outbox.size());
+        assertEquals(2L, svc.stats().get("retried"));
+    }
+
+    @Test
+    void sweep_dispatchesPendingAfterRetryDelay() throws InterruptedException {
+        pending("t4");
+        OrderIntakeService svc = service((intake, items) -> order(9L));
+
+        svc.sweep(); // aún dentro del retraso de reintento
+        assertEquals(OrderIntake.PENDING, repo.rows.get("t4").getStatus());
+
+        clock.addAndGet(5_000);
+        svc.sweep();
+        for (int i = 0; i < 200 && !OrderIntake.COMPLETED.equals(repo.rows.get("t4").getStatus()); i++) {
+            Thread.sleep(10);
+        }
+        svc.stop();
+        assertEquals(OrderIntake.COMPLETED, repo.rows.get("t4").getStatus());
+    }
+
+    @Test
+    void submit_validatesShapeBeforeStoring() {
+        OrderIntakeService svc = service((intake, items) -> order(1L));
+        try {
+            assertThrows(IllegalArgumentException.class, () -> svc.submit(null, List.of(Map.of("partId", 1)), null, false));
+            assertThrows(IllegalArgumentException.class, () -> svc.submit(1L, List.of(), null, false));
+            assertThrows(IllegalArgumentException.class, () -> svc.submit(1L, "x", null, false));
+            assertTrue(repo.rows.isEmpty());
+        } finally {
+            svc.stop();
+        }
+    }
+
+    @Test
+    void laneOf_isStableAndInRange() {
+        for (long partId = -50; partId < 50; partId++) {
+            int lane = OrderIntakeService.laneOf(partId, 4);
+            assertTrue(lane >= 0 && lane < 4);
+            assertEquals(lane, OrderIntakeService.laneOf(partId, 4));
+        }
+        assertFalse(OrderIntakeService.laneOf(1L, 4) == OrderIntakeService.laneOf(2L, 4));
+    }
+}
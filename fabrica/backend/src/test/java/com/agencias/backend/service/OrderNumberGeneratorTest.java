@@ -0,0 +1,120 @@
+package com.agencias.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderNumberGeneratorTest {
+
+    @Test
+    void formato_yOrdenPorTiempo() {
+        AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+        OrderNumberGenerator gen = new OrderNumberGenerator(7, clock::get);
+        assertEquals("ORD-1700000000000-0070000", gen.next());
+        assertEquals("ORD-1700000000000-0070001", gen.next());
+        clock.set(1_700_000_000_005L);
+        assertEquals("ORD-1700000000005-0070000", gen.next());
+        assertThrows(IllegalArgumentException.class, () -> new OrderNumberGenerator(1000, clock::get));
+    }
+
+    @Test
+    void desbordeDeSecuencia_yRelojHaciaAtras_noRepiten() {
+        AtomicLong clock = new AtomicLong(1_000L);
+        OrderNumberGenerator gen = new OrderNumberGenerator(1, clock::get);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        String last = "";
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) {
+                clock.set(900L); // el reloj retrocede
+            }
+            String n = gen.next();
+            assertTrue(seen.add(n), "repetido: " + n);
+            assertTrue(n.compareTo(last) > 0, n + " no es posterior a " + last);
+            last = n;
+        }
+        assertTrue(last.startsWith("ORD-1002-001"), last); // 10000 números prestaron dos ms
+    }
+
+    @Test
+    void concurrente_cientosDeMilesSinRepetidos() throws Exception {
+        OrderNumberGenerator gen = new OrderNumberGenerator(42, System::currentTimeMillis);
+        int threads = 8;
+        int perThread = 50_000;
+        Set<String> seen = ConcurrentHashMap.newKeySet(threads * perThread);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                int duplicates = 0;
+                for (int i = 0; i < perThread; i++) {
+                    if (!seen.add(gen.next())) {
+                        duplicates++;
+                    }
+                }
+                return duplicates;
+            }));
+        }
+        start.countDown();
+        int duplicates = 0;
+        for (Future<Integer> f : futures) {
+            duplicates += f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(0, duplicates);
+        assertEquals(threads * perThread, seen.size());
+    }
+
+    @Test
+    void nodoConfigurado_fueraDeRangoNoArranca() {
+        assertEquals(7, OrderNumberGenerator.parseNodeId(" 7 "));
+        assertThrows(IllegalStateException.class, () -> OrderNumberGenerator.parseNodeId("1000"));
+        assertThrows(IllegalStateException.class, () -> OrderNumberGenerator.parseNodeId("-1"));
+        assertThrows(IllegalStateException.class, () -> OrderNumberGenerator.parseNodeId("nodo-a"));
+    }
+
+    @Test
+    void nodoSinConfigurar_tomaUnIdLibreEnLaBd_yDejaDeNumerarSiLoPierde() {
+        AtomicLong clock = new AtomicLong(1_000L);
+        FakeLeases leases = new FakeLeases(clock::get);
+        OrderNumberGenerator.NodeLease a = OrderNumberGenerator.NodeLease.acquire(leases, "a", 600, clock::get);
+        OrderNumberGenerator.NodeLease b = OrderNumberGenerator.NodeLease.acquire(leases, "b", 600, clock::get);
+        assertEquals(0, a.nodeId);
+        assertEquals(1, b.nodeId);
+
+        OrderNumberGenerator gen = new OrderNumberGenerator(a.nodeId, clock::get, a);
+        assertTrue(gen.next().startsWith("ORD-1000-000"));
+        clock.set(1_400L);
+        a.renew();
+        clock.set(1_900L);
+        assertTrue(gen.next().startsWith("ORD-1900-000")); // renovado hasta 2000
+
+        // "a" no renueva a tiempo, "c" toma su id y "a" deja de numerar
+        clock.set(2_100L);
+        OrderNumberGenerator.NodeLease c = OrderNumberGenerator.NodeLease.acquire(leases, "c", 600, clock::get);
+        assertEquals(0, c.nodeId);
+        assertThrows(IllegalStateException.class, gen::next);
+        a.renew();
+        assertFalse(a.isHeld());
+
+        c.release();
+        clock.set(2_101L);
+        assertEquals(0, OrderNumberGenerator.NodeLease.acquire(leases, "d", 600, clock::get).nodeId);
+    }
+}
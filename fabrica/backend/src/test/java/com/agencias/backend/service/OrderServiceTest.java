@@ -1,10 +1,29 @@
 package com.agencias.backend.service;
 
+import com.agencias.backend.model.OrderHeader;
+import com.agencias.backend.model.OrderStatusHistory;
+import com.agencias.backend.model.OutboxEvent;
+import com.agencias.backend.repository.OrderStatusRepository;
 import jakarta.persistence.EntityManagerFactory;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -12,6 +31,69 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
  */
 class OrderServiceTest {
 
+    /** Cabecera de un pedido en memoria; el lock hace de {@code SELECT ... FOR UPDATE} sobre ella. */
+    static final class FakeStatusRepository extends OrderStatusRepository {
+        final OrderHeader header = new OrderHeader();
+        final List<OrderStatusHistory> history = new ArrayList<>();
+        final ReentrantLock rowLock = new ReentrantLock();
+        volatile CountDownLatch beforeCommit = new CountDownLatch(0);
+
+        FakeStatusRepository(long orderId, String currentStatus) {
+            super(null);
+            header.setOrderId(orderId);
+            header.setOrderOrigin("FABRICA_WEB");
+            header.setCurrentStatus(currentStatus);
+        }
+
+        @Override
+        public OrderStatusHistory save(OrderStatusHistory status,
+                                       Function<OrderHeader, List<OutboxEvent>> prepare) {
+            rowLock.lock();
+            try {
+                prepare.apply(header);
+                beforeCommit.await();
+                status.setChangedAt(new Date());
+                history.add(status);
+                header.setCurrentStatus(status.getStatus());
+                header.setStatusChangedAt(status.getChangedAt());
+                return status;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                rowLock.unlock();
+            }
+        }
+    }
+
+    @Test
+    void cambiosDeEstadoSimultaneos_elSegundoSeValidaContraElPrimero() throws Exception {
+        FakeStatusRepository repo = new FakeStatusRepository(7L, "INITIATED");
+        OrderService svc = new OrderService(null, repo);
+        CountDownLatch shippedPending = new CountDownLatch(1);
+        repo.beforeCommit = shippedPending;
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        // Los dos parten de INITIATED; SHIPPED toma la cabecera primero y se queda a mitad de transacción
+        Future<?> shipped = pool.submit(() -> svc.updateOrderStatus(7L, "SHIPPED", null, 1L, "TRK-1", 3));
+        while (!repo.rowLock.isLocked()) {
+            Thread.sleep(1);
+        }
+        Future<?> preparing = pool.submit(() -> svc.updateOrderStatus(7L, "PREPARING", null, 2L, null, null));
+        while (!repo.rowLock.hasQueuedThreads()) {
+            Thread.sleep(1);
+        }
+        shippedPending.countDown();
+
+        shipped.get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> preparing.get(5, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertEquals("SHIPPED", repo.header.getCurrentStatus());
+        assertEquals(1, repo.history.size());
+        assertFalse(repo.rowLock.isLocked());
+    }
+
     @Test
     void createOrder_rejectsNullItems() {
         EntityManagerFactory emf = null;
@@ -26,4 +108,14 @@ class OrderServiceTest {
         assertThrows(IllegalArgumentException.class,
             () -> svc.createOrder(1L, Collections.emptyList(), null));
     }
+
+    @Test
+    void createOrders_rejectsEmptyOrOversizedBatch() {
+        EntityManagerFactory emf = null;
+        OrderService svc = new OrderService(emf);
+        assertThrows(IllegalArgumentException.class, () -> svc.createOrders(null, null));
+        assertThrows(IllegalArgumentException.class, () -> svc.createOrders(Collections.emptyList(), null));
+        List<Map<String, Object>> tooMany = Collections.nCopies(OrderService.MAX_BATCH_ORDERS + 1, Map.of());
+        assertThrows(IllegalArgumentException.class, () -> svc.createOrders(tooMany, null));
+    }
 }
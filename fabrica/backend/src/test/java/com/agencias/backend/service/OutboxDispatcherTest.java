@@ -0,0 +1,278 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.model.OutboxEvent;
+import com.agencias.backend.repository.OutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxDispatcherTest {
+
+    /** OUTBOX_EVENT en memoria, con las mismas condiciones que los UPDATE del repositorio real. */
+    static final class FakeRepository extends OutboxRepository {
+        final Map<Long, OutboxEvent> rows = new ConcurrentHashMap<>();
+        private long nextId = 1;
+
+        FakeRepository() {
+            super(null);
+        }
+
+        synchronized OutboxEvent add(String type, long aggregateId, long now) {
+            OutboxEvent e = new OutboxEvent(type, aggregateId, "{}");
+            e.setEventId(nextId++);
+            e.setStatus(OutboxEvent.PENDING);
+            e.setAttempts(0);
+            e.setNextAttemptAt(new Date(now));
+            rows.put(e.getEventId(), e);
+            return e;
+        }
+
+        @Override
+        public synchronized List<OutboxEvent> findDue(Date now, int limit) {
+            List<OutboxEvent> due = new ArrayList<>();
+            for (long id = 1; id < nextId && due.size() < limit; id++) {
+                OutboxEvent e = rows.get(id);
+                if (!OutboxEvent.PENDING.equals(e.getStatus()) || e.getNextAttemptAt().after(now)) {
+                    continue;
+                }
+                boolean earlierPending = false;
+                for (long prev = 1; prev < id; prev++) {
+                    OutboxEvent p = rows.get(prev);
+                    earlierPending |= OutboxEvent.PENDING.equals(p.getStatus())
+                        && p.getEventType().equals(e.getEventType()) && p.getAggregateId().equals(e.getAggregateId());
+                }
+                if (!earlierPending) {
+                    due.add(copy(e));
+                }
+            }
+            return due;
+        }
+
+        @Override
+        public synchronized boolean claim(OutboxEvent event, Date lockedUntil) {
+            OutboxEvent e = rows.get(event.getEventId());
+            if (!OutboxEvent.PENDING.equals(e.getStatus()) || !e.getAttempts().equals(event.getAttempts())) {
+                return false;
+            }
+            e.setAttempts(e.getAttempts() + 1);
+            e.setNextAttemptAt(lockedUntil);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean hasNewerPending(OutboxEvent event) {
+            return rows.values().stream().anyMatch(e -> OutboxEvent.PENDING.equals(e.getStatus())
+                && e.getEventType().equals(event.getEventType()) && e.getAggregateId().equals(event.getAggregateId())
+                && e.getEventId() > event.getEventId());
+        }
+
+        @Override
+        public synchronized void markSuperseded(Long eventId, Date now) {
+            markSent(eventId, now);
+        }
+
+        @Override
+        public synchronized void markSent(Long eventId, Date now) {
+            rows.get(eventId).setStatus(OutboxEvent.SENT);
+            rows.get(eventId).setSentAt(now);
+        }
+
+        @Override
+        public synchronized void markRetry(Long eventId, String error, Date nextAttemptAt) {
+            rows.get(eventId).setNextAttemptAt(nextAttemptAt);
+            rows.get(eventId).setLastError(error);
+        }
+
+        @Override
+        public synchronized void markDeferred(Long eventId, String reason, Date nextAttemptAt) {
+            OutboxEvent e = rows.get(eventId);
+            e.setAttempts(e.getAttempts() - 1);
+            e.setNextAttemptAt(nextAttemptAt);
+            e.setLastError(reason);
+        }
+
+        @Override
+        public synchronized void markDead(Long eventId, String error) {
+            rows.get(eventId).setStatus(OutboxEvent.DEAD);
+            rows.get(eventId).setLastError(error);
+        }
+
+        @Override
+        public int deleteSentBefore(Date before) {
+            return 0;
+        }
+
+        private static OutboxEvent copy(OutboxEvent e) {
+            OutboxEvent c = new OutboxEvent(e.getEventType(), e.getAggregateId(), e.getPayload());
+            c.setEventId(e.getEventId());
+            c.setStatus(e.getStatus());
+            c.setAttempts(e.getAttempts());
+            c.setNextAttemptAt(e.getNextAttemptAt());
+            return c;
+        }
+    }
+
+    private final FakeRepository repo = new FakeRepository();
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final List<Long> delivered = new CopyOnWriteArrayList<>();
+    private OutboxDispatcher dispatcher;
+
+    private OutboxDispatcher dispatcher(OutboxDispatcher.Handler handler) {
+        dispatcher = new OutboxDispatcher(repo, handler, Set.of(OutboxEvent.ORDER_STATUS_WEBHOOK), 4, 10, 3, 1_000,
+            8_000, 60_000, 3_600_000, clock::get);
+        return dispatcher;
+    }
+
+    @AfterEach
+    void stop() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void drain_deliversEventsOfTheSameAggregateInOrder() throws Exception {
+        repo.add(OutboxEvent.ORDER_STATUS_MAIL, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_MAIL, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_MAIL, 8, clock.get());
+        OutboxDispatcher d = dispatcher(e -> delivered.add(e.getEventId()));
+
+        assertEquals(4, d.drain());
+
+        assertTrue(delivered.indexOf(1L) < delivered.indexOf(2L));
+        for (OutboxEvent e : repo.rows.values()) {
+            assertEquals(OutboxEvent.SENT, e.getStatus());
+            assertEquals(1, e.getAttempts());
+        }
+        assertEquals(4L, d.stats().get("sent"));
+    }
+
+    @Test
+    void drain_sendsOnlyTheLatestPendingStatusWebhookPerOrder() throws Exception {
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 8, clock.get());
+        OutboxDispatcher d = dispatcher(e -> delivered.add(e.getEventId()));
+
+        assertEquals(2, d.drain());
+
+        assertEquals(Set.of(3L, 4L), Set.copyOf(delivered));
+        assertEquals(OutboxEvent.SENT, repo.rows.get(1L).getStatus());
+        assertEquals(OutboxEvent.SENT, repo.rows.get(2L).getStatus());
+        assertEquals(2L, d.stats().get("coalesced"));
+    }
+
+    @Test
+    void drain_retriesWithBackoffAndDeadLettersAfterMaxAttempts() throws Exception {
+        repo.add(OutboxEvent.ORDER_STATUS_MAIL, 7, clock.get());
+        repo.add(OutboxEvent.ORDER_STATUS_MAIL, 7, clock.get()); // espera a que el primero salga o se descarte
+        OutboxDispatcher d = dispatcher(e -> {
+            if (e.getEventId() == 1L) {
+                throw new IOException("SMTP no disponible");
+            }
+            delivered.add(e.getEventId());
+        });
+
+        assertEquals(0, d.drain());
+        OutboxEvent first = repo.rows.get(1L);
+        assertEquals(OutboxEvent.PENDING, first.getStatus());
+        assertEquals("SMTP no disponible", first.getLastError());
+        assertTrue(first.getNextAttemptAt().getTime() > clock.get());
+        assertEquals(0, d.drain()); // aún no toca reintentar
+
+        clock.addAndGet(10_000);
+        d.drain();
+        clock.addAndGet(10_000);
+        d.drain(); // tercer intento = máximo: DEAD, y entonces sale el segundo
+
+        assertEquals(OutboxEvent.DEAD, repo.rows.get(1L).getStatus());
+        assertEquals(3, repo.rows.get(1L).getAttempts());
+        assertEquals(List.of(2L), delivered);
+        assertEquals(2L, d.stats().get("retried"));
+        assertEquals(1L, d.stats().get("dead"));
+    }
+
+    @Test
+    void drain_deadLettersPermanentErrorsWithoutRetry() throws Exception {
+        repo.add(OutboxEvent.ORDER_CONFIRMATION_MAIL, 99, clock.get());
+        OutboxDispatcher d = dispatcher(e -> {
+            throw new IllegalArgumentException("Pedido no encontrado: 99");
+        });
+
+        d.drain();
+
+        OutboxEvent e = repo.rows.get(1L);
+        assertEquals(OutboxEvent.DEAD, e.getStatus());
+        assertEquals(1, e.getAttempts());
+        assertEquals("Pedido no encontrado: 99", e.getLastError());
+    }
+
+    @Test
+    void drain_postponesDeferredEventsWithoutSpendingAnAttempt() throws Exception {
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 7, clock.get());
+        OutboxDispatcher d = dispatcher(e -> {
+            throw new OutboxDispatcher.DeferredException("Demasiados webhooks en curso hacia http://dist");
+        });
+
+        for (int i = 0; i < 5; i++) {
+            d.drain();
+            clock.addAndGet(10_000);
+        }
+
+        OutboxEvent e = repo.rows.get(1L);
+        assertEquals(OutboxEvent.PENDING, e.getStatus());
+        assertEquals(0, e.getAttempts());
+        assertEquals(5L, d.stats().get("deferred"));
+    }
+
+    @Test
+    void drain_doesNotHoldOtherEventsBehindASlowDelivery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        repo.add(OutboxEvent.ORDER_STATUS_WEBHOOK, 1, clock.get());
+        for (long order = 2; order <= 30; order++) {
+            repo.add(OutboxEvent.ORDER_STATUS_MAIL, order, clock.get());
+        }
+        OutboxDispatcher d = dispatcher(e -> {
+            if (e.getEventId() == 1L) {
+                release.await(); // distribuidora que no responde
+            }
+            delivered.add(e.getEventId());
+        });
+        AtomicInteger result = new AtomicInteger(-1);
+        Thread drain = new Thread(() -> {
+            try {
+                result.set(d.drain());
+            } catch (InterruptedException ignored) {
+            }
+        });
+        drain.start();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (delivered.size() < 29 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(29, delivered.size()); // lotes de 10 con 4 hilos, uno de ellos bloqueado
+        assertFalse(delivered.contains(1L));
+
+        release.countDown();
+        drain.join(5_000);
+        assertEquals(30, result.get());
+    }
+}
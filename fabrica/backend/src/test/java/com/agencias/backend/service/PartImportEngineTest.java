@@ -0,0 +1,63 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.repository.PartImportRow;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Validación y fusión de filas de {@link PartImportEngine#parse} (sin BD).
+ */
+class PartImportEngineTest {
+
+    private static Map<String, Object> item(Object... kv) {
+        Map<String, Object> m = new HashMap<>();
+        for (int i = 0; i < kv.length; i += 2) {
+            m.put((String) kv[i], kv[i + 1]);
+        }
+        return m;
+    }
+
+    @Test
+    void filasInvalidasSeReportanPorNumero() {
+        Map<Integer, String> errors = new TreeMap<>();
+        List<PartImportRow> rows = PartImportEngine.parse(List.of(
+            item("partNumber", "A-1", "title", " Filtro ", "price", "10.50", "categoryId", 3),
+            item("title", "sin número"),
+            item("partNumber", "A-2", "price", "diez"),
+            item("partNumber", "A-3", "brandId", "x")
+        ), errors);
+
+        assertEquals(1, rows.size());
+        assertEquals("Filtro", rows.get(0).getTitle());
+        assertEquals(new BigDecimal("10.50"), rows.get(0).getPrice());
+        assertEquals(3L, rows.get(0).getCategoryId());
+        assertNull(rows.get(0).getBrandId());
+        assertEquals(List.of(2, 3, 4), List.copyOf(errors.keySet()));
+        assertEquals("falta partNumber", errors.get(2));
+    }
+
+    @Test
+    void partNumberRepetidoSeFusionaGanandoLaUltimaFila() {
+        Map<Integer, String> errors = new TreeMap<>();
+        List<PartImportRow> rows = PartImportEngine.parse(List.of(
+            item("partNumber", "B-1", "title", "Primero", "stockQuantity", 5),
+            item("partNumber", "B-2"),
+            item("partNumber", "B-1", "stockQuantity", 8)
+        ), errors);
+
+        assertEquals(2, rows.size());
+        PartImportRow b1 = rows.get(0);
+        assertEquals("Primero", b1.getTitle());
+        assertEquals(8, b1.getStockQuantity());
+        assertEquals(List.of(1, 3), b1.getRowNumbers());
+        assertEquals(0, errors.size());
+    }
+}
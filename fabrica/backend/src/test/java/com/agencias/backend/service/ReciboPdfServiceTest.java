@@ -0,0 +1,155 @@
+package com.agencias.backend.service;
+
+import com.agencias.backend.controller.ETags;
+import com.agencias.backend.model.OrderHeader;
+import com.agencias.backend.model.OrderItem;
+import com.agencias.backend.model.OrderReceipt;
+import com.agencias.backend.model.Part;
+import com.agencias.backend.repository.OrderItemRepository;
+import com.agencias.backend.repository.OrderReceiptRepository;
+import com.agencias.backend.repository.OrderRepository;
+import com.agencias.backend.repository.PartRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReciboPdfServiceTest {
+
+    /** ORDER_RECEIPT en memoria. */
+    static final class FakeReceipts extends OrderReceiptRepository {
+        final Map<Long, OrderReceipt> rows = new HashMap<>();
+        int saves;
+
+        FakeReceipts() {
+            super(null);
+        }
+
+        @Override
+        public Optional<String> findEtag(Long orderId, int templateVersion) {
+            return find(orderId, templateVersion).map(OrderReceipt::getEtag);
+        }
+
+        @Override
+        public Optional<OrderReceipt> find(Long orderId, int templateVersion) {
+            OrderReceipt r = rows.get(orderId);
+            return r != null && r.getTemplateVersion() == templateVersion ? Optional.of(r) : Optional.empty();
+        }
+
+        @Override
+        public void save(OrderReceipt receipt) {
+            saves++;
+            rows.put(receipt.getOrderId(), receipt);
+        }
+    }
+
+    private final FakeReceipts receipts = new FakeReceipts();
+    private final List<Collection<Long>> partQueries = new ArrayList<>();
+    private int orderLoads;
+
+    private final ReciboPdfService service = new ReciboPdfService(
+        new OrderRepository(null) {
+            @Override
+            public Optional<OrderHeader> findById(Long id) {
+                orderLoads++;
+                if (id != 1L) {
+                    return Optional.empty();
+                }
+                OrderHeader o = new OrderHeader();
+                o.setOrderId(1L);
+                o.setOrderNumber("ORD-0001");
+                o.setSubtotal(new BigDecimal("30.00"));
+                o.setTotal(new BigDecimal("30.00"));
+                return Optional.of(o);
+            }
+        },
+        new OrderItemRepository(null) {
+            @Override
+            public List<OrderItem> findByOrderId(Long orderId) {
+                return List.of(item(10L, 1), item(11L, 2), item(10L, 1));
+            }
+        },
+        new PartRepository(null) {
+            @Override
+            public List<Part> findSummariesByIds(Collection<Long> ids) {
+                partQueries.add(new ArrayList<>(ids));
+                List<Part> parts = new ArrayList<>();
+                for (Long id : ids) {
+                    Part p = new Part();
+                    p.setPartId(id);
+                    p.setPartNumber("PN-" + id);
+                    p.setTitle("Repuesto " + id);
+                    parts.add(p);
+                }
+                return parts;
+            }
+        },
+        receipts);
+
+    private static OrderItem item(long partId, int qty) {
+        OrderItem i = new OrderItem();
+        i.setOrderId(1L);
+        i.setPartId(partId);
+        i.setQty(qty);
+        i.setUnitPrice(new BigDecimal("10.00"));
+        i.setLineTotal(new BigDecimal("10.00").multiply(BigDecimal.valueOf(qty)));
+        return i;
+    }
+
+    @Test
+    void obtenerRecibo_rendersOnceWithASingleQueryForAllParts() {
+        ReciboPdfService.Recibo first = service.obtenerRecibo(1L);
+
+        assertTrue(new String(first.getPdf(), 0, 5).startsWith("%PDF"));
+        assertEquals("ORD-0001", first.getOrderNumber());
+        assertEquals(List.of(List.of(10L, 11L)), partQueries);
+        assertEquals(1, receipts.saves);
+        assertEquals(ETags.forContent(first.getPdf()), first.getEtag());
+    }
+
+    @Test
+    void obtenerRecibo_servesTheStoredReceiptOnLaterDownloads() {
+        ReciboPdfService.Recibo first = service.obtenerRecibo(1L);
+
+        ReciboPdfService.Recibo second = service.obtenerRecibo(1L);
+
+        assertArrayEquals(first.getPdf(), second.getPdf());
+        assertEquals(first.getEtag(), second.getEtag());
+        assertEquals(first.getEtag(), service.knownEtag(1L));
+        assertEquals(1, orderLoads);
+        assertEquals(1, partQueries.size());
+        assertEquals(1, receipts.saves);
+    }
+
+    @Test
+    void obtenerRecibo_regeneratesReceiptsFromAnOlderTemplate() {
+        OrderReceipt old = new OrderReceipt();
+        old.setOrderId(1L);
+        old.setTemplateVersion(ReciboPdfService.TEMPLATE_VERSION - 1);
+        old.setEtag("\"old\"");
+        old.setPdfData(new byte[]{1});
+        receipts.rows.put(1L, old);
+
+        assertNull(service.knownEtag(1L));
+        ReciboPdfService.Recibo recibo = service.obtenerRecibo(1L);
+
+        assertEquals(ReciboPdfService.TEMPLATE_VERSION, receipts.rows.get(1L).getTemplateVersion());
+        assertEquals(recibo.getEtag(), service.knownEtag(1L));
+    }
+
+    @Test
+    void obtenerRecibo_returnsNullForUnknownOrders() {
+        assertNull(service.obtenerRecibo(99L));
+        assertEquals(0, receipts.saves);
+    }
+}
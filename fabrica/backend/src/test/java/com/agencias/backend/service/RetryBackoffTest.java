@@ -0,0 +1,30 @@
+package com.agencias.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBackoffTest {
+
+    @Test
+    void delay_growsWithJitterUpToTheMaximum() {
+        RetryBackoff backoff = new RetryBackoff(1_000, 8_000);
+        for (int i = 0; i < 50; i++) {
+            long first = backoff.delay(1);
+            assertTrue(first >= 500 && first <= 1_000, "intento 1: " + first);
+            long third = backoff.delay(3);
+            assertTrue(third >= 2_000 && third <= 4_000, "intento 3: " + third);
+            long late = backoff.delay(30);
+            assertTrue(late >= 4_000 && late <= 8_000, "intento 30: " + late);
+        }
+    }
+
+    @Test
+    void delay_maximumBelowBaseIsRaisedToBase() {
+        RetryBackoff backoff = new RetryBackoff(100, 10);
+        for (int i = 0; i < 50; i++) {
+            long late = backoff.delay(12);
+            assertTrue(late >= 50 && late <= 100, "intento 12: " + late);
+        }
+    }
+}
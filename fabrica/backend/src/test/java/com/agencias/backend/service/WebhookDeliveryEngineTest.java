@@ -0,0 +1,63 @@
+package com.agencias.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebhookDeliveryEngineTest {
+
+    private static WebhookDeliveryEngine engine(WebhookDeliveryEngine.Transport transport, int maxPerEndpoint) {
+        return new WebhookDeliveryEngine(transport, maxPerEndpoint, 100, System::currentTimeMillis);
+    }
+
+    @Test
+    void deliver_classifiesResponsesAndRecordsPerEndpointMetrics() throws Exception {
+        WebhookDeliveryEngine e = engine((uri, secret, json) -> Integer.parseInt(json), 4);
+
+        e.deliver("http://dist-a:8080/hook", "s", "204");
+        assertThrows(IOException.class, () -> e.deliver("http://dist-a:8080/hook", "s", "503"));
+        assertThrows(IOException.class, () -> e.deliver("http://dist-a:8080/hook", "s", "429"));
+        assertThrows(IllegalStateException.class, () -> e.deliver("http://dist-a:8080/hook", "s", "401"));
+
+        Map<?, ?> endpoint = (Map<?, ?>) ((Map<?, ?>) e.stats().get("endpoints")).get("http://dist-a:8080");
+        assertEquals(1L, endpoint.get("sent"));
+        assertEquals(3L, endpoint.get("failed"));
+        assertEquals(0, endpoint.get("inFlight"));
+    }
+
+    @Test
+    void deliver_limitsConcurrencyPerEndpointOnly() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        WebhookDeliveryEngine e = engine((uri, secret, json) -> {
+            if ("slow".equals(uri.getHost())) {
+                started.countDown();
+                release.await();
+            }
+            return 200;
+        }, 1);
+        Thread t = new Thread(() -> {
+            try {
+                e.deliver("http://slow/hook", "s", "{}");
+            } catch (Exception ignored) {
+            }
+        });
+        t.start();
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        assertThrows(WebhookDeliveryEngine.EndpointBusyException.class,
+            () -> e.deliver("http://slow/hook", "s", "{}"));
+        e.deliver("http://fast/hook", "s", "{}"); // otra distribuidora no espera a la lenta
+
+        release.countDown();
+        t.join(2_000);
+        e.deliver("http://slow/hook", "s", "{}");
+    }
+}
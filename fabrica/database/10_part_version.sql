@@ -0,0 +1,14 @@
+-- =====================================================
+-- Script: 10_part_version.sql
+-- Descripción: Columna de versión en PART para control de concurrencia optimista
+--              (las filas existentes quedan en 0)
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @10_part_version.sql
+
+ALTER TABLE PART ADD (
+    version NUMBER(19) DEFAULT 0 NOT NULL
+);
+
+COMMENT ON COLUMN PART.version IS 'Versión de la fila; se incrementa en cada modificación (bloqueo optimista)';
@@ -0,0 +1,23 @@
+-- =====================================================
+-- Script: 11_idempotency_record.sql
+-- Descripción: Respuestas guardadas de peticiones con cabecera Idempotency-Key (POST /api/pedidos)
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @11_idempotency_record.sql
+
+CREATE TABLE IDEMPOTENCY_RECORD (
+    idempotency_key  VARCHAR2(300) PRIMARY KEY,
+    request_hash     VARCHAR2(64) NOT NULL,
+    status           VARCHAR2(16) NOT NULL,
+    response_status  NUMBER(3),
+    response_body    CLOB,
+    created_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    expires_at       TIMESTAMP NOT NULL,
+    CONSTRAINT chk_idempotency_status CHECK (status IN ('IN_PROGRESS', 'COMPLETED'))
+);
+
+-- Limpieza de vencidas (DELETE ... WHERE expires_at < :now)
+CREATE INDEX idx_idempotency_expires ON IDEMPOTENCY_RECORD (expires_at);
+
+COMMENT ON TABLE IDEMPOTENCY_RECORD IS 'Resultado de la primera petición por Idempotency-Key; los reintentos lo repiten';
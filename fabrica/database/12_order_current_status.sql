@@ -0,0 +1,29 @@
+-- =====================================================
+-- Script: 12_order_current_status.sql
+-- Descripción: Último estado del pedido copiado en ORDER_HEADER (CURRENT_STATUS, STATUS_CHANGED_AT)
+--              para filtrar por estado sin recorrer ORDER_STATUS_HISTORY
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @12_order_current_status.sql
+
+ALTER TABLE ORDER_HEADER ADD (
+    current_status     VARCHAR2(30),
+    status_changed_at  TIMESTAMP
+);
+
+-- Carga inicial desde el historial (a igual fecha, el último insertado). El backend repite esta carga al
+-- arrancar, en lotes, para los pedidos que sigan sin estado.
+UPDATE ORDER_HEADER o SET (current_status, status_changed_at) = (
+    SELECT h.status, h.changed_at FROM ORDER_STATUS_HISTORY h
+    WHERE h.order_id = o.order_id
+    ORDER BY h.changed_at DESC, h.status_id DESC
+    FETCH FIRST 1 ROWS ONLY)
+WHERE o.current_status IS NULL
+  AND EXISTS (SELECT 1 FROM ORDER_STATUS_HISTORY x WHERE x.order_id = o.order_id);
+COMMIT;
+
+-- Filtro por estado (listado admin) y exclusión de cancelados (reportes por fecha)
+CREATE INDEX idx_order_header_status_created ON ORDER_HEADER (current_status, created_at);
+
+COMMENT ON COLUMN ORDER_HEADER.current_status IS 'Último estado de ORDER_STATUS_HISTORY; se actualiza en la misma transacción';
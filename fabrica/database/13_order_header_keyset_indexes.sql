@@ -0,0 +1,22 @@
+-- =====================================================
+-- Script: 13_order_header_keyset_indexes.sql
+-- Descripción: Índices para el listado paginado de pedidos (keyset sobre created_at/total + order_id)
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @13_order_header_keyset_indexes.sql
+
+-- Listado admin sin filtros (sort=newest/oldest): recorre el índice desde el cursor
+CREATE INDEX idx_order_header_created_id ON ORDER_HEADER (created_at, order_id);
+
+-- Historial de un usuario: reemplaza idx_order_header_user_created agregando el desempate
+DROP INDEX idx_order_header_user_created;
+CREATE INDEX idx_order_header_user_created ON ORDER_HEADER (user_id, created_at, order_id);
+
+-- Listado filtrado por estado (?status=): reemplaza idx_order_header_status_created (migración 12) agregando el
+-- desempate, para que el keyset (created_at, order_id) se resuelva en el índice sin ordenar
+DROP INDEX idx_order_header_status_created;
+CREATE INDEX idx_order_header_status_created ON ORDER_HEADER (current_status, created_at, order_id);
+
+-- sort=total: mayor importe primero (el índice se recorre en sentido descendente)
+CREATE INDEX idx_order_header_total_id ON ORDER_HEADER (total, order_id);
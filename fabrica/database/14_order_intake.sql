@@ -0,0 +1,28 @@
+-- =====================================================
+-- Script: 14_order_intake.sql
+-- Descripción: Cola durable de solicitudes de pedido asíncronas (POST /api/pedidos?async=true)
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @14_order_intake.sql
+
+CREATE TABLE ORDER_INTAKE (
+    ticket             VARCHAR2(36) PRIMARY KEY,
+    status             VARCHAR2(16) NOT NULL,
+    user_id            NUMBER(19) NOT NULL,
+    order_origin       VARCHAR2(24),
+    payload            CLOB NOT NULL,
+    send_confirmation  NUMBER(1) DEFAULT 0 NOT NULL,
+    order_number       VARCHAR2(50) NOT NULL,
+    order_id           NUMBER(19),
+    error_message      VARCHAR2(1000),
+    attempts           NUMBER(5) DEFAULT 0 NOT NULL,
+    created_at         TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at         TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT chk_order_intake_status CHECK (status IN ('PENDING', 'PROCESSING', 'COMPLETED', 'REJECTED', 'FAILED'))
+);
+
+-- Barrido de pendientes / PROCESSING abandonadas y limpieza de terminadas
+CREATE INDEX idx_order_intake_status_upd ON ORDER_INTAKE (status, updated_at);
+
+COMMENT ON TABLE ORDER_INTAKE IS 'Solicitudes de pedido recibidas con 202; un worker las convierte en pedidos';
@@ -0,0 +1,15 @@
+-- =====================================================
+-- Script: 15_scheduler_lease.sql
+-- Descripción: Lease para tareas periódicas que deben correr en un solo nodo a la vez
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @15_scheduler_lease.sql
+
+CREATE TABLE SCHEDULER_LEASE (
+    lease_name    VARCHAR2(64) PRIMARY KEY,
+    owner         VARCHAR2(100) NOT NULL,
+    leased_until  TIMESTAMP NOT NULL
+);
+
+COMMENT ON TABLE SCHEDULER_LEASE IS 'Lease por tarea periódica: solo el dueño vigente la ejecuta';
@@ -0,0 +1,30 @@
+-- =====================================================
+-- Script: 16_outbox_event.sql
+-- Descripción: Outbox transaccional de avisos de pedidos y stock (correos, webhooks, alertas)
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @16_outbox_event.sql
+
+CREATE SEQUENCE OUTBOX_SEQ START WITH 1 INCREMENT BY 1 NOCACHE NOCYCLE;
+
+CREATE TABLE OUTBOX_EVENT (
+    event_id         NUMBER(19) PRIMARY KEY,
+    event_type       VARCHAR2(40) NOT NULL,
+    aggregate_id     NUMBER(19) NOT NULL,
+    payload          CLOB,
+    status           VARCHAR2(16) NOT NULL,
+    attempts         NUMBER(5) DEFAULT 0 NOT NULL,
+    next_attempt_at  TIMESTAMP NOT NULL,
+    last_error       VARCHAR2(1000),
+    created_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    sent_at          TIMESTAMP,
+    CONSTRAINT chk_outbox_event_status CHECK (status IN ('PENDING', 'SENT', 'DEAD'))
+);
+
+-- Eventos vencidos del despachador
+CREATE INDEX idx_outbox_due ON OUTBOX_EVENT (status, next_attempt_at);
+-- Orden por tipo y agregado (el siguiente espera al anterior pendiente)
+CREATE INDEX idx_outbox_aggregate ON OUTBOX_EVENT (event_type, aggregate_id, status, event_id);
+
+COMMENT ON TABLE OUTBOX_EVENT IS 'Avisos guardados en la transacción que los origina; OutboxDispatcher los entrega con reintentos';
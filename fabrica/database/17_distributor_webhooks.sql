@@ -0,0 +1,27 @@
+-- =====================================================
+-- Script: 17_distributor_webhooks.sql
+-- Descripción: Webhook propio de cada distribuidora (ENTERPRISE_PROFILE) y distribuidora que creó cada
+--              pedido o solicitud (la dueña de la X-Distributor-Api-Key), para avisarle solo a ella
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @17_distributor_webhooks.sql
+
+ALTER TABLE ENTERPRISE_PROFILE ADD (
+    webhook_url     VARCHAR2(500),
+    webhook_secret  VARCHAR2(255)
+);
+
+ALTER TABLE ORDER_HEADER ADD (
+    source_enterprise_id  NUMBER(19)
+);
+
+ALTER TABLE ORDER_INTAKE ADD (
+    source_enterprise_id  NUMBER(19)
+);
+
+-- Resolución de la distribuidora por su clave en cada pedido
+CREATE INDEX idx_enterprise_api_key ON ENTERPRISE_PROFILE (api_key);
+
+COMMENT ON COLUMN ENTERPRISE_PROFILE.webhook_url IS 'Cambios de estado de sus pedidos (POST JSON); vacío = webhook global';
+COMMENT ON COLUMN ORDER_HEADER.source_enterprise_id IS 'ENTERPRISE_PROFILE dueño de la X-Distributor-Api-Key que creó el pedido';
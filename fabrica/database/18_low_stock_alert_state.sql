@@ -0,0 +1,28 @@
+-- =====================================================
+-- Script: 18_low_stock_alert_state.sql
+-- Descripción: Estado de la alerta de stock bajo por repuesto (ARMED/FIRED/RECOVERED): un aviso por cruce del
+--              umbral, agrupados en un correo de resumen periódico
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @18_low_stock_alert_state.sql
+
+CREATE TABLE LOW_STOCK_ALERT_STATE (
+    part_id        NUMBER(19) PRIMARY KEY,
+    state          VARCHAR2(16) NOT NULL,
+    available_qty  NUMBER(10),
+    threshold      NUMBER(10),
+    crossings      NUMBER(10) DEFAULT 0 NOT NULL,
+    fired_at       TIMESTAMP,
+    notified_at    TIMESTAMP,
+    recovered_at   TIMESTAMP,
+    updated_at     TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT fk_low_stock_alert_part FOREIGN KEY (part_id) REFERENCES PART(part_id),
+    CONSTRAINT chk_low_stock_alert_state CHECK (state IN ('ARMED', 'FIRED', 'RECOVERED'))
+);
+
+-- Cruces aún no incluidos en un resumen
+CREATE INDEX idx_low_stock_alert_pending ON LOW_STOCK_ALERT_STATE (state, notified_at);
+
+COMMENT ON TABLE LOW_STOCK_ALERT_STATE IS 'Alerta de stock bajo por repuesto; LowStockAlertAggregator la dispara una vez por cruce y la resume';
+COMMENT ON COLUMN LOW_STOCK_ALERT_STATE.notified_at IS 'Resumen que incluyó el último cruce; NULL = pendiente';
@@ -0,0 +1,20 @@
+-- =====================================================
+-- Script: 19_order_receipt.sql
+-- Descripción: PDF del recibo de cada pedido, generado una sola vez por versión de plantilla y servido con ETag
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @19_order_receipt.sql
+
+CREATE TABLE ORDER_RECEIPT (
+    order_id          NUMBER(19) PRIMARY KEY,
+    template_version  NUMBER(10) NOT NULL,
+    order_number      VARCHAR2(50),
+    etag              VARCHAR2(64) NOT NULL,
+    pdf_data          BLOB NOT NULL,
+    created_at        TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT fk_order_receipt_order FOREIGN KEY (order_id) REFERENCES ORDER_HEADER(order_id)
+);
+
+COMMENT ON TABLE ORDER_RECEIPT IS 'Recibo PDF ya generado por pedido; ReciboPdfService lo genera la primera vez que se descarga';
+COMMENT ON COLUMN ORDER_RECEIPT.template_version IS 'Versión del diseño del recibo; si no coincide con la del código se vuelve a generar';
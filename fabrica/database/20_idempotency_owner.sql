@@ -0,0 +1,12 @@
+-- =====================================================
+-- Script: 20_idempotency_owner.sql
+-- Descripción: Dueño de cada fila IN_PROGRESS de IDEMPOTENCY_RECORD; completar o liberar la clave exige
+--              seguir siendo su dueño (un nodo cuyo lease venció no pisa la fila del nodo que la retomó)
+-- =====================================================
+
+-- Conectar como usuario FABRICA
+-- @20_idempotency_owner.sql
+
+ALTER TABLE IDEMPOTENCY_RECORD ADD (owner_token VARCHAR2(36));
+
+COMMENT ON COLUMN IDEMPOTENCY_RECORD.owner_token IS 'Token de la ejecución que tomó la clave (UUID por intento)';
@@ -31,6 +31,7 @@ CREATE SEQUENCE part_number_map_seq START WITH 1 INCREMENT BY 1 NOCACHE NOCYCLE;
 CREATE SEQUENCE inventory_log_seq START WITH 1 INCREMENT BY 1 NOCACHE NOCYCLE;
 CREATE SEQUENCE import_export_log_seq START WITH 1 INCREMENT BY 1 NOCACHE NOCYCLE;
 CREATE SEQUENCE part_engagement_log_seq START WITH 1 INCREMENT BY 1 NOCACHE NOCYCLE;
+CREATE SEQUENCE outbox_seq START WITH 1 INCREMENT BY 1 NOCACHE NOCYCLE;
 
 -- 2) TABLAS - Seguridad / Usuarios
 CREATE TABLE role (
@@ -85,6 +86,8 @@ CREATE TABLE enterprise_profile (
   default_card_last4          VARCHAR2(10),
   delivery_window             VARCHAR2(500),
   discount_percent            NUMBER(5,2) DEFAULT 0,
+  webhook_url                 VARCHAR2(500),
+  webhook_secret              VARCHAR2(255),
   CONSTRAINT uq_enterprise_user UNIQUE (user_id),
   CONSTRAINT fk_enterprise_user FOREIGN KEY (user_id) REFERENCES app_user(user_id),
   CONSTRAINT fk_enterprise_ship FOREIGN KEY (default_shipping_address_id) REFERENCES user_address(address_id),
@@ -136,6 +139,7 @@ CREATE TABLE part (
   low_stock_threshold NUMBER(10) DEFAULT 5 NOT NULL,
   reserved_quantity   NUMBER(10) DEFAULT 0 NOT NULL,
   part_year           NUMBER(4),
+  version             NUMBER(19) DEFAULT 0 NOT NULL,
   CONSTRAINT uq_part_number UNIQUE (part_number),
   CONSTRAINT fk_part_category FOREIGN KEY (category_id) REFERENCES category(category_id),
   CONSTRAINT fk_part_brand FOREIGN KEY (brand_id) REFERENCES brand(brand_id),
@@ -201,6 +205,9 @@ CREATE TABLE order_header (
   total          NUMBER(12,2) NOT NULL,
   currency       VARCHAR2(3) DEFAULT 'USD',
   created_at     TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  current_status     VARCHAR2(30),
+  status_changed_at  TIMESTAMP,
+  source_enterprise_id NUMBER(19),
   CONSTRAINT uq_order_number UNIQUE (order_number),
   CONSTRAINT fk_order_user FOREIGN KEY (user_id) REFERENCES app_user(user_id),
   CONSTRAINT chk_order_type CHECK (order_type IN ('WEB','ENTERPRISE_API'))
@@ -345,11 +352,93 @@ CREATE TABLE part_engagement_log (
   CONSTRAINT fk_englog_user FOREIGN KEY (user_id) REFERENCES app_user(user_id)
 );
 
+-- 9b) Idempotency-Key de POST /api/pedidos
+CREATE TABLE idempotency_record (
+  idempotency_key VARCHAR2(300) PRIMARY KEY,
+  request_hash    VARCHAR2(64) NOT NULL,
+  status          VARCHAR2(16) NOT NULL,
+  response_status NUMBER(3),
+  response_body   CLOB,
+  created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  expires_at      TIMESTAMP NOT NULL,
+  owner_token     VARCHAR2(36),
+  CONSTRAINT chk_idempotency_status CHECK (status IN ('IN_PROGRESS', 'COMPLETED'))
+);
+
+-- 9c) Solicitudes de pedido asíncronas (POST /api/pedidos?async=true)
+CREATE TABLE order_intake (
+  ticket            VARCHAR2(36) PRIMARY KEY,
+  status            VARCHAR2(16) NOT NULL,
+  user_id           NUMBER(19) NOT NULL,
+  order_origin      VARCHAR2(24),
+  source_enterprise_id NUMBER(19),
+  payload           CLOB NOT NULL,
+  send_confirmation NUMBER(1) DEFAULT 0 NOT NULL,
+  order_number      VARCHAR2(50) NOT NULL,
+  order_id          NUMBER(19),
+  error_message     VARCHAR2(1000),
+  attempts          NUMBER(5) DEFAULT 0 NOT NULL,
+  created_at        TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  updated_at        TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  CONSTRAINT chk_order_intake_status CHECK (status IN ('PENDING', 'PROCESSING', 'COMPLETED', 'REJECTED', 'FAILED'))
+);
+
+-- 9d) Leases de tareas periódicas de un solo nodo
+CREATE TABLE scheduler_lease (
+  lease_name   VARCHAR2(64) PRIMARY KEY,
+  owner        VARCHAR2(100) NOT NULL,
+  leased_until TIMESTAMP NOT NULL
+);
+
+-- 9e) Outbox de avisos (correos, webhooks, alertas) escritos en la transacción que los origina
+CREATE TABLE outbox_event (
+  event_id        NUMBER(19) PRIMARY KEY,
+  event_type      VARCHAR2(40) NOT NULL,
+  aggregate_id    NUMBER(19) NOT NULL,
+  payload         CLOB,
+  status          VARCHAR2(16) NOT NULL,
+  attempts        NUMBER(5) DEFAULT 0 NOT NULL,
+  next_attempt_at TIMESTAMP NOT NULL,
+  last_error      VARCHAR2(1000),
+  created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  sent_at         TIMESTAMP,
+  CONSTRAINT chk_outbox_event_status CHECK (status IN ('PENDING', 'SENT', 'DEAD'))
+);
+
+-- 9f) Estado de la alerta de stock bajo por repuesto (un aviso por cruce, agrupados en un resumen periódico)
+CREATE TABLE low_stock_alert_state (
+  part_id       NUMBER(19) PRIMARY KEY,
+  state         VARCHAR2(16) NOT NULL,
+  available_qty NUMBER(10),
+  threshold     NUMBER(10),
+  crossings     NUMBER(10) DEFAULT 0 NOT NULL,
+  fired_at      TIMESTAMP,
+  notified_at   TIMESTAMP,
+  recovered_at  TIMESTAMP,
+  updated_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  CONSTRAINT fk_low_stock_alert_part FOREIGN KEY (part_id) REFERENCES part(part_id),
+  CONSTRAINT chk_low_stock_alert_state CHECK (state IN ('ARMED', 'FIRED', 'RECOVERED'))
+);
+
+-- 9g) Recibo PDF ya generado por pedido (se genera en la primera descarga y se sirve con ETag)
+CREATE TABLE order_receipt (
+  order_id         NUMBER(19) PRIMARY KEY,
+  template_version NUMBER(10) NOT NULL,
+  order_number     VARCHAR2(50),
+  etag             VARCHAR2(64) NOT NULL,
+  pdf_data         BLOB NOT NULL,
+  created_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  CONSTRAINT fk_order_receipt_order FOREIGN KEY (order_id) REFERENCES order_header(order_id)
+);
+
 -- 10) ÍndICES
 CREATE INDEX idx_part_part_number ON part(part_number);
 CREATE INDEX idx_vehicle_code_year ON vehicle(universal_vehicle_code, year_number);
 CREATE INDEX idx_part_comp_part_vehicle ON part_compatibility(part_id, vehicle_id);
-CREATE INDEX idx_order_header_user_created ON order_header(user_id, created_at);
+CREATE INDEX idx_order_header_user_created ON order_header(user_id, created_at, order_id);
+CREATE INDEX idx_order_header_created_id ON order_header(created_at, order_id);
+CREATE INDEX idx_order_header_status_created ON order_header(current_status, created_at, order_id);
+CREATE INDEX idx_order_header_total_id ON order_header(total, order_id);
 CREATE INDEX idx_order_status_order_changed ON order_status_history(order_id, changed_at);
 CREATE INDEX idx_market_snap_date ON market_sales_snapshot(snapshot_date);
 CREATE INDEX idx_market_snap_part ON market_sales_snapshot(part_number);
@@ -359,6 +448,12 @@ CREATE INDEX idx_inventory_log_part ON inventory_log(part_id);
 CREATE INDEX idx_import_export_log_user ON import_export_log(user_id);
 CREATE INDEX idx_part_engagement_part ON part_engagement_log(part_id);
 CREATE INDEX idx_part_engagement_created ON part_engagement_log(created_at);
+CREATE INDEX idx_idempotency_expires ON idempotency_record(expires_at);
+CREATE INDEX idx_order_intake_status_upd ON order_intake(status, updated_at);
+CREATE INDEX idx_outbox_due ON outbox_event(status, next_attempt_at);
+CREATE INDEX idx_outbox_aggregate ON outbox_event(event_type, aggregate_id, status, event_id);
+CREATE INDEX idx_enterprise_api_key ON enterprise_profile(api_key);
+CREATE INDEX idx_low_stock_alert_pending ON low_stock_alert_state(state, notified_at);
 
 -- 11) Datos iniciales (roles)
 INSERT INTO role (role_id, name) VALUES (role_seq.NEXTVAL, 'ADMIN');
@@ -371,7 +466,7 @@ COMMIT;
 -- - APP_USER: el modelo JPA mapea la PK como USERID; este DDL usa USER_ID.
 --   Si Hibernate falla, ejecute database/04_fix_app_user_columns.sql o alinee
 --   @Column en AppUser.java a USER_ID.
--- - Migraciones 06, 07, 08 ya están integradas aquí; no hace falta ejecutarlas
+-- - Migraciones 06, 07, 08 y 10 a 20 ya están integradas aquí; no hace falta ejecutarlas
 --   en bases creadas desde cero con este archivo.
 -- - Scripts antiguos que usaban order_header_seq / order_status_history_seq deben
 --   usar order_seq / status_seq (alineado con ORDER_SEQ y STATUS_SEQ en JPA).